@@ -23,6 +23,10 @@ android {
 
     buildTypes {
         release {
+            // Minification stays off until a release R8 build has been verified on device;
+            // proguard-rules.pro already keeps the Gson models and JNI-bound classes for that.
+            // The ART baseline profile in src/main/baseline-prof.txt is bundled automatically
+            // (regenerate with ./gradlew :benchmark:baselineProfile).
             isMinifyEnabled = false
             proguardFiles(
                 getDefaultProguardFile("proguard-android-optimize.txt"),
@@ -30,6 +34,10 @@ android {
             )
         }
     }
+    androidResources {
+        // Keep models uncompressed so they can be opened as AssetFileDescriptor
+        noCompress += listOf("tflite", "nb")
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
@@ -46,10 +54,14 @@ dependencies {
     testImplementation(libs.junit)
     testImplementation("org.mockito:mockito-core:4.11.0")
     testImplementation("org.mockito:mockito-inline:4.11.0")
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
+    testImplementation(project(":mockllm"))
         testImplementation("org.robolectric:robolectric:4.10.3")
         androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
     implementation(libs.gson)
+    // installs the bundled baseline profile on sideloaded / non-Play installs
+    implementation(libs.profileinstaller)
     implementation(libs.okhttp)
     implementation(libs.mediapipe.genai)
     implementation("com.github.equationl.paddleocr4android:paddleocr4android:v1.2.9")
@@ -18,4 +18,31 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# ---- Gson models ----
+# Only ModelCatalog's index is still read reflectively by Gson (ActionPlan goes
+# through the hand-written ActionPlanCodec): keep its no-arg constructors and
+# field names, and the generic signatures Gson needs to resolve
+# Map<String, Entry> and List<...> fields.
+-keepattributes Signature, InnerClasses, EnclosingMethod, *Annotation*
+-keep class com.example.philotes.utils.ModelCatalog$Index { <init>(); <fields>; }
+-keep class com.example.philotes.utils.ModelCatalog$Entry { <init>(); <fields>; }
+# Gson 2.10 ships no R8 rules of its own.
+-keep class com.google.gson.reflect.TypeToken { *; }
+-keep class * extends com.google.gson.reflect.TypeToken
+-keep class * implements com.google.gson.TypeAdapterFactory
+-keep class * implements com.google.gson.JsonSerializer
+-keep class * implements com.google.gson.JsonDeserializer
+-dontwarn sun.misc.Unsafe
+
+# ---- Native inference / OCR runtimes ----
+# Their Java classes are looked up by name from JNI.
+-keep class org.tensorflow.lite.** { *; }
+-keep class com.google.mediapipe.** { *; }
+-keep class com.baidu.paddle.** { *; }
+-keep class com.equationl.paddleocr4android.** { *; }
+-dontwarn org.tensorflow.lite.**
+-dontwarn com.google.mediapipe.**
+-dontwarn com.google.protobuf.**
+-dontwarn javax.annotation.**
@@ -72,8 +72,8 @@ public class ActionCardAdapter extends RecyclerView.Adapter<ActionCardAdapter.Vi
         if (plan.getType() != null) {
             title = plan.getType().toString();
         }
-        if (plan.getSlots() != null && plan.getSlots().containsKey("title")) {
-            title += ": " + plan.getSlots().get("title");
+        if (plan.getSlots() != null && plan.getSlots().title() != null) {
+            title += ": " + plan.getSlots().title();
         }
         holder.tvActionTitle.setText(title);
 
@@ -1,7 +1,5 @@
 package com.example.philotes;
 
-import androidx.annotation.NonNull;
-
 import com.example.philotes.data.model.ActionPlan;
 
 import java.util.Objects;
@@ -54,20 +52,34 @@ public class ActionCardItem {
         return streaming == that.streaming &&
                 Objects.equals(requestId, that.requestId) &&
                 Objects.equals(streamingText, that.streamingText) &&
-                Objects.equals(planSummary(plan), planSummary(that.plan));
+                samePlan(plan, that.plan);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(requestId, streaming, streamingText, planSummary(plan));
+        int result = Objects.hashCode(requestId);
+        result = 31 * result + (streaming ? 1 : 0);
+        result = 31 * result + Objects.hashCode(streamingText);
+        return 31 * result + planHash(plan);
+    }
+
+    // 逐字段比较，槽位比较先比 ActionSlots 预先算好的哈希，绑定时不再拼接摘要字符串
+    private static boolean samePlan(ActionPlan a, ActionPlan b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return a.getType() == b.getType() &&
+                Double.compare(a.getConfidence(), b.getConfidence()) == 0 &&
+                Objects.equals(a.getOriginalText(), b.getOriginalText()) &&
+                Objects.equals(a.getSlots(), b.getSlots());
     }
 
-    @NonNull
-    private static String planSummary(ActionPlan plan) {
+    private static int planHash(ActionPlan plan) {
         if (plan == null) {
-            return "null";
+            return 0;
         }
-        return String.valueOf(plan.getType()) + "|" + plan.getConfidence() + "|" + plan.getOriginalText() + "|" + plan.getSlots();
+        int result = Objects.hashCode(plan.getType());
+        result = 31 * result + Double.hashCode(plan.getConfidence());
+        result = 31 * result + Objects.hashCode(plan.getOriginalText());
+        return 31 * result + Objects.hashCode(plan.getSlots());
     }
 }
-
@@ -13,8 +13,8 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.data.model.ActionPlanCodec;
 import com.example.philotes.domain.ActionExecutor;
-import com.google.gson.Gson;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -73,7 +73,7 @@ public class ActionDetailFragment extends Fragment {
             return;
         }
 
-        actionPlan = new Gson().fromJson(planJson, ActionPlan.class);
+        actionPlan = ActionPlanCodec.readPlan(planJson);
         if (actionPlan == null) {
             Toast.makeText(requireContext(), "动作数据解析失败", Toast.LENGTH_SHORT).show();
             return;
@@ -94,15 +94,15 @@ public class ActionDetailFragment extends Fragment {
             return;
         }
 
-        Map<String, String> slots = actionPlan.getSlots();
-        if (slots == null) {
-            slots = new HashMap<>();
-        }
+        // 计划里的槽位不可变，编辑结果写入副本后整体替换
+        Map<String, String> slots = actionPlan.getSlots() == null
+                ? new HashMap<>() : new HashMap<>(actionPlan.getSlots());
 
         slots.put("title", etTitle.getText().toString());
         slots.put("time", etTime.getText().toString());
         slots.put("location", etLocation.getText().toString());
         slots.put("description", etDescription.getText().toString());
+        actionPlan.setSlots(slots);
 
         Toast.makeText(requireContext(), "正在确认执行: " + slots.get("title"), Toast.LENGTH_SHORT).show();
 
@@ -31,15 +31,18 @@ import androidx.core.app.NotificationCompat;
 
 import com.example.philotes.data.model.ActionPlan;
 import com.example.philotes.data.model.OcrResult;
-import com.example.philotes.data.api.RoutedLlmService;
 import com.example.philotes.domain.ActionExecutor;
-import com.example.philotes.domain.ActionParser;
 import com.example.philotes.domain.PrivacyFirewall;
 import com.example.philotes.domain.RuleEngine;
 import com.example.philotes.input.MultimodalInputCoordinator;
+import com.example.philotes.input.StreamingOcrPipeline;
+import com.example.philotes.startup.AiStartup;
 import com.example.philotes.ui.AiStateOrbView;
 import com.example.philotes.utils.ContextEnricher;
+import com.example.philotes.utils.MetricsRegistry;
+import com.example.philotes.utils.OcrTileCache;
 import com.example.philotes.utils.PaddleOcrService;
+import com.example.philotes.utils.PipelineTracer;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -73,9 +76,8 @@ public class FloatingButtonService extends AccessibilityService {
     private boolean isFloatingViewAdded = false;
     private boolean isInlineBannerAdded = false;
 
-    // AI组件
-    private ActionParser actionParser;
-    private ActionExecutor actionExecutor;
+    // AI组件：后台启动图初始化，inputCoordinator 为延迟代理
+    private AiStartup aiStartup;
     private MultimodalInputCoordinator inputCoordinator;
 
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
@@ -87,6 +89,9 @@ public class FloatingButtonService extends AccessibilityService {
     private volatile boolean silentFallbackRunning;
     private volatile boolean manualCaptureInProgress;
     private Runnable manualOcrTimeoutRunnable;
+    private StreamingOcrPipeline activePipeline;
+    // 手动截屏的根 span：截屏→OCR→解析各阶段挂在其下，结束时输出一张瀑布图
+    private volatile PipelineTracer.Span captureTrace;
 
     private final List<ActionPlan> pendingActionPlans = new ArrayList<>();
     private int currentPlanIndex = 0;
@@ -143,9 +148,8 @@ public class FloatingButtonService extends AccessibilityService {
         Log.d(TAG, "onServiceConnected");
 
         windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
-        ruleEngine = RuleEngine.getInstance();
 
-        // 初始化AI组件
+        // 初始化AI组件（后台并行，不阻塞悬浮球出现）
         initAiComponents();
 
         createNotificationChannel();
@@ -163,38 +167,13 @@ public class FloatingButtonService extends AccessibilityService {
     }
 
     private void initAiComponents() {
-        try {
-            // 加载用户设置
-            com.example.philotes.utils.AiSettingsManager settingsManager = new com.example.philotes.utils.AiSettingsManager(
-                    this);
-            settingsManager.applyToLlmConfig();
-            applyRuleEngineSettings(settingsManager);
-
-            // 初始化ActionExecutor
-            actionExecutor = new ActionExecutor(this);
-
-            actionParser = new ActionParser(new RoutedLlmService(this));
-            Log.i(TAG, "AI initialized with routed policy: " + settingsManager.getRoutingPolicy());
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to initialize AI components", e);
-        } finally {
-            inputCoordinator = new MultimodalInputCoordinator(actionParser, actionExecutor);
-        }
-    }
-
-    private void applyRuleEngineSettings(com.example.philotes.utils.AiSettingsManager settingsManager) {
-        if (ruleEngine == null) {
-            return;
-        }
-        // 先加载默认关键词，再追加用户自定义词（合并模式，防止用户配置覆盖默认规则）
-        ruleEngine.resetDefaultRules();
-        List<String> customKeywords = new ArrayList<>();
-        for (String kw : settingsManager.getCustomTriggerKeywords()) {
-            if (kw != null && !kw.trim().isEmpty()) {
-                customKeywords.add(kw.trim().toLowerCase());
-            }
+        if (aiStartup != null) {
+            aiStartup.close();
         }
-        ruleEngine.addCustomKeywords(customKeywords);
+        aiStartup = new AiStartup(this, mainHandler::post);
+        inputCoordinator = MultimodalInputCoordinator.deferred(aiStartup.parser(), aiStartup.executor());
+        aiStartup.rules().whenDone(mainHandler::post, engine -> ruleEngine = engine);
+        aiStartup.start();
     }
 
     private void initFloatingView() {
@@ -263,6 +242,9 @@ public class FloatingButtonService extends AccessibilityService {
         try {
             windowManager.addView(floatingView, params);
             isFloatingViewAdded = true;
+            if (aiStartup != null) {
+                floatingView.post(aiStartup::markFirstFrame);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Failed to add floating view", e);
         }
@@ -436,6 +418,7 @@ public class FloatingButtonService extends AccessibilityService {
 
         String matched = ruleEngine == null ? null : ruleEngine.findFirstMatchedKeyword(mergedText);
         if (matched == null) {
+            MetricsRegistry.get().increment(MetricsRegistry.ANALYSIS_SUPPRESSED);
             if (pendingActionPlans.isEmpty()) {
                 setOrbState(AiStateOrbView.State.IDLE);
             }
@@ -448,6 +431,7 @@ public class FloatingButtonService extends AccessibilityService {
         lastRuleHitFingerprint = fingerprint;
         lastMatchedKeyword = matched;
 
+        MetricsRegistry.get().increment(MetricsRegistry.ANALYSIS_TRIGGERED);
         runDeepIntentAnalysis(mergedText, fingerprint);
     }
 
@@ -527,6 +511,7 @@ public class FloatingButtonService extends AccessibilityService {
             PrivacyFirewall.check(currentFrontPackage, mergedText);
         if (privacyLevel == PrivacyFirewall.PrivacyLevel.SENSITIVE) {
             Log.i(TAG, "PrivacyFirewall: SENSITIVE content detected, cloud requests blocked");
+            MetricsRegistry.get().increment(MetricsRegistry.PRIVACY_FORCED_LOCAL);
             showInlineBanner("🔒 隐私保护：本次推理已强制使用本地模型");
             // 仅在本地模型可用时继续，否则跳过
         }
@@ -651,49 +636,50 @@ public class FloatingButtonService extends AccessibilityService {
     }
 
     private void runSilentOcrAnalysis(Bitmap bitmap) {
-        PaddleOcrService.recognizeTextAsync(FloatingButtonService.this, bitmap, new PaddleOcrService.OcrCallback() {
-            @Override
-            public void onSuccess(OcrResult result) {
-                bitmap.recycle();
-                if (result == null || result.getTextBlocks().isEmpty()) {
-                    onSilentFallbackCompletedWithoutAction();
-                    return;
-                }
-
-                new Thread(() -> {
-                    try {
-                        String ctxDesc = ContextEnricher.buildContextDescriptor(
-                                FloatingButtonService.this, currentFrontPackage);
-                        List<ActionPlan> plans = inputCoordinator == null
-                                ? Collections.emptyList()
-                                : inputCoordinator.parseOcrMultiple(result, lastMatchedKeyword, ctxDesc);
-                        if (plans.isEmpty()) {
+        OcrTileCache.recognizeTextAsync(FloatingButtonService.this, bitmap, currentFrontPackage,
+                new PaddleOcrService.OcrCallback() {
+                    @Override
+                    public void onSuccess(OcrResult result) {
+                        bitmap.recycle();
+                        if (result == null || result.isEmpty()) {
                             onSilentFallbackCompletedWithoutAction();
                             return;
                         }
 
-                        mainHandler.post(() -> {
-                            pendingActionPlans.clear();
-                            pendingActionPlans.addAll(plans);
-                            setOrbState(AiStateOrbView.State.READY);
-                            String msg = plans.size() > 1
-                                    ? "已发现 " + plans.size() + " 个可执行动作，点击悬浮球查看"
-                                    : "已发现可执行动作，点击悬浮球查看";
-                            showInlineBanner(msg);
-                            silentFallbackRunning = false;
-                        });
-                    } catch (Exception e) {
-                        onSilentFallbackFailed("silent parseOcr failed: " + e.getClass().getSimpleName());
+                        new Thread(() -> {
+                            try {
+                                String ctxDesc = ContextEnricher.buildContextDescriptor(
+                                        FloatingButtonService.this, currentFrontPackage);
+                                List<ActionPlan> plans = inputCoordinator == null
+                                        ? Collections.emptyList()
+                                        : inputCoordinator.parseOcrMultiple(result, lastMatchedKeyword, ctxDesc);
+                                if (plans.isEmpty()) {
+                                    onSilentFallbackCompletedWithoutAction();
+                                    return;
+                                }
+
+                                mainHandler.post(() -> {
+                                    pendingActionPlans.clear();
+                                    pendingActionPlans.addAll(plans);
+                                    setOrbState(AiStateOrbView.State.READY);
+                                    String msg = plans.size() > 1
+                                            ? "已发现 " + plans.size() + " 个可执行动作，点击悬浮球查看"
+                                            : "已发现可执行动作，点击悬浮球查看";
+                                    showInlineBanner(msg);
+                                    silentFallbackRunning = false;
+                                });
+                            } catch (Exception e) {
+                                onSilentFallbackFailed("silent parseOcr failed: " + e.getClass().getSimpleName());
+                            }
+                        }).start();
                     }
-                }).start();
-            }
 
-            @Override
-            public void onError(Exception e) {
-                bitmap.recycle();
-                onSilentFallbackFailed("silent OCR failed: " + (e == null ? "unknown" : e.getClass().getSimpleName()));
-            }
-        });
+                    @Override
+                    public void onError(Exception e) {
+                        bitmap.recycle();
+                        onSilentFallbackFailed("silent OCR failed: " + (e == null ? "unknown" : e.getClass().getSimpleName()));
+                    }
+                });
     }
 
     private void onSilentFallbackCompletedWithoutAction() {
@@ -802,12 +788,17 @@ public class FloatingButtonService extends AccessibilityService {
     }
 
     private void performCapture() {
+        finishCaptureTrace("superseded");
+        captureTrace = PipelineTracer.get().beginTrace("capture");
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            PipelineTracer.Span screenshotSpan = captureStage("screenshot");
             try {
                 takeScreenshot(Display.DEFAULT_DISPLAY, getMainExecutor(), new TakeScreenshotCallback() {
                     @Override
                     public void onSuccess(@NonNull ScreenshotResult result) {
+                        screenshotSpan.end();
                         Bitmap softwareBitmap = null;
+                        PipelineTracer.Span copySpan = captureStage("bitmap_copy");
                         try {
                             // 获取 HardwareBuffer 并立即转换为软件 Bitmap
                             android.hardware.HardwareBuffer hardwareBuffer = result.getHardwareBuffer();
@@ -854,6 +845,7 @@ public class FloatingButtonService extends AccessibilityService {
 
                             Log.d(TAG, "Successfully converted hardware bitmap to software bitmap: "
                                     + softwareBitmap.getWidth() + "x" + softwareBitmap.getHeight());
+                            copySpan.arg("size", softwareBitmap.getWidth() + "x" + softwareBitmap.getHeight()).end();
 
                             // 处理软件 Bitmap
                             processBitmap(softwareBitmap);
@@ -864,19 +856,24 @@ public class FloatingButtonService extends AccessibilityService {
                                 softwareBitmap.recycle();
                             }
                             showErrorAndRecover("截屏处理失败: " + e.getMessage());
+                        } finally {
+                            copySpan.end();
                         }
                     }
 
                     @Override
                     public void onFailure(int errorCode) {
+                        screenshotSpan.arg("error", errorCode).end();
                         Log.e(TAG, "Screenshot failed with code: " + errorCode);
                         showErrorAndRecover("截屏失败（错误码: " + errorCode + "）\n请确保已授予截屏权限");
                     }
                 });
             } catch (SecurityException e) {
+                screenshotSpan.arg("error", "security").end();
                 Log.e(TAG, "takeScreenshot security exception - missing permission", e);
                 showErrorAndRecover("截屏权限未授予\n请重新开启辅助功能服务");
             } catch (Exception e) {
+                screenshotSpan.arg("error", e.getClass().getSimpleName()).end();
                 Log.e(TAG, "takeScreenshot threw exception", e);
                 showErrorAndRecover("截屏失败：" + e.getMessage());
             }
@@ -887,6 +884,7 @@ public class FloatingButtonService extends AccessibilityService {
 
     private void showErrorAndRecover(String errorMessage) {
         mainHandler.post(() -> {
+            finishCaptureTrace("error");
             manualCaptureInProgress = false;
             cancelManualOcrTimeout();
             Toast.makeText(FloatingButtonService.this, errorMessage, Toast.LENGTH_LONG).show();
@@ -895,6 +893,7 @@ public class FloatingButtonService extends AccessibilityService {
     }
 
     private void processBitmap(Bitmap bitmap) {
+        PipelineTracer.Span writeSpan = captureStage("png_write");
         try {
             File cachePath = new File(getCacheDir(), "images");
             if (!cachePath.exists() && !cachePath.mkdirs()) {
@@ -907,17 +906,20 @@ public class FloatingButtonService extends AccessibilityService {
                 bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
             }
             Log.d(TAG, "Screenshot saved: " + file.getAbsolutePath());
+            writeSpan.arg("bytes", file.length()).end();
             processAndShowCard(file);
         } catch (IOException e) {
             Log.e(TAG, "Save bitmap failed", e);
             recoverFloatingView();
         } finally {
+            writeSpan.end();
             bitmap.recycle();
         }
     }
 
     private void recoverFloatingView() {
         mainHandler.post(() -> {
+            finishCaptureTrace("recovered");
             manualCaptureInProgress = false;
             cancelManualOcrTimeout();
             if (floatingView != null) {
@@ -934,6 +936,7 @@ public class FloatingButtonService extends AccessibilityService {
 
             new Thread(() -> {
                 Bitmap mutableBitmap = null;
+                PipelineTracer.Span decodeSpan = captureStage("bitmap_decode");
                 try {
                     // 1. 加载图片 - 使用 BitmapFactory.Options 确保格式正确
                     BitmapFactory.Options options = new BitmapFactory.Options();
@@ -942,7 +945,10 @@ public class FloatingButtonService extends AccessibilityService {
 
                     final Bitmap bitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
                     if (bitmap == null) {
-                        mainHandler.post(() -> showCardMode("图片加载失败\n文件路径：" + imageFile.getAbsolutePath()));
+                        mainHandler.post(() -> {
+                            finishCaptureTrace("decode_failed");
+                            showCardMode("图片加载失败\n文件路径：" + imageFile.getAbsolutePath());
+                        });
                         return;
                     }
 
@@ -963,70 +969,72 @@ public class FloatingButtonService extends AccessibilityService {
                     }
 
                     if (mutableBitmap == null) {
-                        mainHandler.post(() -> showCardMode("图片处理失败\n无法转换图像格式"));
+                        mainHandler.post(() -> {
+                            finishCaptureTrace("decode_failed");
+                            showCardMode("图片处理失败\n无法转换图像格式");
+                        });
                         return;
                     }
+                    decodeSpan.end();
 
                     Log.d(TAG, "Created mutable bitmap for OCR: " + mutableBitmap.getWidth()
                             + "x" + mutableBitmap.getHeight());
 
                     final Bitmap finalBitmap = mutableBitmap;
 
-                    // 3. 在主线程执行 PaddleOCR-Lite（内部会管理线程）
+                    // 3. 在主线程执行 OCR（按设置走 Paddle 优先 / 双引擎竞速 / 融合）
                     mainHandler.post(() -> {
-                        PaddleOcrService.recognizeTextAsync(FloatingButtonService.this, finalBitmap,
-                                new PaddleOcrService.OcrCallback() {
-                                    @Override
-                                    public void onSuccess(OcrResult result) {
-                                        // OCR完成后释放bitmap
-                                        finalBitmap.recycle();
-                                        cancelManualOcrTimeout();
-                                        Log.d(TAG, "OCR completed successfully");
-
-                                        if (result.getTextBlocks().isEmpty()) {
-                                            showCardMode("未识别到文字\n\n可能原因：\n" +
-                                                    "1. 截图中没有清晰的文本\n" +
-                                                    "2. 文字太小或模糊\n" +
-                                                    "3. 文字颜色与背景对比度低");
-                                            return;
+                        if (isStreamingOcrEnabled()) {
+                            // 流式：边识别边解析，首个命中段落即出卡片
+                            startStreamingAnalysis(finalBitmap);
+                            return;
+                        }
+                        PipelineTracer.Span ocrSpan = captureStage("ocr");
+                        try (PipelineTracer.Scope scope = ocrSpan.activate()) {
+                            OcrTileCache.recognizeTextAsync(FloatingButtonService.this, finalBitmap,
+                                    currentFrontPackage, new PaddleOcrService.OcrCallback() {
+                                        @Override
+                                        public void onSuccess(OcrResult result) {
+                                            ocrSpan.arg("blocks", result.getBlockCount()).end();
+                                            // OCR完成后释放bitmap
+                                            finalBitmap.recycle();
+                                            cancelManualOcrTimeout();
+                                            Log.d(TAG, "OCR completed successfully");
+
+                                            // 回调可能来自 OCR 工作线程，trace 与卡片只在主线程处理
+                                            mainHandler.post(() -> {
+                                                if (result.isEmpty()) {
+                                                    finishCaptureTrace("no_text");
+                                                    showNoTextCard();
+                                                    return;
+                                                }
+
+                                                // OCR成功，继续AI解析
+                                                String ocrText = result.toCompactText(OcrResult.DEFAULT_COMPACT_BUDGET, true);
+                                                Log.d(TAG, "OCR text length: " + ocrText.length());
+                                                showCardMode("✅ 识别成功\n\n正在AI分析...");
+
+                                                // 4. 自动进行AI解析
+                                                performAiAnalysis(ocrText, result);
+                                            });
                                         }
 
-                                        // OCR成功，继续AI解析
-                                        String ocrText = result.toStructuredText();
-                                        Log.d(TAG, "OCR text length: " + ocrText.length());
-                                        showCardMode("✅ 识别成功\n\n正在AI分析...");
-
-                                        // 4. 自动进行AI解析
-                                        performAiAnalysis(ocrText, result);
-                                    }
-
-                                    @Override
-                                    public void onError(Exception e) {
-                                        // 发生错误时也要释放bitmap
-                                        finalBitmap.recycle();
-                                        manualCaptureInProgress = false;
-                                        cancelManualOcrTimeout();
-
-                                        Log.e(TAG, "OCR error", e);
-                                        String errorMsg = "OCR识别失败\n\n";
-
-                                        if (e.getMessage() != null) {
-                                            if (e.getMessage().contains("empty result")) {
-                                                errorMsg += "图像处理失败 - 可能是图像格式问题\n\n";
-                                            } else {
-                                                errorMsg += "错误：" + e.getMessage() + "\n\n";
-                                            }
+                                        @Override
+                                        public void onError(Exception e) {
+                                            ocrSpan.arg("error", e.getClass().getSimpleName()).end();
+                                            // 发生错误时也要释放bitmap
+                                            finalBitmap.recycle();
+                                            manualCaptureInProgress = false;
+                                            cancelManualOcrTimeout();
+
+                                            Log.e(TAG, "OCR error", e);
+                                            mainHandler.post(() -> {
+                                                finishCaptureTrace("ocr_error");
+                                                showOcrErrorCard(e);
+                                            });
                                         }
-
-                                        errorMsg += "可能的解决方法：\n" +
-                                                "1. 确保截图中有清晰的文字\n" +
-                                                "2. 首次使用需要联网下载OCR模型\n" +
-                                                "3. 重启应用后重试\n" +
-                                                "4. 检查存储权限";
-
-                                        showCardMode(errorMsg);
-                                    }
-                                });
+                                    });
+                        }
                     });
 
                 } catch (Exception e) {
@@ -1036,12 +1044,167 @@ public class FloatingButtonService extends AccessibilityService {
                     if (mutableBitmap != null && !mutableBitmap.isRecycled()) {
                         mutableBitmap.recycle();
                     }
-                    mainHandler.post(() -> showCardMode("分析失败: " + e.getMessage()));
+                    mainHandler.post(() -> {
+                        finishCaptureTrace("error");
+                        showCardMode("分析失败: " + e.getMessage());
+                    });
+                } finally {
+                    decodeSpan.end();
                 }
             }).start();
         });
     }
 
+    private boolean isStreamingOcrEnabled() {
+        return inputCoordinator != null && inputCoordinator.canParse()
+                && new com.example.philotes.utils.AiSettingsManager(this).isStreamingOcrEnabled();
+    }
+
+    /**
+     * 流式解析：OCR 条带结果一到就聚段落、命中规则即送 LLM，卡片逐个追加。
+     */
+    private void startStreamingAnalysis(Bitmap bitmap) {
+        String ctxDesc = ContextEnricher.buildContextDescriptor(this, currentFrontPackage);
+        StreamingOcrPipeline pipeline = new StreamingOcrPipeline(inputCoordinator,
+                ruleEngine != null ? ruleEngine : RuleEngine.getInstance(), ctxDesc);
+        activePipeline = pipeline;
+        PipelineTracer.Span streamSpan = captureStage("ocr_stream");
+        pipeline.start(this, bitmap, currentFrontPackage, new StreamingOcrPipeline.Listener() {
+            @Override
+            public void onOcrProgress(int finishedBands, int totalBands) {
+                mainHandler.post(() -> {
+                    if (activePipeline == pipeline && pendingActionPlans.isEmpty()) {
+                        showCardMode("正在识别屏幕文字... (" + finishedBands + "/" + totalBands + ")\n\n已识别部分正在AI分析");
+                    }
+                });
+            }
+
+            @Override
+            public void onPlan(ActionPlan plan, int index) {
+                mainHandler.post(() -> {
+                    if (activePipeline != pipeline) {
+                        return;
+                    }
+                    if (index == 0) {
+                        streamSpan.arg("firstPlanMs", streamSpan.durationNs() / 1_000_000);
+                        cancelManualOcrTimeout();
+                        pendingActionPlans.clear();
+                        currentPlanIndex = 0;
+                    }
+                    pendingActionPlans.add(plan);
+                    showPlanAt(currentPlanIndex);
+                });
+            }
+
+            @Override
+            public void onComplete(OcrResult ocrResult, List<ActionPlan> plans) {
+                mainHandler.post(() -> {
+                    bitmap.recycle();
+                    if (activePipeline != pipeline) {
+                        return;
+                    }
+                    activePipeline = null;
+                    cancelManualOcrTimeout();
+                    Log.d(TAG, "Streaming analysis done: " + plans.size() + " plans");
+                    streamSpan.arg("plans", plans.size()).end();
+                    if (!plans.isEmpty()) {
+                        manualCaptureInProgress = false;
+                        finishCaptureTrace("plans");
+                        return;
+                    }
+                    if (ocrResult.isEmpty()) {
+                        manualCaptureInProgress = false;
+                        finishCaptureTrace("no_text");
+                        showNoTextCard();
+                        return;
+                    }
+                    finishCaptureTrace("no_action");
+                    showNoActionCard(ocrResult.toCompactText(OcrResult.DEFAULT_COMPACT_BUDGET, true), ocrResult);
+                });
+            }
+
+            @Override
+            public void onError(Exception e) {
+                mainHandler.post(() -> {
+                    bitmap.recycle();
+                    if (activePipeline != pipeline) {
+                        return;
+                    }
+                    activePipeline = null;
+                    manualCaptureInProgress = false;
+                    cancelManualOcrTimeout();
+                    streamSpan.arg("error", e.getClass().getSimpleName()).end();
+                    finishCaptureTrace("ocr_error");
+                    Log.e(TAG, "Streaming OCR error", e);
+                    showOcrErrorCard(e);
+                });
+            }
+
+            @Override
+            public void onCancelled() {
+                // 超时或服务销毁时由 cancelActivePipeline 触发，界面已由调用方处理
+                mainHandler.post(() -> {
+                    bitmap.recycle();
+                    streamSpan.arg("cancelled", true).end();
+                });
+            }
+        });
+    }
+
+    private void cancelActivePipeline() {
+        if (activePipeline != null) {
+            activePipeline.cancel();
+            activePipeline = null;
+        }
+    }
+
+    private void showNoTextCard() {
+        showCardMode("未识别到文字\n\n可能原因：\n" +
+                "1. 截图中没有清晰的文本\n" +
+                "2. 文字太小或模糊\n" +
+                "3. 文字颜色与背景对比度低");
+    }
+
+    private void showOcrErrorCard(Exception e) {
+        String errorMsg = "OCR识别失败\n\n";
+
+        if (e.getMessage() != null) {
+            if (e.getMessage().contains("empty result")) {
+                errorMsg += "图像处理失败 - 可能是图像格式问题\n\n";
+            } else {
+                errorMsg += "错误：" + e.getMessage() + "\n\n";
+            }
+        }
+
+        errorMsg += "可能的解决方法：\n" +
+                "1. 确保截图中有清晰的文字\n" +
+                "2. 首次使用需要联网下载OCR模型\n" +
+                "3. 重启应用后重试\n" +
+                "4. 检查存储权限";
+
+        showCardMode(errorMsg);
+    }
+
+    private void showNoActionCard(String ocrText, OcrResult ocrResult) {
+        String plainText = ocrResult.getPlainText();
+        String displayText = plainText.length() > 300 ? plainText.substring(0, 300) + "..." : plainText;
+
+        showCardMode("✅ 识别成功\n\n" + displayText +
+                "\n\n⚠️ AI无法识别动作\n" +
+                "可能原因：截图内容不包含明确的任务/日程/导航信息\n" +
+                "点击「执行」跳转主界面查看详情");
+
+        setupCardActionButton(() -> {
+            Intent intent = new Intent(FloatingButtonService.this, MainActivity.class);
+            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            intent.setAction(Intent.ACTION_SEND);
+            intent.putExtra(Intent.EXTRA_TEXT, ocrText);
+            startActivity(intent);
+            mainHandler.postDelayed(() -> showIconMode(), 500);
+        });
+        manualCaptureInProgress = false;
+    }
+
     private void performAiAnalysis(String ocrText, OcrResult ocrResult) {
         if (inputCoordinator == null || !inputCoordinator.canParse()) {
             // AI未初始化，显示文本并提供手动选项
@@ -1059,12 +1222,14 @@ public class FloatingButtonService extends AccessibilityService {
                 new Handler(Looper.getMainLooper()).postDelayed(() -> showIconMode(), 500);
             });
             manualCaptureInProgress = false;
+            finishCaptureTrace("no_llm");
             return;
         }
 
         // 在后台线程执行AI解析
+        PipelineTracer.Span trace = captureTrace;
         new Thread(() -> {
-            try {
+            try (PipelineTracer.Scope scope = PipelineTracer.activate(trace)) {
                 Log.d(TAG, "Starting AI analysis");
 
                 String ctxDesc = ContextEnricher.buildContextDescriptor(this, currentFrontPackage);
@@ -1076,29 +1241,15 @@ public class FloatingButtonService extends AccessibilityService {
 
                 if (plans.isEmpty()) {
                     mainHandler.post(() -> {
-                        String plainText = ocrResult.getPlainText();
-                        String displayText = plainText.length() > 300 ? plainText.substring(0, 300) + "..." : plainText;
-
-                        showCardMode("✅ 识别成功\n\n" + displayText +
-                                "\n\n⚠️ AI无法识别动作\n" +
-                                "可能原因：截图内容不包含明确的任务/日程/导航信息\n" +
-                                "点击「执行」跳转主界面查看详情");
-
-                        setupCardActionButton(() -> {
-                            Intent intent = new Intent(FloatingButtonService.this, MainActivity.class);
-                            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                            intent.setAction(Intent.ACTION_SEND);
-                            intent.putExtra(Intent.EXTRA_TEXT, ocrText);
-                            startActivity(intent);
-                            mainHandler.postDelayed(() -> showIconMode(), 500);
-                        });
-                        manualCaptureInProgress = false;
+                        finishCaptureTrace("no_action");
+                        showNoActionCard(ocrText, ocrResult);
                     });
                     return;
                 }
 
                 mainHandler.post(() -> {
                     manualCaptureInProgress = false;
+                    finishCaptureTrace("plans");
                     displayActionPlans(plans);
                 });
 
@@ -1106,6 +1257,7 @@ public class FloatingButtonService extends AccessibilityService {
                 Log.e(TAG, "AI analysis error", e);
                 mainHandler.post(() -> {
                     manualCaptureInProgress = false;
+                    finishCaptureTrace("error");
                     showCardMode("AI分析失败\n" + e.getMessage());
                 });
             }
@@ -1121,6 +1273,8 @@ public class FloatingButtonService extends AccessibilityService {
             CharSequence current = tvCardContent.getText();
             if (current != null && current.toString().contains("正在识别屏幕文字")) {
                 manualCaptureInProgress = false;
+                cancelActivePipeline();
+                finishCaptureTrace("timeout");
                 showCardMode("OCR识别超时\n\n可能原因：\n1. 截图内容过大\n2. 设备负载过高\n3. 模型推理拥塞\n\n点击「执行」返回悬浮球后重试");
                 setupCardActionButton(this::showIconMode);
             }
@@ -1128,6 +1282,36 @@ public class FloatingButtonService extends AccessibilityService {
         mainHandler.postDelayed(manualOcrTimeoutRunnable, MANUAL_OCR_TIMEOUT_MS);
     }
 
+    /** 当前截屏 trace 下的阶段 span；不在截屏流程中时自成一个 trace。 */
+    private PipelineTracer.Span captureStage(String name) {
+        PipelineTracer.Span trace = captureTrace;
+        return trace != null ? trace.child(name) : PipelineTracer.get().beginAsync(name);
+    }
+
+    /**
+     * 结束本次截屏的根 span，打印瀑布图并在后台把 Chrome trace JSON 写到 files/traces。
+     * 只在主线程调用；没有进行中的截屏时什么也不做。
+     */
+    private void finishCaptureTrace(String outcome) {
+        PipelineTracer.Span trace = captureTrace;
+        if (trace == null) {
+            return;
+        }
+        captureTrace = null;
+        trace.arg("outcome", outcome).end();
+        PipelineTracer tracer = PipelineTracer.get();
+        long traceId = trace.getTraceId();
+        Log.d(TAG, "Capture trace " + traceId + " (" + outcome + "):\n" + tracer.waterfall(traceId));
+        File dir = new File(getFilesDir(), "traces");
+        new Thread(() -> {
+            try {
+                tracer.dump(traceId, dir);
+            } catch (IOException e) {
+                Log.w(TAG, "Dump capture trace failed", e);
+            }
+        }, "trace-dump").start();
+    }
+
     private void cancelManualOcrTimeout() {
         if (manualOcrTimeoutRunnable != null) {
             mainHandler.removeCallbacks(manualOcrTimeoutRunnable);
@@ -1282,6 +1466,10 @@ public class FloatingButtonService extends AccessibilityService {
         super.onDestroy();
         manualCaptureInProgress = false;
         cancelManualOcrTimeout();
+        cancelActivePipeline();
+        if (aiStartup != null) {
+            aiStartup.close();
+        }
         mainHandler.removeCallbacks(debounceAnalyzeRunnable);
         mainHandler.removeCallbacks(hideInlineBannerRunnable);
         hideInlineBanner();
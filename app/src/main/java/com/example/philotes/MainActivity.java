@@ -30,14 +30,19 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.philotes.data.model.ActionPlan;
-import com.example.philotes.data.api.LiteRtQwenService;
+import com.example.philotes.data.model.ActionPlanCodec;
 import com.example.philotes.data.api.LiteRtLocalLlmService;
+import com.example.philotes.data.api.LiteRtRuntimeRegistry;
 import com.example.philotes.data.api.RoutedLlmService;
 import com.example.philotes.domain.ActionParser;
 import com.example.philotes.domain.ActionExecutor;
 import com.example.philotes.input.MultimodalInputCoordinator;
 import com.example.philotes.render.CardRenderEngine;
 import com.example.philotes.render.CardRenderEvent;
+import com.example.philotes.startup.AiStartup;
+import com.example.philotes.startup.StartupGraph;
+import com.example.philotes.utils.AiSettingsManager;
+import com.example.philotes.utils.ModelInstaller;
 import com.example.philotes.utils.ModelUtils;
 import com.example.philotes.utils.PaddleOcrService;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
@@ -81,9 +86,11 @@ public class MainActivity extends AppCompatActivity {
 
     // 核心组件
     private ActionParser actionParser;
+    private RoutedLlmService llmRouter;
     private ActionExecutor actionExecutor;
     private MultimodalInputCoordinator inputCoordinator;
     private CardRenderEngine cardRenderEngine;
+    private StartupGraph startupGraph;
 
     // 权限请求启动器
     private ActivityResultLauncher<String[]> requestPermissionLauncher;
@@ -94,11 +101,24 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // ========== 加载用户设置 ==========
-        com.example.philotes.utils.AiSettingsManager settingsManager = new com.example.philotes.utils.AiSettingsManager(
-                this);
-        settingsManager.applyToLlmConfig();
-        // ==================================
+        // 设置读取与模型探测走后台启动图，主线程先把界面画出来
+        startupGraph = new StartupGraph(StartupGraph.defaultBackground(), this::runOnUiThread);
+        StartupGraph.Component<AiSettingsManager> settings = startupGraph.add("settings", () -> {
+            AiSettingsManager settingsManager = new AiSettingsManager(this);
+            settingsManager.applyToLlmConfig();
+            return settingsManager;
+        });
+        StartupGraph.Component<File> localModel = startupGraph.add("model_probe", () -> {
+            File file = ModelUtils.getModelFile(this);
+            return file.exists() ? file : null;
+        });
+        StartupGraph.Component<Boolean> bundledModel = startupGraph.add("bundled_probe",
+                () -> ModelInstaller.hasBundledModel(this));
+        startupGraph.addOnMain("model_init", () -> {
+            onModelProbed(localModel.peek(), Boolean.TRUE.equals(bundledModel.peek()));
+            return null;
+        }, settings, localModel, bundledModel);
+        startupGraph.start();
 
         // 初始化执行器
         actionExecutor = new ActionExecutor(this);
@@ -119,14 +139,7 @@ public class MainActivity extends AppCompatActivity {
         handleIntent(getIntent());
         handleNavigationIntent(getIntent());
 
-        // 检查并初始化模型
-        File modelFile = ModelUtils.getModelFile(this);
-        if (modelFile.exists()) {
-            initModel(modelFile);
-        } else {
-            showDownloadUI();
-            Toast.makeText(this, "模型未下载，请先下载模型", Toast.LENGTH_LONG).show();
-        }
+        getWindow().getDecorView().post(() -> AiStartup.markFirstFrame(startupGraph));
 
         // 显示提示
         showSimulatedRecognitionResult();
@@ -136,6 +149,11 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void handleOnBackPressed() {
                 if (fragmentContainer != null && fragmentContainer.getVisibility() == View.VISIBLE) {
+                    if (getSupportFragmentManager().findFragmentById(R.id.fragmentContainer)
+                            instanceof PerformanceFragment) {
+                        showSettingsContent();
+                        return;
+                    }
                     navigateToHomeTab();
                     return;
                 }
@@ -483,16 +501,17 @@ public class MainActivity extends AppCompatActivity {
                                     mutableBitmap.recycle();
 
                                     runOnUiThread(() -> {
-                                        if (result.getTextBlocks().isEmpty()) {
+                                        if (result.isEmpty()) {
                                             updateStatus("❌ 未识别到文字\n请确保图片中包含清晰的文本");
                                             Toast.makeText(MainActivity.this,
                                                     "未识别到文字", Toast.LENGTH_LONG).show();
                                         } else {
                                             // 将结构化文本填充到输入框
-                                            String structuredText = result.toStructuredText();
+                                            String structuredText = result.toCompactText(
+                                                    com.example.philotes.data.model.OcrResult.DEFAULT_COMPACT_BUDGET, true);
                                             etInput.setText(structuredText);
                                             updateStatus("✅ OCR识别成功\n识别到 " +
-                                                    result.getTextBlocks().size() + " 个文本块\n\n" +
+                                                    result.getBlockCount() + " 个文本块\n\n" +
                                                     "可以编辑后点击「AI解析」按钮");
 
                                             Toast.makeText(MainActivity.this,
@@ -534,6 +553,23 @@ public class MainActivity extends AppCompatActivity {
 
     // --- 模型下载和初始化 ---
 
+    /**
+     * 启动图探测完模型后在主线程回调：已有模型直接初始化，否则安装内置模型或提示下载。
+     */
+    private void onModelProbed(File modelFile, boolean hasBundledModel) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        if (modelFile != null) {
+            initModel(modelFile);
+        } else if (hasBundledModel) {
+            installBundledModel();
+        } else {
+            showDownloadUI();
+            Toast.makeText(this, "模型未下载，请先下载模型", Toast.LENGTH_LONG).show();
+        }
+    }
+
     private void showDownloadUI() {
         layoutDownload.setVisibility(View.VISIBLE);
 
@@ -555,6 +591,27 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * 内置模型在后台安装到内部存储，完成后再初始化。
+     */
+    private void installBundledModel() {
+        statusText.setText("正在安装内置模型...");
+        ModelInstaller.installBundledAsync(this, new ModelInstaller.Callback() {
+            @Override
+            public void onInstalled(File file) {
+                runOnUiThread(() -> initModel(file));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                runOnUiThread(() -> {
+                    showDownloadUI();
+                    Toast.makeText(MainActivity.this, "内置模型安装失败，请下载模型", Toast.LENGTH_LONG).show();
+                });
+            }
+        });
+    }
+
     private void startDownload(File targetFile) {
         btnDownload.setEnabled(false);
         tvDownloadStatus.setText("正在下载模型...");
@@ -645,7 +702,7 @@ public class MainActivity extends AppCompatActivity {
                 }
             } else {
                 // 端侧初始化成功
-                actionParser = new ActionParser(new RoutedLlmService(this));
+                useRoutedParser();
                 refreshInputCoordinator();
                 btnParse.setEnabled(true);
                 btnParse.setText("AI 解析（端侧）");
@@ -671,33 +728,43 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * 切换到路由解析器，并释放旧路由持有的本地模型引用。
+     */
+    private void useRoutedParser() {
+        if (llmRouter != null) {
+            llmRouter.close();
+        }
+        llmRouter = new RoutedLlmService(this);
+        llmRouter.prewarmLocalAsync();
+        actionParser = new ActionParser(llmRouter);
+        AiStartup.markAiReady(startupGraph);
+    }
+
     private void runLiteRtSmokeTest(File modelFile) {
-        new Thread(() -> {
-            LiteRtQwenService liteRtService = new LiteRtQwenService(modelFile);
-            try {
-                String result = liteRtService.runSmokeTest();
-                runOnUiThread(() -> {
-                        actionParser = new ActionParser(new RoutedLlmService(this));
-                    refreshInputCoordinator();
+        // 与路由共享同一个解释器和预热任务：预热在后台线程执行，完成后路由直接复用
+        LiteRtRuntimeRegistry.getInstance().attach(this);
+        LiteRtRuntimeRegistry.Lease lease = LiteRtRuntimeRegistry.getInstance().acquire(modelFile);
+        lease.runtime().warmupAsync().whenComplete((result, error) -> runOnUiThread(() -> {
+            if (error == null) {
+                useRoutedParser();
+                refreshInputCoordinator();
 
-                    statusText.setText("✅ LiteRT 本地推理链路已打通\n" + result +
-                            "\n\n本地动作解析已启用（无需配置 API）。");
-                    btnParse.setEnabled(true);
-                    btnParse.setText("AI 解析（本地LiteRT）");
-                    etInput.setEnabled(true);
-                    etInput.setHint("输入文本进行本地动作解析");
-                });
-            } catch (Exception e) {
-                runOnUiThread(() -> {
-                    statusText.setText("❌ LiteRT 推理测试失败\n" + e.getMessage() +
-                            "\n\n请确认下载的是可用的 Qwen LiteRT .tflite 文件（默认: Qwen3.5-0.8B-LiteRT）。\n" +
-                            "当前模型路径: " + modelFile.getAbsolutePath());
-                    btnParse.setEnabled(false);
-                });
-            } finally {
-                liteRtService.close();
+                statusText.setText("✅ LiteRT 本地推理链路已打通\n" + result +
+                        "\n\n本地动作解析已启用（无需配置 API）。");
+                btnParse.setEnabled(true);
+                btnParse.setText("AI 解析（本地LiteRT）");
+                etInput.setEnabled(true);
+                etInput.setHint("输入文本进行本地动作解析");
+            } else {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                statusText.setText("❌ LiteRT 推理测试失败\n" + cause.getMessage() +
+                        "\n\n请确认下载的是可用的 Qwen LiteRT .tflite 文件（默认: Qwen3.5-0.8B-LiteRT）。\n" +
+                        "当前模型路径: " + modelFile.getAbsolutePath());
+                btnParse.setEnabled(false);
             }
-        }).start();
+            lease.close();
+        }));
     }
 
     /**
@@ -709,7 +776,7 @@ public class MainActivity extends AppCompatActivity {
             String baseUrl = com.example.philotes.utils.LlmConfig.getOpenAiBaseUrl();
             String model = com.example.philotes.utils.LlmConfig.getOpenAiModel();
 
-                actionParser = new ActionParser(new RoutedLlmService(this));
+                useRoutedParser();
             refreshInputCoordinator();
 
             btnParse.setEnabled(true);
@@ -749,6 +816,17 @@ public class MainActivity extends AppCompatActivity {
                 .commit();
     }
 
+    /**
+     * 设置页内打开性能面板，返回键回到设置页。
+     */
+    public void showPerformanceContent() {
+        homeContent.setVisibility(View.GONE);
+        fragmentContainer.setVisibility(View.VISIBLE);
+        getSupportFragmentManager().beginTransaction()
+                .replace(R.id.fragmentContainer, new PerformanceFragment())
+                .commit();
+    }
+
     private void showActionDetailContent(ActionPlan plan) {
         if (plan == null) {
             Toast.makeText(this, "动作数据为空", Toast.LENGTH_SHORT).show();
@@ -757,7 +835,7 @@ public class MainActivity extends AppCompatActivity {
         homeContent.setVisibility(View.GONE);
         fragmentContainer.setVisibility(View.VISIBLE);
         getSupportFragmentManager().beginTransaction()
-                .replace(R.id.fragmentContainer, ActionDetailFragment.newInstance(new com.google.gson.Gson().toJson(plan)))
+                .replace(R.id.fragmentContainer, ActionDetailFragment.newInstance(ActionPlanCodec.toJson(plan)))
                 .commit();
         bottomNav.setSelectedItemId(R.id.nav_home);
     }
@@ -785,10 +863,10 @@ public class MainActivity extends AppCompatActivity {
         if (DEST_ACTION_DETAIL.equals(destination)) {
             String planJson = intent.getStringExtra(EXTRA_ACTION_PLAN_JSON);
             if (planJson != null && !planJson.isEmpty()) {
-                try {
-                    ActionPlan plan = new com.google.gson.Gson().fromJson(planJson, ActionPlan.class);
+                ActionPlan plan = ActionPlanCodec.readPlan(planJson);
+                if (plan != null) {
                     showActionDetailContent(plan);
-                } catch (Exception ignored) {
+                } else {
                     showHomeContent();
                 }
             } else {
@@ -815,5 +893,8 @@ public class MainActivity extends AppCompatActivity {
         if (cardRenderEngine != null) {
             cardRenderEngine.release();
         }
+        if (llmRouter != null) {
+            llmRouter.close();
+        }
     }
 }
@@ -0,0 +1,194 @@
+package com.example.philotes;
+
+import android.content.Intent;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import com.example.philotes.utils.LatencyHistogram;
+import com.example.philotes.utils.MetricsRegistry;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 性能面板：展示 {@link MetricsRegistry} 中的延迟分位数、缓存命中率与触发计数，
+ * 支持清零和导出（系统分享 JSON），方便外场测试直接反馈真机数据。
+ */
+public class PerformanceFragment extends Fragment {
+    private static final long REFRESH_INTERVAL_MS = 1000L;
+
+    private static final String[][] LATENCIES = {
+            { MetricsRegistry.OCR_LATENCY, "OCR 识别" },
+            { MetricsRegistry.OCR_REGION_LATENCY, "OCR 区域" },
+            { MetricsRegistry.LLM_LOCAL_LATENCY, "本地 LLM" },
+            { MetricsRegistry.LLM_CLOUD_LATENCY, "云端 LLM" },
+            { MetricsRegistry.LLM_FIRST_DELTA, "首个增量" },
+            { MetricsRegistry.STARTUP_FIRST_FRAME, "启动首帧" },
+            { MetricsRegistry.STARTUP_AI_READY, "启动到 AI 就绪" },
+    };
+
+    private TextView tvSince;
+    private LinearLayout layoutLatencyRows;
+    private LinearLayout layoutCounterRows;
+
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            render();
+            View view = getView();
+            if (view != null) {
+                view.postDelayed(this, REFRESH_INTERVAL_MS);
+            }
+        }
+    };
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+            @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_performance, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        tvSince = view.findViewById(R.id.tvMetricsSince);
+        layoutLatencyRows = view.findViewById(R.id.layoutLatencyRows);
+        layoutCounterRows = view.findViewById(R.id.layoutCounterRows);
+        Button btnReset = view.findViewById(R.id.btnResetMetrics);
+        Button btnExport = view.findViewById(R.id.btnExportMetrics);
+
+        btnReset.setOnClickListener(v -> {
+            MetricsRegistry.get().reset();
+            render();
+            Toast.makeText(requireContext(), "性能数据已清零", Toast.LENGTH_SHORT).show();
+        });
+        btnExport.setOnClickListener(v -> exportMetrics());
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        View view = getView();
+        if (view != null) {
+            view.removeCallbacks(refreshRunnable);
+            view.post(refreshRunnable);
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        View view = getView();
+        if (view != null) {
+            view.removeCallbacks(refreshRunnable);
+        }
+    }
+
+    private void render() {
+        if (layoutLatencyRows == null) {
+            return;
+        }
+        MetricsRegistry metrics = MetricsRegistry.get();
+        String since = new SimpleDateFormat("MM-dd HH:mm", Locale.getDefault()).format(new Date(metrics.getSince()));
+        tvSince.setText("自 " + since + " 起累计，反馈问题时请一并导出");
+
+        layoutLatencyRows.removeAllViews();
+        for (String[] latency : LATENCIES) {
+            LatencyHistogram histogram = metrics.histogram(latency[0]);
+            String detail = histogram.getCount() == 0
+                    ? "暂无数据"
+                    : String.format(Locale.US, "p50 %s · p90 %s · p99 %s · n=%d",
+                            formatMs(histogram.percentileMicros(50)),
+                            formatMs(histogram.percentileMicros(90)),
+                            formatMs(histogram.percentileMicros(99)),
+                            histogram.getCount());
+            addRow(layoutLatencyRows, latency[1], detail);
+        }
+
+        layoutCounterRows.removeAllViews();
+        long hits = metrics.count(MetricsRegistry.OCR_CACHE_HIT);
+        long misses = metrics.count(MetricsRegistry.OCR_CACHE_MISS);
+        addRow(layoutCounterRows, "OCR 帧差缓存命中",
+                formatRate(metrics.ratio(MetricsRegistry.OCR_CACHE_HIT, MetricsRegistry.OCR_CACHE_MISS))
+                        + "（" + hits + " / " + (hits + misses) + "）");
+
+        long promptTokens = metrics.count(MetricsRegistry.KV_PROMPT_TOKENS);
+        long reusedTokens = metrics.count(MetricsRegistry.KV_PREFIX_REUSED_TOKENS);
+        addRow(layoutCounterRows, "本地 KV 前缀复用",
+                formatRate(promptTokens == 0 ? Double.NaN : (double) reusedTokens / promptTokens)
+                        + "（" + reusedTokens + " / " + promptTokens + " tokens）");
+
+        long triggered = metrics.count(MetricsRegistry.ANALYSIS_TRIGGERED);
+        long suppressed = metrics.count(MetricsRegistry.ANALYSIS_SUPPRESSED);
+        addRow(layoutCounterRows, "主动分析（规则引擎）",
+                "触发 " + triggered + " · 拦截 " + suppressed + " · 触发率 "
+                        + formatRate(metrics.ratio(MetricsRegistry.ANALYSIS_TRIGGERED,
+                                MetricsRegistry.ANALYSIS_SUPPRESSED)));
+
+        addRow(layoutCounterRows, "隐私防火墙强制本地",
+                metrics.count(MetricsRegistry.PRIVACY_FORCED_LOCAL) + " 次");
+    }
+
+    private void addRow(LinearLayout parent, String label, String value) {
+        TextView title = new TextView(requireContext());
+        title.setText(label);
+        title.setTextSize(14);
+        title.setTypeface(Typeface.create("sans-serif-medium", Typeface.BOLD));
+        title.setTextColor(0xFF0E1C36);
+        parent.addView(title);
+
+        TextView detail = new TextView(requireContext());
+        detail.setText(value);
+        detail.setTextSize(13);
+        detail.setTypeface(Typeface.MONOSPACE);
+        detail.setTextColor(0xFF5A6F8F);
+        detail.setPadding(0, 0, 0, dp(10));
+        parent.addView(detail);
+    }
+
+    private void exportMetrics() {
+        JsonObject report = MetricsRegistry.get().toJson();
+        JsonObject device = new JsonObject();
+        device.addProperty("manufacturer", Build.MANUFACTURER);
+        device.addProperty("model", Build.MODEL);
+        device.addProperty("sdk", Build.VERSION.SDK_INT);
+        report.add("device", device);
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("text/plain");
+        intent.putExtra(Intent.EXTRA_SUBJECT, "Philotes 性能数据 " + Build.MODEL);
+        intent.putExtra(Intent.EXTRA_TEXT, json);
+        startActivity(Intent.createChooser(intent, "导出性能数据"));
+    }
+
+    private static String formatMs(long micros) {
+        return micros >= 10_000
+                ? (micros / 1000) + "ms"
+                : String.format(Locale.US, "%.1fms", micros / 1000.0);
+    }
+
+    private static String formatRate(double rate) {
+        return Double.isNaN(rate) ? "--" : String.format(Locale.US, "%.1f%%", rate * 100);
+    }
+
+    private int dp(int value) {
+        return (int) (value * getResources().getDisplayMetrics().density);
+    }
+}
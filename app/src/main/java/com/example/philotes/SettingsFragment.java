@@ -27,6 +27,7 @@ import com.example.philotes.data.api.OpenAIService;
 import com.example.philotes.domain.RuleEngine;
 import com.example.philotes.utils.AiSettingsManager;
 import com.google.android.material.card.MaterialCardView;
+import com.google.android.material.materialswitch.MaterialSwitch;
 import com.google.android.material.textfield.TextInputEditText;
 
 import java.util.Arrays;
@@ -50,9 +51,12 @@ public class SettingsFragment extends Fragment {
     private Button btnAddKeyword;
     private Button btnOpenAccessibilitySettings;
     private Button btnOpenAppPermissionSettings;
+    private Button btnOpenPerformance;
     private TextView tvStatus;
     private TextView tvPermissionStatus;
     private RadioGroup rgRoutingPolicy;
+    private RadioGroup rgOcrMode;
+    private MaterialSwitch swStreamingOcr;
     private LinearLayout layoutKeywordList;
 
     private AiSettingsManager settingsManager;
@@ -111,9 +115,12 @@ public class SettingsFragment extends Fragment {
         btnAddKeyword = view.findViewById(R.id.btnAddKeyword);
         btnOpenAccessibilitySettings = view.findViewById(R.id.btnOpenAccessibilitySettings);
         btnOpenAppPermissionSettings = view.findViewById(R.id.btnOpenAppPermissionSettings);
+        btnOpenPerformance = view.findViewById(R.id.btnOpenPerformance);
         tvStatus = view.findViewById(R.id.tvStatus);
         tvPermissionStatus = view.findViewById(R.id.tvPermissionStatus);
         rgRoutingPolicy = view.findViewById(R.id.rgRoutingPolicy);
+        rgOcrMode = view.findViewById(R.id.rgOcrMode);
+        swStreamingOcr = view.findViewById(R.id.swStreamingOcr);
         layoutKeywordList = view.findViewById(R.id.layoutKeywordList);
 
         ArrayAdapter<ApiProvider> adapter = new ArrayAdapter<>(
@@ -158,6 +165,16 @@ public class SettingsFragment extends Fragment {
             rgRoutingPolicy.check(R.id.rbRoutingSmart);
         }
 
+        String ocrMode = settingsManager.getOcrMode();
+        if (AiSettingsManager.OCR_MODE_RACE.equals(ocrMode)) {
+            rgOcrMode.check(R.id.rbOcrRace);
+        } else if (AiSettingsManager.OCR_MODE_FUSE.equals(ocrMode)) {
+            rgOcrMode.check(R.id.rbOcrFuse);
+        } else {
+            rgOcrMode.check(R.id.rbOcrPaddleFirst);
+        }
+        swStreamingOcr.setChecked(settingsManager.isStreamingOcrEnabled());
+
         updateUiState();
         customKeywords.clear();
         customKeywords.addAll(settingsManager.getCustomTriggerKeywords());
@@ -238,6 +255,23 @@ public class SettingsFragment extends Fragment {
             updateStatusText();
         });
 
+        rgOcrMode.setOnCheckedChangeListener((group, checkedId) -> {
+            String ocrMode = AiSettingsManager.OCR_MODE_PADDLE_FIRST;
+            if (checkedId == R.id.rbOcrRace) {
+                ocrMode = AiSettingsManager.OCR_MODE_RACE;
+            } else if (checkedId == R.id.rbOcrFuse) {
+                ocrMode = AiSettingsManager.OCR_MODE_FUSE;
+            }
+            settingsManager.setOcrMode(ocrMode);
+            settingsManager.applyToOcrOrchestrator();
+        });
+
+        swStreamingOcr.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (!isLoadingSettings) {
+                settingsManager.setStreamingOcrEnabled(isChecked);
+            }
+        });
+
         btnOpenAccessibilitySettings.setOnClickListener(v -> {
             Intent intent = new Intent(Settings.ACTION_ACCESSIBILITY_SETTINGS);
             startActivity(intent);
@@ -248,6 +282,8 @@ public class SettingsFragment extends Fragment {
             intent.setData(Uri.fromParts("package", requireContext().getPackageName(), null));
             startActivity(intent);
         });
+
+        btnOpenPerformance.setOnClickListener(v -> ((MainActivity) requireActivity()).showPerformanceContent());
     }
 
     private void updateUiState() {
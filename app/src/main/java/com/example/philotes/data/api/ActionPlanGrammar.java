@@ -0,0 +1,496 @@
+package com.example.philotes.data.api;
+
+import com.example.philotes.data.model.ActionType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte-level automaton for the compact ActionPlan JSON the parser expects:
+ *
+ * <pre>
+ * {"type":"&lt;ActionType&gt;","slots":{"&lt;key&gt;":"&lt;text&gt;",...},"confidence":&lt;0..1&gt;,"original_text":"&lt;text&gt;"}
+ * </pre>
+ *
+ * or a JSON array of at most {@code maxItems} such objects (without UNKNOWN).
+ * Keys come in this fixed order with no whitespace, slot keys are limited to
+ * title/time/location/content and used at most once, confidence is 0, 1 or
+ * 0.x/0.xx/1.0, and strings carry no escapes or control characters and are
+ * capped in bytes, so every accepted output parses as-is.
+ *
+ * All state is in a few ints so {@link #copyFrom} is cheap; constrained
+ * decoding simulates candidate tokens on a scratch copy.
+ */
+public final class ActionPlanGrammar {
+    static final String[] SLOT_KEYS = { "title", "time", "location", "content" };
+    static final int SLOT_MAX_BYTES = 160;
+    static final int TEXT_MAX_BYTES = 320;
+
+    private static final byte[][] LITERALS = {
+            ascii("{\"type\":\""),
+            ascii("\",\"slots\":{"),
+            ascii("\":\""),
+            ascii("\""),
+            ascii(",\"confidence\":"),
+            ascii(",\"original_text\":\""),
+            ascii("}"),
+            ascii("["),
+    };
+    private static final int L_OBJECT = 0;
+    private static final int L_AFTER_TYPE = 1;
+    private static final int L_KEY_SEP = 2;
+    private static final int L_QUOTE = 3;
+    private static final int L_CONFIDENCE = 4;
+    private static final int L_TEXT = 5;
+    private static final int L_CLOSE = 6;
+    private static final int L_ARRAY = 7;
+
+    private static final int P_LITERAL = 0;
+    private static final int P_TYPE = 1;
+    private static final int P_KEY = 2;
+    private static final int P_SLOT_VALUE = 3;
+    private static final int P_TEXT = 4;
+    private static final int P_NUMBER = 5;
+    private static final int P_SLOTS_OPEN = 6;
+    private static final int P_SLOTS_NEXT = 7;
+    private static final int P_ARRAY_OPEN = 8;
+    private static final int P_ARRAY_NEXT = 9;
+    private static final int P_OBJECT_END = 10;
+    private static final int P_DONE = 11;
+    private static final int P_DEAD = 12;
+
+    private final byte[][] types;
+    /** Index of UNKNOWN in types, -1 for the array form. */
+    private final int unknownType;
+    private final byte[][] keys;
+    private final boolean array;
+    private final int maxItems;
+
+    private int phase;
+    private int literal;
+    private int literalPos;
+    private int choiceAlive;
+    private int choiceLen;
+    private int usedKeys;
+    private int stringLen;
+    private int utf8Pending;
+    private int number;
+    private int items;
+    private int chosenType;
+
+    private ActionPlanGrammar(byte[][] types, boolean array, int maxItems) {
+        this.types = types;
+        int unknown = -1;
+        for (int i = 0; i < types.length; i++) {
+            if (ActionType.UNKNOWN.name().equals(new String(types[i], StandardCharsets.US_ASCII))) {
+                unknown = i;
+            }
+        }
+        this.unknownType = unknown;
+        this.keys = new byte[SLOT_KEYS.length][];
+        for (int i = 0; i < SLOT_KEYS.length; i++) {
+            keys[i] = ascii(SLOT_KEYS[i]);
+        }
+        this.array = array;
+        this.maxItems = maxItems;
+        this.chosenType = -1;
+        startLiteral(array ? L_ARRAY : L_OBJECT, 0);
+    }
+
+    /** A single object; any {@link ActionType} including UNKNOWN. */
+    public static ActionPlanGrammar forObject() {
+        ActionType[] values = ActionType.values();
+        byte[][] types = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            types[i] = ascii(values[i].name());
+        }
+        return new ActionPlanGrammar(types, false, 1);
+    }
+
+    /** An array of up to maxItems objects; UNKNOWN is not emitted (empty array instead). */
+    public static ActionPlanGrammar forArray(int maxItems) {
+        ActionType[] values = ActionType.values();
+        byte[][] types = new byte[values.length - 1][];
+        int n = 0;
+        for (ActionType value : values) {
+            if (value != ActionType.UNKNOWN) {
+                types[n++] = ascii(value.name());
+            }
+        }
+        return new ActionPlanGrammar(types, true, Math.max(1, maxItems));
+    }
+
+    /** Fresh automaton with the same schema, positioned at the start. */
+    public ActionPlanGrammar newInstance() {
+        return new ActionPlanGrammar(types, array, maxItems);
+    }
+
+    /** True when both accept the same language (object vs array, item cap), whatever their current state. */
+    public boolean sameSchema(ActionPlanGrammar other) {
+        return other != null && array == other.array && maxItems == other.maxItems
+                && types.length == other.types.length;
+    }
+
+    public void copyFrom(ActionPlanGrammar other) {
+        phase = other.phase;
+        literal = other.literal;
+        literalPos = other.literalPos;
+        choiceAlive = other.choiceAlive;
+        choiceLen = other.choiceLen;
+        usedKeys = other.usedKeys;
+        stringLen = other.stringLen;
+        utf8Pending = other.utf8Pending;
+        number = other.number;
+        items = other.items;
+        chosenType = other.chosenType;
+    }
+
+    public boolean isComplete() {
+        return phase == P_DONE;
+    }
+
+    /**
+     * True once the output can only mean "nothing actionable": the object's type
+     * is (or can only become) UNKNOWN, or the array closed empty.
+     */
+    public boolean committedToNoAction() {
+        if (array) {
+            return phase == P_DONE && items == 0;
+        }
+        if (phase == P_TYPE) {
+            return unknownType >= 0 && choiceAlive == 1 << unknownType;
+        }
+        return phase != P_DEAD && chosenType >= 0 && chosenType == unknownType;
+    }
+
+    /** True inside free string content, where most tokens are allowed. */
+    boolean inString() {
+        return phase == P_SLOT_VALUE || phase == P_TEXT;
+    }
+
+    /** Bytes a plain string token may still add; valid only when {@link #inString()}. */
+    int stringRoom() {
+        return utf8Pending > 0 ? 0 : stringCap() - stringLen;
+    }
+
+    public boolean acceptAll(byte[] bytes) {
+        for (byte b : bytes) {
+            if (!accept(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean accept(byte value) {
+        int b = value & 0xFF;
+        switch (phase) {
+            case P_LITERAL:
+                if (b != LITERALS[literal][literalPos]) {
+                    return dead();
+                }
+                if (++literalPos == LITERALS[literal].length) {
+                    afterLiteral();
+                }
+                return true;
+            case P_TYPE:
+            case P_KEY:
+                return acceptChoice(b);
+            case P_SLOT_VALUE:
+            case P_TEXT:
+                return acceptString(b);
+            case P_NUMBER:
+                return acceptNumber(b);
+            case P_SLOTS_OPEN:
+                if (b == '}') {
+                    startLiteral(L_CONFIDENCE, 0);
+                    return true;
+                }
+                if (b == '"') {
+                    startChoice(P_KEY, ~usedKeys & ((1 << keys.length) - 1));
+                    return true;
+                }
+                return dead();
+            case P_SLOTS_NEXT:
+                if (b == '}') {
+                    startLiteral(L_CONFIDENCE, 0);
+                    return true;
+                }
+                if (b == ',' && usedKeys != (1 << keys.length) - 1) {
+                    startLiteral(L_QUOTE, 0);
+                    return true;
+                }
+                return dead();
+            case P_ARRAY_OPEN:
+                if (b == ']') {
+                    phase = P_DONE;
+                    return true;
+                }
+                if (b == '{') {
+                    startLiteral(L_OBJECT, 1);
+                    return true;
+                }
+                return dead();
+            case P_ARRAY_NEXT:
+                if (b == ']') {
+                    phase = P_DONE;
+                    return true;
+                }
+                if (b == ',' && items < maxItems) {
+                    startLiteral(L_OBJECT, 0);
+                    return true;
+                }
+                return dead();
+            default:
+                return dead();
+        }
+    }
+
+    /**
+     * The only byte allowed next, or -1 when there is a real choice (or none).
+     */
+    public int forcedByte() {
+        switch (phase) {
+            case P_LITERAL:
+                return LITERALS[literal][literalPos] & 0xFF;
+            case P_TYPE:
+            case P_KEY: {
+                byte[][] candidates = phase == P_TYPE ? types : keys;
+                int forced = -1;
+                for (int i = 0; i < candidates.length; i++) {
+                    if ((choiceAlive & (1 << i)) == 0) {
+                        continue;
+                    }
+                    int next = candidates[i][choiceLen] & 0xFF;
+                    if (forced >= 0 && forced != next) {
+                        return -1;
+                    }
+                    forced = next;
+                }
+                return forced;
+            }
+            case P_SLOT_VALUE:
+            case P_TEXT:
+                return utf8Pending == 0 && stringLen >= stringCap() ? '"' : -1;
+            case P_NUMBER:
+                if (number == 6) {
+                    return '0';
+                }
+                return number == 5 || number == 8 ? ',' : -1;
+            case P_SLOTS_NEXT:
+                return usedKeys == (1 << keys.length) - 1 ? '}' : -1;
+            case P_ARRAY_NEXT:
+                return items >= maxItems ? ']' : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Longest run of forced bytes from the current state (not consumed).
+     */
+    public byte[] forcedBytes(ActionPlanGrammar scratch) {
+        scratch.copyFrom(this);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = scratch.forcedByte()) >= 0 && scratch.accept((byte) b)) {
+            out.write(b);
+            if (scratch.isComplete()) {
+                break;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private boolean acceptChoice(int b) {
+        byte[][] candidates = phase == P_TYPE ? types : keys;
+        int alive = 0;
+        int completed = -1;
+        for (int i = 0; i < candidates.length; i++) {
+            if ((choiceAlive & (1 << i)) == 0 || candidates[i][choiceLen] != (byte) b) {
+                continue;
+            }
+            alive |= 1 << i;
+            if (candidates[i].length == choiceLen + 1) {
+                completed = i;
+            }
+        }
+        if (alive == 0) {
+            return dead();
+        }
+        choiceAlive = alive;
+        choiceLen++;
+        // no candidate is a prefix of another, so a full match is final
+        if (completed >= 0) {
+            if (phase == P_TYPE) {
+                chosenType = completed;
+                startLiteral(L_AFTER_TYPE, 0);
+            } else {
+                usedKeys |= 1 << completed;
+                startLiteral(L_KEY_SEP, 0);
+            }
+        }
+        return true;
+    }
+
+    private boolean acceptString(int b) {
+        if (utf8Pending > 0) {
+            if ((b & 0xC0) != 0x80) {
+                return dead();
+            }
+            utf8Pending--;
+            stringLen++;
+            return true;
+        }
+        if (b == '"') {
+            if (phase == P_SLOT_VALUE) {
+                phase = P_SLOTS_NEXT;
+            } else {
+                startLiteral(L_CLOSE, 0);
+            }
+            return true;
+        }
+        if (b < 0x20 || b == '\\' || stringLen >= stringCap()) {
+            return dead();
+        }
+        if (b >= 0x80) {
+            if ((b & 0xE0) == 0xC0) {
+                utf8Pending = 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                utf8Pending = 2;
+            } else if ((b & 0xF8) == 0xF0) {
+                utf8Pending = 3;
+            } else {
+                return dead();
+            }
+        }
+        stringLen++;
+        return true;
+    }
+
+    /*
+     * 0 start, 1 "0", 2 "1", 3 "0.", 4 "0.d", 5 "0.dd", 6 "1.", 7 "1.0", 8 "1.00".
+     * The number ends on the ',' that opens the original_text member.
+     */
+    private boolean acceptNumber(int b) {
+        boolean digit = b >= '0' && b <= '9';
+        switch (number) {
+            case 0:
+                if (b == '0' || b == '1') {
+                    number = b == '0' ? 1 : 2;
+                    return true;
+                }
+                return dead();
+            case 1:
+            case 2:
+                if (b == '.') {
+                    number = number == 1 ? 3 : 6;
+                    return true;
+                }
+                return endNumber(b);
+            case 3:
+                if (digit) {
+                    number = 4;
+                    return true;
+                }
+                return dead();
+            case 4:
+                if (digit) {
+                    number = 5;
+                    return true;
+                }
+                return endNumber(b);
+            case 6:
+                if (b == '0') {
+                    number = 7;
+                    return true;
+                }
+                return dead();
+            case 7:
+                if (b == '0') {
+                    number = 8;
+                    return true;
+                }
+                return endNumber(b);
+            default:
+                return endNumber(b);
+        }
+    }
+
+    private boolean endNumber(int b) {
+        if (b != ',') {
+            return dead();
+        }
+        startLiteral(L_TEXT, 1);
+        return true;
+    }
+
+    private void afterLiteral() {
+        switch (literal) {
+            case L_OBJECT:
+                chosenType = -1;
+                startChoice(P_TYPE, (1 << types.length) - 1);
+                break;
+            case L_AFTER_TYPE:
+                usedKeys = 0;
+                phase = P_SLOTS_OPEN;
+                break;
+            case L_KEY_SEP:
+                startString(P_SLOT_VALUE);
+                break;
+            case L_QUOTE:
+                startChoice(P_KEY, ~usedKeys & ((1 << keys.length) - 1));
+                break;
+            case L_CONFIDENCE:
+                phase = P_NUMBER;
+                number = 0;
+                break;
+            case L_TEXT:
+                startString(P_TEXT);
+                break;
+            case L_CLOSE:
+                items++;
+                phase = array ? P_ARRAY_NEXT : P_DONE;
+                break;
+            case L_ARRAY:
+                phase = P_ARRAY_OPEN;
+                break;
+            default:
+                phase = P_DEAD;
+        }
+    }
+
+    private void startLiteral(int id, int pos) {
+        phase = P_LITERAL;
+        literal = id;
+        literalPos = pos;
+        if (pos == LITERALS[id].length) {
+            afterLiteral();
+        }
+    }
+
+    private void startChoice(int choicePhase, int alive) {
+        phase = choicePhase;
+        choiceAlive = alive;
+        choiceLen = 0;
+    }
+
+    private void startString(int stringPhase) {
+        phase = stringPhase;
+        stringLen = 0;
+        utf8Pending = 0;
+    }
+
+    private int stringCap() {
+        return phase == P_TEXT ? TEXT_MAX_BYTES : SLOT_MAX_BYTES;
+    }
+
+    private boolean dead() {
+        phase = P_DEAD;
+        return false;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
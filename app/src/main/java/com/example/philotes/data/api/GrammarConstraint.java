@@ -0,0 +1,227 @@
+package com.example.philotes.data.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Token-level view of an {@link ActionPlanGrammar}: masks logits down to the
+ * tokens whose bytes the grammar accepts next, and hands forced runs (keys,
+ * punctuation, a single remaining enum spelling) to the generator as fixed
+ * tokens so they are prefilled in one batch instead of sampled one by one.
+ */
+public final class GrammarConstraint implements LiteRtGenerator.Constraint {
+
+    /** Encodes forced ASCII text into token ids. */
+    public interface Encoder {
+        int[] encode(String text);
+    }
+
+    /**
+     * Per-vocabulary precomputation, built once per tokenizer: token bytes,
+     * "plain" string tokens (no quote/backslash/control bytes, complete UTF-8)
+     * that can be admitted inside strings by length alone, and the remaining
+     * tokens bucketed by first byte for exact simulation.
+     */
+    public static final class TokenIndex {
+        final byte[][] bytes;
+        final boolean[] plain;
+        final int[][] byFirstByte;
+        final int[][] nonPlainByFirstByte;
+
+        public TokenIndex(QwenTokenizer tokenizer) {
+            this(allTokenBytes(tokenizer));
+        }
+
+        TokenIndex(byte[][] tokenBytes) {
+            bytes = tokenBytes;
+            plain = new boolean[tokenBytes.length];
+            int[] all = new int[256];
+            int[] nonPlain = new int[256];
+            for (int id = 0; id < tokenBytes.length; id++) {
+                byte[] b = tokenBytes[id];
+                if (b.length == 0) {
+                    continue;
+                }
+                plain[id] = isPlain(b);
+                all[b[0] & 0xFF]++;
+                if (!plain[id]) {
+                    nonPlain[b[0] & 0xFF]++;
+                }
+            }
+            byFirstByte = new int[256][];
+            nonPlainByFirstByte = new int[256][];
+            for (int i = 0; i < 256; i++) {
+                byFirstByte[i] = new int[all[i]];
+                nonPlainByFirstByte[i] = new int[nonPlain[i]];
+            }
+            Arrays.fill(all, 0);
+            Arrays.fill(nonPlain, 0);
+            for (int id = 0; id < tokenBytes.length; id++) {
+                byte[] b = tokenBytes[id];
+                if (b.length == 0) {
+                    continue;
+                }
+                int first = b[0] & 0xFF;
+                byFirstByte[first][all[first]++] = id;
+                if (!plain[id]) {
+                    nonPlainByFirstByte[first][nonPlain[first]++] = id;
+                }
+            }
+        }
+
+        private static byte[][] allTokenBytes(QwenTokenizer tokenizer) {
+            byte[][] result = new byte[tokenizer.vocabSize()][];
+            for (int id = 0; id < result.length; id++) {
+                result[id] = tokenizer.tokenBytes(id);
+            }
+            return result;
+        }
+
+        private static boolean isPlain(byte[] b) {
+            int pending = 0;
+            for (byte value : b) {
+                int c = value & 0xFF;
+                if (pending > 0) {
+                    if ((c & 0xC0) != 0x80) {
+                        return false;
+                    }
+                    pending--;
+                } else if (c < 0x20 || c == '"' || c == '\\') {
+                    return false;
+                } else if (c >= 0x80) {
+                    if ((c & 0xE0) == 0xC0) {
+                        pending = 1;
+                    } else if ((c & 0xF0) == 0xE0) {
+                        pending = 2;
+                    } else if ((c & 0xF8) == 0xF0) {
+                        pending = 3;
+                    } else {
+                        return false;
+                    }
+                }
+            }
+            return pending == 0;
+        }
+    }
+
+    private final ActionPlanGrammar grammar;
+    private final ActionPlanGrammar scratch;
+    private final TokenIndex index;
+    private final Encoder encoder;
+    private float[] original;
+    private int forcedCount;
+
+    public GrammarConstraint(ActionPlanGrammar grammar, TokenIndex index, Encoder encoder) {
+        this.grammar = grammar;
+        this.scratch = grammar.newInstance();
+        this.index = index;
+        this.encoder = encoder;
+    }
+
+    @Override
+    public boolean sameShape(LiteRtGenerator.Constraint other) {
+        if (!(other instanceof GrammarConstraint)) {
+            return false;
+        }
+        GrammarConstraint that = (GrammarConstraint) other;
+        return index == that.index && grammar.sameSchema(that.grammar);
+    }
+
+    @Override
+    public int[] forcedTokens() {
+        byte[] forced = grammar.forcedBytes(scratch);
+        if (forced.length == 0) {
+            return new int[0];
+        }
+        grammar.acceptAll(forced);
+        int[] ids = encoder.encode(new String(forced, StandardCharsets.US_ASCII));
+        forcedCount += ids.length;
+        return ids;
+    }
+
+    @Override
+    public void mask(float[] logits) {
+        if (original == null || original.length != logits.length) {
+            original = new float[logits.length];
+        }
+        System.arraycopy(logits, 0, original, 0, logits.length);
+        int vocab = Math.min(logits.length, index.bytes.length);
+        int[][] buckets;
+        if (grammar.inString()) {
+            // plain tokens are decided by length alone; the rest is simulated below
+            int room = grammar.stringRoom();
+            for (int id = 0; id < vocab; id++) {
+                if (!index.plain[id] || index.bytes[id].length > room) {
+                    logits[id] = Float.NEGATIVE_INFINITY;
+                }
+            }
+            buckets = index.nonPlainByFirstByte;
+        } else {
+            Arrays.fill(logits, 0, vocab, Float.NEGATIVE_INFINITY);
+            buckets = index.byFirstByte;
+        }
+        for (int id = vocab; id < logits.length; id++) {
+            logits[id] = Float.NEGATIVE_INFINITY;
+        }
+        for (int first = 0; first < 256; first++) {
+            scratch.copyFrom(grammar);
+            if (!scratch.accept((byte) first)) {
+                continue;
+            }
+            for (int id : buckets[first]) {
+                scratch.copyFrom(grammar);
+                if (scratch.acceptAll(index.bytes[id])) {
+                    logits[id] = original[id];
+                }
+            }
+        }
+    }
+
+    /**
+     * Softmax mass, over logits already passed through {@link #mask}, of the
+     * tokens after which the grammar can only produce "no action" (UNKNOWN or
+     * an empty array).
+     */
+    @Override
+    public double noActionProbability(float[] maskedLogits) {
+        int vocab = Math.min(maskedLogits.length, index.bytes.length);
+        float max = Float.NEGATIVE_INFINITY;
+        for (int id = 0; id < vocab; id++) {
+            max = Math.max(max, maskedLogits[id]);
+        }
+        if (max == Float.NEGATIVE_INFINITY) {
+            return 0;
+        }
+        double total = 0;
+        double noAction = 0;
+        for (int id = 0; id < vocab; id++) {
+            float value = maskedLogits[id];
+            if (value == Float.NEGATIVE_INFINITY) {
+                continue;
+            }
+            double weight = Math.exp(value - max);
+            total += weight;
+            scratch.copyFrom(grammar);
+            if (scratch.acceptAll(index.bytes[id]) && scratch.committedToNoAction()) {
+                noAction += weight;
+            }
+        }
+        return noAction / total;
+    }
+
+    @Override
+    public void accept(int token) {
+        byte[] b = token >= 0 && token < index.bytes.length ? index.bytes[token] : new byte[0];
+        grammar.acceptAll(b);
+    }
+
+    @Override
+    public boolean isComplete() {
+        return grammar.isComplete();
+    }
+
+    /** Tokens emitted without sampling so far. */
+    public int getForcedCount() {
+        return forcedCount;
+    }
+}
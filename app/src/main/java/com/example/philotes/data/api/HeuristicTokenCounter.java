@@ -0,0 +1,50 @@
+package com.example.philotes.data.api;
+
+/**
+ * Tokenizer-free token estimate, tuned to over-count slightly for BPE vocabularies
+ * such as Qwen / GPT: one token per CJK character, digit and symbol, roughly four
+ * Latin letters per token. Used when a backend has no real tokenizer loaded.
+ */
+public final class HeuristicTokenCounter implements TokenCounter {
+    public static final HeuristicTokenCounter INSTANCE = new HeuristicTokenCounter();
+
+    private static final int LATIN_CHARS_PER_TOKEN = 4;
+
+    private HeuristicTokenCounter() {
+    }
+
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int latinRun = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')) {
+                latinRun++;
+                continue;
+            }
+            if (latinRun > 0) {
+                tokens += (latinRun + LATIN_CHARS_PER_TOKEN - 1) / LATIN_CHARS_PER_TOKEN;
+                latinRun = 0;
+            }
+            if (ch == ' ') {
+                // BPE merges a leading space into the following word
+                continue;
+            }
+            if (Character.isHighSurrogate(ch)) {
+                // emoji and other supplementary characters are split into byte tokens
+                tokens += 2;
+                i++;
+                continue;
+            }
+            tokens++;
+        }
+        if (latinRun > 0) {
+            tokens += (latinRun + LATIN_CHARS_PER_TOKEN - 1) / LATIN_CHARS_PER_TOKEN;
+        }
+        return tokens;
+    }
+}
@@ -19,6 +19,28 @@ public interface ILlmService {
      */
     String chatCompletion(String systemPrompt, String userMessage);
 
+    /**
+     * Total tokens one request may occupy (prompt + completion), e.g. the KV cache size of
+     * an on-device model. Non-positive means unknown; callers then skip window checks.
+     */
+    default int getContextWindowTokens() {
+        return 0;
+    }
+
+    /**
+     * Tokens reserved for the completion when packing the prompt.
+     */
+    default int getMaxOutputTokens() {
+        return 512;
+    }
+
+    /**
+     * Counter matching this backend's tokenizer.
+     */
+    default TokenCounter getTokenCounter() {
+        return HeuristicTokenCounter.INSTANCE;
+    }
+
     /**
      * Optional streaming response; default behavior chunks full output to keep existing services compatible.
      */
@@ -0,0 +1,243 @@
+package com.example.philotes.data.api;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.philotes.utils.ModelCatalog;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Picks XNNPACK on/off, thread count and fp16 relaxation for a LiteRT model by
+ * benchmarking in the background after the first warmup (which runs on the
+ * defaults), then persists the winner per model fingerprint and device so later
+ * loads apply it directly.
+ *
+ * Search is coordinate descent rather than the full grid, since every candidate
+ * needs a fresh interpreter: delegate at the default thread count, then a thread
+ * sweep 1..N with the winning delegate (stops after two consecutive regressions),
+ * then fp16 on the best point. A candidate only wins when it is at least
+ * {@link #MIN_GAIN} faster, to avoid flapping on noise.
+ */
+public final class LiteRtAutotuner {
+    private static final String TAG = "LiteRtAutotuner";
+    private static final String PREFS_NAME = "litert_autotune";
+
+    static final int MAX_THREADS = 8;
+    static final double MIN_GAIN = 0.03;
+    static final int WARMUP_RUNS = 1;
+    static final int MEASURE_RUNS = 3;
+
+    /** Measures the median latency of one invocation under the given config. */
+    interface Bench {
+        long medianNs(RuntimeConfig config) throws IOException;
+    }
+
+    /**
+     * Interpreter options plus the latency they were measured at (0 if unmeasured).
+     */
+    public static final class RuntimeConfig {
+        public final boolean useXnnpack;
+        public final int numThreads;
+        public final boolean allowFp16;
+        public final long medianNs;
+
+        public RuntimeConfig(boolean useXnnpack, int numThreads, boolean allowFp16, long medianNs) {
+            this.useXnnpack = useXnnpack;
+            this.numThreads = Math.max(1, numThreads);
+            this.allowFp16 = allowFp16;
+            this.medianNs = medianNs;
+        }
+
+        /** The previous hardcoded setting: XNNPACK default, half the cores (min 2). */
+        public static RuntimeConfig defaults() {
+            return new RuntimeConfig(true, defaultThreads(Runtime.getRuntime().availableProcessors()), false, 0);
+        }
+
+        // Interpreter.Options has no non-deprecated way to relax fp32 to fp16 on the CPU
+        // path; the replacement is per-delegate (GPU) and does not cover XNNPACK.
+        @SuppressWarnings("deprecation")
+        public void applyTo(Interpreter.Options options) {
+            options.setNumThreads(numThreads);
+            options.setUseXNNPACK(useXnnpack);
+            options.setAllowFp16PrecisionForFp32(allowFp16);
+        }
+
+        /**
+         * Smoke-test invocations per second at {@link #medianNs}, 0 when not measured.
+         * Only ranks configs against each other; it is not a decode rate, see
+         * {@link LiteRtQwenService#getTokensPerSecond()} for that.
+         */
+        public double invocationsPerSecond() {
+            return medianNs <= 0 ? 0 : 1e9 / medianNs;
+        }
+
+        boolean sameOptions(RuntimeConfig other) {
+            return other != null && useXnnpack == other.useXnnpack && numThreads == other.numThreads
+                    && allowFp16 == other.allowFp16;
+        }
+
+        RuntimeConfig withXnnpack(boolean value) {
+            return new RuntimeConfig(value, numThreads, allowFp16, 0);
+        }
+
+        RuntimeConfig withThreads(int value) {
+            return new RuntimeConfig(useXnnpack, value, allowFp16, 0);
+        }
+
+        RuntimeConfig withFp16(boolean value) {
+            return new RuntimeConfig(useXnnpack, numThreads, value, 0);
+        }
+
+        RuntimeConfig withMedianNs(long value) {
+            return new RuntimeConfig(useXnnpack, numThreads, allowFp16, value);
+        }
+
+        String encode() {
+            return "x=" + (useXnnpack ? 1 : 0) + ";t=" + numThreads + ";f=" + (allowFp16 ? 1 : 0) + ";ns=" + medianNs;
+        }
+
+        static RuntimeConfig decode(String value) {
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            try {
+                boolean xnnpack = true;
+                int threads = 0;
+                boolean fp16 = false;
+                long ns = 0;
+                for (String part : value.split(";")) {
+                    int eq = part.indexOf('=');
+                    if (eq <= 0) {
+                        continue;
+                    }
+                    String k = part.substring(0, eq);
+                    String v = part.substring(eq + 1);
+                    if ("x".equals(k)) {
+                        xnnpack = "1".equals(v);
+                    } else if ("t".equals(k)) {
+                        threads = Integer.parseInt(v);
+                    } else if ("f".equals(k)) {
+                        fp16 = "1".equals(v);
+                    } else if ("ns".equals(k)) {
+                        ns = Long.parseLong(v);
+                    }
+                }
+                return threads > 0 ? new RuntimeConfig(xnnpack, threads, fp16, ns) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "xnnpack=%s threads=%d fp16=%s inv/s=%.1f",
+                    useXnnpack, numThreads, allowFp16, invocationsPerSecond());
+        }
+    }
+
+    private final SharedPreferences prefs;
+
+    public LiteRtAutotuner(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the persisted config for this model and device, or null if never tuned.
+     */
+    public RuntimeConfig load(File modelFile) throws IOException {
+        return RuntimeConfig.decode(prefs.getString(prefKey(modelFile), null));
+    }
+
+    /**
+     * Runs the search and persists the result.
+     */
+    RuntimeConfig tune(File modelFile, Bench bench) throws IOException {
+        int maxThreads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        RuntimeConfig best = search(maxThreads, bench);
+        prefs.edit().putString(prefKey(modelFile), best.encode()).apply();
+        Log.i(TAG, "Tuned " + modelFile.getName() + ": " + best);
+        return best;
+    }
+
+    static RuntimeConfig search(int maxThreads, Bench bench) throws IOException {
+        maxThreads = Math.max(1, maxThreads);
+        RuntimeConfig start = new RuntimeConfig(true, Math.min(maxThreads, defaultThreads(maxThreads)), false, 0);
+
+        RuntimeConfig best = measure(bench, start);
+        RuntimeConfig noXnnpack = measure(bench, start.withXnnpack(false));
+        if (best == null) {
+            best = noXnnpack;
+        } else if (isBetter(noXnnpack, best)) {
+            best = noXnnpack;
+        }
+        if (best == null) {
+            throw new IOException("No runnable LiteRT configuration");
+        }
+
+        int regressions = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            if (threads == start.numThreads) {
+                continue;
+            }
+            RuntimeConfig candidate = measure(bench, best.withThreads(threads));
+            if (isBetter(candidate, best)) {
+                best = candidate;
+                regressions = 0;
+            } else if (threads > best.numThreads && ++regressions >= 2) {
+                break;
+            }
+        }
+
+        RuntimeConfig fp16 = measure(bench, best.withFp16(true));
+        if (isBetter(fp16, best)) {
+            best = fp16;
+        }
+        return best;
+    }
+
+    private static RuntimeConfig measure(Bench bench, RuntimeConfig config) throws IOException {
+        try {
+            long ns = bench.medianNs(config);
+            return ns > 0 ? config.withMedianNs(ns) : null;
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            // delegate or precision not supported for this model on this device
+            Log.w(TAG, "Candidate failed (" + config + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isBetter(RuntimeConfig candidate, RuntimeConfig best) {
+        return candidate != null && candidate.medianNs < best.medianNs * (1 - MIN_GAIN);
+    }
+
+    static int defaultThreads(int cores) {
+        return Math.max(2, cores / 2);
+    }
+
+    private static String prefKey(File modelFile) throws IOException {
+        return fingerprint(modelFile) + "|" + deviceKey();
+    }
+
+    static String deviceKey() {
+        return Build.MANUFACTURER + "/" + Build.MODEL + "/" + Build.HARDWARE + "/"
+                + Build.VERSION.SDK_INT + "/" + Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Shares the model catalog's fingerprint so tuned configs and the catalog
+     * index agree on what counts as "the same model".
+     */
+    static String fingerprint(File file) throws IOException {
+        return ModelCatalog.fingerprint(file);
+    }
+}
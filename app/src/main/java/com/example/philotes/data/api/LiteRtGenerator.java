@@ -0,0 +1,431 @@
+package com.example.philotes.data.api;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Autoregressive decode loop: chunked prefill of the prompt, then one decode
+ * step per token with greedy or top-k sampling.
+ *
+ * Generation stops on an end-of-turn token, as soon as the first top-level JSON
+ * value closes (the caller only wants one object/array, so trailing chatter is
+ * never decoded), at the token limit, or when the KV cache is full. The model
+ * itself is abstracted behind {@link Model} so the loop is testable without a
+ * native interpreter.
+ *
+ * With a {@link Constraint}, logits are masked to what the grammar allows and
+ * runs of grammar-forced tokens are appended without sampling; they reach the
+ * model through one prefill call together with the last sampled token.
+ *
+ * {@link Options#earlyExit} adds a cheap first stage: the first sampled step
+ * (right after the forced {"type":" prefix) already ranks the ActionType enum
+ * tokens, so if the constraint puts most of the mass on "no action" the call
+ * ends there with {@link StopReason#NO_ACTION} instead of decoding the object.
+ *
+ * {@link Options#reusePrefix} skips prefill for prompt tokens the KV cache
+ * still holds from the previous call (see {@link LocalInferenceBatcher}).
+ */
+public final class LiteRtGenerator {
+
+    /** One LiteRT model instance with an external KV cache. */
+    public interface Model {
+        /** Largest number of tokens one prefill call accepts. */
+        int maxPrefillTokens();
+
+        /** Total KV cache capacity (prompt + generated tokens). */
+        int contextTokens();
+
+        /** Writes tokens[offset, offset+length) into the KV cache at startPos.. */
+        void prefill(int[] tokens, int offset, int length, int startPos);
+
+        /** Feeds one token at pos and returns next-token logits (reused array is fine). */
+        float[] decode(int token, int pos);
+    }
+
+    /** Restricts generation to a grammar, see {@link GrammarConstraint}. */
+    public interface Constraint {
+        /** Maximal run of tokens the grammar forces next (already accepted), may be empty. */
+        int[] forcedTokens();
+
+        /** Sets the logits of tokens the grammar does not allow next to -infinity. */
+        void mask(float[] logits);
+
+        void accept(int token);
+
+        boolean isComplete();
+
+        /** Probability that the next token commits the output to "no action"; 0 if unknown. */
+        default double noActionProbability(float[] maskedLogits) {
+            return 0;
+        }
+
+        /**
+         * True when a fresh instance of other admits exactly the same outputs, so
+         * two requests with the same prompt can share one run. Defaults to identity.
+         */
+        default boolean sameShape(Constraint other) {
+            return this == other;
+        }
+    }
+
+    public enum StopReason {
+        END_OF_TURN, JSON_CLOSED, MAX_TOKENS, CONTEXT_FULL, CANCELLED, CONSTRAINT_FAILED,
+        /** Early exit: the constraint judged the first sampled step to be "no action". */
+        NO_ACTION
+    }
+
+    public static final class Options {
+        int maxNewTokens = 256;
+        int topK = 1;
+        float temperature = 0f;
+        long seed = 0;
+        int[] stopTokens = new int[0];
+        boolean stopOnJsonClose = true;
+        Constraint constraint;
+        double earlyExitThreshold = Double.NaN;
+        int reusePrefix;
+        BooleanSupplier cancelled;
+
+        public Options maxNewTokens(int value) {
+            maxNewTokens = value;
+            return this;
+        }
+
+        /** topK ≤ 1 (or temperature ≤ 0) means greedy. */
+        public Options topK(int value, float temperature) {
+            this.topK = value;
+            this.temperature = temperature;
+            return this;
+        }
+
+        public Options seed(long value) {
+            seed = value;
+            return this;
+        }
+
+        public Options stopTokens(int... ids) {
+            stopTokens = ids;
+            return this;
+        }
+
+        public Options stopOnJsonClose(boolean value) {
+            stopOnJsonClose = value;
+            return this;
+        }
+
+        public Options constraint(Constraint value) {
+            constraint = value;
+            return this;
+        }
+
+        /**
+         * Stops after the first sampled step when the constraint's no-action
+         * probability reaches threshold; requires a constraint.
+         */
+        public Options earlyExit(double threshold) {
+            earlyExitThreshold = threshold;
+            return this;
+        }
+
+        /** The first tokens of the prompt are already in the KV cache at positions 0..tokens-1. */
+        public Options reusePrefix(int tokens) {
+            reusePrefix = tokens;
+            return this;
+        }
+
+        /**
+         * Extra cancellation check next to thread interruption, for callers that
+         * share one worker thread and must not interrupt it.
+         */
+        public Options cancelWhen(BooleanSupplier value) {
+            cancelled = value;
+            return this;
+        }
+
+        /** Copy for one run; reusePrefix and the cancel hook are per run and not copied. */
+        Options copy() {
+            Options copy = new Options();
+            copy.maxNewTokens = maxNewTokens;
+            copy.topK = topK;
+            copy.temperature = temperature;
+            copy.seed = seed;
+            copy.stopTokens = stopTokens;
+            copy.stopOnJsonClose = stopOnJsonClose;
+            copy.constraint = constraint;
+            copy.earlyExitThreshold = earlyExitThreshold;
+            return copy;
+        }
+
+        /** Same prompt + equivalent options give the same result; reusePrefix and the cancel hook are ignored. */
+        boolean isEquivalent(Options other) {
+            if (this == other) {
+                return true;
+            }
+            return maxNewTokens == other.maxNewTokens
+                    && topK == other.topK
+                    && Float.compare(temperature, other.temperature) == 0
+                    && seed == other.seed
+                    && Arrays.equals(stopTokens, other.stopTokens)
+                    && stopOnJsonClose == other.stopOnJsonClose
+                    && Double.compare(earlyExitThreshold, other.earlyExitThreshold) == 0
+                    && (constraint == null ? other.constraint == null : constraint.sameShape(other.constraint));
+        }
+    }
+
+    public static final class Result {
+        public final int[] tokens;
+        public final StopReason stopReason;
+        public final long prefillNs;
+        public final long decodeNs;
+        /** Tokens emitted by the grammar without sampling (included in tokens). */
+        public final int forcedTokens;
+        /** No-action probability at the first sampled step, NaN if early exit was off. */
+        public final double noActionProbability;
+
+        Result(int[] tokens, StopReason stopReason, long prefillNs, long decodeNs, int forcedTokens,
+                double noActionProbability) {
+            this.tokens = tokens;
+            this.stopReason = stopReason;
+            this.prefillNs = prefillNs;
+            this.decodeNs = decodeNs;
+            this.forcedTokens = forcedTokens;
+            this.noActionProbability = noActionProbability;
+        }
+
+        /** Tokens produced by decode steps; forced runs are fed through prefill instead. */
+        public int sampledTokens() {
+            return tokens.length - forcedTokens;
+        }
+
+        /** Sampled tokens per second of decode time; forced tokens and their prefill are excluded. */
+        public double decodeTokensPerSecond() {
+            return decodeNs <= 0 ? 0 : sampledTokens() * 1e9 / decodeNs;
+        }
+    }
+
+    /** Maps a token id to its UTF-8 bytes, used only for JSON close detection. */
+    public interface TokenBytes {
+        byte[] bytes(int token);
+    }
+
+    private LiteRtGenerator() {
+    }
+
+    public static Result generate(Model model, int[] prompt, Options options, TokenBytes tokenBytes) {
+        if (prompt.length == 0) {
+            throw new IllegalArgumentException("Empty prompt");
+        }
+        if (prompt.length >= model.contextTokens()) {
+            throw new IllegalArgumentException("Prompt of " + prompt.length
+                    + " tokens exceeds KV cache of " + model.contextTokens());
+        }
+        Random random = new Random(options.seed);
+        Constraint constraint = options.constraint;
+        JsonCloseDetector detector = new JsonCloseDetector();
+        int[] out = new int[Math.min(options.maxNewTokens, model.contextTokens() - prompt.length)];
+        int produced = 0;
+        int forced = 0;
+        boolean classify = constraint != null && !Double.isNaN(options.earlyExitThreshold);
+        double noAction = Double.NaN;
+
+        // tokens not yet written to the KV cache: the prompt first, later forced runs;
+        // at least the last prompt token is always fed so there are logits to sample
+        int reused = Math.max(0, Math.min(options.reusePrefix, prompt.length - 1));
+        int[] pending = reused == 0 ? prompt : Arrays.copyOfRange(prompt, reused, prompt.length);
+        int pendingLength = prompt.length - reused;
+        int pos = reused;
+        long prefillNs = 0;
+        long decodeNs = 0;
+        StopReason reason = null;
+        while (reason == null) {
+            if (constraint != null) {
+                int[] run = constraint.forcedTokens();
+                int room = Math.min(run.length, out.length - produced);
+                if (room > 0) {
+                    System.arraycopy(run, 0, out, produced, room);
+                    produced += room;
+                    forced += room;
+                    pending = concat(pending, pendingLength, run, room);
+                    pendingLength += room;
+                }
+                if (constraint.isComplete()) {
+                    reason = StopReason.JSON_CLOSED;
+                    break;
+                }
+                if (room < run.length || produced >= out.length) {
+                    reason = limitReason(model, prompt.length, produced);
+                    break;
+                }
+            }
+
+            // all pending tokens but the last go through prefill; the last one is
+            // decoded so its logits drive the next sample
+            long start = System.nanoTime();
+            int chunk = Math.max(1, model.maxPrefillTokens());
+            for (int offset = 0; offset < pendingLength - 1; offset += chunk) {
+                if (isCancelled(options)) {
+                    return new Result(Arrays.copyOf(out, produced), StopReason.CANCELLED,
+                            prefillNs + System.nanoTime() - start, decodeNs, forced, noAction);
+                }
+                model.prefill(pending, offset, Math.min(chunk, pendingLength - 1 - offset), pos + offset);
+            }
+            prefillNs += System.nanoTime() - start;
+            pos += pendingLength - 1;
+
+            start = System.nanoTime();
+            float[] logits = model.decode(pending[pendingLength - 1], pos);
+            pos++;
+            if (isCancelled(options)) {
+                reason = StopReason.CANCELLED;
+            } else {
+                if (constraint != null) {
+                    constraint.mask(logits);
+                }
+                if (classify) {
+                    classify = false;
+                    noAction = constraint.noActionProbability(logits);
+                    if (noAction >= options.earlyExitThreshold) {
+                        decodeNs += System.nanoTime() - start;
+                        reason = StopReason.NO_ACTION;
+                        break;
+                    }
+                }
+                int next = sample(logits, options.topK, options.temperature, random);
+                if (constraint != null && logits[next] == Float.NEGATIVE_INFINITY) {
+                    reason = StopReason.CONSTRAINT_FAILED;
+                } else if (contains(options.stopTokens, next)) {
+                    reason = StopReason.END_OF_TURN;
+                } else {
+                    out[produced++] = next;
+                    if (constraint != null) {
+                        constraint.accept(next);
+                    }
+                    if (constraint != null ? constraint.isComplete()
+                            : options.stopOnJsonClose && detector.feed(tokenBytes.bytes(next))) {
+                        reason = StopReason.JSON_CLOSED;
+                    } else if (produced >= out.length) {
+                        reason = limitReason(model, prompt.length, produced);
+                    }
+                    pending = new int[] { next };
+                    pendingLength = 1;
+                }
+            }
+            decodeNs += System.nanoTime() - start;
+        }
+        return new Result(Arrays.copyOf(out, produced), reason, prefillNs, decodeNs, forced, noAction);
+    }
+
+    private static boolean isCancelled(Options options) {
+        return Thread.currentThread().isInterrupted()
+                || options.cancelled != null && options.cancelled.getAsBoolean();
+    }
+
+    private static StopReason limitReason(Model model, int promptLength, int produced) {
+        return promptLength + produced >= model.contextTokens() ? StopReason.CONTEXT_FULL : StopReason.MAX_TOKENS;
+    }
+
+    private static int[] concat(int[] head, int headLength, int[] tail, int tailLength) {
+        int[] joined = Arrays.copyOf(head, headLength + tailLength);
+        System.arraycopy(tail, 0, joined, headLength, tailLength);
+        return joined;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        for (int candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Greedy argmax, or top-k sampling with temperature.
+     */
+    static int sample(float[] logits, int topK, float temperature, Random random) {
+        if (topK <= 1 || temperature <= 0f) {
+            int best = 0;
+            for (int i = 1; i < logits.length; i++) {
+                if (logits[i] > logits[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+        int k = Math.min(topK, logits.length);
+        int[] ids = new int[k];
+        float[] values = new float[k];
+        Arrays.fill(values, Float.NEGATIVE_INFINITY);
+        // partial insertion sort keeps the k largest in descending order
+        for (int i = 0; i < logits.length; i++) {
+            float v = logits[i];
+            if (v <= values[k - 1]) {
+                continue;
+            }
+            int j = k - 1;
+            while (j > 0 && values[j - 1] < v) {
+                values[j] = values[j - 1];
+                ids[j] = ids[j - 1];
+                j--;
+            }
+            values[j] = v;
+            ids[j] = i;
+        }
+        double max = values[0];
+        double[] weights = new double[k];
+        double sum = 0;
+        for (int i = 0; i < k; i++) {
+            weights[i] = Math.exp((values[i] - max) / temperature);
+            sum += weights[i];
+        }
+        double r = random.nextDouble() * sum;
+        for (int i = 0; i < k; i++) {
+            r -= weights[i];
+            if (r <= 0) {
+                return ids[i];
+            }
+        }
+        return ids[k - 1];
+    }
+
+    /**
+     * Tracks bracket depth outside string literals over a byte stream. Anything
+     * before the first '{' or '[' (e.g. a ```json fence) is ignored. Works on
+     * raw bytes because every structural character is ASCII and UTF-8
+     * continuation bytes never collide with it.
+     */
+    static final class JsonCloseDetector {
+        private int depth;
+        private boolean started;
+        private boolean inString;
+        private boolean escaped;
+
+        /** @return true once the first top-level value has closed */
+        boolean feed(byte[] bytes) {
+            for (byte b : bytes) {
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                    started = true;
+                } else if (b == '}' || b == ']') {
+                    if (started && --depth == 0) {
+                        return true;
+                    }
+                } else if (b == '"' && started) {
+                    inString = true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -2,282 +2,284 @@ package com.example.philotes.data.api;
 
 import android.util.Log;
 
+import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.data.model.ActionPlanCodec;
+
 import java.io.File;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Local action parsing service for LiteRT models.
  *
  * Notes:
  * - Uses LiteRT runtime readiness as local capability gate.
- * - Uses deterministic local rules to output strict JSON for ActionParser.
+ * - Deterministic local rules run first as a fast pre-filter; a confident rule
+ *   hit (action type plus its key slot) is returned without touching the model.
+ * - Everything else goes through on-device generation (Qwen chat template,
+ *   greedy decode constrained to the ActionPlan JSON grammar, so the output
+ *   parses without repair) once the runtime is warm and the tokenizer is
+ *   loaded; output that still fails validation falls back to the rule result.
+ * - Generation classifies first: the first sampled step ranks the ActionType
+ *   enum tokens, and a confident UNKNOWN (or an empty array) ends the call
+ *   there, so broad-keyword false positives cost one decode step.
  */
 public class LiteRtLocalLlmService implements ILlmService {
     private static final String TAG = "LiteRtLocalLlmService";
     private static final int MAX_MULTI_ACTIONS = 3;
+    /** qwen35_mm_q8_ekv2048: KV cache holds 2048 tokens for prompt + completion. */
+    static final int KV_CACHE_TOKENS = 2048;
+    private static final int MAX_OUTPUT_TOKENS = 256;
+    /** Early-exit threshold; a measured no-action probability this high ends generation. */
+    static final double UNKNOWN_EXIT_PROBABILITY = 0.85;
 
     private final File modelFile;
+    private final LiteRtRuntimeRegistry.Lease runtimeLease;
     private final LiteRtQwenService liteRtQwenService;
-    private volatile boolean ready;
-
+    private volatile CompletableFuture<String> readyFuture;
+    // the exact response instance of the calling thread's last early exit, see isEarlyExit
+    private final ThreadLocal<String> earlyExitResponse = new ThreadLocal<>();
+
+    /**
+     * @param alreadyValidated true when the caller has already run a smoke test on this
+     *                         file; otherwise a background warmup starts immediately.
+     */
     public LiteRtLocalLlmService(File modelFile, boolean alreadyValidated) {
         this.modelFile = modelFile;
-        this.liteRtQwenService = new LiteRtQwenService(modelFile);
-        this.ready = alreadyValidated;
+        this.runtimeLease = LiteRtRuntimeRegistry.getInstance().acquire(modelFile);
+        this.liteRtQwenService = runtimeLease.runtime();
+        this.readyFuture = alreadyValidated
+                ? CompletableFuture.completedFuture("validated")
+                : liteRtQwenService.warmupAsync();
     }
 
     public LiteRtLocalLlmService(File modelFile) {
         this(modelFile, false);
     }
 
-    private void ensureReady() {
-        if (ready)
-            return;
-        try {
-            String summary = liteRtQwenService.runSmokeTest();
-            Log.i(TAG, "LiteRT warmup passed: " + summary);
-            ready = true;
-        } catch (Exception e) {
-            Log.e(TAG, "LiteRT warmup failed", e);
-            ready = false;
+    /**
+     * Completes when the shared runtime has passed its warmup; completes
+     * exceptionally if the model cannot be loaded.
+     */
+    public CompletableFuture<String> getReadyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * Decode throughput of the shared runtime measured on real generations, 0 until measured.
+     */
+    public double getTokensPerSecond() {
+        return liteRtQwenService.getTokensPerSecond();
+    }
+
+    /**
+     * Releases this service's reference to the shared runtime.
+     */
+    public void close() {
+        runtimeLease.close();
+    }
+
+    /**
+     * Local capability gate. A pending warmup does not block the call: the
+     * deterministic rule path needs no interpreter, so only a failed warmup
+     * disables local parsing. A cancelled warmup (memory pressure) is restarted.
+     */
+    private boolean isUsable() {
+        CompletableFuture<String> future = readyFuture;
+        if (!future.isDone()) {
+            return true;
+        }
+        if (future.isCancelled()) {
+            readyFuture = liteRtQwenService.warmupAsync();
+            return true;
+        }
+        if (future.isCompletedExceptionally()) {
+            Log.w(TAG, "LiteRT warmup failed for " + modelFile.getName());
+            return false;
         }
+        return true;
     }
 
     @Override
     public String chatCompletion(String systemPrompt, String userMessage) {
-        ensureReady();
-        if (!ready) {
-            return unknownJson(userMessage, 0.0);
+        earlyExitResponse.remove();
+        if (!isUsable()) {
+            return LocalActionRules.unknownJson(userMessage, 0.0);
         }
 
         String normalizedPrompt = systemPrompt == null ? "" : systemPrompt;
         String normalizedMessage = userMessage == null ? "" : userMessage;
         if (isMultiActionPrompt(normalizedPrompt)) {
-            List<ParsedAction> actions = parseMultipleLocally(normalizedMessage, MAX_MULTI_ACTIONS);
-            return toJsonArray(actions);
-        }
-
-        ParsedAction action = parseLocally(normalizedMessage);
-        return toJson(action);
-    }
-
-    @Override
-    public void streamChatCompletion(String systemPrompt, String userMessage, StreamListener listener) {
-        try {
-            String full = chatCompletion(systemPrompt, userMessage);
-            if (full == null) {
-                listener.onError(new IllegalStateException("Local LLM returned empty response"));
-                return;
-            }
-
-            final int chunk = 16;
-            for (int i = 0; i < full.length(); i += chunk) {
-                if (Thread.currentThread().isInterrupted()) {
-                    listener.onError(new InterruptedException("Local stream interrupted"));
-                    return;
+            List<LocalActionRules.ParsedAction> actions = LocalActionRules.parseMultiple(normalizedMessage, MAX_MULTI_ACTIONS);
+            if (!LocalActionRules.allConfident(actions)) {
+                String generated = generateJson(normalizedPrompt, normalizedMessage, true);
+                if (generated != null) {
+                    return generated;
                 }
-                int end = Math.min(full.length(), i + chunk);
-                listener.onDelta(full.substring(i, end));
-                Thread.sleep(18);
             }
-            listener.onComplete();
-        } catch (Exception e) {
-            listener.onError(e);
+            return LocalActionRules.toJsonArray(actions);
         }
-    }
-
-    private ParsedAction parseLocally(String text) {
-        String safeText = text == null ? "" : text;
-        String lower = safeText.toLowerCase(Locale.ROOT);
 
-        if (containsAny(lower, "导航", "去", "前往", "路线", "怎么去", "route", "navigate", "map")) {
-            Map<String, String> slots = new LinkedHashMap<>();
-            String location = extractLocation(safeText);
-            if (!location.isEmpty()) {
-                slots.put("location", location);
-                slots.put("title", location);
+        LocalActionRules.ParsedAction action = LocalActionRules.parse(normalizedMessage);
+        if (!LocalActionRules.isConfident(action)) {
+            String generated = generateJson(normalizedPrompt, normalizedMessage, false);
+            if (generated != null) {
+                return generated;
             }
-            return new ParsedAction("NAVIGATE", slots, 0.78, safeText);
         }
+        return LocalActionRules.toJson(action);
+    }
 
-        if (containsAny(lower, "会议", "开会", "提醒", "日程", "明天", "今天", "周", "点", "calendar", "meeting")) {
-            Map<String, String> slots = new LinkedHashMap<>();
-            String title = extractTitle(safeText);
-            if (!title.isEmpty()) {
-                slots.put("title", title);
-            }
-            String iso = extractIsoTime(safeText);
-            if (!iso.isEmpty()) {
-                slots.put("time", iso);
-            }
-            return new ParsedAction("CREATE_CALENDAR", slots, 0.75, safeText);
-        }
+    /**
+     * True when response is what the last {@link #chatCompletion} on this thread returned
+     * for a {@link LiteRtGenerator.StopReason#NO_ACTION} early exit, i.e. the no-action
+     * probability was measured on the logits and reached {@link #UNKNOWN_EXIT_PROBABILITY}.
+     * Compared by identity, so a generated or rule-based UNKNOWN never qualifies whatever
+     * confidence its text claims.
+     */
+    public boolean isEarlyExit(String response) {
+        return response != null && response == earlyExitResponse.get();
+    }
 
-        if (containsAny(lower, "待办", "todo", "记得", "别忘", "需要", "买", "完成", "任务")) {
-            Map<String, String> slots = new LinkedHashMap<>();
-            String content = extractTitle(safeText);
-            if (content.isEmpty()) {
-                content = safeText.trim();
-            }
-            if (!content.isEmpty()) {
-                slots.put("content", content);
-                slots.put("title", content);
-            }
-            return new ParsedAction("ADD_TODO", slots, 0.73, safeText);
-        }
+    @Override
+    public TokenCounter getTokenCounter() {
+        QwenTokenizer tokenizer = liteRtQwenService.getTokenizer();
+        return tokenizer != null ? tokenizer : HeuristicTokenCounter.INSTANCE;
+    }
 
-        return new ParsedAction("UNKNOWN", new LinkedHashMap<>(), 0.2, safeText);
+    private boolean canGenerate() {
+        CompletableFuture<String> future = readyFuture;
+        return future.isDone() && !future.isCompletedExceptionally() && liteRtQwenService.canGenerate();
     }
 
-    private List<ParsedAction> parseMultipleLocally(String text, int maxActions) {
-        List<ParsedAction> actions = new ArrayList<>();
-        if (text == null || text.trim().isEmpty() || maxActions <= 0) {
-            return actions;
+    /**
+     * Runs the model on the Qwen chat template. Returns null, so the caller keeps
+     * the rule result, when generation is unavailable or the output is not the
+     * expected JSON shape.
+     */
+    private String generateJson(String systemPrompt, String userMessage, boolean expectArray) {
+        if (!canGenerate()) {
+            return null;
         }
-
-        Set<String> dedupSignatures = new LinkedHashSet<>();
-        List<String> segments = splitToSegments(text);
-        if (segments.isEmpty()) {
-            segments.add(text.trim());
+        QwenTokenizer tokenizer = liteRtQwenService.getTokenizer();
+        int[] prompt = tokenizer.encode(buildChatPrompt(systemPrompt, userMessage));
+        if (prompt.length + MAX_OUTPUT_TOKENS > KV_CACHE_TOKENS) {
+            Log.w(TAG, "Prompt of " + prompt.length + " tokens leaves no room for output");
+            return null;
         }
-
-        for (String segment : segments) {
-            ParsedAction action = parseLocally(segment);
-            if ("UNKNOWN".equals(action.type)) {
-                continue;
-            }
-
-            String signature = buildActionSignature(action);
-            if (dedupSignatures.add(signature)) {
-                actions.add(action);
+        CompletableFuture<LiteRtGenerator.Result> pending = liteRtQwenService.submit(prompt,
+                new LiteRtGenerator.Options()
+                        .maxNewTokens(MAX_OUTPUT_TOKENS)
+                        .constraint(liteRtQwenService.newActionPlanConstraint(expectArray, MAX_MULTI_ACTIONS))
+                        .earlyExit(UNKNOWN_EXIT_PROBABILITY)
+                        .stopTokens(tokenizer.specialId(QwenTokenizer.IM_END),
+                                tokenizer.specialId(QwenTokenizer.END_OF_TEXT)));
+        try {
+            LiteRtGenerator.Result result = pending.get();
+            if (result.stopReason == LiteRtGenerator.StopReason.CANCELLED) {
+                return null;
             }
-            if (actions.size() >= maxActions) {
-                break;
-            }
-        }
-
-        if (actions.isEmpty()) {
-            ParsedAction fallback = parseLocally(text);
-            if (!"UNKNOWN".equals(fallback.type)) {
-                actions.add(fallback);
+            if (result.stopReason == LiteRtGenerator.StopReason.NO_ACTION) {
+                Log.d(TAG, String.format(Locale.US, "Early exit: no action (p=%.2f)", result.noActionProbability));
+                String unknown = expectArray ? "[]" : LocalActionRules.unknownJson(userMessage, result.noActionProbability);
+                earlyExitResponse.set(unknown);
+                return unknown;
             }
+            return extractJson(tokenizer.decode(result.tokens, result.tokens.length), expectArray);
+        } catch (InterruptedException e) {
+            // only this request is dropped; the batch it shares keeps running
+            pending.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | RuntimeException e) {
+            Log.w(TAG, "Local generation failed: " + e.getMessage());
+            return null;
         }
+    }
 
-        return actions;
+    private static String buildChatPrompt(String systemPrompt, String userMessage) {
+        // the empty think block switches Qwen3-style models to direct answers
+        return QwenTokenizer.IM_START + "system\n" + systemPrompt + QwenTokenizer.IM_END + "\n"
+                + QwenTokenizer.IM_START + "user\n" + userMessage + QwenTokenizer.IM_END + "\n"
+                + QwenTokenizer.IM_START + "assistant\n<think>\n\n</think>\n\n";
     }
 
-    private static List<String> splitToSegments(String text) {
-        List<String> segments = new ArrayList<>();
-        String[] raw = text.split("[\\n；;。！？!?]+");
-        for (String item : raw) {
-            String normalized = normalizeSegment(item);
-            if (!normalized.isEmpty()) {
-                segments.add(normalized);
+    /**
+     * Cuts the first JSON value out of the completion (models like to wrap it in
+     * a code fence) and reads it with the same ActionPlanCodec as ActionParser.
+     * The plans are written back out, so the caller always gets well-formed JSON.
+     */
+    static String extractJson(String completion, boolean expectArray) {
+        int start = -1;
+        for (int i = 0; i < completion.length(); i++) {
+            char c = completion.charAt(i);
+            if (c == '{' || c == '[') {
+                start = i;
+                break;
             }
         }
-
-        if (segments.size() <= 1 && text.contains("，")) {
-            raw = text.split("[，,]+");
-            for (String item : raw) {
-                String normalized = normalizeSegment(item);
-                if (!normalized.isEmpty()) {
-                    segments.add(normalized);
-                }
+        int end = Math.max(completion.lastIndexOf('}'), completion.lastIndexOf(']'));
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        String json = completion.substring(start, end + 1);
+        if (json.charAt(0) == '{') {
+            // readPlan returns null when the codec hits a MalformedException it cannot recover from
+            ActionPlan plan = ActionPlanCodec.readPlan(json);
+            if (plan == null || plan.getType() == null) {
+                return null;
             }
+            return expectArray
+                    ? ActionPlanCodec.toJson(Collections.singletonList(plan))
+                    : ActionPlanCodec.toJson(plan);
         }
-        return segments;
-    }
-
-    private static String normalizeSegment(String value) {
-        if (value == null) {
-            return "";
+        List<ActionPlan> plans = ActionPlanCodec.readPlans(json);
+        if (plans.isEmpty()) {
+            // objects that could not be read are a bad completion, not an empty answer
+            return expectArray && json.indexOf('{') < 0 ? "[]" : null;
         }
-        String normalized = value.replaceAll("\\s+", " ").trim();
-        if (normalized.length() < 2) {
-            return "";
+        if (expectArray) {
+            return ActionPlanCodec.toJson(plans);
         }
-        return normalized;
-    }
-
-    private static String buildActionSignature(ParsedAction action) {
-        StringBuilder sb = new StringBuilder(action.type);
-        appendSignatureSlot(sb, action.slots, "time");
-        appendSignatureSlot(sb, action.slots, "location");
-        appendSignatureSlot(sb, action.slots, "title");
-        appendSignatureSlot(sb, action.slots, "content");
-        return sb.toString().toLowerCase(Locale.ROOT);
+        return plans.get(0).getType() != null ? ActionPlanCodec.toJson(plans.get(0)) : null;
     }
 
-    private static void appendSignatureSlot(StringBuilder sb, Map<String, String> slots, String key) {
-        sb.append('|').append(key).append('=');
-        if (slots != null) {
-            String value = slots.get(key);
-            if (value != null) {
-                sb.append(value.trim().toLowerCase(Locale.ROOT));
-            }
-        }
-    }
-
-    private static String extractLocation(String text) {
-        Matcher m = Pattern.compile("(?:去|前往|导航到|到)\\s*([\\p{L}\\p{N}\\u4e00-\\u9fa5]{2,30})").matcher(text);
-        if (m.find()) {
-            return m.group(1).trim();
-        }
-        return "";
+    @Override
+    public int getContextWindowTokens() {
+        return KV_CACHE_TOKENS;
     }
 
-    private static String extractTitle(String text) {
-        String clean = text.replaceAll("\\s+", " ").trim();
-        if (clean.length() > 40) {
-            return clean.substring(0, 40);
-        }
-        return clean;
+    @Override
+    public int getMaxOutputTokens() {
+        return MAX_OUTPUT_TOKENS;
     }
 
-    private static String extractIsoTime(String text) {
-        Matcher hm = Pattern.compile("(\\d{1,2})[:：点](\\d{1,2})?").matcher(text);
-        if (hm.find()) {
-            int h = clampInt(hm.group(1), 0, 23, 9);
-            int m = hm.group(2) == null ? 0 : clampInt(hm.group(2), 0, 59, 0);
-            return String.format(Locale.US, "2026-03-26T%02d:%02d:00", h, m);
-        }
-        Matcher ampm = Pattern.compile("(\\d{1,2})\\s*(am|pm)", Pattern.CASE_INSENSITIVE).matcher(text);
-        if (ampm.find()) {
-            int h = clampInt(ampm.group(1), 0, 23, 9);
-            String marker = ampm.group(2).toLowerCase(Locale.ROOT);
-            if ("pm".equals(marker) && h < 12) {
-                h += 12;
-            } else if ("am".equals(marker) && h == 12) {
-                h = 0;
+    @Override
+    public void streamChatCompletion(String systemPrompt, String userMessage, StreamListener listener) {
+        try {
+            String full = chatCompletion(systemPrompt, userMessage);
+            if (full == null) {
+                listener.onError(new IllegalStateException("Local LLM returned empty response"));
+                return;
             }
-            return String.format(Locale.US, "2026-03-26T%02d:%02d:00", h, 0);
-        }
-        return "";
-    }
 
-    private static int clampInt(String value, int min, int max, int fallback) {
-        try {
-            int parsed = Integer.parseInt(value);
-            return Math.max(min, Math.min(max, parsed));
+            final int chunk = 16;
+            for (int i = 0; i < full.length(); i += chunk) {
+                if (Thread.currentThread().isInterrupted()) {
+                    listener.onError(new InterruptedException("Local stream interrupted"));
+                    return;
+                }
+                int end = Math.min(full.length(), i + chunk);
+                listener.onDelta(full.substring(i, end));
+                Thread.sleep(18);
+            }
+            listener.onComplete();
         } catch (Exception e) {
-            return fallback;
-        }
-    }
-
-    private static boolean containsAny(String text, String... keys) {
-        for (String k : keys) {
-            if (text.contains(k))
-                return true;
+            listener.onError(e);
         }
-        return false;
     }
 
     private static boolean isMultiActionPrompt(String systemPrompt) {
@@ -289,74 +291,4 @@ public class LiteRtLocalLlmService implements ILlmService {
                 || lowerPrompt.contains("json array")
                 || lowerPrompt.contains("extract all independent executable actions");
     }
-
-    private static String toJson(ParsedAction action) {
-        StringBuilder slots = new StringBuilder("{");
-        boolean first = true;
-        for (Map.Entry<String, String> entry : action.slots.entrySet()) {
-            if (!first)
-                slots.append(',');
-            slots.append('"').append(escape(entry.getKey())).append('"')
-                    .append(':')
-                    .append('"').append(escape(entry.getValue())).append('"');
-            first = false;
-        }
-        slots.append('}');
-
-        return "{" +
-                "\"type\":\"" + escape(action.type) + "\"," +
-                "\"slots\":" + slots + "," +
-                "\"confidence\":" + String.format(Locale.US, "%.2f", action.confidence) + "," +
-                "\"original_text\":\"" + escape(action.originalText) + "\"" +
-                "}";
-    }
-
-    private static String toJsonArray(List<ParsedAction> actions) {
-        if (actions == null || actions.isEmpty()) {
-            return "[]";
-        }
-        StringBuilder sb = new StringBuilder("[");
-        boolean first = true;
-        for (ParsedAction action : actions) {
-            if (action == null || "UNKNOWN".equals(action.type)) {
-                continue;
-            }
-            if (!first) {
-                sb.append(',');
-            }
-            sb.append(toJson(action));
-            first = false;
-        }
-        sb.append(']');
-        return sb.toString();
-    }
-
-    private static String unknownJson(String originalText, double confidence) {
-        return "{" +
-                "\"type\":\"UNKNOWN\"," +
-                "\"slots\":{}," +
-                "\"confidence\":" + String.format(Locale.US, "%.2f", confidence) + "," +
-                "\"original_text\":\"" + escape(originalText) + "\"" +
-                "}";
-    }
-
-    private static String escape(String s) {
-        if (s == null)
-            return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "");
-    }
-
-    private static final class ParsedAction {
-        final String type;
-        final Map<String, String> slots;
-        final double confidence;
-        final String originalText;
-
-        ParsedAction(String type, Map<String, String> slots, double confidence, String originalText) {
-            this.type = type;
-            this.slots = slots;
-            this.confidence = confidence;
-            this.originalText = originalText == null ? "" : originalText;
-        }
-    }
 }
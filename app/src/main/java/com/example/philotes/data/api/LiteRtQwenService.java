@@ -1,7 +1,11 @@
 package com.example.philotes.data.api;
 
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.example.philotes.utils.MetricsRegistry;
+import com.example.philotes.utils.ModelUtils;
+
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.Tensor;
@@ -13,26 +17,88 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * LiteRT(TFLite) model runtime smoke test service.
+ * LiteRT(TFLite) model runtime: smoke test, warmup and token generation.
  *
  * This class validates that a local Qwen TFLite model can be loaded and
- * executed.
+ * executed. Instances are shared per model file through
+ * {@link LiteRtRuntimeRegistry}; all interpreter access is serialized on the
+ * instance, and the interpreter may be unloaded under memory pressure and
+ * lazily reloaded on next use.
  */
 public class LiteRtQwenService {
     private static final String TAG = "LiteRtQwenService";
+    static final int MIN_RATE_TOKENS = 4;
+    private static final double RATE_EWMA_ALPHA = 0.3;
+
+    private static final ExecutorService WARMUP_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "litert-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private static final ExecutorService AUTOTUNE_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "litert-autotune");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
 
     private final File modelFile;
     private Interpreter interpreter;
+    private volatile boolean warm;
+    private volatile long lastUsedUptimeMs;
+    private volatile long lastLoadLatencyMs = -1;
+    private volatile int loadCount;
+
+    // Cached across inferences and unload/reload cycles
+    private int[][] resolvedInputShapes;
+    private Object[] inputBuffers;
+    private Map<Integer, Object> outputBuffers;
+    private boolean tensorsAllocated;
+
+    private final Object warmupLock = new Object();
+    private CompletableFuture<String> warmupFuture;
+    private volatile boolean warmupCancelled;
+    private volatile String lastSummary;
+    /** Background config search; guarded by warmupLock. */
+    private Future<?> autotuneTask;
+    /** A search was started and has not finished (it may have been cancelled). */
+    private volatile boolean autotunePending;
+    private volatile boolean autotuneCancelled;
+
+    // Generation: signatures resolved on first load, buffers kept across reloads
+    private LiteRtSignatureModel signatureModel;
+    private volatile boolean generative;
+    private volatile QwenTokenizer tokenizer;
+    private volatile GrammarConstraint.TokenIndex tokenIndex;
+    /** Prompt tokens the external KV cache holds at positions 0.., reused by the next generate. */
+    private int[] residentTokens = new int[0];
+    private final LocalInferenceBatcher batcher =
+            new LocalInferenceBatcher(this::generate, LocalInferenceBatcher.DEFAULT_WINDOW_MS);
+
+    private volatile LiteRtAutotuner autotuner;
+    private volatile LiteRtAutotuner.RuntimeConfig runtimeConfig = LiteRtAutotuner.RuntimeConfig.defaults();
+    /** Smoothed decode rate of real generations, 0 until one has produced enough tokens. */
+    private volatile double decodeTokensPerSecond;
 
     public LiteRtQwenService(File modelFile) {
         this.modelFile = modelFile;
     }
 
-    public void initialize() throws IOException {
+    public synchronized void initialize() throws IOException {
+        lastUsedUptimeMs = SystemClock.uptimeMillis();
         if (interpreter != null) {
             return;
         }
@@ -42,57 +108,423 @@ public class LiteRtQwenService {
                     "TFLite model not found: " + (modelFile == null ? "null" : modelFile.getAbsolutePath()));
         }
 
+        long startMs = SystemClock.uptimeMillis();
         MappedByteBuffer modelBuffer = mapFile(modelFile);
         Interpreter.Options options = new Interpreter.Options();
-        options.setNumThreads(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        runtimeConfig.applyTo(options);
         interpreter = new Interpreter(modelBuffer, options);
+        residentTokens = new int[0];
+        if (signatureModel == null) {
+            signatureModel = LiteRtSignatureModel.resolve(interpreter, LiteRtLocalLlmService.KV_CACHE_TOKENS);
+        } else {
+            signatureModel.rebind(interpreter);
+        }
+        generative = signatureModel != null;
+        lastLoadLatencyMs = SystemClock.uptimeMillis() - startMs;
+        loadCount++;
+        Log.i(TAG, "Interpreter loaded in " + lastLoadLatencyMs + "ms (load #" + loadCount + ")");
     }
 
     public String runSmokeTest() throws IOException {
-        initialize();
+        return runSmokeTest(false);
+    }
 
-        if (interpreter == null) {
-            throw new IOException("Interpreter initialization failed");
+    /**
+     * Starts (or joins) a background warmup: map the model, resolve shapes,
+     * preallocate I/O buffers, run one inference and load the tokenizer. The
+     * future completes with the smoke test summary; an already warm runtime
+     * completes immediately. A model never tuned on this device becomes ready
+     * on the default config and is autotuned afterwards in the background.
+     */
+    public CompletableFuture<String> warmupAsync() {
+        synchronized (warmupLock) {
+            if (warm && lastSummary != null) {
+                if (autotunePending) {
+                    // an earlier search was cancelled before it finished
+                    scheduleAutotune();
+                }
+                return CompletableFuture.completedFuture(lastSummary);
+            }
+            if (warmupFuture != null && (!warmupFuture.isDone()
+                    || !warmupFuture.isCompletedExceptionally())) {
+                return warmupFuture;
+            }
+            warmupCancelled = false;
+            warmupFuture = CompletableFuture.supplyAsync(() -> {
+                try {
+                    boolean tuned = applyPersistedConfig();
+                    String summary = runSmokeTest(true);
+                    loadTokenizer();
+                    if (!tuned) {
+                        synchronized (warmupLock) {
+                            scheduleAutotune();
+                        }
+                    }
+                    return summary;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, WARMUP_EXECUTOR);
+            return warmupFuture;
         }
+    }
 
-        for (int i = 0; i < interpreter.getInputTensorCount(); i++) {
-            Tensor tensor = interpreter.getInputTensor(i);
-            int[] resizedShape = normalizeShape(tensor.shape());
-            interpreter.resizeInput(i, resizedShape, false);
+    /**
+     * Cancels a pending warmup and a running autotune. Native inference already
+     * in progress finishes, but the remaining steps are skipped; the next
+     * warmupAsync restarts an unfinished autotune.
+     */
+    public void cancelWarmup() {
+        synchronized (warmupLock) {
+            if (warmupFuture != null && !warmupFuture.isDone()) {
+                warmupCancelled = true;
+                warmupFuture.cancel(false);
+            }
+            if (autotuneTask != null && !autotuneTask.isDone()) {
+                autotuneCancelled = true;
+                autotuneTask.cancel(false);
+            }
         }
+    }
 
-        interpreter.allocateTensors();
+    private synchronized String runSmokeTest(boolean cancellable) throws IOException {
+        checkCancelled(cancellable);
+        initialize();
 
-        Object[] inputs = new Object[interpreter.getInputTensorCount()];
-        for (int i = 0; i < inputs.length; i++) {
-            Tensor tensor = interpreter.getInputTensor(i);
-            inputs[i] = allocateTensorBuffer(tensor);
+        if (interpreter == null) {
+            throw new IOException("Interpreter initialization failed");
         }
 
-        Map<Integer, Object> outputs = new HashMap<>();
-        for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
-            Tensor tensor = interpreter.getOutputTensor(i);
-            outputs.put(i, allocateTensorBuffer(tensor));
-        }
+        checkCancelled(cancellable);
+        prepareIo();
 
+        checkCancelled(cancellable);
+        residentTokens = new int[0];
         long startMs = System.currentTimeMillis();
-        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+        interpreter.runForMultipleInputsOutputs(inputBuffers, outputBuffers);
         long costMs = System.currentTimeMillis() - startMs;
 
-        String summary = "LiteRT smoke test passed. inputs=" + inputs.length
-                + ", outputs=" + outputs.size()
+        String summary = "LiteRT smoke test passed. inputs=" + inputBuffers.length
+                + ", outputs=" + outputBuffers.size()
                 + ", latencyMs=" + costMs;
         Log.i(TAG, summary);
+        lastSummary = summary;
+        warm = true;
+        lastUsedUptimeMs = SystemClock.uptimeMillis();
         return summary;
     }
 
-    public void close() {
+    /**
+     * Applies the persisted autotune result, a cheap preferences read.
+     *
+     * @return false if this model has never been tuned on this device and a search should follow
+     */
+    private boolean applyPersistedConfig() {
+        LiteRtAutotuner tuner = autotuner;
+        if (tuner == null || modelFile == null || !modelFile.exists()) {
+            return true;
+        }
+        try {
+            LiteRtAutotuner.RuntimeConfig tuned = tuner.load(modelFile);
+            if (tuned == null) {
+                return false;
+            }
+            applyRuntimeConfig(tuned);
+        } catch (IOException e) {
+            Log.w(TAG, "Autotune skipped: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /** Caller holds warmupLock. */
+    private void scheduleAutotune() {
+        if (autotuner == null || (autotuneTask != null && !autotuneTask.isDone())) {
+            return;
+        }
+        autotunePending = true;
+        autotuneCancelled = false;
+        autotuneTask = AUTOTUNE_EXECUTOR.submit(this::autotune);
+    }
+
+    /**
+     * Benchmarks the candidate configs and swaps the winner in when the search
+     * ends. Requests arriving meanwhile run between candidates on the config
+     * that made the runtime ready. Failures keep that config.
+     */
+    private void autotune() {
+        LiteRtAutotuner tuner = autotuner;
+        if (tuner == null || modelFile == null || !modelFile.exists()) {
+            autotunePending = false;
+            return;
+        }
+        try {
+            applyRuntimeConfig(tuner.tune(modelFile, this::measureNs));
+            autotunePending = false;
+        } catch (IOException e) {
+            Log.w(TAG, "Autotune failed, keeping " + runtimeConfig + ": " + e.getMessage());
+            autotunePending = false;
+        } catch (CancellationException e) {
+            Log.i(TAG, "Autotune cancelled");
+        }
+    }
+
+    /**
+     * Loads a fresh interpreter with the candidate config and returns the median
+     * latency of {@link LiteRtAutotuner#MEASURE_RUNS} invocations on zeroed input.
+     * The serving config is restored afterwards; the next use reloads it.
+     */
+    private synchronized long measureNs(LiteRtAutotuner.RuntimeConfig config) throws IOException {
+        checkAutotuneCancelled();
+        LiteRtAutotuner.RuntimeConfig serving = runtimeConfig;
+        close();
+        runtimeConfig = config;
+        try {
+            initialize();
+            prepareIo();
+            residentTokens = new int[0];
+            for (int i = 0; i < LiteRtAutotuner.WARMUP_RUNS; i++) {
+                interpreter.runForMultipleInputsOutputs(inputBuffers, outputBuffers);
+            }
+            long[] samples = new long[LiteRtAutotuner.MEASURE_RUNS];
+            for (int i = 0; i < samples.length; i++) {
+                checkAutotuneCancelled();
+                prepareIo();
+                long start = System.nanoTime();
+                interpreter.runForMultipleInputsOutputs(inputBuffers, outputBuffers);
+                samples[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(samples);
+            return samples[samples.length / 2];
+        } finally {
+            close();
+            runtimeConfig = serving;
+        }
+    }
+
+    /**
+     * Switches interpreter options; the current interpreter is dropped and the
+     * next use reloads with the new config.
+     */
+    public synchronized void applyRuntimeConfig(LiteRtAutotuner.RuntimeConfig config) {
+        if (config == null) {
+            return;
+        }
+        if (!config.sameOptions(runtimeConfig)) {
+            close();
+        }
+        runtimeConfig = config;
+    }
+
+    public void setAutotuner(LiteRtAutotuner autotuner) {
+        this.autotuner = autotuner;
+    }
+
+    public LiteRtAutotuner.RuntimeConfig getRuntimeConfig() {
+        return runtimeConfig;
+    }
+
+    /**
+     * Decode throughput measured on real {@link #generate} calls (EWMA), 0 until the
+     * first generation with at least {@link #MIN_RATE_TOKENS} tokens.
+     */
+    public double getTokensPerSecond() {
+        return decodeTokensPerSecond;
+    }
+
+    /**
+     * Folds one generation into the smoothed decode rate; runs with few sampled tokens
+     * or cancelled runs are skipped.
+     */
+    static double smoothedRate(double previous, LiteRtGenerator.Result result) {
+        if (result.sampledTokens() < MIN_RATE_TOKENS || result.decodeNs <= 0
+                || result.stopReason == LiteRtGenerator.StopReason.CANCELLED) {
+            return previous;
+        }
+        double rate = result.decodeTokensPerSecond();
+        return previous <= 0 ? rate : previous + RATE_EWMA_ALPHA * (rate - previous);
+    }
+
+    /**
+     * Loads the BPE vocabulary shipped next to the model. Without it the model
+     * only serves as a readiness gate and local parsing stays rule based.
+     */
+    private void loadTokenizer() {
+        if (tokenizer != null || modelFile == null) {
+            return;
+        }
+        File file = new File(modelFile.getParentFile(), ModelUtils.TOKENIZER_NAME);
+        if (!file.exists()) {
+            Log.i(TAG, "No tokenizer next to model, generation disabled: " + file.getAbsolutePath());
+            return;
+        }
+        try {
+            long startMs = SystemClock.uptimeMillis();
+            QwenTokenizer loaded = QwenTokenizer.load(file);
+            tokenIndex = new GrammarConstraint.TokenIndex(loaded);
+            tokenizer = loaded;
+            Log.i(TAG, "Tokenizer loaded in " + (SystemClock.uptimeMillis() - startMs) + "ms, vocab="
+                    + loaded.vocabSize());
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Tokenizer load failed: " + e.getMessage());
+        }
+    }
+
+    /** Null until the warmup has loaded the tokenizer. */
+    public QwenTokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    /**
+     * Fresh grammar constraint for one ActionPlan object, or for an array of up
+     * to maxItems when array is true. Null until the tokenizer is loaded.
+     */
+    public GrammarConstraint newActionPlanConstraint(boolean array, int maxItems) {
+        QwenTokenizer vocab = tokenizer;
+        GrammarConstraint.TokenIndex index = tokenIndex;
+        if (vocab == null || index == null) {
+            return null;
+        }
+        ActionPlanGrammar grammar = array ? ActionPlanGrammar.forArray(maxItems) : ActionPlanGrammar.forObject();
+        return new GrammarConstraint(grammar, index, vocab::encode);
+    }
+
+    /** True once the model exposes prefill/decode signatures and the tokenizer is loaded. */
+    public boolean canGenerate() {
+        return generative && tokenizer != null;
+    }
+
+    /**
+     * Queues a generation behind {@link LocalInferenceBatcher}, so concurrent
+     * callers share prompt prefixes. Cancel the future to drop just this request.
+     */
+    public CompletableFuture<LiteRtGenerator.Result> submit(int[] promptTokens, LiteRtGenerator.Options options) {
+        return batcher.submit(promptTokens, options);
+    }
+
+    /**
+     * Runs prefill + decode over the prompt tokens. Serialized with every other
+     * interpreter use; an unloaded interpreter is reloaded first. The prompt
+     * prefix still in the KV cache from the previous call is not prefilled again.
+     */
+    public synchronized LiteRtGenerator.Result generate(int[] promptTokens, LiteRtGenerator.Options options)
+            throws IOException {
+        initialize();
+        QwenTokenizer vocab = tokenizer;
+        if (signatureModel == null || vocab == null) {
+            throw new IOException("Model has no generative signatures or tokenizer");
+        }
+        int reused = LocalInferenceBatcher.commonPrefix(residentTokens, residentTokens.length, promptTokens);
+        // a cancelled prefill leaves the cache partially written, so nothing is trusted until it finishes
+        residentTokens = new int[0];
+        LiteRtGenerator.Result result = LiteRtGenerator.generate(signatureModel, promptTokens,
+                options.reusePrefix(reused), vocab::tokenBytes);
+        if (result.stopReason != LiteRtGenerator.StopReason.CANCELLED) {
+            residentTokens = promptTokens;
+        }
+        decodeTokensPerSecond = smoothedRate(decodeTokensPerSecond, result);
+        MetricsRegistry metrics = MetricsRegistry.get();
+        metrics.add(MetricsRegistry.KV_PREFIX_REUSED_TOKENS, reused);
+        metrics.add(MetricsRegistry.KV_PROMPT_TOKENS, promptTokens.length);
+        lastUsedUptimeMs = SystemClock.uptimeMillis();
+        Log.d(TAG, "Generated " + result.tokens.length + " tokens (" + result.forcedTokens + " forced, "
+                + reused + " prompt reused, " + result.stopReason + "), prefill "
+                + result.prefillNs / 1_000_000 + "ms, decode "
+                + String.format(Locale.US, "%.1f", result.decodeTokensPerSecond()) + " tok/s");
+        return result;
+    }
+
+    private void checkCancelled(boolean cancellable) {
+        if (cancellable && warmupCancelled) {
+            throw new CancellationException("LiteRT warmup cancelled");
+        }
+    }
+
+    private void checkAutotuneCancelled() {
+        if (autotuneCancelled) {
+            throw new CancellationException("LiteRT autotune cancelled");
+        }
+    }
+
+    /**
+     * Resolves input shapes and allocates I/O buffers once; later calls (and
+     * reloads after an unload) only re-apply the cached shapes and rewind.
+     */
+    private void prepareIo() {
+        int inputCount = interpreter.getInputTensorCount();
+        if (resolvedInputShapes == null) {
+            resolvedInputShapes = new int[inputCount][];
+            for (int i = 0; i < inputCount; i++) {
+                resolvedInputShapes[i] = normalizeShape(interpreter.getInputTensor(i).shape());
+            }
+        }
+
+        if (!tensorsAllocated) {
+            for (int i = 0; i < inputCount; i++) {
+                interpreter.resizeInput(i, resolvedInputShapes[i], false);
+            }
+            interpreter.allocateTensors();
+            tensorsAllocated = true;
+        }
+
+        if (inputBuffers == null) {
+            inputBuffers = new Object[inputCount];
+            for (int i = 0; i < inputCount; i++) {
+                inputBuffers[i] = allocateTensorBuffer(interpreter.getInputTensor(i));
+            }
+            outputBuffers = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                outputBuffers.put(i, allocateTensorBuffer(interpreter.getOutputTensor(i)));
+            }
+            return;
+        }
+
+        for (Object buffer : inputBuffers) {
+            ((ByteBuffer) buffer).clear();
+        }
+        for (Object buffer : outputBuffers.values()) {
+            ((ByteBuffer) buffer).clear();
+        }
+    }
+
+    /**
+     * Releases the interpreter. The model is mapped again on next use; the warm
+     * flag is kept because the file itself was already validated.
+     */
+    public synchronized void close() {
         if (interpreter != null) {
             interpreter.close();
             interpreter = null;
+            // buffers and shapes survive an unload; only tensor allocation is per interpreter
+            tensorsAllocated = false;
         }
     }
 
+    public File getModelFile() {
+        return modelFile;
+    }
+
+    public synchronized boolean isLoaded() {
+        return interpreter != null;
+    }
+
+    /** True once a smoke test has passed on this model file. */
+    public boolean isWarm() {
+        return warm;
+    }
+
+    public long getLastUsedUptimeMs() {
+        return lastUsedUptimeMs;
+    }
+
+    /** Wall time of the most recent map + interpreter creation, -1 if never loaded. */
+    public long getLastLoadLatencyMs() {
+        return lastLoadLatencyMs;
+    }
+
+    public int getLoadCount() {
+        return loadCount;
+    }
+
     private static MappedByteBuffer mapFile(File file) throws IOException {
         try (FileInputStream inputStream = new FileInputStream(file);
                 FileChannel fileChannel = inputStream.getChannel()) {
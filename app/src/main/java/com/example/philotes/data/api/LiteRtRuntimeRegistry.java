@@ -0,0 +1,209 @@
+package com.example.philotes.data.api;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide registry of LiteRT runtimes, one per model file.
+ *
+ * Callers acquire a {@link Lease} instead of constructing {@link LiteRtQwenService}
+ * directly, so the smoke test, the routers in MainActivity and FloatingButtonService
+ * all share a single mapped model and interpreter. Loading stays lazy (first
+ * {@code initialize()}); on {@code onTrimMemory} unreferenced runtimes are unloaded,
+ * and under critical pressure referenced runtimes idle for {@link #IDLE_UNLOAD_MS}
+ * are unloaded too and reload transparently on next use.
+ */
+public final class LiteRtRuntimeRegistry implements ComponentCallbacks2 {
+    private static final String TAG = "LiteRtRuntimeRegistry";
+
+    static final long IDLE_UNLOAD_MS = 60_000L;
+
+    private static final LiteRtRuntimeRegistry INSTANCE = new LiteRtRuntimeRegistry();
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private volatile boolean attached;
+    private LiteRtAutotuner autotuner;
+
+    public static LiteRtRuntimeRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    LiteRtRuntimeRegistry() {
+    }
+
+    /**
+     * Registers for memory-pressure callbacks. Safe to call repeatedly.
+     */
+    public void attach(Context context) {
+        if (attached || context == null) {
+            return;
+        }
+        synchronized (this) {
+            if (attached) {
+                return;
+            }
+            Context appContext = context.getApplicationContext();
+            if (appContext == null) {
+                appContext = context;
+            }
+            appContext.registerComponentCallbacks(this);
+            autotuner = new LiteRtAutotuner(appContext);
+            for (Entry entry : entries.values()) {
+                entry.runtime.setAutotuner(autotuner);
+            }
+            attached = true;
+        }
+    }
+
+    public synchronized Lease acquire(File modelFile) {
+        String key = modelFile.getAbsolutePath();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(new LiteRtQwenService(modelFile));
+            entry.runtime.setAutotuner(autotuner);
+            entries.put(key, entry);
+        }
+        entry.refCount++;
+        return new Lease(key, entry.runtime);
+    }
+
+    private void release(String key) {
+        LiteRtQwenService orphaned = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.refCount > 0) {
+                entry.refCount--;
+                if (entry.refCount == 0) {
+                    orphaned = entry.runtime;
+                }
+            }
+        }
+        if (orphaned != null) {
+            // nobody is waiting for it any more
+            orphaned.cancelWarmup();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int unloaded = trim(level, SystemClock.uptimeMillis());
+        if (unloaded > 0) {
+            Log.i(TAG, "onTrimMemory(" + level + ") unloaded " + unloaded + " runtime(s)");
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * @return number of interpreters closed
+     */
+    int trim(int level, long nowUptimeMs) {
+        if (level < TRIM_MEMORY_RUNNING_LOW) {
+            return 0;
+        }
+        boolean critical = level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_BACKGROUND;
+
+        List<LiteRtQwenService> victims = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                boolean idle = nowUptimeMs - entry.runtime.getLastUsedUptimeMs() >= IDLE_UNLOAD_MS;
+                if (entry.refCount == 0 || (critical && idle)) {
+                    victims.add(entry.runtime);
+                }
+            }
+        }
+
+        // close() waits for any in-flight inference on that runtime
+        int unloaded = 0;
+        for (LiteRtQwenService runtime : victims) {
+            runtime.cancelWarmup();
+            if (runtime.isLoaded()) {
+                runtime.close();
+                unloaded++;
+            }
+        }
+        return unloaded;
+    }
+
+    public synchronized List<RuntimeStats> getStats() {
+        List<RuntimeStats> stats = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            LiteRtQwenService runtime = e.getValue().runtime;
+            stats.add(new RuntimeStats(e.getKey(), e.getValue().refCount, runtime.isLoaded(),
+                    runtime.getLoadCount(), runtime.getLastLoadLatencyMs(), runtime.getTokensPerSecond()));
+        }
+        return stats;
+    }
+
+    private static final class Entry {
+        final LiteRtQwenService runtime;
+        int refCount;
+
+        Entry(LiteRtQwenService runtime) {
+            this.runtime = runtime;
+        }
+    }
+
+    /**
+     * A counted reference to a shared runtime. Closing the lease never closes the
+     * interpreter; it only makes it eligible for unloading.
+     */
+    public final class Lease implements Closeable {
+        private final String key;
+        private final LiteRtQwenService runtime;
+        private boolean released;
+
+        private Lease(String key, LiteRtQwenService runtime) {
+            this.key = key;
+            this.runtime = runtime;
+        }
+
+        public LiteRtQwenService runtime() {
+            return runtime;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                release(key);
+            }
+        }
+    }
+
+    public static final class RuntimeStats {
+        public final String modelPath;
+        public final int refCount;
+        public final boolean loaded;
+        public final int loadCount;
+        public final long lastLoadLatencyMs;
+        public final double tokensPerSecond;
+
+        RuntimeStats(String modelPath, int refCount, boolean loaded, int loadCount, long lastLoadLatencyMs,
+                double tokensPerSecond) {
+            this.modelPath = modelPath;
+            this.refCount = refCount;
+            this.loaded = loaded;
+            this.loadCount = loadCount;
+            this.lastLoadLatencyMs = lastLoadLatencyMs;
+            this.tokensPerSecond = tokensPerSecond;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.philotes.data.api;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link LiteRtGenerator.Model} over the {@code prefill*} / {@code decode}
+ * signatures of a LiteRT LLM export (ai-edge-torch layout: tokens, input_pos,
+ * optional attention mask, optional external kv_cache_* tensors, logits).
+ *
+ * Exports with several prefill signatures (e.g. prefill_32, prefill_256) get the
+ * smallest one that fits each chunk. External KV buffers are passed as both
+ * input and output of every call: the interpreter copies inputs in before
+ * invoking and outputs out afterwards, so one buffer set suffices. All buffers
+ * survive an interpreter unload; {@link #rebind} attaches a reloaded interpreter.
+ * Not thread-safe; {@link LiteRtQwenService} serializes access.
+ */
+final class LiteRtSignatureModel implements LiteRtGenerator.Model {
+    private static final float MASKED = -1e9f;
+
+    private static final class Signature {
+        final String key;
+        final int capacity;
+        final String tokensName;
+        final String posName;
+        final String maskName;
+        final ByteBuffer tokens;
+        final ByteBuffer pos;
+        final ByteBuffer mask;
+        final int maskColumns;
+        final Map<String, Object> inputs = new HashMap<>();
+        final Map<String, Object> outputs = new HashMap<>();
+
+        Signature(String key, int capacity, String tokensName, String posName, String maskName,
+                int maskColumns) {
+            this.key = key;
+            this.capacity = capacity;
+            this.tokensName = tokensName;
+            this.posName = posName;
+            this.maskName = maskName;
+            this.maskColumns = maskColumns;
+            this.tokens = direct(capacity * 4);
+            this.pos = direct(capacity * 4);
+            this.mask = maskName == null ? null : direct(capacity * maskColumns * 4);
+            inputs.put(tokensName, tokens);
+            inputs.put(posName, pos);
+            if (mask != null) {
+                inputs.put(maskName, mask);
+            }
+        }
+    }
+
+    private Interpreter interpreter;
+    private final int contextTokens;
+    private final List<Signature> prefills;
+    private final Signature decode;
+    private final ByteBuffer logitsBuffer;
+    private final float[] logits;
+
+    private LiteRtSignatureModel(Interpreter interpreter, int contextTokens, List<Signature> prefills,
+            Signature decode, String logitsName, Map<String, ByteBuffer> kvCache) {
+        this.interpreter = interpreter;
+        this.contextTokens = contextTokens;
+        this.prefills = prefills;
+        this.decode = decode;
+        int vocab = interpreter.getOutputTensorFromSignature(logitsName, decode.key).numElements();
+        this.logits = new float[vocab];
+        this.logitsBuffer = direct(vocab * 4);
+        decode.outputs.put(logitsName, logitsBuffer);
+        for (Signature signature : allSignatures()) {
+            for (Map.Entry<String, ByteBuffer> kv : kvCache.entrySet()) {
+                signature.inputs.put(kv.getKey(), kv.getValue());
+                signature.outputs.put(kv.getKey(), kv.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return null when the model has no prefill/decode signatures (classifier-style
+     *         export); the caller then keeps using the rule path only.
+     */
+    static LiteRtSignatureModel resolve(Interpreter interpreter, int contextTokens) {
+        String[] keys = interpreter.getSignatureKeys();
+        String decodeKey = null;
+        List<String> prefillKeys = new ArrayList<>();
+        for (String key : keys) {
+            String lower = key.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("prefill")) {
+                prefillKeys.add(key);
+            } else if (lower.startsWith("decode")) {
+                decodeKey = key;
+            }
+        }
+        if (decodeKey == null || prefillKeys.isEmpty()) {
+            return null;
+        }
+
+        Signature decode = describe(interpreter, decodeKey);
+        String logitsName = null;
+        for (String name : interpreter.getSignatureOutputs(decodeKey)) {
+            if (name.toLowerCase(Locale.ROOT).contains("logits")) {
+                logitsName = name;
+            }
+        }
+        if (decode == null || logitsName == null) {
+            return null;
+        }
+        List<Signature> prefills = new ArrayList<>();
+        for (String key : prefillKeys) {
+            Signature prefill = describe(interpreter, key);
+            if (prefill != null) {
+                prefills.add(prefill);
+            }
+        }
+        if (prefills.isEmpty()) {
+            return null;
+        }
+        Collections.sort(prefills, (a, b) -> Integer.compare(a.capacity, b.capacity));
+
+        Map<String, ByteBuffer> kvCache = new HashMap<>();
+        for (String name : interpreter.getSignatureInputs(decodeKey)) {
+            if (name.toLowerCase(Locale.ROOT).startsWith("kv_cache")) {
+                kvCache.put(name, direct(interpreter.getInputTensorFromSignature(name, decodeKey).numBytes()));
+            }
+        }
+        return new LiteRtSignatureModel(interpreter, contextTokens, prefills, decode, logitsName, kvCache);
+    }
+
+    private static Signature describe(Interpreter interpreter, String key) {
+        String tokensName = null;
+        String posName = null;
+        String maskName = null;
+        for (String name : interpreter.getSignatureInputs(key)) {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("kv_cache")) {
+                continue;
+            }
+            if (lower.contains("token") || lower.contains("input_ids")) {
+                tokensName = name;
+            } else if (lower.contains("pos")) {
+                posName = name;
+            } else if (lower.contains("mask")) {
+                maskName = name;
+            }
+        }
+        if (tokensName == null || posName == null) {
+            return null;
+        }
+        Tensor tokens = interpreter.getInputTensorFromSignature(tokensName, key);
+        if (tokens.dataType() != DataType.INT32) {
+            return null;
+        }
+        int[] shape = tokens.shape();
+        int capacity = Math.max(1, shape[shape.length - 1]);
+        int maskColumns = 0;
+        if (maskName != null) {
+            int[] maskShape = interpreter.getInputTensorFromSignature(maskName, key).shape();
+            maskColumns = maskShape[maskShape.length - 1];
+        }
+        return new Signature(key, capacity, tokensName, posName, maskName, maskColumns);
+    }
+
+    void rebind(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    private List<Signature> allSignatures() {
+        List<Signature> all = new ArrayList<>(prefills);
+        all.add(decode);
+        return all;
+    }
+
+    @Override
+    public int maxPrefillTokens() {
+        return prefills.get(prefills.size() - 1).capacity;
+    }
+
+    @Override
+    public int contextTokens() {
+        return contextTokens;
+    }
+
+    @Override
+    public void prefill(int[] tokens, int offset, int length, int startPos) {
+        Signature signature = prefills.get(prefills.size() - 1);
+        for (Signature candidate : prefills) {
+            if (candidate.capacity >= length) {
+                signature = candidate;
+                break;
+            }
+        }
+        run(signature, tokens, offset, length, startPos);
+    }
+
+    @Override
+    public float[] decode(int token, int pos) {
+        run(decode, new int[] { token }, 0, 1, pos);
+        logitsBuffer.rewind();
+        logitsBuffer.asFloatBuffer().get(logits);
+        return logits;
+    }
+
+    private void run(Signature signature, int[] tokens, int offset, int length, int startPos) {
+        signature.tokens.clear();
+        signature.pos.clear();
+        for (int i = 0; i < signature.capacity; i++) {
+            // padding writes harmless KV rows past the real tokens; they are masked or overwritten later
+            signature.tokens.putInt(i < length ? tokens[offset + i] : 0);
+            signature.pos.putInt(Math.min(startPos + i, contextTokens - 1));
+        }
+        signature.tokens.rewind();
+        signature.pos.rewind();
+        if (signature.mask != null) {
+            fillCausalMask(signature, startPos);
+        }
+        for (Object buffer : signature.inputs.values()) {
+            ((ByteBuffer) buffer).rewind();
+        }
+        for (Object buffer : signature.outputs.values()) {
+            ((ByteBuffer) buffer).rewind();
+        }
+        interpreter.runSignature(signature.inputs, signature.outputs, signature.key);
+    }
+
+    private static void fillCausalMask(Signature signature, int startPos) {
+        ByteBuffer mask = signature.mask;
+        mask.clear();
+        for (int row = 0; row < signature.capacity; row++) {
+            int visible = startPos + row;
+            for (int col = 0; col < signature.maskColumns; col++) {
+                mask.putFloat(col <= visible ? 0f : MASKED);
+            }
+        }
+        mask.rewind();
+    }
+
+    private static ByteBuffer direct(int bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(4, bytes));
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.philotes.data.api;
+
+import com.example.philotes.data.model.ActionPlanCodec;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic keyword/regex parsing behind {@link LiteRtLocalLlmService}:
+ * the pre-filter that answers confident hits without the model and the
+ * fallback when generation is unavailable. Pure Java, so it is also
+ * benchmarked on the JVM (:benchmark).
+ */
+final class LocalActionRules {
+    private static final String[] TODO_MARKERS = { "待办", "todo", "记得", "别忘" };
+
+    private LocalActionRules() {
+    }
+
+    /**
+     * A rule hit is trusted only when the action's key slot was extracted too.
+     * Broad todo keywords (买/需要/完成...) also fire on plain statements, so a
+     * todo is trusted only with an explicit marker; the rest goes to the model's
+     * classification step.
+     */
+    static boolean isConfident(ParsedAction action) {
+        switch (action.type) {
+            case "NAVIGATE":
+                return action.slots.containsKey("location");
+            case "CREATE_CALENDAR":
+                return action.slots.containsKey("time");
+            case "ADD_TODO":
+                return action.slots.containsKey("content")
+                        && containsAny(action.originalText.toLowerCase(Locale.ROOT), TODO_MARKERS);
+            default:
+                return false;
+        }
+    }
+
+    static boolean allConfident(List<ParsedAction> actions) {
+        if (actions.isEmpty()) {
+            return false;
+        }
+        for (ParsedAction action : actions) {
+            if (!isConfident(action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static ParsedAction parse(String text) {
+        String safeText = text == null ? "" : text;
+        String lower = safeText.toLowerCase(Locale.ROOT);
+
+        if (containsAny(lower, "导航", "去", "前往", "路线", "怎么去", "route", "navigate", "map")) {
+            Map<String, String> slots = new LinkedHashMap<>();
+            String location = extractLocation(safeText);
+            if (!location.isEmpty()) {
+                slots.put("location", location);
+                slots.put("title", location);
+            }
+            return new ParsedAction("NAVIGATE", slots, 0.78, safeText);
+        }
+
+        if (containsAny(lower, "会议", "开会", "提醒", "日程", "明天", "今天", "周", "点", "calendar", "meeting")) {
+            Map<String, String> slots = new LinkedHashMap<>();
+            String title = extractTitle(safeText);
+            if (!title.isEmpty()) {
+                slots.put("title", title);
+            }
+            String iso = extractIsoTime(safeText, Calendar.getInstance());
+            if (!iso.isEmpty()) {
+                slots.put("time", iso);
+            }
+            return new ParsedAction("CREATE_CALENDAR", slots, 0.75, safeText);
+        }
+
+        if (containsAny(lower, TODO_MARKERS) || containsAny(lower, "需要", "买", "完成", "任务")) {
+            Map<String, String> slots = new LinkedHashMap<>();
+            String content = extractTitle(safeText);
+            if (content.isEmpty()) {
+                content = safeText.trim();
+            }
+            if (!content.isEmpty()) {
+                slots.put("content", content);
+                slots.put("title", content);
+            }
+            return new ParsedAction("ADD_TODO", slots, 0.73, safeText);
+        }
+
+        return new ParsedAction("UNKNOWN", new LinkedHashMap<>(), 0.2, safeText);
+    }
+
+    static List<ParsedAction> parseMultiple(String text, int maxActions) {
+        List<ParsedAction> actions = new ArrayList<>();
+        if (text == null || text.trim().isEmpty() || maxActions <= 0) {
+            return actions;
+        }
+
+        Set<String> dedupSignatures = new LinkedHashSet<>();
+        List<String> segments = splitToSegments(text);
+        if (segments.isEmpty()) {
+            segments.add(text.trim());
+        }
+
+        for (String segment : segments) {
+            ParsedAction action = parse(segment);
+            if ("UNKNOWN".equals(action.type)) {
+                continue;
+            }
+
+            String signature = buildActionSignature(action);
+            if (dedupSignatures.add(signature)) {
+                actions.add(action);
+            }
+            if (actions.size() >= maxActions) {
+                break;
+            }
+        }
+
+        if (actions.isEmpty()) {
+            ParsedAction fallback = parse(text);
+            if (!"UNKNOWN".equals(fallback.type)) {
+                actions.add(fallback);
+            }
+        }
+
+        return actions;
+    }
+
+    private static List<String> splitToSegments(String text) {
+        List<String> segments = new ArrayList<>();
+        String[] raw = text.split("[\\n；;。！？!?]+");
+        for (String item : raw) {
+            String normalized = normalizeSegment(item);
+            if (!normalized.isEmpty()) {
+                segments.add(normalized);
+            }
+        }
+
+        if (segments.size() <= 1 && text.contains("，")) {
+            raw = text.split("[，,]+");
+            for (String item : raw) {
+                String normalized = normalizeSegment(item);
+                if (!normalized.isEmpty()) {
+                    segments.add(normalized);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static String normalizeSegment(String value) {
+        if (value == null) {
+            return "";
+        }
+        String normalized = value.replaceAll("\\s+", " ").trim();
+        if (normalized.length() < 2) {
+            return "";
+        }
+        return normalized;
+    }
+
+    private static String buildActionSignature(ParsedAction action) {
+        StringBuilder sb = new StringBuilder(action.type);
+        appendSignatureSlot(sb, action.slots, "time");
+        appendSignatureSlot(sb, action.slots, "location");
+        appendSignatureSlot(sb, action.slots, "title");
+        appendSignatureSlot(sb, action.slots, "content");
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static void appendSignatureSlot(StringBuilder sb, Map<String, String> slots, String key) {
+        sb.append('|').append(key).append('=');
+        if (slots != null) {
+            String value = slots.get(key);
+            if (value != null) {
+                sb.append(value.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    private static String extractLocation(String text) {
+        Matcher m = Pattern.compile("(?:去|前往|导航到|到)\\s*([\\p{L}\\p{N}\\u4e00-\\u9fa5]{2,30})").matcher(text);
+        if (m.find()) {
+            return m.group(1).trim();
+        }
+        return "";
+    }
+
+    private static String extractTitle(String text) {
+        String clean = text.replaceAll("\\s+", " ").trim();
+        if (clean.length() > 40) {
+            return clean.substring(0, 40);
+        }
+        return clean;
+    }
+
+    /**
+     * Resolves a clock time relative to now: 明天/tomorrow and 后天 shift the day,
+     * 下午/晚上 move 1-11 o'clock into the afternoon.
+     */
+    private static String extractIsoTime(String text, Calendar now) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        int dayOffset = text.contains("后天") ? 2 : (text.contains("明天") || lower.contains("tomorrow")) ? 1 : 0;
+        Matcher hm = Pattern.compile("(\\d{1,2})[:：点](\\d{1,2})?").matcher(text);
+        if (hm.find()) {
+            int h = clampInt(hm.group(1), 0, 23, 9);
+            int m = hm.group(2) == null ? 0 : clampInt(hm.group(2), 0, 59, 0);
+            if (h < 12 && (text.contains("下午") || text.contains("晚上"))) {
+                h += 12;
+            }
+            return formatIso(now, dayOffset, h, m);
+        }
+        Matcher ampm = Pattern.compile("(\\d{1,2})\\s*(am|pm)", Pattern.CASE_INSENSITIVE).matcher(text);
+        if (ampm.find()) {
+            int h = clampInt(ampm.group(1), 0, 23, 9);
+            String marker = ampm.group(2).toLowerCase(Locale.ROOT);
+            if ("pm".equals(marker) && h < 12) {
+                h += 12;
+            } else if ("am".equals(marker) && h == 12) {
+                h = 0;
+            }
+            return formatIso(now, dayOffset, h, 0);
+        }
+        return "";
+    }
+
+    private static String formatIso(Calendar now, int dayOffset, int hour, int minute) {
+        Calendar day = (Calendar) now.clone();
+        day.add(Calendar.DAY_OF_MONTH, dayOffset);
+        return String.format(Locale.US, "%04d-%02d-%02dT%02d:%02d:00", day.get(Calendar.YEAR),
+                day.get(Calendar.MONTH) + 1, day.get(Calendar.DAY_OF_MONTH), hour, minute);
+    }
+
+    private static int clampInt(String value, int min, int max, int fallback) {
+        try {
+            int parsed = Integer.parseInt(value);
+            return Math.max(min, Math.min(max, parsed));
+        } catch (Exception e) {
+            return fallback;
+        }
+    }
+
+    private static boolean containsAny(String text, String... keys) {
+        for (String k : keys) {
+            if (text.contains(k))
+                return true;
+        }
+        return false;
+    }
+
+    static String toJson(ParsedAction action) {
+        StringBuilder out = new StringBuilder(160);
+        ActionPlanCodec.appendPlan(out, action.type, action.slots, action.confidence, action.originalText);
+        return out.toString();
+    }
+
+    static String toJsonArray(List<ParsedAction> actions) {
+        if (actions == null || actions.isEmpty()) {
+            return "[]";
+        }
+        StringBuilder sb = new StringBuilder(160 * actions.size());
+        sb.append('[');
+        boolean first = true;
+        for (ParsedAction action : actions) {
+            if (action == null || "UNKNOWN".equals(action.type)) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            ActionPlanCodec.appendPlan(sb, action.type, action.slots, action.confidence, action.originalText);
+            first = false;
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    static String unknownJson(String originalText, double confidence) {
+        StringBuilder out = new StringBuilder(96);
+        ActionPlanCodec.appendPlan(out, "UNKNOWN", Collections.emptyMap(), confidence, originalText);
+        return out.toString();
+    }
+
+    static final class ParsedAction {
+        final String type;
+        final Map<String, String> slots;
+        final double confidence;
+        final String originalText;
+
+        ParsedAction(String type, Map<String, String> slots, double confidence, String originalText) {
+            this.type = type;
+            this.slots = slots;
+            this.confidence = confidence;
+            this.originalText = originalText == null ? "" : originalText;
+        }
+    }
+}
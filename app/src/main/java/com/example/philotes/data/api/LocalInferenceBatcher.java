@@ -0,0 +1,211 @@
+package com.example.philotes.data.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Front of the shared local runtime for bursts of requests (proactive scan,
+ * manual capture and a MainActivity parse arriving together).
+ *
+ * Requests are collected for a short window and then run back to back on one
+ * worker thread:
+ * - identical prompts with equivalent options are generated once and share the result;
+ * - the rest are ordered by prompt so requests with the same system prompt run
+ *   adjacently, and each reuses the KV-cache prefix left by the previous one
+ *   instead of prefilling it again.
+ *
+ * Each request is its own future: cancelling one only marks it, the generator
+ * notices at its next step and the worker moves on; the worker thread itself
+ * is never interrupted. The worker exits after {@link #IDLE_EXIT_MS} without
+ * work and is restarted by the next submit.
+ */
+public final class LocalInferenceBatcher {
+    static final long DEFAULT_WINDOW_MS = 4;
+    static final long IDLE_EXIT_MS = 30_000;
+
+    /** Runs one generation; must leave the prompt in the KV cache for the next call. */
+    public interface Runner {
+        LiteRtGenerator.Result run(int[] prompt, LiteRtGenerator.Options options) throws IOException;
+    }
+
+    private static final class Request {
+        final int[] prompt;
+        final LiteRtGenerator.Options options;
+        final CompletableFuture<LiteRtGenerator.Result> future = new CompletableFuture<>();
+
+        Request(int[] prompt, LiteRtGenerator.Options options) {
+            this.prompt = prompt;
+            this.options = options;
+        }
+    }
+
+    private final Runner runner;
+    private final long windowMs;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private boolean workerRunning;
+    private volatile int lastBatchSize;
+
+    public LocalInferenceBatcher(Runner runner, long windowMs) {
+        this.runner = runner;
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Queues a generation. Cancel the returned future to drop the request; the
+     * other members of its batch are unaffected.
+     */
+    public CompletableFuture<LiteRtGenerator.Result> submit(int[] prompt, LiteRtGenerator.Options options) {
+        Request request = new Request(prompt, options);
+        queue.add(request);
+        synchronized (this) {
+            if (!workerRunning) {
+                workerRunning = true;
+                Thread worker = new Thread(this::workLoop, "litert-batcher");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+        return request.future;
+    }
+
+    /** Size of the most recent batch (before coalescing), for diagnostics. */
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    private void workLoop() {
+        List<Request> batch = new ArrayList<>();
+        while (true) {
+            try {
+                Request first = queue.poll(IDLE_EXIT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    synchronized (this) {
+                        if (queue.isEmpty()) {
+                            workerRunning = false;
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                batch.add(first);
+                if (windowMs > 0) {
+                    Thread.sleep(windowMs);
+                }
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    workerRunning = false;
+                }
+                failAll(batch, e);
+                return;
+            }
+            queue.drainTo(batch);
+            lastBatchSize = batch.size();
+            runBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void runBatch(List<Request> batch) {
+        Collections.sort(batch, (a, b) -> comparePrompts(a.prompt, b.prompt));
+        int start = 0;
+        while (start < batch.size()) {
+            int end = start + 1;
+            while (end < batch.size() && Arrays.equals(batch.get(start).prompt, batch.get(end).prompt)) {
+                end++;
+            }
+            coalesce(batch.subList(start, end));
+            start = end;
+        }
+    }
+
+    /**
+     * Splits requests with one prompt into groups whose options give the same
+     * result; a different token budget, constraint shape or early exit runs on its own.
+     */
+    private void coalesce(List<Request> samePrompt) {
+        List<Request> pending = new ArrayList<>(samePrompt);
+        while (!pending.isEmpty()) {
+            LiteRtGenerator.Options first = pending.get(0).options;
+            List<Request> group = new ArrayList<>();
+            for (Iterator<Request> it = pending.iterator(); it.hasNext(); ) {
+                Request request = it.next();
+                if (first.isEquivalent(request.options)) {
+                    group.add(request);
+                    it.remove();
+                }
+            }
+            runGroup(group);
+        }
+    }
+
+    /**
+     * One generation for requests with identical prompts and equivalent options;
+     * cancelled only when all members are. Runs on a copy, the callers' Options are not touched.
+     */
+    private void runGroup(List<Request> group) {
+        Request lead = null;
+        for (Request request : group) {
+            if (!request.future.isDone()) {
+                lead = request;
+                break;
+            }
+        }
+        if (lead == null) {
+            return;
+        }
+        LiteRtGenerator.Options options = lead.options.copy().cancelWhen(() -> allDone(group));
+        try {
+            LiteRtGenerator.Result result = runner.run(lead.prompt, options);
+            for (Request request : group) {
+                request.future.complete(result);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Request request : group) {
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static boolean allDone(List<Request> group) {
+        for (Request request : group) {
+            if (!request.future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void failAll(List<Request> batch, Exception e) {
+        for (Request request : batch) {
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    static int comparePrompts(int[] a, int[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /** Length of the shared leading run of two token sequences. */
+    static int commonPrefix(int[] a, int aLength, int[] b) {
+        int n = Math.min(aLength, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+}
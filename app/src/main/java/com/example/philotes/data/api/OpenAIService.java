@@ -19,6 +19,12 @@ public class OpenAIService implements ILlmService {
     private final OkHttpClient client;
     private final Gson gson;
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    /**
+     * Deliberate per-request budget rather than the model's full window: action
+     * extraction never needs more, and every extra prompt token is billed.
+     */
+    private static final int REQUEST_TOKEN_BUDGET = 2048;
+    private static final int MAX_OUTPUT_TOKENS = 512;
 
     public OpenAIService(String apiKey) {
         this(apiKey, "https://api.openai.com/v1");
@@ -40,6 +46,16 @@ public class OpenAIService implements ILlmService {
         this.gson = new Gson();
     }
 
+    @Override
+    public int getContextWindowTokens() {
+        return REQUEST_TOKEN_BUDGET;
+    }
+
+    @Override
+    public int getMaxOutputTokens() {
+        return MAX_OUTPUT_TOKENS;
+    }
+
     public String chatCompletion(String systemPrompt, String userMessage) {
         JsonObject systemMessage = new JsonObject();
         systemMessage.addProperty("role", "system");
@@ -57,6 +73,7 @@ public class OpenAIService implements ILlmService {
         requestBodyJson.addProperty("model", modelName);
         requestBodyJson.add("messages", messages);
         requestBodyJson.addProperty("temperature", 0.0);
+        requestBodyJson.addProperty("max_tokens", MAX_OUTPUT_TOKENS);
 
         RequestBody body = RequestBody.create(requestBodyJson.toString(), JSON);
 
@@ -130,6 +147,7 @@ public class OpenAIService implements ILlmService {
         requestBodyJson.addProperty("model", modelName);
         requestBodyJson.add("messages", messages);
         requestBodyJson.addProperty("temperature", 0.0);
+        requestBodyJson.addProperty("max_tokens", MAX_OUTPUT_TOKENS);
         requestBodyJson.addProperty("stream", true);
 
         RequestBody body = RequestBody.create(requestBodyJson.toString(), JSON);
@@ -153,31 +171,10 @@ public class OpenAIService implements ILlmService {
 
             BufferedSource source = response.body().source();
             while (!source.exhausted()) {
-                String line = source.readUtf8Line();
-                if (line == null || line.isEmpty() || !line.startsWith("data: ")) {
-                    continue;
-                }
-
-                String data = line.substring(6).trim();
-                if ("[DONE]".equals(data)) {
+                if (dispatchSseLine(gson, source.readUtf8Line(), listener)) {
                     listener.onComplete();
                     return;
                 }
-
-                try {
-                    JsonObject event = gson.fromJson(data, JsonObject.class);
-                    if (event != null && event.has("choices") && event.getAsJsonArray("choices").size() > 0) {
-                        JsonObject choice = event.getAsJsonArray("choices").get(0).getAsJsonObject();
-                        if (choice.has("delta")) {
-                            JsonObject delta = choice.getAsJsonObject("delta");
-                            if (delta.has("content")) {
-                                listener.onDelta(delta.get("content").getAsString());
-                            }
-                        }
-                    }
-                } catch (Exception parseError) {
-                    // Ignore malformed chunks and continue streaming.
-                }
             }
 
             listener.onComplete();
@@ -185,4 +182,37 @@ public class OpenAIService implements ILlmService {
             listener.onError(e);
         }
     }
+
+    /**
+     * Handles one server-sent-events line: forwards the delta content of a
+     * {@code data:} chunk to the listener.
+     *
+     * @return true on the {@code [DONE]} terminator
+     */
+    static boolean dispatchSseLine(Gson gson, String line, StreamListener listener) {
+        if (line == null || line.isEmpty() || !line.startsWith("data: ")) {
+            return false;
+        }
+
+        String data = line.substring(6).trim();
+        if ("[DONE]".equals(data)) {
+            return true;
+        }
+
+        try {
+            JsonObject event = gson.fromJson(data, JsonObject.class);
+            if (event != null && event.has("choices") && event.getAsJsonArray("choices").size() > 0) {
+                JsonObject choice = event.getAsJsonArray("choices").get(0).getAsJsonObject();
+                if (choice.has("delta")) {
+                    JsonObject delta = choice.getAsJsonObject("delta");
+                    if (delta.has("content")) {
+                        listener.onDelta(delta.get("content").getAsString());
+                    }
+                }
+            }
+        } catch (Exception parseError) {
+            // Ignore malformed chunks and continue streaming.
+        }
+        return false;
+    }
 }
@@ -0,0 +1,338 @@
+package com.example.philotes.data.api;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Byte-level BPE tokenizer for the Qwen vocabulary, loaded from a Hugging Face
+ * {@code tokenizer.json} (model.vocab, model.merges, added_tokens).
+ *
+ * Encoding: split on special tokens, pre-tokenize with the Qwen2 regex, map
+ * UTF-8 bytes to the GPT-2 printable alphabet, then apply merges by rank.
+ * Per-word results are cached, so repeated OCR vocabulary is merged once.
+ */
+public final class QwenTokenizer implements TokenCounter {
+    public static final String IM_START = "<|im_start|>";
+    public static final String IM_END = "<|im_end|>";
+    public static final String END_OF_TEXT = "<|endoftext|>";
+
+    private static final Pattern PRE_TOKENIZE = Pattern.compile(
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}"
+                    + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+    private static final int WORD_CACHE_SIZE = 4096;
+
+    private static final char[] BYTE_TO_CHAR = new char[256];
+    private static final int[] CHAR_TO_BYTE = new int[512];
+
+    static {
+        Arrays.fill(CHAR_TO_BYTE, -1);
+        int extra = 0;
+        for (int b = 0; b < 256; b++) {
+            boolean printable = (b >= '!' && b <= '~') || (b >= 0xA1 && b <= 0xAC) || (b >= 0xAE && b <= 0xFF);
+            char c = printable ? (char) b : (char) (256 + extra++);
+            BYTE_TO_CHAR[b] = c;
+            CHAR_TO_BYTE[c] = b;
+        }
+    }
+
+    private final Map<String, Integer> vocab;
+    private final String[] idToToken;
+    private final Map<String, Integer> mergeRanks;
+    private final Map<String, Integer> specialTokens;
+    private final Pattern specialPattern;
+    private final Map<String, int[]> wordCache = new LinkedHashMap<String, int[]>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > WORD_CACHE_SIZE;
+        }
+    };
+
+    QwenTokenizer(Map<String, Integer> vocab, List<String> merges, Map<String, Integer> specialTokens) {
+        this.vocab = vocab;
+        this.specialTokens = specialTokens;
+        int maxId = -1;
+        for (int id : vocab.values()) {
+            maxId = Math.max(maxId, id);
+        }
+        for (int id : specialTokens.values()) {
+            maxId = Math.max(maxId, id);
+        }
+        idToToken = new String[maxId + 1];
+        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
+            idToToken[entry.getValue()] = entry.getKey();
+        }
+        for (Map.Entry<String, Integer> entry : specialTokens.entrySet()) {
+            idToToken[entry.getValue()] = entry.getKey();
+        }
+        mergeRanks = new HashMap<>(merges.size() * 2);
+        for (int i = 0; i < merges.size(); i++) {
+            mergeRanks.put(merges.get(i), i);
+        }
+        if (specialTokens.isEmpty()) {
+            specialPattern = null;
+        } else {
+            StringBuilder alternation = new StringBuilder();
+            for (String token : specialTokens.keySet()) {
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append(Pattern.quote(token));
+            }
+            specialPattern = Pattern.compile(alternation.toString());
+        }
+    }
+
+    /**
+     * Streams {@code tokenizer.json}; the vocabulary is ~150k entries, so no JSON tree is built.
+     */
+    public static QwenTokenizer load(File file) throws IOException {
+        Map<String, Integer> vocab = new HashMap<>();
+        List<String> merges = new ArrayList<>();
+        Map<String, Integer> special = new LinkedHashMap<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+                JsonReader json = new JsonReader(reader)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if ("added_tokens".equals(name)) {
+                    readAddedTokens(json, special);
+                } else if ("model".equals(name)) {
+                    readModel(json, vocab, merges);
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+        if (vocab.isEmpty() || merges.isEmpty()) {
+            throw new IOException("Not a BPE tokenizer.json: " + file.getAbsolutePath());
+        }
+        return new QwenTokenizer(vocab, merges, special);
+    }
+
+    private static void readAddedTokens(JsonReader json, Map<String, Integer> special) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            String content = null;
+            int id = -1;
+            boolean isSpecial = false;
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if ("content".equals(field)) {
+                    content = json.nextString();
+                } else if ("id".equals(field)) {
+                    id = json.nextInt();
+                } else if ("special".equals(field)) {
+                    isSpecial = json.nextBoolean();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+            if (content != null && id >= 0 && isSpecial) {
+                special.put(content, id);
+            }
+        }
+        json.endArray();
+    }
+
+    private static void readModel(JsonReader json, Map<String, Integer> vocab, List<String> merges)
+            throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if ("vocab".equals(field)) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    vocab.put(json.nextName(), json.nextInt());
+                }
+                json.endObject();
+            } else if ("merges".equals(field)) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (json.peek() == JsonToken.BEGIN_ARRAY) {
+                        // newer tokenizers store merges as ["a", "b"] pairs
+                        json.beginArray();
+                        String left = json.nextString();
+                        String right = json.nextString();
+                        json.endArray();
+                        merges.add(left + " " + right);
+                    } else {
+                        merges.add(json.nextString());
+                    }
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    public int[] encode(String text) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        IntList out = new IntList(text.length());
+        if (specialPattern == null) {
+            encodeOrdinary(text, out);
+            return out.toArray();
+        }
+        Matcher m = specialPattern.matcher(text);
+        int last = 0;
+        while (m.find()) {
+            encodeOrdinary(text.substring(last, m.start()), out);
+            out.add(specialTokens.get(m.group()));
+            last = m.end();
+        }
+        encodeOrdinary(text.substring(last), out);
+        return out.toArray();
+    }
+
+    @Override
+    public int countTokens(String text) {
+        return encode(text).length;
+    }
+
+    private void encodeOrdinary(String text, IntList out) {
+        if (text.isEmpty()) {
+            return;
+        }
+        Matcher m = PRE_TOKENIZE.matcher(text);
+        while (m.find()) {
+            String word = m.group();
+            int[] ids;
+            synchronized (wordCache) {
+                ids = wordCache.get(word);
+            }
+            if (ids == null) {
+                ids = bpe(word);
+                synchronized (wordCache) {
+                    wordCache.put(word, ids);
+                }
+            }
+            out.addAll(ids);
+        }
+    }
+
+    private int[] bpe(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        List<String> parts = new ArrayList<>(bytes.length);
+        for (byte b : bytes) {
+            parts.add(String.valueOf(BYTE_TO_CHAR[b & 0xFF]));
+        }
+        while (parts.size() > 1) {
+            int bestRank = Integer.MAX_VALUE;
+            int bestIndex = -1;
+            for (int i = 0; i < parts.size() - 1; i++) {
+                Integer rank = mergeRanks.get(parts.get(i) + " " + parts.get(i + 1));
+                if (rank != null && rank < bestRank) {
+                    bestRank = rank;
+                    bestIndex = i;
+                }
+            }
+            if (bestIndex < 0) {
+                break;
+            }
+            parts.set(bestIndex, parts.get(bestIndex) + parts.get(bestIndex + 1));
+            parts.remove(bestIndex + 1);
+        }
+        int[] ids = new int[parts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Integer id = vocab.get(parts.get(i));
+            if (id == null) {
+                throw new IllegalStateException("Token missing from vocab: " + parts.get(i));
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Raw UTF-8 bytes of one token; a multi-byte character may span tokens, so
+     * streaming callers should accumulate bytes before decoding. Special tokens
+     * decode to nothing.
+     */
+    public byte[] tokenBytes(int id) {
+        if (id < 0 || id >= idToToken.length || idToToken[id] == null || isSpecial(id)) {
+            return new byte[0];
+        }
+        String token = idToToken[id];
+        byte[] bytes = new byte[token.length()];
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            int b = c < CHAR_TO_BYTE.length ? CHAR_TO_BYTE[c] : -1;
+            bytes[i] = (byte) (b < 0 ? '?' : b);
+        }
+        return bytes;
+    }
+
+    public String decode(int[] ids, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length * 3);
+        for (int i = 0; i < length; i++) {
+            byte[] bytes = tokenBytes(ids[i]);
+            out.write(bytes, 0, bytes.length);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    public boolean isSpecial(int id) {
+        return id >= 0 && id < idToToken.length && specialTokens.containsKey(idToToken[id]);
+    }
+
+    /** @return id of a special token, or -1 if the vocabulary has no such token */
+    public int specialId(String token) {
+        Integer id = specialTokens.get(token);
+        return id == null ? -1 : id;
+    }
+
+    public int vocabSize() {
+        return idToToken.length;
+    }
+
+    /** Growable int array; avoids boxing on the encode path. */
+    private static final class IntList {
+        private int[] data;
+        private int size;
+
+        IntList(int capacity) {
+            data = new int[Math.max(8, capacity)];
+        }
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void addAll(int[] values) {
+            if (size + values.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(size * 2, size + values.length));
+            }
+            System.arraycopy(values, 0, data, size, values.length);
+            size += values.length;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -4,7 +4,10 @@ import android.content.Context;
 import android.util.Log;
 
 import com.example.philotes.utils.AiSettingsManager;
-import com.example.philotes.utils.ModelUtils;
+import com.example.philotes.utils.MetricsRegistry;
+import com.example.philotes.utils.ModelCatalog;
+import com.example.philotes.utils.ModelInstaller;
+import com.example.philotes.utils.PipelineTracer;
 
 import java.io.File;
 import java.util.Locale;
@@ -15,21 +18,58 @@ import java.util.Locale;
  */
 public class RoutedLlmService implements ILlmService {
     private static final String TAG = "RoutedLlmService";
+    /** Below this measured decode speed a 256-token local answer takes over a minute. */
+    static final double MIN_LOCAL_TOKENS_PER_SECOND = 4.0;
 
     private final Context appContext;
     private final AiSettingsManager settingsManager;
 
     private volatile ILlmService cachedLocalService;
     private volatile ILlmService cachedCloudService;
+    private boolean closed;
 
     public RoutedLlmService(Context context) {
         this.appContext = context.getApplicationContext();
         this.settingsManager = new AiSettingsManager(appContext);
+        LiteRtRuntimeRegistry.getInstance().attach(appContext);
+    }
+
+    /**
+     * Resolves the local model off the calling thread so its warmup starts now
+     * rather than on the first request. No-op under cloud-only routing.
+     */
+    public void prewarmLocalAsync() {
+        if (AiSettingsManager.ROUTING_CLOUD_ONLY.equals(settingsManager.getRoutingPolicy())) {
+            return;
+        }
+        new Thread(this::getLocalService, "llm-prewarm").start();
+    }
+
+    /**
+     * Releases the shared local runtime reference held by this router.
+     */
+    public void close() {
+        ILlmService local;
+        synchronized (this) {
+            closed = true;
+            local = cachedLocalService;
+            cachedLocalService = null;
+        }
+        if (local instanceof LiteRtLocalLlmService) {
+            ((LiteRtLocalLlmService) local).close();
+        }
     }
 
     @Override
     public String chatCompletion(String systemPrompt, String userMessage) {
         String policy = settingsManager.getRoutingPolicy();
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("route")) {
+            span.arg("policy", policy);
+            return route(policy, systemPrompt, userMessage);
+        }
+    }
+
+    private String route(String policy, String systemPrompt, String userMessage) {
 
         if (AiSettingsManager.ROUTING_LOCAL_ONLY.equals(policy)) {
             return localOrUnknown(systemPrompt, userMessage);
@@ -40,8 +80,17 @@ public class RoutedLlmService implements ILlmService {
         }
 
         // Smart routing (default): local first, then cloud fallback.
+        // A local model measured too slow on this device yields to a configured cloud backend.
+        if (isLocalTooSlow()) {
+            String cloudFirst = cloudOrNull(systemPrompt, userMessage);
+            if (cloudFirst != null && !cloudFirst.trim().isEmpty()) {
+                return cloudFirst;
+            }
+            return localOrUnknown(systemPrompt, userMessage);
+        }
+
         String localResp = localOrNull(systemPrompt, userMessage);
-        if (localResp != null && !isUnknownResponse(localResp)) {
+        if (localResp != null && (!isUnknownResponse(localResp) || isEarlyExitUnknown(localResp))) {
             return localResp;
         }
 
@@ -79,7 +128,90 @@ public class RoutedLlmService implements ILlmService {
             return;
         }
 
-        target.streamChatCompletion(systemPrompt, userMessage, listener);
+        String latencyMetric = target == cachedLocalService
+                ? MetricsRegistry.LLM_LOCAL_LATENCY
+                : MetricsRegistry.LLM_CLOUD_LATENCY;
+        target.streamChatCompletion(systemPrompt, userMessage, measured(listener, latencyMetric));
+    }
+
+    /** Records time to the first delta and to the end of a streamed answer, failed or not. */
+    private static StreamListener measured(StreamListener listener, String latencyMetric) {
+        final long startNs = System.nanoTime();
+        return new StreamListener() {
+            private boolean firstDeltaSeen;
+
+            @Override
+            public void onDelta(String delta) {
+                if (!firstDeltaSeen) {
+                    firstDeltaSeen = true;
+                    MetricsRegistry.get().recordNanos(MetricsRegistry.LLM_FIRST_DELTA, System.nanoTime() - startNs);
+                }
+                listener.onDelta(delta);
+            }
+
+            @Override
+            public void onComplete() {
+                MetricsRegistry.get().recordNanos(latencyMetric, System.nanoTime() - startNs);
+                listener.onComplete();
+            }
+
+            @Override
+            public void onError(Exception error) {
+                MetricsRegistry.get().recordNanos(latencyMetric, System.nanoTime() - startNs);
+                listener.onError(error);
+            }
+        };
+    }
+
+    @Override
+    public int getContextWindowTokens() {
+        ILlmService target = budgetTarget();
+        return target == null ? 0 : target.getContextWindowTokens();
+    }
+
+    @Override
+    public int getMaxOutputTokens() {
+        ILlmService target = budgetTarget();
+        return target == null ? ILlmService.super.getMaxOutputTokens() : target.getMaxOutputTokens();
+    }
+
+    @Override
+    public TokenCounter getTokenCounter() {
+        ILlmService target = budgetTarget();
+        return target == null ? ILlmService.super.getTokenCounter() : target.getTokenCounter();
+    }
+
+    /**
+     * Backend whose window bounds the prompt. Smart routing sends the same text to the
+     * local model first, so the local window applies whenever a local model exists.
+     */
+    private ILlmService budgetTarget() {
+        String policy = settingsManager.getRoutingPolicy();
+        if (AiSettingsManager.ROUTING_CLOUD_ONLY.equals(policy)) {
+            return getCloudService();
+        }
+        ILlmService local = getLocalService();
+        if (local != null || AiSettingsManager.ROUTING_LOCAL_ONLY.equals(policy)) {
+            return local;
+        }
+        return getCloudService();
+    }
+
+    /**
+     * Decode throughput measured on real local generations, 0 if unknown or no local model.
+     * Until the first local generation the speed gate does not apply.
+     */
+    public double getLocalTokensPerSecond() {
+        ILlmService local = getLocalService();
+        return local instanceof LiteRtLocalLlmService
+                ? ((LiteRtLocalLlmService) local).getTokensPerSecond()
+                : 0;
+    }
+
+    private boolean isLocalTooSlow() {
+        double tokensPerSecond = getLocalTokensPerSecond();
+        return tokensPerSecond > 0 && tokensPerSecond < MIN_LOCAL_TOKENS_PER_SECOND
+                && settingsManager.isApiConfigured();
     }
 
     private String localOrUnknown(String systemPrompt, String userMessage) {
@@ -97,11 +229,17 @@ public class RoutedLlmService implements ILlmService {
         if (local == null) {
             return null;
         }
-        try {
-            return local.chatCompletion(systemPrompt, userMessage);
-        } catch (Exception e) {
-            Log.w(TAG, "Local LLM failed: " + e.getClass().getSimpleName());
-            return null;
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("route.local")) {
+            try {
+                long startNs = System.nanoTime();
+                String resp = local.chatCompletion(systemPrompt, userMessage);
+                MetricsRegistry.get().recordNanos(MetricsRegistry.LLM_LOCAL_LATENCY, System.nanoTime() - startNs);
+                return resp;
+            } catch (Exception e) {
+                span.arg("error", e.getClass().getSimpleName());
+                Log.w(TAG, "Local LLM failed: " + e.getClass().getSimpleName());
+                return null;
+            }
         }
     }
 
@@ -110,11 +248,17 @@ public class RoutedLlmService implements ILlmService {
         if (cloud == null) {
             return null;
         }
-        try {
-            return cloud.chatCompletion(systemPrompt, userMessage);
-        } catch (Exception e) {
-            Log.w(TAG, "Cloud LLM failed: " + e.getClass().getSimpleName());
-            return null;
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("route.cloud")) {
+            try {
+                long startNs = System.nanoTime();
+                String resp = cloud.chatCompletion(systemPrompt, userMessage);
+                MetricsRegistry.get().recordNanos(MetricsRegistry.LLM_CLOUD_LATENCY, System.nanoTime() - startNs);
+                return resp;
+            } catch (Exception e) {
+                span.arg("error", e.getClass().getSimpleName());
+                Log.w(TAG, "Cloud LLM failed: " + e.getClass().getSimpleName());
+                return null;
+            }
         }
     }
 
@@ -123,12 +267,20 @@ public class RoutedLlmService implements ILlmService {
             return cachedLocalService;
         }
 
-        File modelFile = ModelUtils.getModelFile(appContext);
-        if (modelFile == null || !modelFile.exists() || !modelFile.getName().endsWith(".tflite")) {
+        // 目录在启动/变更时已探测过，这里不再逐个位置 stat
+        File modelFile = ModelCatalog.getInstance(appContext).getFile(ModelCatalog.LLM);
+        if (modelFile == null || !modelFile.getName().endsWith(".tflite")) {
+            // Never copy on the request path: install in the background and use the fallback for now
+            if (ModelInstaller.hasBundledModel(appContext)) {
+                ModelInstaller.installBundledAsync(appContext, null);
+            }
             return null;
         }
 
         synchronized (this) {
+            if (closed) {
+                return null;
+            }
             if (cachedLocalService == null) {
                 cachedLocalService = new LiteRtLocalLlmService(modelFile);
             }
@@ -164,6 +316,16 @@ public class RoutedLlmService implements ILlmService {
         return compact.contains("\"TYPE\":\"UNKNOWN\"");
     }
 
+    /**
+     * Only the local model's early exit, taken on the measured no-action probability,
+     * is final and saves the cloud round trip. Other UNKNOWNs (rules, or a generated
+     * object whatever confidence it reports) go through normal fallback.
+     */
+    private boolean isEarlyExitUnknown(String response) {
+        ILlmService local = cachedLocalService;
+        return local instanceof LiteRtLocalLlmService && ((LiteRtLocalLlmService) local).isEarlyExit(response);
+    }
+
     private String unknownJson(String originalText) {
         String safe = originalText == null ? "" : originalText
                 .replace("\\", "\\\\")
@@ -0,0 +1,8 @@
+package com.example.philotes.data.api;
+
+/**
+ * Counts prompt tokens the way a given LLM backend would.
+ */
+public interface TokenCounter {
+    int countTokens(String text);
+}
@@ -1,6 +1,5 @@
 package com.example.philotes.data.model;
 
-import com.google.gson.annotations.SerializedName;
 import java.util.Map;
 
 /**
@@ -12,26 +11,25 @@ public class ActionPlan {
      * The type of action to be performed.
      * e.g., CREATE_CALENDAR, NAVIGATE_TO, ADD_TODO
      */
-    @SerializedName("type")
     private ActionType type;
 
     /**
      * Extracted parameters for the action.
      * e.g., { "title": "Review Meeting", "time": "2024-01-24T10:00", "location": "Room 505" }
+     * Held as an immutable {@link ActionSlots}. The field stays a Map so that a
+     * reflective read (the Gson reference in tests) still works; such a map is
+     * compacted on first access.
      */
-    @SerializedName("slots")
     private Map<String, String> slots;
 
     /**
      * The original text from which this plan was derived.
      */
-    @SerializedName("original_text")
     private String originalText;
 
     /**
      * Confidence score of the extraction (0.0 - 1.0).
      */
-    @SerializedName("confidence")
     private double confidence = 1.0;
 
     // Constructors
@@ -39,7 +37,7 @@ public class ActionPlan {
 
     public ActionPlan(ActionType type, Map<String, String> slots, String originalText, double confidence) {
         this.type = type;
-        this.slots = slots;
+        this.slots = ActionSlots.copyOf(slots);
         this.originalText = originalText;
         this.confidence = confidence;
     }
@@ -53,12 +51,15 @@ public class ActionPlan {
         this.type = type;
     }
 
-    public Map<String, String> getSlots() {
-        return slots;
+    public ActionSlots getSlots() {
+        if (slots != null && !(slots instanceof ActionSlots)) {
+            slots = ActionSlots.copyOf(slots);
+        }
+        return (ActionSlots) slots;
     }
 
     public void setSlots(Map<String, String> slots) {
-        this.slots = slots;
+        this.slots = ActionSlots.copyOf(slots);
     }
 
     public String getOriginalText() {
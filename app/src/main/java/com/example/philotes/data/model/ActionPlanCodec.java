@@ -0,0 +1,630 @@
+package com.example.philotes.data.model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ActionPlan 专用的 JSON 编解码器，替代每次解析都走一遍的 Gson 反射。
+ *
+ * 读取直接在 CharSequence 上单遍扫描：字段名与 type 的值在复用缓冲区里按字符比对，
+ * ActionType 和常见槽位键（title/time/location/content）直接返回常量，只为槽位值和原文分配字符串。
+ * 槽位直接写入不可变的 ActionSlots，调用方无需再复制或包装。
+ *
+ * 宽松程度不低于原先的 Gson lenient 模式，并对模型输出的常见毛病更宽容：
+ * - 尾随逗号、缺失逗号、单引号字符串、不加引号的键与值；
+ * - 输入在任意位置截断（未闭合的字符串、对象、数组）时按已读内容闭合；
+ * - 大小写不一致的 type；槽位里的数字/布尔值转成字符串，嵌套结构与 null 跳过；
+ * - 数组中某个元素损坏时保留之前已解析的计划。
+ * 代码块围栏与对象提取由调用方在读取前交给 domain.JsonRepair 处理。
+ */
+public final class ActionPlanCodec {
+
+    public static final String FIELD_TYPE = "type";
+    public static final String FIELD_SLOTS = "slots";
+    public static final String FIELD_ORIGINAL_TEXT = "original_text";
+    public static final String FIELD_CONFIDENCE = "confidence";
+
+    public static final String SLOT_TITLE = ActionSlots.TITLE;
+    public static final String SLOT_TIME = ActionSlots.TIME;
+    public static final String SLOT_LOCATION = ActionSlots.LOCATION;
+    public static final String SLOT_CONTENT = ActionSlots.CONTENT;
+
+    private static final String[] KNOWN_SLOTS = {SLOT_TITLE, SLOT_TIME, SLOT_LOCATION, SLOT_CONTENT};
+    private static final ActionType[] TYPES = ActionType.values();
+
+    private static final int KEY_OTHER = 0;
+    private static final int KEY_TYPE = 1;
+    private static final int KEY_SLOTS = 2;
+    private static final int KEY_ORIGINAL_TEXT = 3;
+    private static final int KEY_CONFIDENCE = 4;
+
+    private static final int VALUE_STRING = 0;
+    private static final int VALUE_LITERAL = 1;
+    private static final int VALUE_NULL = 2;
+    private static final int VALUE_COMPOSITE = 3;
+    private static final int VALUE_MISSING = 4;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ActionPlanCodec() {
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 读取一个计划对象（首个非空白字符必须是 '{'）。
+     *
+     * @return 计划（type 可能为 null，由调用方归一化）；不是对象或语法无法恢复时返回 null
+     */
+    public static ActionPlan readPlan(CharSequence json) {
+        if (json == null) {
+            return null;
+        }
+        Cursor cursor = new Cursor(json);
+        if (cursor.peek() != '{') {
+            return null;
+        }
+        try {
+            return cursor.readPlan();
+        } catch (MalformedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 读取计划数组；顶层是单个对象时按只有一个元素的数组处理。
+     * 非对象元素被跳过，遇到无法恢复的语法错误时返回此前已读到的计划。
+     */
+    public static List<ActionPlan> readPlans(CharSequence json) {
+        if (json == null) {
+            return Collections.emptyList();
+        }
+        Cursor cursor = new Cursor(json);
+        int first = cursor.peek();
+        if (first == '{') {
+            ActionPlan plan = readPlan(json);
+            return plan == null ? Collections.emptyList() : Collections.singletonList(plan);
+        }
+        if (first != '[') {
+            return Collections.emptyList();
+        }
+        List<ActionPlan> plans = new ArrayList<>();
+        cursor.pos++;
+        try {
+            while (true) {
+                int c = cursor.peek();
+                if (c == -1 || c == ']') {
+                    break;
+                }
+                if (c == ',') {
+                    cursor.pos++;
+                } else if (c == '{') {
+                    plans.add(cursor.readPlan());
+                } else {
+                    int before = cursor.pos;
+                    cursor.skipValue();
+                    if (cursor.pos == before) {
+                        cursor.pos++;
+                    }
+                }
+            }
+        } catch (MalformedException e) {
+            // 保留损坏元素之前的结果
+        }
+        return plans;
+    }
+
+    public static ActionPlan readPlan(Reader reader) throws IOException {
+        return readPlan(drain(reader));
+    }
+
+    public static List<ActionPlan> readPlans(Reader reader) throws IOException {
+        return readPlans(drain(reader));
+    }
+
+    /** 按名称匹配 ActionType（忽略大小写与首尾空白），不识别时返回 null。 */
+    public static ActionType typeOf(CharSequence name) {
+        if (name == null) {
+            return null;
+        }
+        int start = 0;
+        int end = name.length();
+        while (start < end && Character.isWhitespace(name.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(name.charAt(end - 1))) {
+            end--;
+        }
+        for (ActionType type : TYPES) {
+            if (regionEqualsIgnoreCase(name, start, end, type.name())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /** 常见槽位键返回共享常量，其余原样转成字符串。 */
+    public static String internSlotKey(CharSequence key) {
+        for (String known : KNOWN_SLOTS) {
+            if (contentEquals(key, known)) {
+                return known;
+            }
+        }
+        return key.toString();
+    }
+
+    // ==================== 写出 ====================
+
+    public static String toJson(ActionPlan plan) {
+        StringBuilder out = new StringBuilder(128);
+        appendPlan(out, plan);
+        return out.toString();
+    }
+
+    public static String toJson(List<ActionPlan> plans) {
+        StringBuilder out = new StringBuilder(64 + 128 * plans.size());
+        out.append('[');
+        for (int i = 0; i < plans.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendPlan(out, plans.get(i));
+        }
+        return out.append(']').toString();
+    }
+
+    /** 与 Gson 默认行为一致：为 null 的字段不输出，confidence 保留完整精度。 */
+    public static void appendPlan(StringBuilder out, ActionPlan plan) {
+        out.append('{');
+        boolean first = true;
+        if (plan.getType() != null) {
+            appendKey(out, FIELD_TYPE, true);
+            appendString(out, plan.getType().name());
+            first = false;
+        }
+        if (plan.getSlots() != null) {
+            appendKey(out, FIELD_SLOTS, first);
+            appendSlots(out, plan.getSlots());
+            first = false;
+        }
+        if (plan.getOriginalText() != null) {
+            appendKey(out, FIELD_ORIGINAL_TEXT, first);
+            appendString(out, plan.getOriginalText());
+            first = false;
+        }
+        appendKey(out, FIELD_CONFIDENCE, first);
+        double confidence = plan.getConfidence();
+        if (Double.isNaN(confidence) || Double.isInfinite(confidence)) {
+            out.append('0');
+        } else {
+            out.append(confidence);
+        }
+        out.append('}');
+    }
+
+    /**
+     * 写出一个计划对象，type 为任意字符串，confidence 保留两位小数（端侧规则与约束解码的输出格式）。
+     */
+    public static void appendPlan(StringBuilder out, String type, Map<String, String> slots, double confidence,
+            String originalText) {
+        out.append('{');
+        appendKey(out, FIELD_TYPE, true);
+        appendString(out, type);
+        appendKey(out, FIELD_SLOTS, false);
+        appendSlots(out, slots);
+        appendKey(out, FIELD_CONFIDENCE, false);
+        appendFixed2(out, confidence);
+        appendKey(out, FIELD_ORIGINAL_TEXT, false);
+        appendString(out, originalText);
+        out.append('}');
+    }
+
+    /** 写出 JSON 字符串字面量（含引号），null 按空串处理。 */
+    public static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        if (value != null) {
+            int runStart = 0;
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                String replacement;
+                if (c == '"') {
+                    replacement = "\\\"";
+                } else if (c == '\\') {
+                    replacement = "\\\\";
+                } else if (c == '\n') {
+                    replacement = "\\n";
+                } else if (c == '\r') {
+                    replacement = "\\r";
+                } else if (c == '\t') {
+                    replacement = "\\t";
+                } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    replacement = null;
+                } else {
+                    continue;
+                }
+                out.append(value, runStart, i);
+                if (replacement != null) {
+                    out.append(replacement);
+                } else {
+                    out.append("\\u").append(HEX[c >> 12 & 0xF]).append(HEX[c >> 8 & 0xF])
+                            .append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+                }
+                runStart = i + 1;
+            }
+            out.append(value, runStart, length);
+        }
+        out.append('"');
+    }
+
+    private static void appendSlots(StringBuilder out, Map<String, String> slots) {
+        out.append('{');
+        boolean first = true;
+        if (slots != null) {
+            for (Map.Entry<String, String> entry : slots.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    continue;
+                }
+                if (!first) {
+                    out.append(',');
+                }
+                appendString(out, entry.getKey());
+                out.append(':');
+                appendString(out, entry.getValue());
+                first = false;
+            }
+        }
+        out.append('}');
+    }
+
+    private static void appendKey(StringBuilder out, String key, boolean first) {
+        if (!first) {
+            out.append(',');
+        }
+        out.append('"').append(key).append("\":");
+    }
+
+    /** 等价于 String.format(Locale.US, "%.2f", value)，不经过 Formatter。 */
+    static void appendFixed2(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("0.00");
+            return;
+        }
+        long hundredths = Math.round(Math.abs(value) * 100.0);
+        if (Double.doubleToRawLongBits(value) < 0) {
+            // 与 Formatter 一致，-0.001 输出 -0.00
+            out.append('-');
+        }
+        long fraction = hundredths % 100;
+        out.append(hundredths / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    // ==================== 内部实现 ====================
+
+    private static CharSequence drain(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder(512);
+        char[] chunk = new char[1024];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            text.append(chunk, 0, read);
+        }
+        return text;
+    }
+
+    private static boolean contentEquals(CharSequence text, String expected) {
+        int length = text.length();
+        if (length != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEqualsIgnoreCase(CharSequence text, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char a = text.charAt(i);
+            char b = expected.charAt(i - start);
+            if (a != b && Character.toUpperCase(a) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class MalformedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MalformedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** 单遍扫描的读取游标，scratch 在整个输入内复用。 */
+    private static final class Cursor {
+        private final CharSequence in;
+        private final int end;
+        private final StringBuilder scratch = new StringBuilder(32);
+        // 同一次读取里的多个计划共用，build 后自动清空
+        private final ActionSlots.Builder slots = new ActionSlots.Builder();
+        int pos;
+
+        Cursor(CharSequence in) {
+            this.in = in;
+            this.end = in.length();
+        }
+
+        /** 跳过空白后的下一个字符，到达末尾返回 -1。 */
+        int peek() {
+            while (pos < end) {
+                char c = in.charAt(pos);
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\uFEFF') {
+                    return c;
+                }
+                pos++;
+            }
+            return -1;
+        }
+
+        /** 当前位于 '{'。末尾截断视为对象结束。 */
+        ActionPlan readPlan() throws MalformedException {
+            pos++;
+            ActionPlan plan = new ActionPlan();
+            while (true) {
+                int c = peek();
+                if (c == -1) {
+                    return plan;
+                }
+                if (c == '}') {
+                    pos++;
+                    return plan;
+                }
+                if (c == ',') {
+                    pos++;
+                    continue;
+                }
+                int key = readKey();
+                if (!readSeparator()) {
+                    return plan;
+                }
+                switch (key) {
+                    case KEY_TYPE:
+                        if (readScalar() <= VALUE_LITERAL) {
+                            plan.setType(typeOf(scratch));
+                        }
+                        break;
+                    case KEY_SLOTS:
+                        if (peek() == '{') {
+                            plan.setSlots(readSlots());
+                        } else {
+                            readScalar();
+                        }
+                        break;
+                    case KEY_ORIGINAL_TEXT: {
+                        int kind = readScalar();
+                        plan.setOriginalText(kind <= VALUE_LITERAL ? scratch.toString() : null);
+                        break;
+                    }
+                    case KEY_CONFIDENCE:
+                        if (readScalar() <= VALUE_LITERAL) {
+                            try {
+                                plan.setConfidence(Double.parseDouble(scratch.toString().trim()));
+                            } catch (NumberFormatException ignored) {
+                                // 保持默认置信度
+                            }
+                        }
+                        break;
+                    default:
+                        skipValue();
+                }
+            }
+        }
+
+        private ActionSlots readSlots() throws MalformedException {
+            pos++;
+            while (true) {
+                int c = peek();
+                if (c == -1) {
+                    return slots.build();
+                }
+                if (c == '}') {
+                    pos++;
+                    return slots.build();
+                }
+                if (c == ',') {
+                    pos++;
+                    continue;
+                }
+                readToken();
+                String key = internSlotKey(scratch);
+                if (!readSeparator()) {
+                    return slots.build();
+                }
+                if (readScalar() <= VALUE_LITERAL) {
+                    slots.put(key, scratch.toString());
+                }
+            }
+        }
+
+        private int readKey() throws MalformedException {
+            readToken();
+            if (contentEquals(scratch, FIELD_TYPE)) {
+                return KEY_TYPE;
+            } else if (contentEquals(scratch, FIELD_SLOTS)) {
+                return KEY_SLOTS;
+            } else if (contentEquals(scratch, FIELD_ORIGINAL_TEXT)) {
+                return KEY_ORIGINAL_TEXT;
+            } else if (contentEquals(scratch, FIELD_CONFIDENCE)) {
+                return KEY_CONFIDENCE;
+            }
+            return KEY_OTHER;
+        }
+
+        /** 键值分隔符 ':'（兼容 '='）；输入在此处结束时返回 false。 */
+        private boolean readSeparator() throws MalformedException {
+            int c = peek();
+            if (c == ':' || c == '=') {
+                pos++;
+                return true;
+            }
+            if (c == -1) {
+                return false;
+            }
+            throw new MalformedException();
+        }
+
+        /** 读字符串或裸词到 scratch，用于键。 */
+        private void readToken() throws MalformedException {
+            int kind = readScalar();
+            if (kind == VALUE_COMPOSITE) {
+                throw new MalformedException();
+            }
+        }
+
+        /**
+         * 读一个值。字符串和裸词（数字、布尔、未加引号的文本）写入 scratch；
+         * 对象与数组整体跳过，返回 VALUE_COMPOSITE。
+         */
+        private int readScalar() throws MalformedException {
+            scratch.setLength(0);
+            int c = peek();
+            if (c == -1) {
+                return VALUE_MISSING;
+            }
+            if (c == '"' || c == '\'') {
+                readQuoted((char) c);
+                return VALUE_STRING;
+            }
+            if (c == '{' || c == '[') {
+                skipValue();
+                return VALUE_COMPOSITE;
+            }
+            if (c == '}' || c == ']' || c == ',' || c == ':') {
+                // 缺失的值，例如 "title": ,
+                return VALUE_MISSING;
+            }
+            int start = pos;
+            while (pos < end) {
+                char ch = in.charAt(pos);
+                if (ch == ',' || ch == '}' || ch == ']' || ch == ':' || ch == '=' || ch == ' ' || ch == '\n'
+                        || ch == '\r' || ch == '\t') {
+                    break;
+                }
+                pos++;
+            }
+            scratch.append(in, start, pos);
+            return contentEquals(scratch, "null") ? VALUE_NULL : VALUE_LITERAL;
+        }
+
+        /** 当前位于引号。未闭合的字符串读到末尾为止。 */
+        private void readQuoted(char quote) {
+            pos++;
+            int runStart = pos;
+            while (pos < end) {
+                char c = in.charAt(pos);
+                if (c == quote) {
+                    scratch.append(in, runStart, pos);
+                    pos++;
+                    return;
+                }
+                if (c != '\\') {
+                    pos++;
+                    continue;
+                }
+                scratch.append(in, runStart, pos);
+                pos++;
+                if (pos >= end) {
+                    return;
+                }
+                char escaped = in.charAt(pos++);
+                switch (escaped) {
+                    case 'n':
+                        scratch.append('\n');
+                        break;
+                    case 't':
+                        scratch.append('\t');
+                        break;
+                    case 'r':
+                        scratch.append('\r');
+                        break;
+                    case 'b':
+                        scratch.append('\b');
+                        break;
+                    case 'f':
+                        scratch.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 <= end) {
+                            int code = parseHex(pos);
+                            if (code >= 0) {
+                                scratch.append((char) code);
+                                pos += 4;
+                                break;
+                            }
+                        }
+                        scratch.append('u');
+                        break;
+                    default:
+                        // \" \\ \/ 以及模型偶尔写出的非法转义都按字面保留
+                        scratch.append(escaped);
+                }
+                runStart = pos;
+            }
+            scratch.append(in, runStart, end);
+        }
+
+        private int parseHex(int from) {
+            int code = 0;
+            for (int i = from; i < from + 4; i++) {
+                int digit = Character.digit(in.charAt(i), 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                code = code << 4 | digit;
+            }
+            return code;
+        }
+
+        /** 跳过任意一个值（含嵌套结构），截断时停在末尾。 */
+        void skipValue() throws MalformedException {
+            int c = peek();
+            if (c != '{' && c != '[') {
+                readScalar();
+                return;
+            }
+            int depth = 0;
+            while (pos < end) {
+                char ch = in.charAt(pos);
+                if (ch == '"' || ch == '\'') {
+                    int saved = scratch.length();
+                    readQuoted(ch);
+                    scratch.setLength(saved);
+                    continue;
+                }
+                pos++;
+                if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if (ch == '}' || ch == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.philotes.data.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * ActionPlan 槽位的不可变紧凑存储。
+ *
+ * 四个常用键（title/time/location/content）放在按下标寻址的定长数组里，读取不用算哈希；
+ * 其余键放进按插入顺序的溢出表，绝大多数计划没有溢出键，不会创建这张表。
+ * 哈希值在构造时算好，两份槽位比较时先比哈希，因此按计划去重、做缓存键都很便宜。
+ *
+ * 本身就是只读的 Map（迭代顺序：四个常用键按固定顺序在前，溢出键按插入顺序在后），
+ * 现有按 Map 读取的调用方不用改。不存储 null 值，写入 null 视为没有该键。
+ */
+public final class ActionSlots extends AbstractMap<String, String> {
+
+    public static final String TITLE = "title";
+    public static final String TIME = "time";
+    public static final String LOCATION = "location";
+    public static final String CONTENT = "content";
+
+    private static final String[] KEYS = {TITLE, TIME, LOCATION, CONTENT};
+    private static final int KNOWN = KEYS.length;
+
+    public static final ActionSlots EMPTY = new ActionSlots(new String[KNOWN], null, 0);
+
+    private final String[] known;
+    private final Map<String, String> overflow;
+    private final int size;
+    private final int hash;
+    private Set<Map.Entry<String, String>> entrySet;
+
+    private ActionSlots(String[] known, Map<String, String> overflow, int knownCount) {
+        this.known = known;
+        this.overflow = overflow;
+        this.size = knownCount + (overflow == null ? 0 : overflow.size());
+        int h = 0;
+        for (int i = 0; i < KNOWN; i++) {
+            if (known[i] != null) {
+                h += KEYS[i].hashCode() ^ known[i].hashCode();
+            }
+        }
+        // 与 Map.hashCode 约定一致，和其他 Map 实现相等时哈希也相等
+        this.hash = overflow == null ? h : h + overflow.hashCode();
+    }
+
+    /**
+     * 转成紧凑存储；已经是 ActionSlots 时原样返回，null 返回 null。
+     */
+    public static ActionSlots copyOf(Map<String, String> slots) {
+        if (slots == null) {
+            return null;
+        }
+        if (slots instanceof ActionSlots) {
+            return (ActionSlots) slots;
+        }
+        if (slots.isEmpty()) {
+            return EMPTY;
+        }
+        Builder builder = new Builder();
+        for (Map.Entry<String, String> entry : slots.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /** 常用键在定长数组里的下标，其他键返回 -1。解码器给出的常量键按引用命中。 */
+    static int indexOf(Object key) {
+        for (int i = 0; i < KNOWN; i++) {
+            if (KEYS[i] == key) {
+                return i;
+            }
+        }
+        if (key instanceof String) {
+            for (int i = 0; i < KNOWN; i++) {
+                if (KEYS[i].equals(key)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public String title() {
+        return known[0];
+    }
+
+    public String time() {
+        return known[1];
+    }
+
+    public String location() {
+        return known[2];
+    }
+
+    public String content() {
+        return known[3];
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return known[index];
+        }
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        Set<Map.Entry<String, String>> entries = entrySet;
+        if (entries == null) {
+            entries = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            entrySet = entries;
+        }
+        return entries;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof ActionSlots) {
+            ActionSlots that = (ActionSlots) o;
+            if (hash != that.hash || size != that.size || !Arrays.equals(known, that.known)) {
+                return false;
+            }
+            return overflow == null ? that.overflow == null : overflow.equals(that.overflow);
+        }
+        return super.equals(o);
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private int index = nextKnown(0);
+        private Iterator<Map.Entry<String, String>> rest;
+
+        @Override
+        public boolean hasNext() {
+            if (index < KNOWN) {
+                return true;
+            }
+            if (rest == null) {
+                if (overflow == null) {
+                    return false;
+                }
+                rest = overflow.entrySet().iterator();
+            }
+            return rest.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (index < KNOWN) {
+                Map.Entry<String, String> entry = new SimpleImmutableEntry<>(KEYS[index], known[index]);
+                index = nextKnown(index + 1);
+                return entry;
+            }
+            return rest.next();
+        }
+
+        private int nextKnown(int from) {
+            while (from < KNOWN && known[from] == null) {
+                from++;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * 逐个写入槽位后一次性生成 ActionSlots。build 之后自动清空，可继续复用，
+     * 解码器在一次读取的所有计划之间共用一个。
+     */
+    public static final class Builder {
+        private final String[] known = new String[KNOWN];
+        private int knownCount;
+        private LinkedHashMap<String, String> overflow;
+
+        /** 同一个键写入多次时以最后一次为准；键或值为 null 时忽略。 */
+        public Builder put(String key, String value) {
+            if (key == null || value == null) {
+                return this;
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (known[index] == null) {
+                    knownCount++;
+                }
+                known[index] = value;
+            } else {
+                if (overflow == null) {
+                    overflow = new LinkedHashMap<>(4);
+                }
+                overflow.put(key, value);
+            }
+            return this;
+        }
+
+        public ActionSlots build() {
+            if (knownCount == 0 && overflow == null) {
+                return EMPTY;
+            }
+            // 溢出表直接移交给结果，不再复制
+            Map<String, String> rest = overflow == null ? null : Collections.unmodifiableMap(overflow);
+            ActionSlots slots = new ActionSlots(known.clone(), rest, knownCount);
+            Arrays.fill(known, null);
+            knownCount = 0;
+            overflow = null;
+            return slots;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.philotes.data.model;
 
 import android.graphics.Rect;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -11,9 +12,17 @@ import java.util.List;
  * 包含文本内容和位置信息
  */
 public class OcrResult {
+    /** 紧凑布局网格：8 行 × 3 列 */
+    static final int COMPACT_GRID_ROWS = 8;
+    static final int COMPACT_GRID_COLS = 3;
+    /** 手动截图送解析时的默认字符预算 */
+    public static final int DEFAULT_COMPACT_BUDGET = 1200;
+    public static final String COMPACT_LAYOUT_HEADER = "[屏幕文字 r0-7自上而下 c0-2自左而右]";
+
     private List<TextBlock> textBlocks;
     private int imageWidth;
     private int imageHeight;
+    private int[] readingOrder;
 
     public OcrResult(int imageWidth, int imageHeight) {
         this.imageWidth = imageWidth;
@@ -21,62 +30,234 @@ public class OcrResult {
         this.textBlocks = new ArrayList<>();
     }
 
-    public void addTextBlock(String text, Rect boundingBox, float confidence) {
+    public synchronized void addTextBlock(String text, Rect boundingBox, float confidence) {
         textBlocks.add(new TextBlock(text, boundingBox, confidence));
+        readingOrder = null;
+    }
+
+    /**
+     * 文本块的只读快照（识别顺序）。流式识别时 addTextBlock 可能并发追加，
+     * 因此不暴露内部列表；只需判空或计数时用 {@link #isEmpty()} / {@link #getBlockCount()}。
+     */
+    public synchronized List<TextBlock> getTextBlocks() {
+        return Collections.unmodifiableList(new ArrayList<>(textBlocks));
     }
 
-    public List<TextBlock> getTextBlocks() {
-        return textBlocks;
+    public synchronized int getBlockCount() {
+        return textBlocks.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return textBlocks.isEmpty();
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
     }
 
     /**
      * 将OCR结果转换为结构化文本
      * 包含位置信息，让AI能理解文本的空间布局
      */
-    public String toStructuredText() {
+    public synchronized String toStructuredText() {
         if (textBlocks.isEmpty()) {
             return "";
         }
 
-        // 按从上到下、从左到右排序
-        Collections.sort(textBlocks, new Comparator<TextBlock>() {
-            @Override
-            public int compare(TextBlock a, TextBlock b) {
-                // 先按Y坐标排序（上到下）
-                int yDiff = a.boundingBox.top - b.boundingBox.top;
-                if (Math.abs(yDiff) > imageHeight * 0.05) { // 5%的高度差认为是不同行
-                    return yDiff;
-                }
-                // 同一行内按X坐标排序（左到右）
-                return a.boundingBox.left - b.boundingBox.left;
-            }
-        });
-
-        StringBuilder result = new StringBuilder();
+        int[] order = readingOrder();
+        StringBuilder result = new StringBuilder(32 + order.length * 24);
         result.append("=== 屏幕内容识别 ===\n");
-        result.append(String.format("图片尺寸: %d x %d\n\n", imageWidth, imageHeight));
+        result.append("图片尺寸: ").append(imageWidth).append(" x ").append(imageHeight).append("\n\n");
 
-        for (int i = 0; i < textBlocks.size(); i++) {
-            TextBlock block = textBlocks.get(i);
-            String position = getPositionDescription(block.boundingBox);
-            result.append(String.format("[%s] %s", position, block.text));
+        for (int index : order) {
+            TextBlock block = textBlocks.get(index);
+            result.append('[').append(getPositionDescription(block.boundingBox)).append("] ").append(block.text);
 
             // 添加置信度（如果较低）
             if (block.confidence < 0.7) {
-                result.append(String.format(" (置信度: %.1f%%)", block.confidence * 100));
+                int permille = Math.round(block.confidence * 1000);
+                result.append(" (置信度: ").append(permille / 10).append('.').append(permille % 10).append("%)");
             }
 
             result.append("\n");
         }
 
-        result.append("\n=== 纯文本内容 ===\n");
-        for (TextBlock block : textBlocks) {
-            result.append(block.text).append("\n");
+        return result.toString();
+    }
+
+    /**
+     * 紧凑序列化，面向 LLM 输入：按阅读顺序输出，位置用 r行c列 网格下标代替中文九宫格标签，
+     * 与上一块同格时省略前缀，低置信度只加 "?" 标记。超出 charBudget 的文本块不再输出。
+     *
+     * @param charBudget 最大字符数，<= 0 表示不限
+     * @param withLayout false 时只输出按阅读顺序排列的纯文本行
+     */
+    public synchronized String toCompactText(int charBudget, boolean withLayout) {
+        if (textBlocks.isEmpty()) {
+            return "";
+        }
+        int budget = charBudget <= 0 ? Integer.MAX_VALUE : charBudget;
+        int[] order = readingOrder();
+        StringBuilder result = new StringBuilder(Math.min(budget, 64 + order.length * 16));
+        if (withLayout) {
+            result.append(COMPACT_LAYOUT_HEADER);
         }
 
+        int lastCell = -1;
+        boolean emitted = false;
+        for (int index : order) {
+            TextBlock block = textBlocks.get(index);
+            String text = block.text == null ? "" : block.text.trim();
+            if (text.isEmpty()) {
+                continue;
+            }
+            int lineStart = result.length();
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+            if (withLayout) {
+                int cell = gridCell(block.boundingBox);
+                if (cell != lastCell) {
+                    appendCell(result, cell);
+                    lastCell = cell;
+                }
+            }
+            appendText(result, text, block.confidence);
+            if (result.length() > budget) {
+                // 第一块就超预算时截断保留，避免输出为空
+                result.setLength(emitted ? lineStart : budget);
+                break;
+            }
+            emitted = true;
+        }
         return result.toString();
     }
 
+    /**
+     * 逐块的紧凑行，供按 token 预算挑选片段的调用方使用（如 TokenBudgeter.pack）。
+     * 片段可能被丢弃，所以每行都带 r行c列 前缀，不做同格省略；拼接时由调用方加上 {@link #COMPACT_LAYOUT_HEADER}。
+     *
+     * @param minChars 去掉首尾空白后短于该长度的文本块跳过
+     */
+    public synchronized List<String> toCompactLines(int minChars) {
+        int[] order = readingOrder();
+        List<String> lines = new ArrayList<>(order.length);
+        StringBuilder line = new StringBuilder(32);
+        for (int index : order) {
+            TextBlock block = textBlocks.get(index);
+            String text = block.text == null ? "" : block.text.trim();
+            if (text.isEmpty() || text.length() < minChars) {
+                continue;
+            }
+            line.setLength(0);
+            appendCell(line, gridCell(block.boundingBox));
+            appendText(line, text, block.confidence);
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static void appendCell(StringBuilder out, int cell) {
+        out.append('r').append(cell / COMPACT_GRID_COLS)
+                .append('c').append(cell % COMPACT_GRID_COLS).append(' ');
+    }
+
+    private static void appendText(StringBuilder out, String text, float confidence) {
+        out.append(text);
+        if (confidence < 0.7f) {
+            out.append('?');
+        }
+    }
+
+    /**
+     * 按阅读顺序（从上到下、同行从左到右）返回文本块，不修改原列表。
+     */
+    public synchronized List<TextBlock> getBlocksInReadingOrder() {
+        int[] order = readingOrder();
+        List<TextBlock> ordered = new ArrayList<>(order.length);
+        for (int index : order) {
+            ordered.add(textBlocks.get(index));
+        }
+        return ordered;
+    }
+
+    /**
+     * 阅读顺序下标（缓存，addTextBlock 时失效）。
+     * 先按 top 排序，再以行首块为基准、5% 图高为容差切行，最后按 (行, left) 排序；
+     * 比原先直接带容差的比较器更稳定，且满足比较器传递性。
+     */
+    private synchronized int[] readingOrder() {
+        int[] cached = readingOrder;
+        if (cached != null && cached.length == textBlocks.size()) {
+            return cached;
+        }
+
+        final int n = textBlocks.size();
+        final int[] tops = new int[n];
+        final int[] lefts = new int[n];
+        Integer[] byTop = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            Rect box = textBlocks.get(i).boundingBox;
+            tops[i] = box == null ? 0 : box.top;
+            lefts[i] = box == null ? 0 : box.left;
+            byTop[i] = i;
+        }
+        Arrays.sort(byTop, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(tops[a], tops[b]);
+            }
+        });
+
+        final int[] rows = new int[n];
+        int tolerance = (int) (imageHeight * 0.05);
+        int row = 0;
+        int rowTop = n > 0 ? tops[byTop[0]] : 0;
+        for (Integer index : byTop) {
+            if (tops[index] - rowTop > tolerance) {
+                row++;
+                rowTop = tops[index];
+            }
+            rows[index] = row;
+        }
+
+        Arrays.sort(byTop, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (rows[a] != rows[b]) {
+                    return Integer.compare(rows[a], rows[b]);
+                }
+                return Integer.compare(lefts[a], lefts[b]);
+            }
+        });
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = byTop[i];
+        }
+        readingOrder = order;
+        return order;
+    }
+
+    private int gridCell(Rect rect) {
+        if (rect == null || imageWidth <= 0 || imageHeight <= 0) {
+            return 0;
+        }
+        int centerY = (rect.top + rect.bottom) / 2;
+        int centerX = (rect.left + rect.right) / 2;
+        int r = clampIndex((int) ((long) centerY * COMPACT_GRID_ROWS / imageHeight), COMPACT_GRID_ROWS);
+        int c = clampIndex((int) ((long) centerX * COMPACT_GRID_COLS / imageWidth), COMPACT_GRID_COLS);
+        return r * COMPACT_GRID_COLS + c;
+    }
+
+    private static int clampIndex(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
     /**
      * 获取文本块的位置描述（9宫格）
      */
@@ -108,7 +289,7 @@ public class OcrResult {
     /**
      * 获取简单的纯文本内容（不含位置信息）
      */
-    public String getPlainText() {
+    public synchronized String getPlainText() {
         StringBuilder result = new StringBuilder();
         for (TextBlock block : textBlocks) {
             result.append(block.text).append("\n");
@@ -2,10 +2,12 @@ package com.example.philotes.domain;
 
 import android.content.Context;
 import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.data.model.ActionSlots;
 import com.example.philotes.data.model.ActionType;
 import com.example.philotes.helper.CalendarHelper;
 import com.example.philotes.helper.NavigationHelper;
 import com.example.philotes.helper.TodoHelper;
+import com.example.philotes.utils.PipelineTracer;
 
 /**
  * ActionExecutor - 执行器
@@ -42,6 +44,14 @@ public class ActionExecutor {
      * 执行 ActionPlan
      */
     public ExecutionResult execute(ActionPlan plan) {
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("execute")) {
+            ExecutionResult result = executeUntraced(plan);
+            span.arg("type", plan == null ? null : plan.getType()).arg("success", result.success);
+            return result;
+        }
+    }
+
+    private ExecutionResult executeUntraced(ActionPlan plan) {
         if (plan == null) {
             return new ExecutionResult(false, "ActionPlan 为空");
         }
@@ -173,43 +183,45 @@ public class ActionExecutor {
             return "无效的动作计划";
         }
 
-        StringBuilder summary = new StringBuilder();
+        ActionSlots slots = plan.getSlots();
         ActionType type = plan.getType();
+        if (type == null) {
+            return "未知操作";
+        }
 
         switch (type) {
-            case CREATE_CALENDAR:
-                summary.append("📅 创建日历事件\n");
-                summary.append("标题: ").append(plan.getSlots().getOrDefault("title", "未指定")).append("\n");
-                summary.append("时间: ").append(plan.getSlots().getOrDefault("time", "未指定")).append("\n");
-                String location = plan.getSlots().get("location");
+            case CREATE_CALENDAR: {
+                // 日历摘要有三行，只有这里需要拼接缓冲区
+                String location = slots.location();
+                StringBuilder summary = new StringBuilder(64);
+                summary.append("📅 创建日历事件\n标题: ").append(orUnspecified(slots.title()))
+                        .append("\n时间: ").append(orUnspecified(slots.time())).append('\n');
                 if (location != null && !location.isEmpty()) {
-                    summary.append("地点: ").append(location).append("\n");
+                    summary.append("地点: ").append(location).append('\n');
                 }
-                break;
+                return summary.toString();
+            }
 
             case NAVIGATE:
-                summary.append("🗺️ 开始导航\n");
-                summary.append("目的地: ").append(plan.getSlots().getOrDefault("location", "未指定"));
-                break;
+                return "🗺️ 开始导航\n目的地: " + orUnspecified(slots.location());
 
             case ADD_TODO:
-                summary.append("✅ 添加待办事项\n");
-                summary.append("内容: ").append(plan.getSlots().getOrDefault("title", "未指定"));
-                break;
+                return "✅ 添加待办事项\n内容: " + orUnspecified(slots.title());
 
-            case COPY_TEXT:
-                summary.append("📋 复制文本\n");
-                String text = plan.getSlots().getOrDefault("content", plan.getOriginalText());
+            case COPY_TEXT: {
+                String text = slots.content() != null ? slots.content() : plan.getOriginalText();
                 if (text != null && text.length() > 50) {
-                    text = text.substring(0, 47) + "...";
+                    return "📋 复制文本\n内容: " + text.substring(0, 47) + "...";
                 }
-                summary.append("内容: ").append(text);
-                break;
+                return "📋 复制文本\n内容: " + text;
+            }
 
             default:
-                summary.append("未知操作");
+                return "未知操作";
         }
+    }
 
-        return summary.toString();
+    private static String orUnspecified(String value) {
+        return value != null ? value : "未指定";
     }
 }
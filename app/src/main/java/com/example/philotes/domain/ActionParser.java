@@ -3,29 +3,28 @@ package com.example.philotes.domain;
 import android.util.Log;
 import com.example.philotes.data.api.ILlmService;
 import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.data.model.ActionPlanCodec;
+import com.example.philotes.data.model.ActionSlots;
 import com.example.philotes.data.model.ActionType;
 import com.example.philotes.data.model.OcrResult;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.example.philotes.utils.PipelineTracer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 public class ActionParser {
     private static final String TAG = "ActionParser";
+    // 修复器自带复用缓冲区，解析器会被多个线程共用，按线程各持一个
+    private static final ThreadLocal<JsonRepair> REPAIR = ThreadLocal.withInitial(JsonRepair::new);
     private final ILlmService llmService;
-    private final Gson gson;
 
     // 自适应分组参数
     private static final int MAX_CHARS_PER_BATCH = 200;  // 每批最大字符数
     private static final int MAX_BLOCKS_PER_BATCH = 5;   // 每批最大 block 数
+    private static final int MAX_OCR_INPUT_TOKENS = 640; // OCR 合并文本的单次输入上限
 
     // 解析动作的 prompt
     private final String parsePrompt =
@@ -75,7 +74,6 @@ public class ActionParser {
 
     public ActionParser(ILlmService llmService) {
         this.llmService = llmService;
-        this.gson = new Gson();
     }
 
     public interface ParseStreamListener {
@@ -89,15 +87,34 @@ public class ActionParser {
      * 解析文本（原有方法，保持兼容）
      */
     public ActionPlan parse(String text) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String currentDate = dateFormat.format(new Date());
-        String fullPrompt = parsePrompt + "\n当前日期: " + currentDate;
+        String fullPrompt;
+        String input;
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("parse.prompt")) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+            String currentDate = dateFormat.format(new Date());
+            fullPrompt = parsePrompt + "\n当前日期: " + currentDate;
+            input = TokenBudgeter.forService(llmService).fit(fullPrompt, text, 0);
+            span.arg("inputChars", input.length());
+        }
 
-        Log.d(TAG, "Calling LLM with text length: " + text.length());
-        String jsonStr = llmService.chatCompletion(fullPrompt, text);
+        Log.d(TAG, "Calling LLM with text length: " + input.length() + "/" + text.length());
+        String jsonStr = callLlm(fullPrompt, input);
         Log.d(TAG, "LLM response: " + (jsonStr != null ? jsonStr.substring(0, Math.min(200, jsonStr.length())) : "null"));
 
-        return parseJsonResponse(jsonStr, text);
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("parse.json")) {
+            ActionPlan plan = parseJsonResponse(jsonStr, text);
+            span.arg("type", plan.getType());
+            return plan;
+        }
+    }
+
+    private String callLlm(String systemPrompt, String userMessage) {
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("parse.llm")) {
+            String response = llmService.chatCompletion(systemPrompt, userMessage);
+            span.arg("inputChars", userMessage.length())
+                    .arg("outputChars", response == null ? 0 : response.length());
+            return response;
+        }
     }
 
     /**
@@ -111,24 +128,36 @@ public class ActionParser {
             return;
         }
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String currentDate = dateFormat.format(new Date());
-        String fullPrompt = parsePrompt + "\n当前日期: " + currentDate;
-        String normalizedText = text.trim();
+        String fullPrompt;
+        String normalizedText;
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("parse.prompt")) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+            String currentDate = dateFormat.format(new Date());
+            fullPrompt = parsePrompt + "\n当前日期: " + currentDate;
+            normalizedText = TokenBudgeter.forService(llmService).fit(fullPrompt, text.trim(), 0);
+            span.arg("inputChars", normalizedText.length());
+        }
         StringBuilder streamedResponse = new StringBuilder();
+        // 流式回调可能在其他线程结束，用异步 span；首个 delta 记为 firstDelta
+        PipelineTracer.Span llmSpan = PipelineTracer.get().beginAsync("parse.llm.stream");
 
         llmService.streamChatCompletion(fullPrompt, normalizedText, new ILlmService.StreamListener() {
             private boolean candidateDispatched;
+            // 修复状态跨 delta 延续，每次只处理新增文本
+            private final JsonRepair candidateRepair = new JsonRepair();
 
             @Override
             public void onDelta(String delta) {
+                if (streamedResponse.length() == 0) {
+                    llmSpan.arg("firstDeltaMs", llmSpan.durationNs() / 1_000_000);
+                }
                 streamedResponse.append(delta == null ? "" : delta);
                 if (listener != null) {
                     listener.onStreamingText(streamedResponse.toString());
                 }
 
                 if (!candidateDispatched) {
-                    ActionPlan candidate = tryParsePlanOrNull(streamedResponse.toString());
+                    ActionPlan candidate = tryParsePlanOrNull(candidateRepair.append(delta).result());
                     if (candidate != null && candidate.getType() != ActionType.UNKNOWN) {
                         candidateDispatched = true;
                         if (listener != null) {
@@ -139,8 +168,15 @@ public class ActionParser {
             }
 
             @Override
+            @SuppressWarnings("try") // the scope only parents parse.json under the llm span
             public void onComplete() {
-                ActionPlan plan = parseJsonResponse(streamedResponse.toString(), normalizedText);
+                llmSpan.arg("outputChars", streamedResponse.length()).end();
+                ActionPlan plan;
+                try (PipelineTracer.Scope ignored = llmSpan.activate();
+                     PipelineTracer.Span parseSpan = PipelineTracer.get().begin("parse.json")) {
+                    plan = parseJsonResponse(streamedResponse.toString(), normalizedText);
+                    parseSpan.arg("type", plan.getType());
+                }
                 if (listener != null) {
                     listener.onCompleted(plan);
                 }
@@ -148,6 +184,7 @@ public class ActionParser {
 
             @Override
             public void onError(Exception error) {
+                llmSpan.arg("error", error.getClass().getSimpleName()).end();
                 if (listener != null) {
                     listener.onError(error);
                 }
@@ -168,6 +205,23 @@ public class ActionParser {
      * @param contextDescriptor 由 ContextEnricher 生成的设备状态描述，为 null 时忽略
      */
     public List<ActionPlan> parseMultiple(String text, String matchedKeyword, String contextDescriptor) {
+        String fullPrompt;
+        String input;
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("parse.prompt")) {
+            fullPrompt = buildMultiplePrompt(matchedKeyword, contextDescriptor);
+            input = TokenBudgeter.forService(llmService).fit(fullPrompt, text, 0);
+            span.arg("inputChars", input.length());
+        }
+
+        String jsonStr = callLlm(fullPrompt, input);
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("parse.json")) {
+            List<ActionPlan> plans = parseJsonArrayResponse(jsonStr, text);
+            span.arg("plans", plans.size());
+            return plans;
+        }
+    }
+
+    private String buildMultiplePrompt(String matchedKeyword, String contextDescriptor) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
         String currentDate = sdf.format(new Date());
         String keywordHint = (matchedKeyword != null && !matchedKeyword.isEmpty())
@@ -176,15 +230,12 @@ public class ActionParser {
         String contextHint = (contextDescriptor != null && !contextDescriptor.isEmpty())
                 ? "\n\n" + contextDescriptor
                 : "";
-        String fullPrompt = parseMultiplePrompt + keywordHint + "\n当前日期: " + currentDate + contextHint;
-
-        String jsonStr = llmService.chatCompletion(fullPrompt, text);
-        return parseJsonArrayResponse(jsonStr, text);
+        return parseMultiplePrompt + keywordHint + "\n当前日期: " + currentDate + contextHint;
     }
 
     /**
-     * 对 OCR 结果合并全文后调用多计划 prompt，一次 LLM 请求提取所有可执行动作。
-     * 超出 MAX_CHARS_PER_BATCH*3 时截断，避免 token 过多。
+     * 对 OCR 结果按阅读顺序生成紧凑布局行（r行c列 前缀）后调用多计划 prompt，一次 LLM 请求提取所有可执行动作。
+     * 超出 token 预算时按规则命中密度挑选文本块，避免 token 过多。
      */
     public List<ActionPlan> parseMultipleWithFilter(OcrResult ocrResult, String matchedKeyword) {
         return parseMultipleWithFilter(ocrResult, matchedKeyword, null);
@@ -195,66 +246,74 @@ public class ActionParser {
      */
     public List<ActionPlan> parseMultipleWithFilter(OcrResult ocrResult, String matchedKeyword,
                                                     String contextDescriptor) {
-        if (ocrResult == null || ocrResult.getTextBlocks().isEmpty()) {
+        if (ocrResult == null || ocrResult.isEmpty()) {
             return Collections.emptyList();
         }
 
-        StringBuilder merged = new StringBuilder();
-        for (OcrResult.TextBlock block : ocrResult.getTextBlocks()) {
-            String t = block.text.trim();
-            if (t.length() >= 2) {
-                if (merged.length() > 0) merged.append('\n');
-                merged.append(t);
-                if (merged.length() >= MAX_CHARS_PER_BATCH * 3) break;
-            }
+        // 紧凑布局行（rRcC 前缀）送给 LLM；计划的原文保留不带标记的阅读顺序文本
+        List<String> segments = ocrResult.toCompactLines(2);
+        if (segments.isEmpty()) return Collections.emptyList();
+
+        String fullPrompt;
+        String merged;
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("parse.prompt")) {
+            fullPrompt = buildMultiplePrompt(matchedKeyword, contextDescriptor);
+            TokenBudgeter budgeter = TokenBudgeter.forService(llmService);
+            // 布局说明行始终保留，先从预算里扣掉（含换行）
+            int budget = budgeter.remainingFor(fullPrompt, MAX_OCR_INPUT_TOKENS)
+                    - budgeter.countTokens(OcrResult.COMPACT_LAYOUT_HEADER) - 1;
+            String packed = budgeter.pack(segments, budget);
+            merged = packed.isEmpty() ? packed : OcrResult.COMPACT_LAYOUT_HEADER + "\n" + packed;
+            span.arg("segments", segments.size());
         }
+        if (merged.isEmpty()) return Collections.emptyList();
 
-        if (merged.length() == 0) return Collections.emptyList();
+        String jsonStr = callLlm(fullPrompt, merged);
+        try (PipelineTracer.Span span = PipelineTracer.get().begin("parse.json")) {
+            List<ActionPlan> plans = parseJsonArrayResponse(jsonStr, plainText(ocrResult));
+            span.arg("plans", plans.size());
+            return plans;
+        }
+    }
 
-        return parseMultiple(merged.toString(), matchedKeyword, contextDescriptor);
+    /** 阅读顺序的纯文本（不含布局前缀与低置信度标记），作为 OCR 计划的原文。 */
+    private static String plainText(OcrResult ocrResult) {
+        StringBuilder out = new StringBuilder();
+        for (OcrResult.TextBlock block : ocrResult.getBlocksInReadingOrder()) {
+            String t = block.text == null ? "" : block.text.trim();
+            if (t.length() >= 2) {
+                if (out.length() > 0) {
+                    out.append('\n');
+                }
+                out.append(t);
+            }
+        }
+        return out.toString();
     }
 
     private List<ActionPlan> parseJsonArrayResponse(String jsonStr, String originalText) {
         List<ActionPlan> plans = new ArrayList<>();
         if (jsonStr == null || jsonStr.trim().isEmpty()) return plans;
 
-        String cleaned = jsonStr.replace("```json", "").replace("```JSON", "").replace("```", "").trim();
-
-        // 尝试找 JSON 数组
-        int arrStart = cleaned.indexOf('[');
-        int arrEnd = cleaned.lastIndexOf(']');
-        if (arrStart >= 0 && arrEnd > arrStart) {
-            cleaned = cleaned.substring(arrStart, arrEnd + 1);
-        } else {
-            // 回退：如果 LLM 返回单个对象，包成数组再解析
-            int objStart = cleaned.indexOf('{');
-            int objEnd = cleaned.lastIndexOf('}');
-            if (objStart >= 0 && objEnd > objStart) {
-                cleaned = "[" + cleaned.substring(objStart, objEnd + 1) + "]";
-            } else {
-                return plans;
-            }
+        // 顶层是对象时修复器包成数组：单个对象，或连写的 {...},{...}、每个对象各一个围栏
+        CharSequence cleaned = REPAIR.get().repair(jsonStr, true);
+        if (cleaned == null) {
+            return plans;
         }
 
-        try {
-            JsonArray array = JsonParser.parseString(cleaned).getAsJsonArray();
-            for (JsonElement el : array) {
-                try {
-                    ActionPlan plan = gson.fromJson(el, ActionPlan.class);
-                    if (plan == null || plan.getType() == null || plan.getType() == ActionType.UNKNOWN) continue;
-                    Map<String, String> slots = plan.getSlots() != null
-                            ? new HashMap<>(plan.getSlots()) : new HashMap<>();
-                    plan.setSlots(Collections.unmodifiableMap(slots));
-                    if (plan.getOriginalText() == null || plan.getOriginalText().isEmpty()) {
-                        plan.setOriginalText(originalText);
-                    }
-                    plans.add(plan);
-                } catch (Exception e) {
-                    Log.w(TAG, "Skip invalid element in array: " + e.getMessage());
-                }
+        // 编解码器产出的槽位已经是不可变的 ActionSlots，不必再复制或包装
+        for (ActionPlan plan : ActionPlanCodec.readPlans(cleaned)) {
+            if (plan.getType() == null || plan.getType() == ActionType.UNKNOWN) continue;
+            if (plan.getSlots() == null) {
+                plan.setSlots(ActionSlots.EMPTY);
             }
-        } catch (Exception e) {
-            Log.w(TAG, "parseJsonArrayResponse failed: " + e.getMessage());
+            if (plan.getOriginalText() == null || plan.getOriginalText().isEmpty()) {
+                plan.setOriginalText(originalText);
+            }
+            plans.add(plan);
+        }
+        if (plans.isEmpty()) {
+            Log.w(TAG, "parseJsonArrayResponse found no plans: " + summarizeForLog(cleaned));
         }
         return plans;
     }
@@ -265,7 +324,7 @@ public class ActionParser {
      * @return ActionPlan（置信度最高的非 UNKNOWN 结果）
      */
     public ActionPlan parseWithFilter(OcrResult ocrResult) {
-        if (ocrResult == null || ocrResult.getTextBlocks().isEmpty()) {
+        if (ocrResult == null || ocrResult.isEmpty()) {
             return createFallbackPlan("无文本内容");
         }
 
@@ -358,12 +417,18 @@ public class ActionParser {
     /**
      * 解析 JSON 响应
      */
-    private ActionPlan parseJsonResponse(String jsonStr, String originalText) {
+    ActionPlan parseJsonResponse(String jsonStr, String originalText) {
+        // 约束解码的本地输出本身就是合法 JSON，直接解析，跳过修复
+        ActionPlan direct = parseWellFormedOrNull(jsonStr);
+        if (direct != null) {
+            normalizePlan(direct, originalText);
+            return direct;
+        }
         try {
-            String repairedJson = sanitizeAndRepairJson(jsonStr);
+            CharSequence repairedJson = REPAIR.get().repair(jsonStr, false);
             if (repairedJson != null) {
                 Log.d(TAG, "Parsed JSON: " + summarizeForLog(repairedJson));
-                ActionPlan plan = gson.fromJson(repairedJson, ActionPlan.class);
+                ActionPlan plan = ActionPlanCodec.readPlan(repairedJson);
                 if (plan != null) {
                     normalizePlan(plan, originalText);
                     Log.d(TAG, "ActionPlan type: " + plan.getType());
@@ -379,16 +444,24 @@ public class ActionParser {
         return createFallbackPlan(originalText);
     }
 
-    private ActionPlan tryParsePlanOrNull(String jsonStr) {
+    private ActionPlan parseWellFormedOrNull(String jsonStr) {
+        if (jsonStr == null) {
+            return null;
+        }
+        String trimmed = jsonStr.trim();
+        if (!trimmed.startsWith("{") || !trimmed.endsWith("}")) {
+            return null;
+        }
+        ActionPlan plan = ActionPlanCodec.readPlan(trimmed);
+        return plan != null && plan.getType() != null ? plan : null;
+    }
+
+    private ActionPlan tryParsePlanOrNull(CharSequence repairedJson) {
         try {
-            if (jsonStr == null || jsonStr.trim().isEmpty()) {
+            if (repairedJson == null) {
                 return null;
             }
-            String cleanJson = sanitizeAndRepairJson(jsonStr);
-            if (cleanJson == null) {
-                return null;
-            }
-            ActionPlan plan = gson.fromJson(cleanJson, ActionPlan.class);
+            ActionPlan plan = ActionPlanCodec.readPlan(repairedJson);
             if (plan != null && plan.getType() != null) {
                 return plan;
             }
@@ -404,7 +477,7 @@ public class ActionParser {
     private ActionPlan createFallbackPlan(String text) {
         ActionPlan fallback = new ActionPlan();
         fallback.setType(ActionType.UNKNOWN);
-        fallback.setSlots(Collections.emptyMap());
+        fallback.setSlots(ActionSlots.EMPTY);
         fallback.setOriginalText(text);
         fallback.setConfidence(0.0);
         return fallback;
@@ -415,9 +488,7 @@ public class ActionParser {
             plan.setType(ActionType.UNKNOWN);
         }
         if (plan.getSlots() == null) {
-            plan.setSlots(Collections.emptyMap());
-        } else {
-            plan.setSlots(Collections.unmodifiableMap(plan.getSlots()));
+            plan.setSlots(ActionSlots.EMPTY);
         }
         if (plan.getOriginalText() == null || plan.getOriginalText().trim().isEmpty()) {
             plan.setOriginalText(originalText);
@@ -430,114 +501,17 @@ public class ActionParser {
         }
     }
 
-    private String sanitizeAndRepairJson(String raw) {
-        if (raw == null) {
-            return null;
-        }
-
-        String cleaned = raw.replace("```json", "")
-                .replace("```JSON", "")
-                .replace("```", "")
-                .trim();
-        if (cleaned.isEmpty()) {
-            return null;
-        }
-
-        String extracted = extractJsonObject(cleaned);
-        if (extracted == null) {
-            extracted = cleaned;
-        }
-
-        String repaired = repairCommonJsonIssues(extracted);
-        if (repaired == null || repaired.trim().isEmpty()) {
-            return null;
-        }
-        return repaired.trim();
-    }
-
-    private String extractJsonObject(String text) {
-        int start = text.indexOf('{');
-        if (start < 0) {
-            return null;
-        }
-
-        int depth = 0;
-        boolean inString = false;
-        boolean escaped = false;
-        for (int i = start; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (inString) {
-                if (escaped) {
-                    escaped = false;
-                } else if (c == '\\') {
-                    escaped = true;
-                } else if (c == '"') {
-                    inString = false;
-                }
-                continue;
-            }
-
-            if (c == '"') {
-                inString = true;
-                continue;
-            }
-            if (c == '{') {
-                depth++;
-            } else if (c == '}') {
-                depth--;
-                if (depth == 0) {
-                    return text.substring(start, i + 1);
-                }
-            }
-        }
-
-        String partial = text.substring(start);
-        int missing = Math.max(1, depth);
-        StringBuilder sb = new StringBuilder(partial);
-        for (int i = 0; i < missing; i++) {
-            sb.append('}');
-        }
-        return sb.toString();
-    }
-
-    private String repairCommonJsonIssues(String json) {
-        String repaired = json.trim();
-
-        repaired = repaired.replaceAll(",\\s*([}\\]])", "$1");
-
-        int openBrace = countChar(repaired, '{');
-        int closeBrace = countChar(repaired, '}');
-        if (closeBrace < openBrace) {
-            StringBuilder sb = new StringBuilder(repaired);
-            for (int i = 0; i < openBrace - closeBrace; i++) {
-                sb.append('}');
-            }
-            repaired = sb.toString();
-        }
-
-        int quoteCount = countChar(repaired, '"');
-        if (quoteCount % 2 != 0) {
-            repaired = repaired + '"';
-        }
-
-        return repaired;
-    }
-
-    private int countChar(String text, char c) {
-        int count = 0;
-        for (int i = 0; i < text.length(); i++) {
-            if (text.charAt(i) == c) {
-                count++;
-            }
-        }
-        return count;
+    /** 单个计划对象的修复结果拷贝成字符串，解析路径本身直接读修复缓冲区。 */
+    String sanitizeAndRepairJson(String raw) {
+        CharSequence repaired = REPAIR.get().repair(raw, false);
+        return repaired == null ? null : repaired.toString();
     }
 
-    private String summarizeForLog(String text) {
+    private String summarizeForLog(CharSequence text) {
         if (text == null) {
             return "null";
         }
-        String compact = text.replaceAll("\\s+", " ");
+        String compact = text.toString().replaceAll("\\s+", " ");
         if (compact.length() <= 120) {
             return compact;
         }
@@ -0,0 +1,374 @@
+package com.example.philotes.domain;
+
+/**
+ * 模型输出的 JSON 修复器：单遍状态机，替代原先的 String.replace 去围栏 → 提取对象 →
+ * 正则删尾随逗号 → 逐字符计数补括号/引号 这一串全量扫描。
+ *
+ * 每个字符只看一次，处理内容：
+ * - 跳过首个 '{'（允许数组时也包括 '['）之前的说明文字，顶层容器闭合后忽略其余内容；
+ * - 允许数组而顶层是对象时，输出包一层数组：模型有时连写 {...},{...} 或每个对象一个围栏，
+ *   首个对象闭合后继续收集后续顶层对象，其间的逗号、围栏和说明文字跳过；
+ * - 去掉字符串外的代码块围栏（```、```json 等）；
+ * - 跟踪字符串与转义状态，字符串里的括号、逗号、反引号原样保留；
+ * - 删除 '}' / ']' 前的尾随逗号；
+ * - 用栈配对 {} 与 []，错位的闭合符先补齐中间层，无法配对的丢弃；
+ * - 输入截断时补全：未完成的转义丢弃、字符串补引号、悬空的键补 ":null"、
+ *   冒号后补 null，再按栈逆序闭合。
+ * 字符串中的裸控制字符会转义，非法转义按字面反斜杠处理。
+ *
+ * 输出写入复用缓冲区。状态可以跨 {@link #append} 延续，流式场景每个 delta 只处理新增部分，
+ * {@link #result()} 在已处理内容之后临时补上闭合后缀。实例不是线程安全的。
+ */
+public final class JsonRepair {
+
+    // 超过该容量的缓冲区在 reset 时释放，避免一次超长回复长期占住内存
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final int STATE_SEEK = 0;
+    private static final int STATE_VALUE = 1;
+    private static final int STATE_STRING = 2;
+    private static final int STATE_DONE = 3;
+    // 隐式数组里一个顶层对象已闭合，等待下一个 '{'
+    private static final int STATE_NEXT = 4;
+
+    // 字符串外最近一个有效记号，用于判断字符串是键还是值以及截断时的补全
+    private static final int LAST_OPEN = 0;
+    private static final int LAST_COMMA = 1;
+    private static final int LAST_COLON = 2;
+    private static final int LAST_KEY = 3;
+    private static final int LAST_VALUE = 4;
+
+    private StringBuilder out = new StringBuilder(256);
+    // 尚未确定去留的字符：逗号及其后空白、反引号串、未完成的转义序列
+    private final StringBuilder pending = new StringBuilder(8);
+    private char[] stack = new char[16];
+    private int depth;
+    private int state;
+    private int last;
+    private boolean allowArray;
+    // stack[0] 是为连写的顶层对象补上的 '['，输入里并没有
+    private boolean implicitArray;
+    private boolean stringIsKey;
+    private boolean commaPending;
+    private int backticks;
+    private boolean skippingFenceTag;
+    // result() 追加闭合后缀前的长度；-1 表示缓冲区里没有临时后缀
+    private int committed = -1;
+
+    public JsonRepair() {
+        reset(false);
+    }
+
+    /**
+     * 一次性修复整段文本。
+     *
+     * @param allowArray 为 true 时顶层也可以是数组（取 '[' 与 '{' 中先出现的一个）；
+     *                   顶层是对象时结果总是数组，连写的多个对象依次成为元素
+     * @return 修复后的 JSON，指向内部缓冲区，下次调用前有效；找不到对象/数组时返回 null
+     */
+    public CharSequence repair(CharSequence raw, boolean allowArray) {
+        reset(allowArray);
+        if (raw == null) {
+            return null;
+        }
+        append(raw);
+        return result();
+    }
+
+    /** 清空状态，开始处理一段新的输入。 */
+    public void reset(boolean allowArray) {
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            out = new StringBuilder(256);
+        } else {
+            out.setLength(0);
+        }
+        pending.setLength(0);
+        depth = 0;
+        state = STATE_SEEK;
+        last = LAST_OPEN;
+        this.allowArray = allowArray;
+        implicitArray = false;
+        stringIsKey = false;
+        commaPending = false;
+        backticks = 0;
+        skippingFenceTag = false;
+        committed = -1;
+    }
+
+    /** 继续处理一段输入，状态接着上一次的位置。 */
+    public JsonRepair append(CharSequence chunk) {
+        if (chunk == null || state == STATE_DONE) {
+            return this;
+        }
+        if (committed >= 0) {
+            out.setLength(committed);
+            committed = -1;
+        }
+        for (int i = 0, n = chunk.length(); i < n && state != STATE_DONE; i++) {
+            accept(chunk.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * 当前已处理内容补全闭合后的 JSON。
+     *
+     * @return 指向内部缓冲区，下次 append/reset 前有效；尚未遇到对象/数组起始符时返回 null
+     */
+    public CharSequence result() {
+        if (state == STATE_SEEK) {
+            return null;
+        }
+        if (committed >= 0) {
+            return out;
+        }
+        committed = out.length();
+        if (state == STATE_DONE) {
+            return out;
+        }
+        int tail = last;
+        if (state == STATE_STRING) {
+            // 未完成的转义留在 pending 里，这里直接丢弃
+            out.append('"');
+            tail = stringIsKey ? LAST_KEY : LAST_VALUE;
+        }
+        completeDangling(tail);
+        for (int i = depth - 1; i >= 0; i--) {
+            out.append(closerOf(stack[i]));
+        }
+        return out;
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case STATE_SEEK:
+                if (c == '{' && allowArray) {
+                    open('[');
+                    implicitArray = true;
+                }
+                if (c == '{' || (allowArray && c == '[')) {
+                    open(c);
+                    state = STATE_VALUE;
+                }
+                return;
+            case STATE_NEXT:
+                if (c == '{') {
+                    out.append(',');
+                    open(c);
+                    state = STATE_VALUE;
+                }
+                return;
+            case STATE_STRING:
+                acceptInString(c);
+                return;
+            default:
+                acceptOutsideString(c);
+        }
+    }
+
+    private void acceptInString(char c) {
+        if (pending.length() > 0) {
+            if (acceptEscape(c)) {
+                return;
+            }
+        }
+        if (c == '\\') {
+            pending.append(c);
+        } else if (c == '"') {
+            out.append(c);
+            state = STATE_VALUE;
+            last = stringIsKey ? LAST_KEY : LAST_VALUE;
+        } else if (c < 0x20) {
+            appendControl(c);
+        } else {
+            out.append(c);
+        }
+    }
+
+    /** 处理转义序列中的字符；返回 false 表示序列已作废，c 需要按普通字符重新处理。 */
+    private boolean acceptEscape(char c) {
+        if (pending.length() == 1) {
+            if (c == 'u') {
+                pending.append(c);
+            } else {
+                if ("\"\\/bfnrt".indexOf(c) < 0) {
+                    out.append('\\');
+                }
+                out.append('\\');
+                if (c < 0x20) {
+                    pending.setLength(0);
+                    appendControl(c);
+                    return true;
+                }
+                out.append(c);
+                pending.setLength(0);
+            }
+            return true;
+        }
+        if (Character.digit(c, 16) >= 0) {
+            pending.append(c);
+            if (pending.length() == 6) {
+                out.append(pending);
+                pending.setLength(0);
+            }
+            return true;
+        }
+        // 反斜杠 u 之后不是十六进制数字：反斜杠按字面输出
+        out.append('\\').append(pending);
+        pending.setLength(0);
+        return false;
+    }
+
+    private void acceptOutsideString(char c) {
+        if (backticks > 0) {
+            if (c == '`') {
+                backticks++;
+                return;
+            }
+            if (backticks >= 3) {
+                skippingFenceTag = true;
+            } else {
+                flushPending();
+                for (int i = 0; i < backticks; i++) {
+                    out.append('`');
+                }
+                last = LAST_VALUE;
+            }
+            backticks = 0;
+        }
+        if (skippingFenceTag) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                return;
+            }
+            skippingFenceTag = false;
+        }
+        if (commaPending) {
+            if (isWhitespace(c)) {
+                pending.append(c);
+                return;
+            }
+            if (c == ',') {
+                // 连续逗号只保留一个
+                return;
+            }
+            if (c == '}' || c == ']') {
+                pending.setLength(0);
+                commaPending = false;
+            } else if (c != '`') {
+                flushPending();
+            }
+        }
+
+        switch (c) {
+            case '`':
+                backticks = 1;
+                return;
+            case ',':
+                // 紧跟在开括号后的逗号没有意义，直接丢弃
+                if (last != LAST_OPEN) {
+                    commaPending = true;
+                    pending.append(c);
+                }
+                return;
+            case '"':
+                stringIsKey = depth > 0 && stack[depth - 1] == '{'
+                        && (last == LAST_OPEN || last == LAST_COMMA);
+                out.append(c);
+                state = STATE_STRING;
+                return;
+            case '{':
+            case '[':
+                open(c);
+                return;
+            case '}':
+            case ']':
+                close(c);
+                return;
+            case ':':
+                out.append(c);
+                last = LAST_COLON;
+                return;
+            default:
+                out.append(c);
+                if (!isWhitespace(c)) {
+                    last = LAST_VALUE;
+                }
+        }
+    }
+
+    private void flushPending() {
+        if (commaPending) {
+            out.append(pending);
+            pending.setLength(0);
+            commaPending = false;
+            last = LAST_COMMA;
+        }
+    }
+
+    private void open(char c) {
+        if (depth == stack.length) {
+            char[] grown = new char[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = c;
+        out.append(c);
+        last = LAST_OPEN;
+    }
+
+    private void close(char c) {
+        char opener = c == '}' ? '{' : '[';
+        // 补上的外层数组不参与配对，多余的 ']' 不能把它提前闭合
+        int floor = implicitArray ? 1 : 0;
+        int target = depth - 1;
+        while (target >= floor && stack[target] != opener) {
+            target--;
+        }
+        if (target < floor) {
+            // 没有可配对的开括号，丢弃
+            return;
+        }
+        completeDangling(last);
+        while (depth > target) {
+            out.append(closerOf(stack[--depth]));
+        }
+        last = LAST_VALUE;
+        if (depth == 0) {
+            state = STATE_DONE;
+        } else if (implicitArray && depth == 1) {
+            state = STATE_NEXT;
+        }
+    }
+
+    private void completeDangling(int tail) {
+        if (tail == LAST_KEY) {
+            out.append(":null");
+        } else if (tail == LAST_COLON) {
+            out.append("null");
+        }
+    }
+
+    private void appendControl(char c) {
+        switch (c) {
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+        }
+    }
+
+    private static char closerOf(char opener) {
+        return opener == '{' ? '}' : ']';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+}
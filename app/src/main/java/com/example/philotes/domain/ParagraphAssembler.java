@@ -0,0 +1,141 @@
+package com.example.philotes.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 把自上而下陆续到达的 OCR 行聚成段落。
+ *
+ * 行与已有段落纵向间距不超过行高的 MAX_GAP_RATIO 倍、且水平有重叠时并入该段；
+ * 扫描前沿（已识别到的最低 y）越过段落底部 + 间距阈值后，段落不可能再增长，
+ * 视为稳定并输出。多列布局（如聊天气泡左右分布）会各自成段。
+ */
+public class ParagraphAssembler {
+
+    static final float MAX_GAP_RATIO = 0.9f;
+    private static final int MIN_LINE_HEIGHT = 8;
+
+    private final List<Paragraph> open = new ArrayList<>();
+
+    /**
+     * 稳定段落，坐标为整帧像素。
+     */
+    public static final class Paragraph {
+        private final StringBuilder text = new StringBuilder();
+        private int left;
+        private int top;
+        private int right;
+        private int bottom;
+        private int lineHeightSum;
+        private int lineCount;
+
+        private Paragraph(String line, int left, int top, int right, int bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            append(line, left, top, right, bottom);
+        }
+
+        private void append(String line, int l, int t, int r, int b) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(line);
+            left = Math.min(left, l);
+            top = Math.min(top, t);
+            right = Math.max(right, r);
+            bottom = Math.max(bottom, b);
+            lineHeightSum += Math.max(MIN_LINE_HEIGHT, b - t);
+            lineCount++;
+        }
+
+        int maxGap() {
+            return (int) (lineHeightSum / (float) lineCount * MAX_GAP_RATIO);
+        }
+
+        public String getText() {
+            return text.toString();
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getBottom() {
+            return bottom;
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+    }
+
+    /**
+     * 加入一行文本。同一批次内的行应按 top 升序加入。
+     */
+    public void addLine(String line, int left, int top, int right, int bottom) {
+        if (line == null) {
+            return;
+        }
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) {
+            return;
+        }
+
+        Paragraph target = null;
+        for (Paragraph p : open) {
+            boolean nearBelow = top - p.bottom <= Math.max(p.maxGap(), (bottom - top) * MAX_GAP_RATIO)
+                    && bottom > p.top;
+            boolean overlapsX = left < p.right && right > p.left;
+            if (nearBelow && overlapsX) {
+                target = p;
+                break;
+            }
+        }
+        if (target == null) {
+            open.add(new Paragraph(trimmed, left, top, right, bottom));
+        } else {
+            target.append(trimmed, left, top, right, bottom);
+        }
+    }
+
+    /**
+     * 扫描前沿推进到 frontierY（之后到达的行 top 都不小于它），返回新稳定的段落，按 top 排序。
+     */
+    public List<Paragraph> advanceFrontier(int frontierY) {
+        List<Paragraph> closed = new ArrayList<>();
+        for (int i = open.size() - 1; i >= 0; i--) {
+            Paragraph p = open.get(i);
+            if (frontierY - p.bottom > p.maxGap()) {
+                closed.add(p);
+                open.remove(i);
+            }
+        }
+        sortByTop(closed);
+        return closed;
+    }
+
+    /**
+     * 输入结束，剩余段落全部输出。
+     */
+    public List<Paragraph> flush() {
+        List<Paragraph> rest = new ArrayList<>(open);
+        open.clear();
+        sortByTop(rest);
+        return rest;
+    }
+
+    private static void sortByTop(List<Paragraph> paragraphs) {
+        if (paragraphs.size() > 1) {
+            Collections.sort(paragraphs, new Comparator<Paragraph>() {
+                @Override
+                public int compare(Paragraph a, Paragraph b) {
+                    return Integer.compare(a.top, b.top);
+                }
+            });
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -48,6 +49,31 @@ public final class RuleEngine {
         return null;
     }
 
+    /**
+     * 统计文本中规则命中次数（关键词逐次出现 + 正则逐次匹配），用于衡量片段的信息密度。
+     */
+    public int countMatches(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        String normalized = text.toLowerCase(Locale.ROOT);
+        int hits = 0;
+        for (String keyword : keywordRules) {
+            if (keyword.isEmpty()) continue;
+            int from = 0;
+            int idx;
+            while ((idx = normalized.indexOf(keyword, from)) >= 0) {
+                hits++;
+                from = idx + keyword.length();
+            }
+        }
+        for (Pattern pattern : regexRules) {
+            Matcher matcher = pattern.matcher(normalized);
+            while (matcher.find()) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
     public boolean shouldTrigger(String mergedText) {
         if (mergedText == null || mergedText.trim().isEmpty()) {
             return false;
@@ -0,0 +1,230 @@
+package com.example.philotes.domain;
+
+import com.example.philotes.data.api.HeuristicTokenCounter;
+import com.example.philotes.data.api.ILlmService;
+import com.example.philotes.data.api.TokenCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 按 token 预算裁剪 LLM 输入。
+ *
+ * 可用预算 = 上下文窗口 - system prompt - 输出预留 - 对话模板开销，
+ * 再与调用方给出的单次输入上限取小。超出时把文本切成片段，
+ * 按 RuleEngine 命中密度（命中数 / token 数）排序，优先装入高价值片段，
+ * 最终按原文顺序拼接，保证本地 KV cache 不溢出、云端不浪费 token。
+ */
+public class TokenBudgeter {
+
+    /** system/user 角色标记等模板 token 开销 */
+    static final int CHAT_TEMPLATE_OVERHEAD = 16;
+    /** 单行超过此长度时再按句切分 */
+    static final int MAX_SEGMENT_CHARS = 120;
+
+    private final TokenCounter counter;
+    private final int contextWindow;
+    private final int outputReserve;
+    private final RuleEngine ruleEngine;
+
+    public TokenBudgeter(TokenCounter counter, int contextWindow, int outputReserve, RuleEngine ruleEngine) {
+        this.counter = counter == null ? HeuristicTokenCounter.INSTANCE : counter;
+        this.contextWindow = contextWindow;
+        this.outputReserve = Math.max(0, outputReserve);
+        this.ruleEngine = ruleEngine;
+    }
+
+    /**
+     * 以当前生效后端的窗口与分词器构造。
+     */
+    public static TokenBudgeter forService(ILlmService service) {
+        if (service == null) {
+            return new TokenBudgeter(null, 0, 0, RuleEngine.getInstance());
+        }
+        return new TokenBudgeter(service.getTokenCounter(), service.getContextWindowTokens(),
+                service.getMaxOutputTokens(), RuleEngine.getInstance());
+    }
+
+    public int countTokens(String text) {
+        return counter.countTokens(text);
+    }
+
+    /**
+     * system prompt 之后还能放多少用户输入 token；maxUserTokens <= 0 表示不额外限制。
+     * 窗口未知且无上限时返回 Integer.MAX_VALUE。
+     */
+    public int remainingFor(String systemPrompt, int maxUserTokens) {
+        int remaining = Integer.MAX_VALUE;
+        if (contextWindow > 0) {
+            remaining = contextWindow - counter.countTokens(systemPrompt) - outputReserve - CHAT_TEMPLATE_OVERHEAD;
+        }
+        if (maxUserTokens > 0) {
+            remaining = Math.min(remaining, maxUserTokens);
+        }
+        return Math.max(0, remaining);
+    }
+
+    /**
+     * 自由文本入口：放得下原样返回，否则按行/句切片后打包。
+     */
+    public String fit(String systemPrompt, String text, int maxUserTokens) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        int budget = remainingFor(systemPrompt, maxUserTokens);
+        if (budget == Integer.MAX_VALUE || counter.countTokens(text) <= budget) {
+            return text;
+        }
+        return pack(splitSegments(text), budget);
+    }
+
+    /**
+     * 片段入口（如 OCR 文本块）：按命中密度挑选装入预算的片段，按原顺序换行拼接。
+     */
+    public String pack(String systemPrompt, List<String> segments, int maxUserTokens) {
+        return pack(segments, remainingFor(systemPrompt, maxUserTokens));
+    }
+
+    String pack(List<String> segments, int budget) {
+        if (segments == null || segments.isEmpty() || budget <= 0) {
+            return "";
+        }
+
+        final int n = segments.size();
+        final int[] tokens = new int[n];
+        final float[] density = new float[n];
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            String segment = segments.get(i);
+            tokens[i] = counter.countTokens(segment);
+            // 换行分隔符按 1 token 计
+            total += tokens[i] + (i > 0 ? 1 : 0);
+            int hits = ruleEngine == null ? 0 : ruleEngine.countMatches(segment);
+            density[i] = hits == 0 ? 0f : hits / (float) Math.max(1, tokens[i]);
+        }
+        if (total <= budget) {
+            return join(segments);
+        }
+
+        Integer[] ranked = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ranked[i] = i;
+        }
+        // 命中密度降序；同密度保持原文顺序（越靠前越优先）
+        Arrays.sort(ranked, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byDensity = Float.compare(density[b], density[a]);
+                return byDensity != 0 ? byDensity : Integer.compare(a, b);
+            }
+        });
+
+        boolean[] selected = new boolean[n];
+        String truncatedHead = null;
+        int truncatedIndex = -1;
+        int used = 0;
+        for (Integer index : ranked) {
+            int cost = tokens[index] + (used > 0 ? 1 : 0);
+            if (used + cost <= budget) {
+                selected[index] = true;
+                used += cost;
+            } else if (used == 0 && truncatedIndex < 0) {
+                // 最高价值片段本身就超预算：截断保留前缀
+                truncatedHead = truncateToTokens(segments.get(index), budget);
+                truncatedIndex = index;
+                used = counter.countTokens(truncatedHead);
+            }
+        }
+
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (i == truncatedIndex) {
+                out.add(truncatedHead);
+            } else if (selected[i]) {
+                out.add(segments.get(i));
+            }
+        }
+        return join(out);
+    }
+
+    /**
+     * 取不超过 maxTokens 的最长前缀（二分查找）。
+     */
+    String truncateToTokens(String text, int maxTokens) {
+        if (text == null || maxTokens <= 0) {
+            return "";
+        }
+        if (counter.countTokens(text) <= maxTokens) {
+            return text;
+        }
+        int lo = 0;
+        int hi = text.length();
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (counter.countTokens(safePrefix(text, mid)) <= maxTokens) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return safePrefix(text, lo);
+    }
+
+    /**
+     * 按行切分，过长的行再按句末标点切分（标点保留在句尾）。
+     */
+    static List<String> splitSegments(String text) {
+        List<String> segments = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.length() <= MAX_SEGMENT_CHARS) {
+                segments.add(trimmed);
+                continue;
+            }
+            int start = 0;
+            for (int i = 0; i < trimmed.length(); i++) {
+                char ch = trimmed.charAt(i);
+                boolean sentenceEnd = ch == '。' || ch == '！' || ch == '？' || ch == '；'
+                        || ch == '!' || ch == '?' || ch == ';' || (ch == '.' && i + 1 < trimmed.length()
+                        && trimmed.charAt(i + 1) == ' ');
+                if (sentenceEnd || i - start + 1 >= MAX_SEGMENT_CHARS) {
+                    String piece = trimmed.substring(start, i + 1).trim();
+                    if (!piece.isEmpty()) {
+                        segments.add(piece);
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start < trimmed.length()) {
+                String piece = trimmed.substring(start).trim();
+                if (!piece.isEmpty()) {
+                    segments.add(piece);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static String safePrefix(String text, int length) {
+        if (length > 0 && length < text.length() && Character.isHighSurrogate(text.charAt(length - 1))) {
+            length--;
+        }
+        return text.substring(0, length);
+    }
+
+    private static String join(List<String> parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+}
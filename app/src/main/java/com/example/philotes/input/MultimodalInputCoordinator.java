@@ -4,8 +4,11 @@ import com.example.philotes.data.model.ActionPlan;
 import com.example.philotes.data.model.OcrResult;
 import com.example.philotes.domain.ActionExecutor;
 import com.example.philotes.domain.ActionParser;
+import com.example.philotes.startup.StartupGraph;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 /**
  * Coordinates text/OCR input parsing and action execution.
@@ -20,15 +23,33 @@ public class MultimodalInputCoordinator {
         void onCompleted();
     }
 
-    private final ActionParser actionParser;
-    private final ActionExecutor actionExecutor;
+    private final Supplier<ActionParser> actionParser;
+    private final Supplier<ActionExecutor> actionExecutor;
+    private final BooleanSupplier parserAvailable;
 
     public MultimodalInputCoordinator(ActionParser actionParser, ActionExecutor actionExecutor) {
+        this(() -> actionParser, () -> actionExecutor, () -> actionParser != null);
+    }
+
+    private MultimodalInputCoordinator(Supplier<ActionParser> actionParser, Supplier<ActionExecutor> actionExecutor,
+                                       BooleanSupplier parserAvailable) {
         this.actionParser = actionParser;
         this.actionExecutor = actionExecutor;
+        this.parserAvailable = parserAvailable;
+    }
+
+    /**
+     * 启动图还在初始化时就可交给界面的延迟代理：解析/执行在首次使用时阻塞到组件就绪，
+     * 因此只能在工作线程上调用；canParse() 在解析器初始化结束前乐观地返回 true。
+     */
+    public static MultimodalInputCoordinator deferred(StartupGraph.Component<ActionParser> actionParser,
+                                                      StartupGraph.Component<ActionExecutor> actionExecutor) {
+        return new MultimodalInputCoordinator(actionParser::get, actionExecutor::get,
+                () -> !actionParser.isDone() || actionParser.peek() != null);
     }
 
     public ActionPlan parseText(String text) {
+        ActionParser actionParser = this.actionParser.get();
         if (actionParser == null || text == null || text.trim().isEmpty()) {
             return null;
         }
@@ -36,6 +57,7 @@ public class MultimodalInputCoordinator {
     }
 
     public void parseTextStreaming(String text, ParseStreamCallback callback) {
+        ActionParser actionParser = this.actionParser.get();
         if (actionParser == null) {
             if (callback != null) {
                 callback.onError(new IllegalStateException("解析器未初始化"));
@@ -76,6 +98,7 @@ public class MultimodalInputCoordinator {
     }
 
     public ActionPlan parseOcr(OcrResult ocrResult) {
+        ActionParser actionParser = this.actionParser.get();
         if (actionParser == null || ocrResult == null) {
             return null;
         }
@@ -90,6 +113,7 @@ public class MultimodalInputCoordinator {
      * 带情境感知的文本多意图解析。contextDescriptor 由 ContextEnricher 生成。
      */
     public List<ActionPlan> parseTextMultiple(String text, String matchedKeyword, String contextDescriptor) {
+        ActionParser actionParser = this.actionParser.get();
         if (actionParser == null || text == null || text.trim().isEmpty()) {
             return Collections.emptyList();
         }
@@ -105,6 +129,7 @@ public class MultimodalInputCoordinator {
      */
     public List<ActionPlan> parseOcrMultiple(OcrResult ocrResult, String matchedKeyword,
                                              String contextDescriptor) {
+        ActionParser actionParser = this.actionParser.get();
         if (actionParser == null || ocrResult == null) {
             return Collections.emptyList();
         }
@@ -112,6 +137,7 @@ public class MultimodalInputCoordinator {
     }
 
     public ActionExecutor.ExecutionResult execute(ActionPlan plan) {
+        ActionExecutor actionExecutor = this.actionExecutor.get();
         if (actionExecutor == null || plan == null) {
             return new ActionExecutor.ExecutionResult(false, "执行器未就绪或动作为空");
         }
@@ -119,7 +145,7 @@ public class MultimodalInputCoordinator {
     }
 
     public boolean canParse() {
-        return actionParser != null;
+        return parserAvailable.getAsBoolean();
     }
 }
 
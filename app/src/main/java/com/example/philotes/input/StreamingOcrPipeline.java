@@ -0,0 +1,374 @@
+package com.example.philotes.input;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.data.model.ActionSlots;
+import com.example.philotes.data.model.ActionType;
+import com.example.philotes.data.model.OcrResult;
+import com.example.philotes.domain.ParagraphAssembler;
+import com.example.philotes.domain.RuleEngine;
+import com.example.philotes.utils.MetricsRegistry;
+import com.example.philotes.utils.OcrTileCache;
+import com.example.philotes.utils.RegionOcrRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 流水线式截图解析：OCR 按水平条带逐块产出 → 段落聚类 → 命中规则的稳定段落立即送 LLM。
+ *
+ * 首张卡片的耗时只包含首个命中段落所在条带的 OCR 与一次 LLM 调用，
+ * 不再等待整页 OCR。未命中规则的段落在 OCR 结束后合并补发一次，
+ * 所有结果按动作签名去重。条带先查 OcrTileCache：与上一帧相同的部分直接复用缓存文本块，
+ * 只识别变化的区域；未命中时按固定条带切分。
+ *
+ * 回调均在内部工作线程触发，UI 更新需自行切回主线程。
+ */
+public class StreamingOcrPipeline {
+    private static final String TAG = "StreamingOcrPipeline";
+
+    static final int BAND_COUNT = 4;
+    private static final int MAX_TOTAL_PLANS = 5;
+    private static final int MAX_REMAINDER_CHARS = 600;
+    private static final int MIN_PARAGRAPH_CHARS = 2;
+
+    public interface Listener {
+        /** 单个条带识别完成。 */
+        void onOcrProgress(int finishedBands, int totalBands);
+
+        /** 新的（已去重的）候选动作，index 从 0 开始递增。 */
+        void onPlan(ActionPlan plan, int index);
+
+        /** OCR 与全部解析均结束；plans 为本次产出的全部动作。 */
+        void onComplete(OcrResult ocrResult, List<ActionPlan> plans);
+
+        void onError(Exception e);
+
+        /**
+         * 流水线已被 cancel() 终止，OCR 不再访问 bitmap。
+         * onComplete / onError / onCancelled 三者恰好回调其一。
+         */
+        void onCancelled();
+    }
+
+    private final MultimodalInputCoordinator coordinator;
+    private final RuleEngine ruleEngine;
+    private final String contextDescriptor;
+    private final ExecutorService parseExecutor = Executors.newSingleThreadExecutor();
+    private final ParagraphAssembler assembler = new ParagraphAssembler();
+    private final Set<String> dispatchedTexts = new HashSet<>();
+    private final Set<PlanKey> planKeys = new HashSet<>();
+    private final List<ActionPlan> plans = new ArrayList<>();
+    private final List<String> unmatchedParagraphs = new ArrayList<>();
+    private final AtomicBoolean terminated = new AtomicBoolean();
+    private volatile boolean cancelled;
+    // OCR 已结束（RegionOcrRunner 回调过 onComplete），此后取消可以立即交付 onCancelled
+    private volatile boolean ocrFinished;
+    private volatile Listener listener;
+
+    public StreamingOcrPipeline(MultimodalInputCoordinator coordinator, RuleEngine ruleEngine,
+            String contextDescriptor) {
+        this.coordinator = coordinator;
+        this.ruleEngine = ruleEngine;
+        this.contextDescriptor = contextDescriptor;
+    }
+
+    /**
+     * 在主线程调用。bitmap 由调用方在 onComplete/onError/onCancelled 之后回收。
+     */
+    public void start(Context context, Bitmap bitmap, String packageName, Listener listener) {
+        this.listener = listener;
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final OcrResult fullResult = new OcrResult(width, height);
+
+        final OcrTileCache.Lookup cache = OcrTileCache.lookup(bitmap, packageName);
+        final List<RegionOcrRunner.Region> bands;
+        if (cache.regions != null) {
+            bands = cache.regions;
+        } else {
+            bands = new ArrayList<>(BAND_COUNT);
+            int padding = height / (BAND_COUNT * 8);
+            for (int i = 0; i < BAND_COUNT; i++) {
+                bands.add(new RegionOcrRunner.Region(height * i / BAND_COUNT, height * (i + 1) / BAND_COUNT, padding));
+            }
+        }
+        final int total = bands.size();
+        final long ocrStartNs = System.nanoTime();
+
+        RegionOcrRunner.run(context, bitmap, packageName, bands, new RegionOcrRunner.Listener() {
+            private int finished;
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+
+            @Override
+            public void onRegion(int index, RegionOcrRunner.Region region, List<OcrResult.TextBlock> blocks) {
+                if (cancelled) {
+                    return;
+                }
+                finished++;
+                List<OcrResult.TextBlock> sorted = new ArrayList<>(blocks);
+                Collections.sort(sorted, new Comparator<OcrResult.TextBlock>() {
+                    @Override
+                    public int compare(OcrResult.TextBlock a, OcrResult.TextBlock b) {
+                        return Integer.compare(a.boundingBox.top, b.boundingBox.top);
+                    }
+                });
+                for (OcrResult.TextBlock block : sorted) {
+                    fullResult.addTextBlock(block.text, block.boundingBox, block.confidence);
+                    assembler.addLine(block.text, block.boundingBox.left, block.boundingBox.top,
+                            block.boundingBox.right, block.boundingBox.bottom);
+                }
+                listener.onOcrProgress(finished, total);
+                for (ParagraphAssembler.Paragraph paragraph : assembler.advanceFrontier(region.bottom)) {
+                    onParagraph(paragraph.getText(), listener);
+                }
+            }
+
+            @Override
+            public void onComplete(int failures) {
+                ocrFinished = true;
+                if (cancelled) {
+                    deliverCancelled();
+                    return;
+                }
+                // 条带各自计入区域延迟，这里按整次截屏记一条
+                MetricsRegistry.get().recordNanos(MetricsRegistry.OCR_LATENCY, System.nanoTime() - ocrStartNs);
+                if (failures == 0) {
+                    OcrTileCache.store(cache, fullResult);
+                } else {
+                    OcrTileCache.invalidate();
+                }
+                for (ParagraphAssembler.Paragraph paragraph : assembler.flush()) {
+                    onParagraph(paragraph.getText(), listener);
+                }
+                if (failures >= total) {
+                    finish(() -> listener.onError(new IllegalStateException("OCR failed on all bands")));
+                    return;
+                }
+                dispatchRemainder(listener);
+                finish(() -> listener.onComplete(fullResult, snapshotPlans()));
+            }
+        });
+    }
+
+    /**
+     * 可在任意线程调用。OCR 已结束时立即回调 onCancelled，否则等正在识别的区域返回后回调。
+     */
+    public void cancel() {
+        cancelled = true;
+        parseExecutor.shutdownNow();
+        if (ocrFinished) {
+            deliverCancelled();
+        }
+    }
+
+    /** 排在已提交的解析任务之后交付终态回调；与 cancel 竞争时由 terminated 保证只回调一次。 */
+    private void finish(Runnable terminal) {
+        try {
+            parseExecutor.execute(() -> {
+                if (terminated.compareAndSet(false, true)) {
+                    terminal.run();
+                }
+            });
+            parseExecutor.shutdown();
+        } catch (RejectedExecutionException e) {
+            // cancel 已关闭执行器，这个任务不会再运行
+            deliverCancelled();
+        }
+    }
+
+    private void deliverCancelled() {
+        Listener target = listener;
+        if (target != null && terminated.compareAndSet(false, true)) {
+            target.onCancelled();
+        }
+    }
+
+    private void onParagraph(String text, Listener listener) {
+        if (text == null || text.trim().length() < MIN_PARAGRAPH_CHARS) {
+            return;
+        }
+        String keyword = ruleEngine == null ? null : ruleEngine.findFirstMatchedKeyword(text);
+        if (keyword == null) {
+            unmatchedParagraphs.add(text);
+            return;
+        }
+        dispatch(text, keyword, listener);
+    }
+
+    /**
+     * OCR 结束后，把未命中规则的段落合并补发一次，兜住规则库未覆盖的表述。
+     */
+    private void dispatchRemainder(Listener listener) {
+        StringBuilder merged = new StringBuilder();
+        for (String paragraph : unmatchedParagraphs) {
+            if (merged.length() + paragraph.length() > MAX_REMAINDER_CHARS) {
+                break;
+            }
+            if (merged.length() > 0) {
+                merged.append('\n');
+            }
+            merged.append(paragraph);
+        }
+        unmatchedParagraphs.clear();
+        if (merged.length() > 0) {
+            dispatch(merged.toString(), null, listener);
+        }
+    }
+
+    private void dispatch(String text, String keyword, Listener listener) {
+        if (cancelled || !dispatchedTexts.add(text)) {
+            return;
+        }
+        try {
+            parseExecutor.execute(() -> parse(text, keyword, listener));
+        } catch (RejectedExecutionException e) {
+            // 已取消，执行器不再接受任务
+        }
+    }
+
+    private void parse(String text, String keyword, Listener listener) {
+        if (cancelled || planCount() >= MAX_TOTAL_PLANS) {
+            return;
+        }
+        List<ActionPlan> parsed;
+        try {
+            parsed = coordinator.parseTextMultiple(text, keyword, contextDescriptor);
+        } catch (Exception e) {
+            Log.w(TAG, "Paragraph parse failed: " + e.getMessage());
+            return;
+        }
+        for (ActionPlan plan : parsed) {
+            int index = acceptPlan(plan);
+            if (index >= 0 && !cancelled) {
+                listener.onPlan(plan, index);
+            }
+        }
+    }
+
+    private synchronized int acceptPlan(ActionPlan plan) {
+        if (plan == null || plans.size() >= MAX_TOTAL_PLANS || !planKeys.add(planKey(plan))) {
+            return -1;
+        }
+        plans.add(plan);
+        return plans.size() - 1;
+    }
+
+    private synchronized int planCount() {
+        return plans.size();
+    }
+
+    private synchronized List<ActionPlan> snapshotPlans() {
+        return new ArrayList<>(plans);
+    }
+
+    static PlanKey planKey(ActionPlan plan) {
+        return new PlanKey(plan.getType(), plan.getSlots());
+    }
+
+    /**
+     * 去重键：类型 + 归一化后的关键槽位（小写，只保留字母数字），用于跨段落去重。
+     * 哈希与比较都逐字符进行，不拼接签名字符串；槽位完全相同时直接走 ActionSlots 的值相等。
+     */
+    static final class PlanKey {
+        private static final String[] KEY_SLOTS = { "title", "time", "location", "content" };
+
+        private final ActionType type;
+        private final ActionSlots slots;
+        private final int hash;
+
+        PlanKey(ActionType type, ActionSlots slots) {
+            this.type = type;
+            this.slots = slots;
+            int h = type == null ? 0 : type.ordinal() + 1;
+            for (String key : KEY_SLOTS) {
+                h = 31 * h + normalizedHash(slot(slots, key));
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey that = (PlanKey) o;
+            if (hash != that.hash || type != that.type) {
+                return false;
+            }
+            if (slots == null ? that.slots == null : slots.equals(that.slots)) {
+                return true;
+            }
+            for (String key : KEY_SLOTS) {
+                if (!normalizedEquals(slot(slots, key), slot(that.slots, key))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String slot(ActionSlots slots, String key) {
+            return slots == null ? null : slots.get(key);
+        }
+
+        private static int normalizedHash(String value) {
+            int h = 0;
+            if (value != null) {
+                for (int i = 0; i < value.length(); i++) {
+                    char ch = value.charAt(i);
+                    if (Character.isLetterOrDigit(ch)) {
+                        h = 31 * h + Character.toLowerCase(ch);
+                    }
+                }
+            }
+            return h;
+        }
+
+        /** null 与空串、纯标点等价，与哈希的归一化规则一致。 */
+        private static boolean normalizedEquals(String a, String b) {
+            int lenA = a == null ? 0 : a.length();
+            int lenB = b == null ? 0 : b.length();
+            int i = 0;
+            int j = 0;
+            while (true) {
+                while (i < lenA && !Character.isLetterOrDigit(a.charAt(i))) {
+                    i++;
+                }
+                while (j < lenB && !Character.isLetterOrDigit(b.charAt(j))) {
+                    j++;
+                }
+                if (i == lenA || j == lenB) {
+                    return i == lenA && j == lenB;
+                }
+                if (Character.toLowerCase(a.charAt(i)) != Character.toLowerCase(b.charAt(j))) {
+                    return false;
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+}
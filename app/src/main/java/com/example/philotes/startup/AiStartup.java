@@ -0,0 +1,155 @@
+package com.example.philotes.startup;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.philotes.data.api.RoutedLlmService;
+import com.example.philotes.domain.ActionExecutor;
+import com.example.philotes.domain.ActionParser;
+import com.example.philotes.domain.RuleEngine;
+import com.example.philotes.utils.AiSettingsManager;
+import com.example.philotes.utils.MetricsRegistry;
+import com.example.philotes.utils.ModelCatalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 悬浮服务的 AI 组件启动图：
+ *
+ * <pre>
+ * settings ──┬─ rules ── warmup
+ *            └─ router ── parser
+ * model_catalog ─┘
+ * executor
+ * </pre>
+ *
+ * 设置读取（SharedPreferences 首次加载是磁盘 IO）、规则正则编译、模型目录探测都在后台并行，
+ * 主线程只负责挂悬浮球；界面拿 {@link #parser()} / {@link #executor()} 的延迟句柄即可先行响应。
+ * 首帧与 AI 就绪两个里程碑写入 {@link MetricsRegistry}，完整分解打到 logcat。
+ */
+public final class AiStartup {
+    private static final String TAG = "AiStartup";
+
+    public static final String FIRST_FRAME = "first_frame";
+    public static final String AI_READY = "ai_ready";
+
+    private final StartupGraph graph;
+    private final StartupGraph.Component<AiSettingsManager> settings;
+    private final StartupGraph.Component<RuleEngine> rules;
+    private final StartupGraph.Component<ModelCatalog> modelCatalog;
+    private final StartupGraph.Component<ActionExecutor> executor;
+    private final StartupGraph.Component<RoutedLlmService> router;
+    private final StartupGraph.Component<ActionParser> parser;
+
+    public AiStartup(Context context, Executor mainExecutor) {
+        graph = new StartupGraph(StartupGraph.defaultBackground(), mainExecutor);
+        settings = graph.add("settings", () -> {
+            AiSettingsManager manager = new AiSettingsManager(context);
+            manager.applyToLlmConfig();
+            manager.applyToOcrOrchestrator();
+            return manager;
+        });
+        rules = graph.add("rules", () -> {
+            RuleEngine engine = RuleEngine.getInstance();
+            applyRuleEngineSettings(engine, settings.peek());
+            return engine;
+        }, settings);
+        // 规则就绪后空跑一遍捕获热路径，首次截屏不再承担类加载与 Gson 反射开销
+        graph.add("warmup", () -> HotPathWarmup.run(RuleEngine.getInstance()), rules);
+        // 启动时探测一次模型文件，路由与 OCR 之后直接查目录
+        modelCatalog = graph.add("model_catalog", () -> ModelCatalog.getInstance(context));
+        executor = graph.add("executor", () -> new ActionExecutor(context));
+        router = graph.add("router", () -> {
+            RoutedLlmService service = new RoutedLlmService(context);
+            service.prewarmLocalAsync();
+            return service;
+        }, settings, modelCatalog);
+        parser = graph.add("parser", () -> {
+            RoutedLlmService service = router.peek();
+            if (service == null) {
+                throw new IllegalStateException("LLM router unavailable");
+            }
+            return new ActionParser(service);
+        }, router);
+    }
+
+    public void start() {
+        parser.whenDone(Runnable::run, ignored -> {
+            markAiReady(graph);
+            AiSettingsManager manager = settings.peek();
+            Log.i(TAG, "AI initialized with routed policy: "
+                    + (manager == null ? "unknown" : manager.getRoutingPolicy()) + "\n" + graph.report());
+        });
+        graph.start();
+    }
+
+    /** 释放路由持有的本地模型引用；路由尚未创建时在其就绪后立即释放。 */
+    public void close() {
+        router.whenDone(Runnable::run, service -> {
+            if (service != null) {
+                service.close();
+            }
+        });
+    }
+
+    public void markFirstFrame() {
+        markFirstFrame(graph);
+    }
+
+    public StartupGraph getGraph() {
+        return graph;
+    }
+
+    public StartupGraph.Component<RuleEngine> rules() {
+        return rules;
+    }
+
+    public StartupGraph.Component<ActionExecutor> executor() {
+        return executor;
+    }
+
+    public StartupGraph.Component<ActionParser> parser() {
+        return parser;
+    }
+
+    /** 首帧（悬浮球/主界面首次布局完成）相对启动图的耗时。 */
+    public static void markFirstFrame(StartupGraph graph) {
+        record(graph, FIRST_FRAME, MetricsRegistry.STARTUP_FIRST_FRAME);
+    }
+
+    /** AI 可用（解析器就绪）相对启动图的耗时。 */
+    public static void markAiReady(StartupGraph graph) {
+        record(graph, AI_READY, MetricsRegistry.STARTUP_AI_READY);
+    }
+
+    private static void record(StartupGraph graph, String milestone, String metric) {
+        long ms;
+        synchronized (graph) {
+            if (graph.milestoneNanos(milestone) >= 0) {
+                return;
+            }
+            ms = graph.mark(milestone);
+        }
+        if (ms >= 0) {
+            MetricsRegistry.get().recordNanos(metric, graph.milestoneNanos(milestone));
+            Log.i(TAG, "Startup " + milestone + " after " + ms + "ms");
+        }
+    }
+
+    /** 先加载默认关键词，再追加用户自定义词（合并模式，防止用户配置覆盖默认规则）。 */
+    private static void applyRuleEngineSettings(RuleEngine engine, AiSettingsManager settingsManager) {
+        engine.resetDefaultRules();
+        if (settingsManager == null) {
+            return;
+        }
+        List<String> customKeywords = new ArrayList<>();
+        for (String kw : settingsManager.getCustomTriggerKeywords()) {
+            if (kw != null && !kw.trim().isEmpty()) {
+                customKeywords.add(kw.trim().toLowerCase());
+            }
+        }
+        engine.addCustomKeywords(customKeywords);
+    }
+}
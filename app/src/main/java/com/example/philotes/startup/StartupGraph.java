@@ -0,0 +1,340 @@
+package com.example.philotes.startup;
+
+import android.util.Log;
+
+import com.example.philotes.utils.PipelineTracer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 启动依赖图：声明组件及其依赖，{@link #start()} 后依赖全部就绪的组件立即派发，
+ * 互不依赖的组件在后台线程池上并行初始化，标记为 main 的组件投递到主线程执行器。
+ *
+ * 依赖只能引用已声明的组件，图因此天然无环。某个组件初始化失败时其值为 null，
+ * 依赖它的组件照常执行，由初始化器自行降级（与原先 try/finally 里留 null 的做法一致）。
+ *
+ * 每个组件记录排队、初始化耗时和相对图启动的就绪时刻，连同 {@link #mark} 打下的里程碑
+ * （首帧、AI 就绪）由 {@link #report()} 输出；初始化过程同时以 "startup" trace 的子 span 记录。
+ */
+public final class StartupGraph {
+    private static final String TAG = "StartupGraph";
+
+    private static volatile ExecutorService defaultBackground;
+
+    /** 组件初始化器，可抛出任意异常，失败时组件值为 null。 */
+    public interface Initializer<T> {
+        T create() throws Exception;
+    }
+
+    private final Executor background;
+    private final Executor main;
+    private final List<Component<?>> components = new ArrayList<>();
+    private final Map<String, Long> milestones = new LinkedHashMap<>();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile long startNs;
+    private volatile long finishedNs;
+    private boolean started;
+    private PipelineTracer.Span trace;
+
+    public StartupGraph(Executor background, Executor main) {
+        this.background = background;
+        this.main = main;
+    }
+
+    /** 进程共享的后台线程池（守护线程 startup-N），空闲线程 60s 后回收。 */
+    public static Executor defaultBackground() {
+        if (defaultBackground == null) {
+            synchronized (StartupGraph.class) {
+                if (defaultBackground == null) {
+                    AtomicInteger ids = new AtomicInteger();
+                    defaultBackground = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "startup-" + ids.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return defaultBackground;
+    }
+
+    /** 声明一个在后台线程初始化的组件。 */
+    public <T> Component<T> add(String name, Initializer<T> initializer, Component<?>... dependencies) {
+        return declare(name, false, initializer, dependencies);
+    }
+
+    /** 声明一个必须在主线程初始化的组件（例如要碰 View 或只能在主线程调用的 API）。 */
+    public <T> Component<T> addOnMain(String name, Initializer<T> initializer, Component<?>... dependencies) {
+        return declare(name, true, initializer, dependencies);
+    }
+
+    private synchronized <T> Component<T> declare(String name, boolean onMain, Initializer<T> initializer,
+            Component<?>[] dependencies) {
+        if (started) {
+            throw new IllegalStateException("Cannot add " + name + " after start()");
+        }
+        Component<T> component = new Component<>(name, onMain, initializer, dependencies.length);
+        for (Component<?> dependency : dependencies) {
+            if (dependency.graph != this) {
+                throw new IllegalArgumentException(name + " depends on " + dependency.name + " from another graph");
+            }
+            component.dependencies.add(dependency);
+            dependency.dependents.add(component);
+        }
+        component.graph = this;
+        components.add(component);
+        return component;
+    }
+
+    /** 派发所有没有依赖的组件；只能调用一次。 */
+    public void start() {
+        List<Component<?>> roots = new ArrayList<>();
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("StartupGraph already started");
+            }
+            started = true;
+            startNs = System.nanoTime();
+            trace = PipelineTracer.get().beginTrace("startup");
+            remaining.set(components.size());
+            for (Component<?> component : components) {
+                if (component.dependencies.isEmpty()) {
+                    roots.add(component);
+                }
+            }
+        }
+        if (components.isEmpty()) {
+            finish();
+        }
+        for (Component<?> root : roots) {
+            dispatch(root);
+        }
+    }
+
+    private void dispatch(Component<?> component) {
+        component.runnableNs = System.nanoTime();
+        (component.onMain ? main : background).execute(() -> run(component));
+    }
+
+    private <T> void run(Component<T> component) {
+        component.startNs = System.nanoTime();
+        component.threadName = Thread.currentThread().getName();
+        PipelineTracer.Span span = trace.child("startup." + component.name);
+        try {
+            component.value = component.initializer.create();
+        } catch (Exception | LinkageError e) {
+            component.error = e;
+            span.arg("error", e.getClass().getSimpleName());
+            Log.w(TAG, "Startup component " + component.name + " failed", e);
+        } catch (Error e) {
+            // 其余 Error（OOM、断言失败等）照常抛给执行器，但组件仍在 finally 里结算，
+            // 否则 get()/whenDone 的等待者和依赖它的组件会一直挂起
+            component.error = e;
+            span.arg("error", e.getClass().getSimpleName());
+            throw e;
+        } finally {
+            span.end();
+            settle(component);
+        }
+    }
+
+    private void settle(Component<?> component) {
+        component.endNs = System.nanoTime();
+        // 先结算整图再唤醒等待者，awaitAll() 返回时 isFinished() 已为 true
+        if (remaining.decrementAndGet() == 0) {
+            finish();
+        }
+        component.complete();
+
+        for (Component<?> dependent : component.dependents) {
+            if (dependent.pending.decrementAndGet() == 0) {
+                dispatch(dependent);
+            }
+        }
+    }
+
+    private void finish() {
+        finishedNs = System.nanoTime();
+        if (trace != null) {
+            trace.end();
+        }
+    }
+
+    /**
+     * 记录一个里程碑（首次调用有效），返回距图启动的毫秒数；图未启动时返回 -1。
+     */
+    public synchronized long mark(String milestone) {
+        if (!started) {
+            return -1;
+        }
+        Long existing = milestones.get(milestone);
+        if (existing == null) {
+            existing = System.nanoTime() - startNs;
+            milestones.put(milestone, existing);
+            trace.arg(milestone + "_ms", TimeUnit.NANOSECONDS.toMillis(existing));
+        }
+        return TimeUnit.NANOSECONDS.toMillis(existing);
+    }
+
+    /** 里程碑距图启动的纳秒数，未记录时为 -1。 */
+    public synchronized long milestoneNanos(String milestone) {
+        Long value = milestones.get(milestone);
+        return value == null ? -1 : value;
+    }
+
+    public synchronized List<Component<?>> getComponents() {
+        return Collections.unmodifiableList(new ArrayList<>(components));
+    }
+
+    public boolean isFinished() {
+        return finishedNs != 0;
+    }
+
+    /** 等所有组件结束（测试与诊断用），超时返回 false。 */
+    public boolean awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Component<?> component : getComponents()) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !component.done.await(left, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 每个组件一行：线程、排队时间、初始化耗时、相对启动的就绪时刻；首行为总耗时与里程碑。
+     */
+    public synchronized String report() {
+        StringBuilder out = new StringBuilder();
+        long totalNs = (finishedNs != 0 ? finishedNs : System.nanoTime()) - startNs;
+        out.append(String.format(Locale.US, "startup %s%.1fms", finishedNs != 0 ? "" : "(running) ",
+                totalNs / 1e6));
+        for (Map.Entry<String, Long> milestone : milestones.entrySet()) {
+            out.append(String.format(Locale.US, ", %s %.1fms", milestone.getKey(), milestone.getValue() / 1e6));
+        }
+        out.append('\n');
+        for (Component<?> component : components) {
+            if (!component.isDone()) {
+                out.append(String.format(Locale.US, "  %-16s pending%n", component.name));
+                continue;
+            }
+            out.append(String.format(Locale.US, "  %-16s %-4s queued %6.1fms  init %7.1fms  ready %7.1fms  %s%n",
+                    component.name, component.onMain ? "main" : "bg",
+                    (component.startNs - component.runnableNs) / 1e6,
+                    (component.endNs - component.startNs) / 1e6,
+                    (component.endNs - startNs) / 1e6,
+                    component.error == null ? component.threadName
+                            : "FAILED " + component.error.getClass().getSimpleName()));
+        }
+        return out.toString();
+    }
+
+    /**
+     * 图中的一个组件，同时是给使用方的延迟句柄：{@link #get()} 阻塞到就绪，
+     * {@link #peek()} 不阻塞，{@link #whenDone} 在就绪后回调。
+     */
+    public static final class Component<T> {
+        final String name;
+        final boolean onMain;
+        final Initializer<T> initializer;
+        final List<Component<?>> dependencies = new ArrayList<>();
+        final List<Component<?>> dependents = new ArrayList<>();
+        final AtomicInteger pending;
+        final CountDownLatch done = new CountDownLatch(1);
+        private final List<Runnable> listeners = new ArrayList<>();
+        StartupGraph graph;
+        volatile T value;
+        volatile Throwable error;
+        volatile long runnableNs;
+        volatile long startNs;
+        volatile long endNs;
+        volatile String threadName;
+
+        Component(String name, boolean onMain, Initializer<T> initializer, int dependencyCount) {
+            this.name = name;
+            this.onMain = onMain;
+            this.initializer = initializer;
+            this.pending = new AtomicInteger(dependencyCount);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** 阻塞到组件结束，失败时返回 null。不要在主线程上调用。 */
+        public T get() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            return value;
+        }
+
+        /** 最多等待 timeout，超时或失败返回 null。 */
+        public T get(long timeout, TimeUnit unit) {
+            try {
+                return done.await(timeout, unit) ? value : null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        /** 已就绪的值，未结束或失败时为 null。 */
+        public T peek() {
+            return value;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /** 初始化耗时（毫秒），未结束时为 -1。 */
+        public long initMillis() {
+            return isDone() ? TimeUnit.NANOSECONDS.toMillis(endNs - startNs) : -1;
+        }
+
+        /** 组件结束后在 executor 上回调（已结束则立即投递）；失败时回调 null。 */
+        public void whenDone(Executor executor, Consumer<T> callback) {
+            Runnable listener = () -> executor.execute(() -> callback.accept(value));
+            synchronized (listeners) {
+                if (!isDone()) {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        void complete() {
+            List<Runnable> toRun;
+            synchronized (listeners) {
+                done.countDown();
+                toRun = new ArrayList<>(listeners);
+                listeners.clear();
+            }
+            for (Runnable listener : toRun) {
+                listener.run();
+            }
+        }
+    }
+}
@@ -24,6 +24,8 @@ public class AiSettingsManager {
     private static final String KEY_ROUTING_POLICY = "routing_policy";
     private static final String KEY_CUSTOM_TRIGGER_KEYWORDS = "custom_trigger_keywords";
     private static final String KEY_KEYWORDS_SEEDED = "keywords_seeded";
+    private static final String KEY_OCR_MODE = "ocr_mode";
+    private static final String KEY_STREAMING_OCR = "streaming_ocr";
 
     // API 提供商常量
     public static final String PROVIDER_OPENAI = "openai";
@@ -35,6 +37,11 @@ public class AiSettingsManager {
     public static final String ROUTING_LOCAL_ONLY = "local_only";
     public static final String ROUTING_CLOUD_ONLY = "cloud_only";
 
+    // OCR 引擎编排模式
+    public static final String OCR_MODE_PADDLE_FIRST = "paddle_first";
+    public static final String OCR_MODE_RACE = "race";
+    public static final String OCR_MODE_FUSE = "fuse";
+
     private final SharedPreferences prefs;
 
     public AiSettingsManager(Context context) {
@@ -112,6 +119,25 @@ public class AiSettingsManager {
         return prefs.getString(KEY_ROUTING_POLICY, ROUTING_SMART);
     }
 
+    public void setOcrMode(String ocrMode) {
+        prefs.edit().putString(KEY_OCR_MODE, ocrMode).apply();
+    }
+
+    public String getOcrMode() {
+        return prefs.getString(KEY_OCR_MODE, OCR_MODE_PADDLE_FIRST);
+    }
+
+    /**
+     * 截图解析是否走流式流水线（边识别边解析）
+     */
+    public void setStreamingOcrEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_STREAMING_OCR, enabled).apply();
+    }
+
+    public boolean isStreamingOcrEnabled() {
+        return prefs.getBoolean(KEY_STREAMING_OCR, true);
+    }
+
     public void setCustomTriggerKeywords(List<String> keywords) {
         Set<String> set = new LinkedHashSet<>();
         if (keywords != null) {
@@ -159,4 +185,18 @@ public class AiSettingsManager {
             LlmConfig.setOpenAiModel(getModelName());
         }
     }
+
+    /**
+     * 应用当前 OCR 模式到 OcrOrchestrator
+     */
+    public void applyToOcrOrchestrator() {
+        String ocrMode = getOcrMode();
+        if (OCR_MODE_RACE.equals(ocrMode)) {
+            OcrOrchestrator.setMode(OcrOrchestrator.Mode.RACE);
+        } else if (OCR_MODE_FUSE.equals(ocrMode)) {
+            OcrOrchestrator.setMode(OcrOrchestrator.Mode.FUSE);
+        } else {
+            OcrOrchestrator.setMode(OcrOrchestrator.Mode.PADDLE_FIRST);
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package com.example.philotes.utils;
+
+import java.util.Arrays;
+
+/**
+ * HDR 风格的定长延迟直方图：数值按 2 的幂分段，每段再线性切成 64 个子桶，
+ * 任意量级上的相对误差都不超过 1/64（约 1.6%），内存固定，记录为 O(1)。
+ *
+ * 单位为微秒，可记录范围 0 到 {@link #MAX_TRACKABLE_US}（1 小时），超出部分按上限计。
+ * 分位数返回所在桶的最大等价值（与 HdrHistogram 相同），并以实际最大值封顶。
+ */
+public final class LatencyHistogram {
+    static final long MAX_TRACKABLE_US = 3_600_000_000L;
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+
+    private final long[] counts;
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public LatencyHistogram() {
+        this.counts = new long[countsIndex(MAX_TRACKABLE_US) + 1];
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMillis(long millis) {
+        recordMicros(millis * 1000);
+    }
+
+    public synchronized void recordMicros(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_TRACKABLE_US));
+        counts[countsIndex(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /** percentile 取 0-100；空直方图返回 0。 */
+    public synchronized long percentileMicros(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double clamped = Math.max(0, Math.min(100, percentile));
+        long target = Math.max(1, (long) Math.ceil(clamped / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    public synchronized long getMinMicros() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public synchronized long getMaxMicros() {
+        return max;
+    }
+
+    public synchronized double getMeanMicros() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    static int countsIndex(long value) {
+        int bucket = bucketIndex(value);
+        int subBucket = (int) (value >>> bucket);
+        return (bucket << SUB_BUCKET_HALF_BITS) + subBucket;
+    }
+
+    /** 第 0 段覆盖 [0, 128)，之后第 b 段覆盖 [64·2^b, 128·2^b)，桶宽 2^b。 */
+    private static int bucketIndex(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value | (SUB_BUCKET_COUNT - 1));
+        return magnitude - SUB_BUCKET_HALF_BITS;
+    }
+
+    static long highestEquivalentValue(int index) {
+        int bucket = Math.max(0, (index >> SUB_BUCKET_HALF_BITS) - 1);
+        long subBucket = index - ((long) bucket << SUB_BUCKET_HALF_BITS);
+        long lowest = subBucket << bucket;
+        return lowest + (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.philotes.utils;
+
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内性能指标：按名称登记的延迟直方图与计数器，供设置里的性能面板展示和导出。
+ *
+ * 只在内存中累计，进程重启或 {@link #reset()} 后清零；每次记录只是一次桶计数或原子加，
+ * 可以放在 OCR、LLM 回调等热路径上。
+ */
+public final class MetricsRegistry {
+    /** 每次截屏一条：从送入 OCR 到整帧结果就绪（含缓存命中与流式条带）。 */
+    public static final String OCR_LATENCY = "ocr_latency";
+    /** 条带/增量区域裁剪图的单次识别耗时，与整帧分开统计。 */
+    public static final String OCR_REGION_LATENCY = "ocr_region_latency";
+    public static final String LLM_LOCAL_LATENCY = "llm_local_latency";
+    public static final String LLM_CLOUD_LATENCY = "llm_cloud_latency";
+    public static final String LLM_FIRST_DELTA = "llm_first_delta";
+    public static final String STARTUP_FIRST_FRAME = "startup_first_frame";
+    public static final String STARTUP_AI_READY = "startup_ai_ready";
+
+    public static final String OCR_CACHE_HIT = "ocr_cache_hit";
+    public static final String OCR_CACHE_MISS = "ocr_cache_miss";
+    public static final String KV_PREFIX_REUSED_TOKENS = "kv_prefix_reused_tokens";
+    public static final String KV_PROMPT_TOKENS = "kv_prompt_tokens";
+    public static final String ANALYSIS_TRIGGERED = "analysis_triggered";
+    public static final String ANALYSIS_SUPPRESSED = "analysis_suppressed";
+    public static final String PRIVACY_FORCED_LOCAL = "privacy_forced_local";
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+
+    MetricsRegistry() {
+    }
+
+    public static MetricsRegistry get() {
+        return INSTANCE;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public void recordNanos(String name, long nanos) {
+        histogram(name).recordNanos(nanos);
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public long count(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /** numerator / (numerator + other)，两者都为 0 时为 NaN。 */
+    public double ratio(String numerator, String other) {
+        long hit = count(numerator);
+        long total = hit + count(other);
+        return total == 0 ? Double.NaN : (double) hit / total;
+    }
+
+    /** 开始累计的时间（毫秒时间戳），reset 后更新。 */
+    public long getSince() {
+        return since;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : counters.values()) {
+            counter.set(0);
+        }
+        since = System.currentTimeMillis();
+    }
+
+    /** 导出给外场测试反馈用的 JSON：直方图给出分位数（毫秒），计数器原样输出。 */
+    public JsonObject toJson() {
+        JsonObject root = new JsonObject();
+        root.addProperty("since", since);
+        root.addProperty("exportedAt", System.currentTimeMillis());
+
+        JsonObject latencies = new JsonObject();
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            JsonObject item = new JsonObject();
+            item.addProperty("count", histogram.getCount());
+            item.addProperty("p50_ms", histogram.percentileMicros(50) / 1000.0);
+            item.addProperty("p90_ms", histogram.percentileMicros(90) / 1000.0);
+            item.addProperty("p99_ms", histogram.percentileMicros(99) / 1000.0);
+            item.addProperty("max_ms", histogram.getMaxMicros() / 1000.0);
+            item.addProperty("mean_ms", histogram.getMeanMicros() / 1000.0);
+            latencies.add(entry.getKey(), item);
+        }
+        root.add("latencies", latencies);
+
+        JsonObject counts = new JsonObject();
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(counters).entrySet()) {
+            counts.addProperty(entry.getKey(), entry.getValue().get());
+        }
+        root.add("counters", counts);
+        return root;
+    }
+}
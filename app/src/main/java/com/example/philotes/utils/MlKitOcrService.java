@@ -48,10 +48,10 @@ public class MlKitOcrService {
                             String blockText = block.getText();
                             Rect boundingBox = block.getBoundingBox();
                             if (boundingBox != null && blockText != null && !blockText.trim().isEmpty()) {
-                                result.addTextBlock(blockText, boundingBox, 0.9f);
+                                result.addTextBlock(blockText, boundingBox, blockConfidence(block));
                             }
                         }
-                        Log.i(TAG, "ML Kit OCR completed: " + result.getTextBlocks().size() + " blocks");
+                        Log.i(TAG, "ML Kit OCR completed: " + result.getBlockCount() + " blocks");
                         if (callback != null)
                             callback.onSuccess(result);
                     }
@@ -66,6 +66,19 @@ public class MlKitOcrService {
                 });
     }
 
+    /**
+     * 块置信度取行置信度均值，没有行信息时沿用原来的 0.9。
+     */
+    private static float blockConfidence(Text.TextBlock block) {
+        float sum = 0f;
+        int count = 0;
+        for (Text.Line line : block.getLines()) {
+            sum += line.getConfidence();
+            count++;
+        }
+        return count == 0 ? 0.9f : sum / count;
+    }
+
     public static void close() {
         if (recognizer != null) {
             recognizer.close();
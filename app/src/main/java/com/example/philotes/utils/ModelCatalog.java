@@ -0,0 +1,425 @@
+package com.example.philotes.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 模型目录：记录每个已解析模型的来源、路径、大小、mtime 与指纹，持久化到一个小 JSON 索引。
+ *
+ * 文件探测（exists/length、asset 目录列举、指纹计算）只在启动时和模型变更事件
+ * （下载完成、内置模型安装完成）时执行，路由层与 OCR 层直接查目录，
+ * 不再在每次请求时探测多个位置或打开 asset 流；{@link #getFile} 只对索引中的那一个文件复查大小。
+ * 指纹仅在 size/mtime 变化时重算。
+ */
+public final class ModelCatalog {
+    private static final String TAG = "ModelCatalog";
+    private static final String INDEX_FILE = "model_catalog.json";
+    private static final int INDEX_VERSION = 1;
+    private static final int FINGERPRINT_SAMPLE_BYTES = 1 << 20;
+
+    public static final String LLM = "llm";
+    public static final String PADDLE_DET = "paddle_det";
+    public static final String PADDLE_REC = "paddle_rec";
+    public static final String PADDLE_CLS = "paddle_cls";
+
+    public static final String SOURCE_FILE = "file";
+    public static final String SOURCE_ASSET = "asset";
+
+    /**
+     * 一个模型的候选位置：按优先级排列的文件，其后是 asset 路径。
+     * 第一个文件是应用自己的存储位置（下载、安装的目标），小于 minBytes 时视为残缺文件直接删除，
+     * 以便重新下载；其余位置（如 adb 推送的 /data/local/tmp）应用未必能删，只跳过。
+     */
+    static final class Spec {
+        final String name;
+        final List<File> files;
+        final String assetPath;
+        final long minBytes;
+
+        Spec(String name, List<File> files, String assetPath, long minBytes) {
+            this.name = name;
+            this.files = files;
+            this.assetPath = assetPath;
+            this.minBytes = minBytes;
+        }
+    }
+
+    interface AssetLister {
+        String[] list(String dir) throws IOException;
+    }
+
+    public static final class Entry {
+        public String source;
+        public String path;
+        public long size;
+        public long mtime;
+        /** 文件指纹（见 {@link #fingerprint(File)}），asset 与尚未计算时为 null */
+        public String hash;
+
+        public boolean isFile() {
+            return SOURCE_FILE.equals(source);
+        }
+    }
+
+    private static final class Index {
+        int version;
+        Map<String, Entry> entries;
+        /** 名称 → 首次下载完成时的整文件 SHA-256；旧索引没有该字段 */
+        Map<String, String> downloads;
+    }
+
+    private static volatile ModelCatalog instance;
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "model-catalog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File indexFile;
+    private final Map<String, Spec> specs = new LinkedHashMap<>();
+    private final AssetLister assetLister;
+    private final Gson gson = new Gson();
+    private final Map<String, String[]> assetDirCache = new HashMap<>();
+    private volatile Map<String, Entry> entries = Collections.emptyMap();
+    private volatile Map<String, String> downloadHashes = Collections.emptyMap();
+
+    public static ModelCatalog getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ModelCatalog.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    ModelCatalog catalog = new ModelCatalog(new File(appContext.getFilesDir(), INDEX_FILE),
+                            defaultSpecs(appContext), dir -> appContext.getAssets().list(dir));
+                    catalog.loadOrProbe();
+                    instance = catalog;
+                }
+            }
+        }
+        return instance;
+    }
+
+    ModelCatalog(File indexFile, List<Spec> specs, AssetLister assetLister) {
+        this.indexFile = indexFile;
+        for (Spec spec : specs) {
+            this.specs.put(spec.name, spec);
+        }
+        this.assetLister = assetLister;
+    }
+
+    private static List<Spec> defaultSpecs(Context context) {
+        File filesDir = context.getFilesDir();
+        List<Spec> specs = new ArrayList<>();
+        specs.add(new Spec(LLM, Arrays.asList(
+                new File(filesDir, ModelUtils.MODEL_NAME),
+                new File("/data/local/tmp/" + ModelUtils.MODEL_NAME)),
+                ModelUtils.MODEL_NAME, ModelUtils.MIN_MODEL_BYTES));
+        File paddleDir = new File(filesDir, PaddleOcrService.LOCAL_MODEL_REL_DIR);
+        specs.add(paddleSpec(PADDLE_DET, paddleDir, PaddleOcrService.MODEL_DET));
+        specs.add(paddleSpec(PADDLE_REC, paddleDir, PaddleOcrService.MODEL_REC));
+        specs.add(paddleSpec(PADDLE_CLS, paddleDir, PaddleOcrService.MODEL_CLS));
+        return specs;
+    }
+
+    private static Spec paddleSpec(String name, File dir, String fileName) {
+        return new Spec(name, Collections.singletonList(new File(dir, fileName)),
+                PaddleOcrService.CUSTOM_ASSET_MODEL_DIR + "/" + fileName, PaddleOcrService.MIN_MODEL_BYTES);
+    }
+
+    // ---------------------------------------------------------------- queries
+
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * 已解析到本地文件时返回该文件，否则 null（asset 或缺失）。
+     * 返回前复查文件仍存在且不小于下限（一次 stat），索引之后被删除或截断的文件不会交给推理层；
+     * 此时当场重新探测该条目（不算指纹），指纹与索引在后台补齐。
+     */
+    public File getFile(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null || !entry.isFile()) {
+            return null;
+        }
+        File file = new File(entry.path);
+        Spec spec = specs.get(name);
+        if (spec == null || (file.isFile() && file.length() >= spec.minBytes)) {
+            return file;
+        }
+        Log.w(TAG, "Indexed model " + name + " is missing or truncated: " + file);
+        Entry reprobed = reprobe(spec);
+        EXECUTOR.execute(() -> onModelChanged(name));
+        return reprobed != null && reprobed.isFile() ? new File(reprobed.path) : null;
+    }
+
+    /**
+     * 该模型首次下载完成时记录的整文件 SHA-256，未记录返回 null。
+     * 发布方没有给出哈希时，之后的重新下载与断点续传以它为期望值，拼出的文件与首次不一致即失败。
+     */
+    public String getDownloadHash(String name) {
+        return downloadHashes.get(name);
+    }
+
+    public boolean hasFiles(String... names) {
+        for (String name : names) {
+            if (getFile(name) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean hasAssets(String... names) {
+        for (String name : names) {
+            Entry entry = entries.get(name);
+            if (entry == null || !SOURCE_ASSET.equals(entry.source)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ----------------------------------------------------------------- events
+
+    /**
+     * 模型文件被下载、安装或删除后调用：只重新探测这些条目并补算指纹。
+     * 会读文件做指纹，需在后台线程调用（下载/安装线程本身即可）。
+     */
+    public synchronized void onModelChanged(String... names) {
+        Map<String, Entry> next = new LinkedHashMap<>(entries);
+        for (String name : names) {
+            Spec spec = specs.get(name);
+            if (spec == null) {
+                continue;
+            }
+            Entry probed = probe(spec, entries.get(name), true);
+            if (probed == null) {
+                next.remove(name);
+            } else {
+                next.put(name, probed);
+            }
+        }
+        entries = next;
+        save();
+    }
+
+    /**
+     * 下载完成后调用。只记录第一次的哈希：已有记录时不覆盖，否则一次损坏的续传会把错误哈希固化下来。
+     */
+    public synchronized void recordDownloadHash(String name, String sha256) {
+        if (sha256 == null || sha256.isEmpty() || downloadHashes.containsKey(name)) {
+            return;
+        }
+        Map<String, String> next = new HashMap<>(downloadHashes);
+        next.put(name, sha256);
+        downloadHashes = next;
+        save();
+    }
+
+    public void refreshAsync() {
+        EXECUTOR.execute(() -> refresh(true));
+    }
+
+    /**
+     * 探测全部条目。computeHashes 为 false 时跳过指纹，供首次启动同步调用。
+     */
+    synchronized void refresh(boolean computeHashes) {
+        assetDirCache.clear();
+        Map<String, Entry> previous = entries;
+        Map<String, Entry> next = new LinkedHashMap<>();
+        for (Spec spec : specs.values()) {
+            Entry probed = probe(spec, previous.get(spec.name), computeHashes);
+            if (probed != null) {
+                next.put(spec.name, probed);
+            }
+        }
+        entries = next;
+        save();
+    }
+
+    private synchronized void loadOrProbe() {
+        if (!load()) {
+            refresh(false);
+        }
+        // 指纹与持久化都在后台补齐
+        refreshAsync();
+    }
+
+    private synchronized Entry reprobe(Spec spec) {
+        Entry probed = probe(spec, null, false);
+        Map<String, Entry> next = new LinkedHashMap<>(entries);
+        if (probed == null) {
+            next.remove(spec.name);
+        } else {
+            next.put(spec.name, probed);
+        }
+        entries = next;
+        return probed;
+    }
+
+    private Entry probe(Spec spec, Entry previous, boolean computeHash) {
+        for (int i = 0; i < spec.files.size(); i++) {
+            File file = spec.files.get(i);
+            if (!file.isFile()) {
+                continue;
+            }
+            if (file.length() < spec.minBytes) {
+                if (i == 0) {
+                    // 残缺下载或错误页面：删除后可重新下载/安装
+                    Log.w(TAG, "Deleting undersized model " + file + " (" + file.length() + " bytes)");
+                    if (!file.delete()) {
+                        Log.w(TAG, "Could not delete " + file);
+                    }
+                }
+                continue;
+            }
+            Entry entry = new Entry();
+            entry.source = SOURCE_FILE;
+            entry.path = file.getAbsolutePath();
+            entry.size = file.length();
+            entry.mtime = file.lastModified();
+            if (previous != null && previous.isFile() && entry.path.equals(previous.path)
+                    && entry.size == previous.size && entry.mtime == previous.mtime) {
+                entry.hash = previous.hash;
+            }
+            if (entry.hash == null && computeHash) {
+                try {
+                    entry.hash = fingerprint(file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Fingerprint failed for " + file + ": " + e.getMessage());
+                }
+            }
+            return entry;
+        }
+        if (spec.assetPath != null && assetExists(spec.assetPath)) {
+            Entry entry = new Entry();
+            entry.source = SOURCE_ASSET;
+            entry.path = spec.assetPath;
+            return entry;
+        }
+        return null;
+    }
+
+    /** 每个 asset 目录只 list 一次，不打开文件流。 */
+    private boolean assetExists(String assetPath) {
+        int slash = assetPath.lastIndexOf('/');
+        String dir = slash < 0 ? "" : assetPath.substring(0, slash);
+        String name = assetPath.substring(slash + 1);
+        String[] names = assetDirCache.get(dir);
+        if (names == null) {
+            try {
+                names = assetLister.list(dir);
+            } catch (IOException e) {
+                names = null;
+            }
+            if (names == null) {
+                names = new String[0];
+            }
+            assetDirCache.put(dir, names);
+        }
+        for (String candidate : names) {
+            if (name.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------ persistence
+
+    boolean load() {
+        if (!indexFile.exists()) {
+            return false;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8)) {
+            Index index = gson.fromJson(reader, Index.class);
+            if (index == null || index.version != INDEX_VERSION || index.entries == null) {
+                return false;
+            }
+            entries = new LinkedHashMap<>(index.entries);
+            downloadHashes = index.downloads == null ? Collections.emptyMap() : new HashMap<>(index.downloads);
+            return true;
+        } catch (IOException | JsonSyntaxException e) {
+            Log.w(TAG, "Catalog index unreadable, re-probing: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void save() {
+        Index index = new Index();
+        index.version = INDEX_VERSION;
+        index.entries = entries;
+        index.downloads = downloadHashes;
+        File tmp = new File(indexFile.getAbsolutePath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            gson.toJson(index, writer);
+        } catch (IOException e) {
+            Log.w(TAG, "Save catalog failed: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(indexFile)) {
+            Log.w(TAG, "Rename catalog index failed");
+        }
+    }
+
+    // ------------------------------------------------------------ fingerprint
+
+    /**
+     * SHA-256 over the file length plus its first and last 1MB. Cheap enough for
+     * multi-hundred-MB models while still telling re-exported files apart.
+     */
+    public static String fingerprint(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                digest.update((byte) (length >>> shift));
+            }
+            byte[] buffer = new byte[(int) Math.min(FINGERPRINT_SAMPLE_BYTES, length)];
+            raf.readFully(buffer);
+            digest.update(buffer);
+            if (length > buffer.length) {
+                raf.seek(Math.max(buffer.length, length - buffer.length));
+                int tail = (int) (length - raf.getFilePointer());
+                raf.readFully(buffer, 0, tail);
+                digest.update(buffer, 0, tail);
+            }
+        }
+        byte[] hash = digest.digest();
+        StringBuilder sb = new StringBuilder(32);
+        for (int i = 0; i < 16; i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.philotes.utils;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 把 APK 内置的模型安装到内部存储，始终在后台线程执行。
+ *
+ * 资源未压缩（build.gradle 中 noCompress "tflite"）时通过 AssetFileDescriptor 拿到
+ * APK 内的偏移区间，用 FileChannel.transferTo 由内核直接拷贝，不经过 Java 堆；
+ * 被压缩时退化为流式拷贝。写入临时文件并 fsync 后再 rename，
+ * 中途被杀不会留下半个模型文件。并发请求合并为同一次安装。
+ */
+public final class ModelInstaller {
+    private static final String TAG = "ModelInstaller";
+    private static final int STREAM_BUFFER_BYTES = 256 * 1024;
+
+    public interface Callback {
+        /** 在安装线程回调。 */
+        void onInstalled(File file);
+
+        void onError(Exception e);
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "model-install");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private static final Object LOCK = new Object();
+    private static boolean installing;
+    private static final List<Callback> waiters = new ArrayList<>();
+    private static volatile Boolean bundled;
+
+    private ModelInstaller() {
+    }
+
+    /**
+     * APK 是否内置了模型（结果缓存，只查一次 asset 目录）。
+     */
+    public static boolean hasBundledModel(Context context) {
+        Boolean cached = bundled;
+        if (cached != null) {
+            return cached;
+        }
+        boolean found = false;
+        try {
+            String[] names = context.getAssets().list("");
+            if (names != null) {
+                for (String name : names) {
+                    if (ModelUtils.MODEL_NAME.equals(name)) {
+                        found = true;
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "List assets failed: " + e.getMessage());
+        }
+        bundled = found;
+        return found;
+    }
+
+    /**
+     * 后台安装内置模型；已在安装中则只登记回调。callback 可为 null。
+     */
+    public static void installBundledAsync(Context context, Callback callback) {
+        Context appContext = context.getApplicationContext();
+        synchronized (LOCK) {
+            if (callback != null) {
+                waiters.add(callback);
+            }
+            if (installing) {
+                return;
+            }
+            installing = true;
+        }
+        EXECUTOR.execute(() -> {
+            File installed = null;
+            Exception error = null;
+            try {
+                installed = installBundled(appContext);
+            } catch (Exception e) {
+                error = e;
+                Log.w(TAG, "Install bundled model failed", e);
+            }
+            List<Callback> toNotify;
+            synchronized (LOCK) {
+                installing = false;
+                toNotify = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+            for (Callback waiter : toNotify) {
+                if (error == null) {
+                    waiter.onInstalled(installed);
+                } else {
+                    waiter.onError(error);
+                }
+            }
+        });
+    }
+
+    static File installBundled(Context context) throws IOException {
+        File target = new File(context.getFilesDir(), ModelUtils.MODEL_NAME);
+        if (target.exists() && target.length() > ModelUtils.MIN_MODEL_BYTES) {
+            return target;
+        }
+        File tmp = new File(target.getAbsolutePath() + ".installing");
+        long startMs = System.currentTimeMillis();
+        boolean zeroCopy;
+        try {
+            zeroCopy = copyUncompressed(context, tmp);
+            if (!zeroCopy) {
+                try (InputStream in = context.getAssets().open(ModelUtils.MODEL_NAME)) {
+                    copyStream(in, tmp);
+                }
+            }
+            commit(tmp, target);
+        } finally {
+            if (tmp.exists()) {
+                // noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+            }
+        }
+        ModelCatalog.getInstance(context).onModelChanged(ModelCatalog.LLM);
+        Log.i(TAG, "Installed bundled model (" + target.length() + " bytes, "
+                + (zeroCopy ? "transferTo" : "stream") + ") in " + (System.currentTimeMillis() - startMs) + "ms");
+        return target;
+    }
+
+    /**
+     * @return false 表示资源被压缩，无法拿到文件描述符
+     */
+    private static boolean copyUncompressed(Context context, File tmp) throws IOException {
+        AssetFileDescriptor afd;
+        try {
+            afd = context.getAssets().openFd(ModelUtils.MODEL_NAME);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        try (AssetFileDescriptor closeable = afd;
+             FileInputStream in = new FileInputStream(closeable.getFileDescriptor());
+             FileOutputStream out = new FileOutputStream(tmp)) {
+            transferFully(in.getChannel(), closeable.getStartOffset(), closeable.getLength(), out.getChannel());
+            out.getFD().sync();
+        }
+        return true;
+    }
+
+    /**
+     * 把 in 的 [offset, offset+length) 区间完整写入 out（transferTo 单次可能只传一部分）。
+     */
+    static long transferFully(FileChannel in, long offset, long length, FileChannel out) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            long n = in.transferTo(offset + transferred, length - transferred, out);
+            if (n <= 0) {
+                throw new IOException("transferTo stalled at " + transferred + "/" + length);
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    static void copyStream(InputStream in, File tmp) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            byte[] buffer = new byte[STREAM_BUFFER_BYTES];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+            out.getFD().sync();
+        }
+    }
+
+    /** 原子替换：rename 在同一文件系统内是原子的。 */
+    static void commit(File tmp, File target) throws IOException {
+        if (!tmp.renameTo(target)) {
+            if (target.exists() && !target.delete()) {
+                throw new IOException("Replace failed: " + target.getAbsolutePath());
+            }
+            if (!tmp.renameTo(target)) {
+                throw new IOException("Rename failed: " + target.getAbsolutePath());
+            }
+        }
+    }
+}
@@ -0,0 +1,627 @@
+package com.example.philotes.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.philotes.data.model.OcrResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 双引擎 OCR 编排器（PaddleOCR 中文 + ML Kit 拉丁文）。
+ *
+ * Modes:
+ * 1) PADDLE_FIRST: 原有行为，Paddle 失败时才降级 ML Kit。
+ * 2) RACE: 两个引擎并发跑同一帧，截止时间内第一个可用结果胜出。
+ * 3) FUSE: 等两个引擎都返回，按包围框 IoU 合并，每个区域保留置信度更高的文本。
+ *
+ * 每个前台包名、每个引擎都会记录耗时与可用率，RACE 模式在样本足够时
+ * 只跑更优引擎（定期探索另一引擎以保持统计新鲜）。
+ */
+public final class OcrOrchestrator {
+    private static final String TAG = "OcrOrchestrator";
+
+    public enum Mode {
+        PADDLE_FIRST,
+        RACE,
+        FUSE
+    }
+
+    public enum Engine {
+        PADDLE,
+        MLKIT
+    }
+
+    static final long DEFAULT_DEADLINE_MS = 4000L;
+    static final float MATCH_IOU = 0.3f;
+    static final float MATCH_CONTAINMENT = 0.8f;
+    static final int MIN_SAMPLES_FOR_PREFERENCE = 5;
+    static final int EXPLORE_EVERY = 8;
+    static final float USABLE_RATE_TOLERANCE = 0.1f;
+    private static final float EWMA_ALPHA = 0.3f;
+    private static final String UNKNOWN_PACKAGE = "_unknown";
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final Map<String, EngineStats> STATS = new HashMap<>();
+
+    private static volatile Mode mode = Mode.PADDLE_FIRST;
+    private static volatile long deadlineMs = DEFAULT_DEADLINE_MS;
+
+    private OcrOrchestrator() {
+    }
+
+    public static void setMode(Mode newMode) {
+        mode = newMode == null ? Mode.PADDLE_FIRST : newMode;
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    public static void setDeadlineMs(long newDeadlineMs) {
+        deadlineMs = Math.max(500L, newDeadlineMs);
+    }
+
+    /**
+     * 识别入口。回调保证只触发一次；调用方可在回调中直接回收 bitmap，
+     * 并发模式下每个引擎都持有自己的拷贝。
+     * 只用于整帧：各引擎的耗时与可用率记入该包的统计，用于选择引擎；裁剪图走 {@link #recognizeRegionAsync}。
+     * 整次截屏的 OCR 延迟由调用方（OcrTileCache、StreamingOcrPipeline）按截屏记录一次。
+     */
+    public static void recognizeTextAsync(Context context, Bitmap bitmap, String packageName,
+            PaddleOcrService.OcrCallback callback) {
+        recognize(context, bitmap, packageName, true, callback);
+    }
+
+    /**
+     * 条带/增量区域等裁剪图的识别入口：沿用该包学到的引擎偏好，但不回写引擎统计，
+     * 小图的耗时和置信度不能代表整帧，混进去会带偏 PADDLE_FIRST/RACE/FUSE 的选择。
+     * 每块的耗时（含失败）单独记入 {@link MetricsRegistry#OCR_REGION_LATENCY}。
+     */
+    public static void recognizeRegionAsync(Context context, Bitmap bitmap, String packageName,
+            PaddleOcrService.OcrCallback caller) {
+        recognize(context, bitmap, packageName, false, timed(MetricsRegistry.OCR_REGION_LATENCY, caller));
+    }
+
+    /** fullFrame 为 false 时只读引擎统计，不记录样本。 */
+    private static void recognize(Context context, Bitmap bitmap, String packageName, boolean fullFrame,
+            PaddleOcrService.OcrCallback callback) {
+        Mode current = mode;
+        if (current == Mode.PADDLE_FIRST || bitmap == null) {
+            PaddleOcrService.recognizeTextAsync(context, bitmap, callback);
+            return;
+        }
+
+        String pkg = packageName == null || packageName.isEmpty() ? UNKNOWN_PACKAGE : packageName;
+        if (current == Mode.RACE) {
+            Engine preferred = preferredEngineForRun(pkg);
+            if (preferred != null) {
+                runSingle(context, bitmap, pkg, preferred, fullFrame, callback);
+                return;
+            }
+        }
+        runBoth(context, bitmap, pkg, current == Mode.FUSE, fullFrame, callback);
+    }
+
+    /**
+     * 各引擎在各前台包下的耗时统计快照。
+     */
+    public static List<EngineTiming> getEngineTimings() {
+        List<EngineTiming> out = new ArrayList<>();
+        synchronized (STATS) {
+            for (Map.Entry<String, EngineStats> entry : STATS.entrySet()) {
+                String key = entry.getKey();
+                int split = key.lastIndexOf('|');
+                EngineStats s = entry.getValue();
+                out.add(new EngineTiming(key.substring(0, split),
+                        Engine.valueOf(key.substring(split + 1)),
+                        s.samples, s.usable, s.ewmaLatencyMs, s.lastLatencyMs));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 返回该包名下学到的更优引擎；样本不足或差异不明显时返回 null。
+     */
+    public static Engine preferredEngine(String packageName) {
+        String pkg = packageName == null || packageName.isEmpty() ? UNKNOWN_PACKAGE : packageName;
+        synchronized (STATS) {
+            EngineStats paddle = STATS.get(statsKey(pkg, Engine.PADDLE));
+            EngineStats mlKit = STATS.get(statsKey(pkg, Engine.MLKIT));
+            if (paddle == null || mlKit == null
+                    || paddle.samples < MIN_SAMPLES_FOR_PREFERENCE
+                    || mlKit.samples < MIN_SAMPLES_FOR_PREFERENCE) {
+                return null;
+            }
+            float paddleRate = paddle.usableRate();
+            float mlKitRate = mlKit.usableRate();
+            if (paddleRate - mlKitRate > USABLE_RATE_TOLERANCE) {
+                return Engine.PADDLE;
+            }
+            if (mlKitRate - paddleRate > USABLE_RATE_TOLERANCE) {
+                return Engine.MLKIT;
+            }
+            if (paddleRate == 0f && mlKitRate == 0f) {
+                return null;
+            }
+            return paddle.ewmaLatencyMs <= mlKit.ewmaLatencyMs ? Engine.PADDLE : Engine.MLKIT;
+        }
+    }
+
+    public static void resetStats() {
+        synchronized (STATS) {
+            STATS.clear();
+        }
+    }
+
+    static void recordSample(String pkg, Engine engine, long latencyMs, boolean usable) {
+        synchronized (STATS) {
+            String key = statsKey(pkg, engine);
+            EngineStats s = STATS.get(key);
+            if (s == null) {
+                s = new EngineStats();
+                STATS.put(key, s);
+            }
+            s.record(latencyMs, usable);
+        }
+    }
+
+    private static Engine preferredEngineForRun(String pkg) {
+        Engine preferred = preferredEngine(pkg);
+        if (preferred == null) {
+            return null;
+        }
+        synchronized (STATS) {
+            EngineStats s = STATS.get(statsKey(pkg, preferred));
+            // 定期让两个引擎再比一次，避免偏好被早期样本锁死
+            if (s != null && (s.samples % EXPLORE_EVERY) == 0) {
+                return null;
+            }
+        }
+        return preferred;
+    }
+
+    private static String statsKey(String pkg, Engine engine) {
+        return pkg + "|" + engine.name();
+    }
+
+    private static void runSingle(Context context, Bitmap bitmap, String pkg, Engine engine, boolean fullFrame,
+            PaddleOcrService.OcrCallback callback) {
+        final long start = SystemClock.elapsedRealtime();
+        runEngine(context, engine, bitmap, new PaddleOcrService.OcrCallback() {
+            @Override
+            public void onSuccess(OcrResult result) {
+                boolean usable = isUsable(result);
+                if (fullFrame) {
+                    recordSample(pkg, engine, SystemClock.elapsedRealtime() - start, usable);
+                }
+                if (usable) {
+                    callback.onSuccess(result);
+                } else {
+                    // 偏好引擎没读出东西，退回另一个引擎兜底
+                    runSingleFallback(context, bitmap, pkg, other(engine), fullFrame, result, callback);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (fullFrame) {
+                    recordSample(pkg, engine, SystemClock.elapsedRealtime() - start, false);
+                }
+                runSingleFallback(context, bitmap, pkg, other(engine), fullFrame, null, callback);
+            }
+        });
+    }
+
+    private static void runSingleFallback(Context context, Bitmap bitmap, String pkg, Engine engine,
+            boolean fullFrame, OcrResult previous, PaddleOcrService.OcrCallback callback) {
+        final long start = SystemClock.elapsedRealtime();
+        runEngine(context, engine, bitmap, new PaddleOcrService.OcrCallback() {
+            @Override
+            public void onSuccess(OcrResult result) {
+                if (fullFrame) {
+                    recordSample(pkg, engine, SystemClock.elapsedRealtime() - start, isUsable(result));
+                }
+                callback.onSuccess(isUsable(result) || previous == null ? result : previous);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (fullFrame) {
+                    recordSample(pkg, engine, SystemClock.elapsedRealtime() - start, false);
+                }
+                if (previous != null) {
+                    callback.onSuccess(previous);
+                } else {
+                    callback.onError(e);
+                }
+            }
+        });
+    }
+
+    private static void runBoth(Context context, Bitmap bitmap, String pkg, boolean fuse, boolean fullFrame,
+            PaddleOcrService.OcrCallback callback) {
+        Bitmap paddleCopy = copyOf(bitmap);
+        Bitmap mlKitCopy = copyOf(bitmap);
+        if (paddleCopy == null || mlKitCopy == null) {
+            recycleQuietly(paddleCopy);
+            recycleQuietly(mlKitCopy);
+            Log.w(TAG, "Bitmap copy failed, falling back to Paddle-first");
+            PaddleOcrService.recognizeTextAsync(context, bitmap, callback);
+            return;
+        }
+
+        final DualRun run = new DualRun(pkg, fuse, fullFrame, callback);
+        final long start = SystemClock.elapsedRealtime();
+        MAIN_HANDLER.postDelayed(run.deadline, deadlineMs);
+
+        runEngine(context, Engine.PADDLE, paddleCopy, new EngineCallback(run, Engine.PADDLE, paddleCopy, start));
+        runEngine(context, Engine.MLKIT, mlKitCopy, new EngineCallback(run, Engine.MLKIT, mlKitCopy, start));
+    }
+
+    private static void runEngine(Context context, Engine engine, Bitmap bitmap,
+            PaddleOcrService.OcrCallback callback) {
+        if (engine == Engine.PADDLE) {
+            PaddleOcrService.recognizePaddleOnlyAsync(context, bitmap, callback);
+            return;
+        }
+        MlKitOcrService.recognizeTextAsync(context, bitmap, new MlKitOcrService.OcrCallback() {
+            @Override
+            public void onSuccess(OcrResult result) {
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                callback.onError(e);
+            }
+        });
+    }
+
+    /** 包一层回调，成功或失败时把从现在起的耗时记入 metric。 */
+    static PaddleOcrService.OcrCallback timed(String metric, PaddleOcrService.OcrCallback callback) {
+        final long startNs = System.nanoTime();
+        return new PaddleOcrService.OcrCallback() {
+            @Override
+            public void onSuccess(OcrResult result) {
+                MetricsRegistry.get().recordNanos(metric, System.nanoTime() - startNs);
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                MetricsRegistry.get().recordNanos(metric, System.nanoTime() - startNs);
+                callback.onError(e);
+            }
+        };
+    }
+
+    private static Engine other(Engine engine) {
+        return engine == Engine.PADDLE ? Engine.MLKIT : Engine.PADDLE;
+    }
+
+    private static Bitmap copyOf(Bitmap source) {
+        try {
+            Bitmap.Config config = source.getConfig() == null ? Bitmap.Config.ARGB_8888 : source.getConfig();
+            return source.copy(config, false);
+        } catch (Throwable t) {
+            Log.w(TAG, "Bitmap copy failed", t);
+            return null;
+        }
+    }
+
+    private static void recycleQuietly(Bitmap bitmap) {
+        if (bitmap != null && !bitmap.isRecycled()) {
+            bitmap.recycle();
+        }
+    }
+
+    static boolean isUsable(OcrResult result) {
+        if (result == null) {
+            return false;
+        }
+        for (OcrResult.TextBlock block : result.getTextBlocks()) {
+            if (block.text != null && !block.text.trim().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按 IoU 合并两个引擎的结果：以 Paddle 为底，重叠区域择优替换，
+     * ML Kit 独有的区域（通常是 Paddle 漏掉的英文）追加进来。
+     */
+    static OcrResult fuse(OcrResult paddle, OcrResult mlKit) {
+        if (!isUsable(mlKit)) {
+            return paddle;
+        }
+        if (!isUsable(paddle)) {
+            return mlKit;
+        }
+
+        List<OcrResult.TextBlock> paddleBlocks = paddle.getTextBlocks();
+        List<OcrResult.TextBlock> mlKitBlocks = mlKit.getTextBlocks();
+        OcrResult.TextBlock[] chosen = paddleBlocks.toArray(new OcrResult.TextBlock[0]);
+        List<OcrResult.TextBlock> extras = new ArrayList<>();
+
+        for (OcrResult.TextBlock candidate : mlKitBlocks) {
+            Rect c = candidate.boundingBox;
+            boolean matched = false;
+            for (int i = 0; i < chosen.length; i++) {
+                Rect p = paddleBlocks.get(i).boundingBox;
+                if (c == null || p == null
+                        || !regionsMatch(p.left, p.top, p.right, p.bottom, c.left, c.top, c.right, c.bottom)) {
+                    continue;
+                }
+                matched = true;
+                if (preferCandidate(chosen[i], candidate)) {
+                    chosen[i] = candidate;
+                }
+            }
+            if (!matched) {
+                extras.add(candidate);
+            }
+        }
+
+        OcrResult fused = new OcrResult(paddle.getImageWidth(), paddle.getImageHeight());
+        // 一个 ML Kit 大块可能同时覆盖多个 Paddle 行，只保留一次
+        Set<OcrResult.TextBlock> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (OcrResult.TextBlock block : chosen) {
+            if (added.add(block)) {
+                fused.addTextBlock(block.text, block.boundingBox, block.confidence);
+            }
+        }
+        for (OcrResult.TextBlock block : extras) {
+            fused.addTextBlock(block.text, block.boundingBox, block.confidence);
+        }
+        return fused;
+    }
+
+    /**
+     * Latin 识别器读不了中日韩文字，Paddle 读出 CJK 时无条件保留 Paddle。
+     */
+    static boolean preferCandidate(OcrResult.TextBlock current, OcrResult.TextBlock candidate) {
+        if (containsCjk(current.text)) {
+            return false;
+        }
+        return candidate.confidence > current.confidence;
+    }
+
+    static boolean regionsMatch(int l1, int t1, int r1, int b1, int l2, int t2, int r2, int b2) {
+        return iou(l1, t1, r1, b1, l2, t2, r2, b2) >= MATCH_IOU
+                || containment(l1, t1, r1, b1, l2, t2, r2, b2) >= MATCH_CONTAINMENT;
+    }
+
+    static float iou(int l1, int t1, int r1, int b1, int l2, int t2, int r2, int b2) {
+        long inter = intersectionArea(l1, t1, r1, b1, l2, t2, r2, b2);
+        if (inter == 0) {
+            return 0f;
+        }
+        long union = area(l1, t1, r1, b1) + area(l2, t2, r2, b2) - inter;
+        return union <= 0 ? 0f : (float) inter / union;
+    }
+
+    /**
+     * 交集占较小框面积的比例，用于处理 ML Kit 段落块包住 Paddle 单行的情况。
+     */
+    static float containment(int l1, int t1, int r1, int b1, int l2, int t2, int r2, int b2) {
+        long inter = intersectionArea(l1, t1, r1, b1, l2, t2, r2, b2);
+        if (inter == 0) {
+            return 0f;
+        }
+        long smaller = Math.min(area(l1, t1, r1, b1), area(l2, t2, r2, b2));
+        return smaller <= 0 ? 0f : (float) inter / smaller;
+    }
+
+    static boolean containsCjk(String text) {
+        if (text == null) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if ((ch >= '一' && ch <= '鿿') || (ch >= '㐀' && ch <= '䶿')
+                    || (ch >= '぀' && ch <= 'ヿ') || (ch >= '가' && ch <= '힯')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long intersectionArea(int l1, int t1, int r1, int b1, int l2, int t2, int r2, int b2) {
+        long w = (long) Math.min(r1, r2) - Math.max(l1, l2);
+        long h = (long) Math.min(b1, b2) - Math.max(t1, t2);
+        return w <= 0 || h <= 0 ? 0 : w * h;
+    }
+
+    private static long area(int l, int t, int r, int b) {
+        return Math.max(0L, (long) r - l) * Math.max(0L, (long) b - t);
+    }
+
+    /**
+     * 单帧双引擎运行状态。所有回调最终都在主线程，但仍加锁以防引擎回调线程变化。
+     */
+    private static final class DualRun {
+        private final String pkg;
+        private final boolean fuse;
+        private final boolean fullFrame;
+        private final PaddleOcrService.OcrCallback callback;
+        private OcrResult paddleResult;
+        private OcrResult mlKitResult;
+        private Exception lastError;
+        private int finished;
+        private boolean delivered;
+        // 保留同一个实例，结果先到时从主线程队列移除，不让它带着回调和位图副本挂到超时
+        final Runnable deadline = this::onDeadline;
+
+        DualRun(String pkg, boolean fuse, boolean fullFrame, PaddleOcrService.OcrCallback callback) {
+            this.pkg = pkg;
+            this.fuse = fuse;
+            this.fullFrame = fullFrame;
+            this.callback = callback;
+        }
+
+        void onEngineResult(Engine engine, OcrResult result, Exception error) {
+            OcrResult toDeliver = null;
+            Exception errorToDeliver = null;
+            synchronized (this) {
+                finished++;
+                if (engine == Engine.PADDLE) {
+                    paddleResult = result;
+                } else {
+                    mlKitResult = result;
+                }
+                if (error != null) {
+                    lastError = error;
+                }
+                if (delivered) {
+                    return;
+                }
+                if (!fuse && isUsable(result)) {
+                    delivered = true;
+                    toDeliver = result;
+                } else if (finished >= 2) {
+                    delivered = true;
+                    toDeliver = bestAvailable();
+                    if (toDeliver == null) {
+                        errorToDeliver = lastError != null ? lastError
+                                : new IllegalStateException("Both OCR engines returned nothing");
+                    }
+                }
+            }
+            if (toDeliver != null || errorToDeliver != null) {
+                MAIN_HANDLER.removeCallbacks(deadline);
+            }
+            deliver(toDeliver, errorToDeliver);
+        }
+
+        void onDeadline() {
+            OcrResult toDeliver;
+            synchronized (this) {
+                if (delivered) {
+                    return;
+                }
+                delivered = true;
+                toDeliver = bestAvailable();
+            }
+            Log.w(TAG, "OCR deadline reached, finished engines=" + finished);
+            deliver(toDeliver, toDeliver == null
+                    ? new TimeoutException("OCR deadline exceeded")
+                    : null);
+        }
+
+        private OcrResult bestAvailable() {
+            if (fuse && paddleResult != null && mlKitResult != null) {
+                return OcrOrchestrator.fuse(paddleResult, mlKitResult);
+            }
+            if (isUsable(paddleResult)) {
+                return paddleResult;
+            }
+            if (isUsable(mlKitResult)) {
+                return mlKitResult;
+            }
+            return paddleResult != null ? paddleResult : mlKitResult;
+        }
+
+        private void deliver(OcrResult result, Exception error) {
+            if (result == null && error == null) {
+                return;
+            }
+            if (callback == null) {
+                return;
+            }
+            if (result != null) {
+                callback.onSuccess(result);
+            } else {
+                callback.onError(error);
+            }
+        }
+    }
+
+    private static final class EngineCallback implements PaddleOcrService.OcrCallback {
+        private final DualRun run;
+        private final Engine engine;
+        private final Bitmap ownedCopy;
+        private final long start;
+
+        EngineCallback(DualRun run, Engine engine, Bitmap ownedCopy, long start) {
+            this.run = run;
+            this.engine = engine;
+            this.ownedCopy = ownedCopy;
+            this.start = start;
+        }
+
+        @Override
+        public void onSuccess(OcrResult result) {
+            recycleQuietly(ownedCopy);
+            if (run.fullFrame) {
+                recordSample(run.pkg, engine, SystemClock.elapsedRealtime() - start, isUsable(result));
+            }
+            run.onEngineResult(engine, result, null);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            recycleQuietly(ownedCopy);
+            if (run.fullFrame) {
+                recordSample(run.pkg, engine, SystemClock.elapsedRealtime() - start, false);
+            }
+            run.onEngineResult(engine, null, e);
+        }
+    }
+
+    private static final class EngineStats {
+        int samples;
+        int usable;
+        float ewmaLatencyMs;
+        long lastLatencyMs;
+
+        void record(long latencyMs, boolean wasUsable) {
+            lastLatencyMs = latencyMs;
+            ewmaLatencyMs = samples == 0 ? latencyMs : ewmaLatencyMs + EWMA_ALPHA * (latencyMs - ewmaLatencyMs);
+            samples++;
+            if (wasUsable) {
+                usable++;
+            }
+        }
+
+        float usableRate() {
+            return samples == 0 ? 0f : (float) usable / samples;
+        }
+    }
+
+    /**
+     * 对外暴露的单引擎耗时快照。
+     */
+    public static final class EngineTiming {
+        public final String packageName;
+        public final Engine engine;
+        public final int samples;
+        public final int usableSamples;
+        public final float ewmaLatencyMs;
+        public final long lastLatencyMs;
+
+        EngineTiming(String packageName, Engine engine, int samples, int usableSamples,
+                float ewmaLatencyMs, long lastLatencyMs) {
+            this.packageName = packageName;
+            this.engine = engine;
+            this.samples = samples;
+            this.usableSamples = usableSamples;
+            this.ewmaLatencyMs = ewmaLatencyMs;
+            this.lastLatencyMs = lastLatencyMs;
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package com.example.philotes.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.philotes.data.model.OcrResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于分块感知哈希（dHash）的帧差 OCR 缓存。
+ *
+ * 做法：
+ * 1) 每帧缩成灰度缩略图，按水平条带切成 tile，每个 tile 计算 64 位 dHash。
+ * 2) 与上一帧比较行亮度曲线，估计滚动偏移。
+ * 3) 在偏移（或 0 偏移，适配固定的标题栏/输入框）下哈希一致的 tile，
+ *    直接复用上一帧的 TextBlock 并平移坐标；其余 tile 合并成区域交给 RegionOcrRunner。
+ * 变化过多时退回整帧 OCR。tile 取整行宽度的条带，是因为文字行水平分布，
+ * 纵向切分会把一行字拆进两个 tile。
+ */
+public final class OcrTileCache {
+    private static final String TAG = "OcrTileCache";
+
+    /** 缩略图宽度：17 列 dHash 单元 × 4 像素。 */
+    static final int THUMB_WIDTH = 68;
+    /** 缩略图每行对应原图的像素数，决定滚动偏移精度。 */
+    static final int THUMB_ROW_PX = 4;
+    static final int TILE_COUNT = 16;
+    static final int HASH_COLS = 17;
+    static final int HASH_ROWS = 4;
+    static final int MAX_HAMMING = 3;
+    /** 缩略图逐像素平均差阈值（0-255），补足 dHash 对细小文字变化不敏感的问题。 */
+    static final int MAX_MEAN_ABS_DIFF = 6;
+    static final float MIN_SCROLL_OVERLAP = 0.4f;
+
+    private static final float MIN_REUSE_RATIO = 0.4f;
+    private static final int MAX_REGIONS = 3;
+    private static final long MAX_AGE_MS = 2 * 60 * 1000L;
+
+    private static Frame lastFrame;
+    private static int hits;
+    private static int misses;
+
+    private OcrTileCache() {
+    }
+
+    /**
+     * 带帧差缓存的识别入口，语义与 OcrOrchestrator.recognizeTextAsync 一致；
+     * 调用方在回调里回收 bitmap 即可。整次识别（无论是否命中缓存）记一条 OCR 延迟。
+     */
+    public static void recognizeTextAsync(Context context, Bitmap bitmap, String packageName,
+            PaddleOcrService.OcrCallback caller) {
+        final PaddleOcrService.OcrCallback callback = OcrOrchestrator.timed(MetricsRegistry.OCR_LATENCY, caller);
+        if (bitmap == null) {
+            OcrOrchestrator.recognizeTextAsync(context, null, packageName, callback);
+            return;
+        }
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final Thumbnail thumb = Thumbnail.of(bitmap);
+        final long start = SystemClock.elapsedRealtime();
+
+        Plan plan = usablePlan(packageName, thumb, width, height);
+        if (plan == null) {
+            OcrOrchestrator.recognizeTextAsync(context, bitmap, packageName, new PaddleOcrService.OcrCallback() {
+                @Override
+                public void onSuccess(OcrResult result) {
+                    remember(packageName, thumb, result);
+                    callback.onSuccess(result);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    callback.onError(e);
+                }
+            });
+            return;
+        }
+
+        Log.d(TAG, "Incremental OCR: shift=" + plan.shiftPx + "px reused=" + plan.reusedTiles
+                + "/" + TILE_COUNT + " regions=" + plan.regions.size());
+
+        final OcrResult merged = new OcrResult(width, height);
+        for (OcrResult.TextBlock block : plan.reusedBlocks) {
+            merged.addTextBlock(block.text, block.boundingBox, block.confidence);
+        }
+        if (plan.regions.isEmpty()) {
+            remember(packageName, thumb, merged);
+            callback.onSuccess(merged);
+            return;
+        }
+
+        RegionOcrRunner.run(context, bitmap, packageName, plan.regions, new RegionOcrRunner.Listener() {
+            @Override
+            public void onRegion(int index, RegionOcrRunner.Region region, List<OcrResult.TextBlock> blocks) {
+                for (OcrResult.TextBlock block : blocks) {
+                    merged.addTextBlock(block.text, block.boundingBox, block.confidence);
+                }
+            }
+
+            @Override
+            public void onComplete(int failures) {
+                Log.d(TAG, "Incremental OCR done in " + (SystemClock.elapsedRealtime() - start)
+                        + "ms, failures=" + failures);
+                if (failures == 0) {
+                    remember(packageName, thumb, merged);
+                } else {
+                    invalidate();
+                }
+                callback.onSuccess(merged);
+            }
+        });
+    }
+
+    /**
+     * 流式识别用的查询：命中时给出从上到下覆盖整帧的有序区域，未变化的部分是带缓存文本块的
+     * {@link RegionOcrRunner.Region#cached} 区域，其余需要识别；未命中时 regions 为 null，
+     * 由调用方自行切分整帧。区域全部识别成功后用 {@link #store} 记下本帧结果，否则 {@link #invalidate}。
+     */
+    public static Lookup lookup(Bitmap bitmap, String packageName) {
+        Thumbnail thumb = bitmap == null ? null : Thumbnail.of(bitmap);
+        Plan plan = bitmap == null ? null : usablePlan(packageName, thumb, bitmap.getWidth(), bitmap.getHeight());
+        if (plan != null) {
+            Log.d(TAG, "Incremental streaming OCR: shift=" + plan.shiftPx + "px reused=" + plan.reusedTiles
+                    + "/" + TILE_COUNT + " regions=" + plan.regions.size());
+        }
+        return new Lookup(packageName, thumb, plan == null ? null : plan.ordered);
+    }
+
+    public static void store(Lookup lookup, OcrResult result) {
+        remember(lookup.packageName, lookup.thumb, result);
+    }
+
+    /** {@link #lookup} 的结果。 */
+    public static final class Lookup {
+        /** 命中时的有序区域，未命中为 null。 */
+        public final List<RegionOcrRunner.Region> regions;
+        private final String packageName;
+        private final Thumbnail thumb;
+
+        private Lookup(String packageName, Thumbnail thumb, List<RegionOcrRunner.Region> regions) {
+            this.packageName = packageName;
+            this.thumb = thumb;
+            this.regions = regions;
+        }
+    }
+
+    public static synchronized void invalidate() {
+        lastFrame = null;
+    }
+
+    public static synchronized int getHitCount() {
+        return hits;
+    }
+
+    public static synchronized int getMissCount() {
+        return misses;
+    }
+
+    private static synchronized void recordLookup(boolean hit) {
+        if (hit) {
+            hits++;
+        } else {
+            misses++;
+        }
+        MetricsRegistry.get().increment(hit ? MetricsRegistry.OCR_CACHE_HIT : MetricsRegistry.OCR_CACHE_MISS);
+    }
+
+    /** 与上一帧比较并记录命中/未命中；复用不足或变化区域过多时返回 null。 */
+    private static Plan usablePlan(String packageName, Thumbnail thumb, int width, int height) {
+        Frame previous = usablePrevious(packageName, width, height);
+        Plan plan = previous == null || thumb == null ? null : Plan.build(previous, thumb, width, height);
+        if (plan == null || plan.reusedTiles < Math.ceil(TILE_COUNT * MIN_REUSE_RATIO)
+                || plan.regions.size() > MAX_REGIONS) {
+            plan = null;
+        }
+        recordLookup(plan != null);
+        return plan;
+    }
+
+    private static synchronized Frame usablePrevious(String packageName, int width, int height) {
+        Frame frame = lastFrame;
+        if (frame == null || frame.width != width || frame.height != height) {
+            return null;
+        }
+        if (!safeEquals(frame.packageName, packageName)
+                || SystemClock.elapsedRealtime() - frame.capturedAt > MAX_AGE_MS) {
+            return null;
+        }
+        return frame;
+    }
+
+    private static synchronized void remember(String packageName, Thumbnail thumb, OcrResult result) {
+        if (thumb == null || result == null) {
+            lastFrame = null;
+            return;
+        }
+        lastFrame = new Frame(packageName, thumb, result, SystemClock.elapsedRealtime());
+    }
+
+    private static boolean safeEquals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    // ==================== 纯计算（int[] 灰度图，便于单测） ====================
+
+    /**
+     * ARGB 像素转灰度（BT.601 整数近似）。
+     */
+    static int[] toGray(int[] argb) {
+        int[] gray = new int[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            int c = argb[i];
+            int r = (c >> 16) & 0xFF;
+            int g = (c >> 8) & 0xFF;
+            int b = c & 0xFF;
+            gray[i] = (r * 77 + g * 150 + b * 29) >> 8;
+        }
+        return gray;
+    }
+
+    /**
+     * 对灰度图 [rowStart, rowEnd) 行计算 dHash：切成 HASH_ROWS × HASH_COLS 单元取均值，
+     * 每行相邻单元比较得到 HASH_ROWS × (HASH_COLS - 1) = 64 位。
+     */
+    static long dHash(int[] gray, int width, int rowStart, int rowEnd) {
+        int rows = rowEnd - rowStart;
+        if (rows <= 0 || width <= 0) {
+            return 0L;
+        }
+        long hash = 0L;
+        int[] cells = new int[HASH_COLS];
+        for (int hr = 0; hr < HASH_ROWS; hr++) {
+            int r0 = rowStart + rows * hr / HASH_ROWS;
+            int r1 = Math.max(r0 + 1, rowStart + rows * (hr + 1) / HASH_ROWS);
+            for (int hc = 0; hc < HASH_COLS; hc++) {
+                int c0 = width * hc / HASH_COLS;
+                int c1 = Math.max(c0 + 1, width * (hc + 1) / HASH_COLS);
+                long sum = 0;
+                for (int r = r0; r < r1; r++) {
+                    int base = r * width;
+                    for (int c = c0; c < c1; c++) {
+                        sum += gray[base + c];
+                    }
+                }
+                cells[hc] = (int) (sum / ((long) (r1 - r0) * (c1 - c0)));
+            }
+            for (int hc = 0; hc < HASH_COLS - 1; hc++) {
+                hash = (hash << 1) | (cells[hc] > cells[hc + 1] ? 1L : 0L);
+            }
+        }
+        return hash;
+    }
+
+    static int hamming(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * 两张灰度图对应行区间的逐像素平均绝对差。
+     */
+    static int meanAbsDiff(int[] a, int aRowStart, int[] b, int bRowStart, int width, int rows) {
+        if (rows <= 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int r = 0; r < rows; r++) {
+            int aBase = (aRowStart + r) * width;
+            int bBase = (bRowStart + r) * width;
+            for (int c = 0; c < width; c++) {
+                sum += Math.abs(a[aBase + c] - b[bBase + c]);
+            }
+        }
+        return (int) (sum / ((long) rows * width));
+    }
+
+    static int[] rowProfile(int[] gray, int width, int height) {
+        int[] profile = new int[height];
+        for (int r = 0; r < height; r++) {
+            long sum = 0;
+            int base = r * width;
+            for (int c = 0; c < width; c++) {
+                sum += gray[base + c];
+            }
+            profile[r] = (int) (sum / Math.max(1, width));
+        }
+        return profile;
+    }
+
+    /**
+     * 估计内容的纵向滚动量（缩略图行数）：当前帧第 y 行 ≈ 上一帧第 y + shift 行。
+     * 正值表示页面向下滚动（内容上移）。重叠不足或无明显匹配时返回 0。
+     */
+    static int estimateScrollRows(int[] previousProfile, int[] currentProfile) {
+        int rows = Math.min(previousProfile.length, currentProfile.length);
+        int minOverlap = Math.max(1, (int) (rows * MIN_SCROLL_OVERLAP));
+        int maxShift = rows - minOverlap;
+
+        int bestShift = 0;
+        long bestScore = profileDiff(previousProfile, currentProfile, rows, 0);
+        for (int shift = 1; shift <= maxShift; shift++) {
+            long down = profileDiff(previousProfile, currentProfile, rows, shift);
+            if (down < bestScore) {
+                bestScore = down;
+                bestShift = shift;
+            }
+            long up = profileDiff(previousProfile, currentProfile, rows, -shift);
+            if (up < bestScore) {
+                bestScore = up;
+                bestShift = -shift;
+            }
+        }
+        return bestShift;
+    }
+
+    /**
+     * 平均绝对差 × 1000，避免浮点比较；shift 含义同 estimateScrollRows。
+     */
+    private static long profileDiff(int[] previous, int[] current, int rows, int shift) {
+        int from = Math.max(0, -shift);
+        int to = Math.min(rows, rows - shift);
+        if (to <= from) {
+            return Long.MAX_VALUE;
+        }
+        long sum = 0;
+        for (int y = from; y < to; y++) {
+            sum += Math.abs(current[y] - previous[y + shift]);
+        }
+        return sum * 1000 / (to - from);
+    }
+
+    /**
+     * 判断当前帧 [rowStart, rowEnd) 行与上一帧平移 shift 行后的区域是否视为未变化。
+     */
+    static boolean tileUnchanged(int[] previousGray, int[] currentGray, int width, int height,
+            int rowStart, int rowEnd, int shift) {
+        int prevStart = rowStart + shift;
+        int prevEnd = rowEnd + shift;
+        if (prevStart < 0 || prevEnd > height || rowEnd <= rowStart) {
+            return false;
+        }
+        long currentHash = dHash(currentGray, width, rowStart, rowEnd);
+        long previousHash = dHash(previousGray, width, prevStart, prevEnd);
+        if (hamming(currentHash, previousHash) > MAX_HAMMING) {
+            return false;
+        }
+        return meanAbsDiff(currentGray, rowStart, previousGray, prevStart, width, rowEnd - rowStart)
+                <= MAX_MEAN_ABS_DIFF;
+    }
+
+    // ==================== 内部结构 ====================
+
+    private static final class Thumbnail {
+        final int[] gray;
+        final int[] profile;
+        final int width;
+        final int height;
+
+        private Thumbnail(int[] gray, int width, int height) {
+            this.gray = gray;
+            this.width = width;
+            this.height = height;
+            this.profile = rowProfile(gray, width, height);
+        }
+
+        static Thumbnail of(Bitmap bitmap) {
+            int thumbHeight = bitmap.getHeight() / THUMB_ROW_PX;
+            if (thumbHeight < TILE_COUNT * HASH_ROWS || bitmap.getWidth() < THUMB_WIDTH) {
+                return null;
+            }
+            Bitmap scaled = null;
+            try {
+                scaled = Bitmap.createScaledBitmap(bitmap, THUMB_WIDTH, thumbHeight, true);
+                int[] argb = new int[THUMB_WIDTH * thumbHeight];
+                scaled.getPixels(argb, 0, THUMB_WIDTH, 0, 0, THUMB_WIDTH, thumbHeight);
+                return new Thumbnail(toGray(argb), THUMB_WIDTH, thumbHeight);
+            } catch (Exception e) {
+                Log.w(TAG, "Thumbnail failed", e);
+                return null;
+            } finally {
+                if (scaled != null && scaled != bitmap) {
+                    scaled.recycle();
+                }
+            }
+        }
+    }
+
+    private static final class Frame {
+        final String packageName;
+        final Thumbnail thumb;
+        final OcrResult result;
+        final int width;
+        final int height;
+        final long capturedAt;
+
+        Frame(String packageName, Thumbnail thumb, OcrResult result, long capturedAt) {
+            this.packageName = packageName;
+            this.thumb = thumb;
+            this.result = result;
+            this.width = result.getImageWidth();
+            this.height = result.getImageHeight();
+            this.capturedAt = capturedAt;
+        }
+    }
+
+    private static final class Plan {
+        final int shiftPx;
+        final int reusedTiles;
+        final List<OcrResult.TextBlock> reusedBlocks;
+        final List<RegionOcrRunner.Region> regions;
+        /** 自上而下的全部区域：复用的 tile 合并成缓存区域，与 regions 交替出现。 */
+        final List<RegionOcrRunner.Region> ordered;
+
+        private Plan(int shiftPx, int reusedTiles, List<OcrResult.TextBlock> reusedBlocks,
+                List<RegionOcrRunner.Region> regions, List<RegionOcrRunner.Region> ordered) {
+            this.shiftPx = shiftPx;
+            this.reusedTiles = reusedTiles;
+            this.reusedBlocks = reusedBlocks;
+            this.regions = regions;
+            this.ordered = ordered;
+        }
+
+        static Plan build(Frame previous, Thumbnail current, int width, int height) {
+            Thumbnail prevThumb = previous.thumb;
+            if (prevThumb.width != current.width || prevThumb.height != current.height) {
+                return null;
+            }
+            int thumbRows = current.height;
+            int shiftRows = estimateScrollRows(prevThumb.profile, current.profile);
+            float rowScale = height / (float) thumbRows;
+
+            int[] tileShiftPx = new int[TILE_COUNT];
+            boolean[] reused = new boolean[TILE_COUNT];
+            int reusedTiles = 0;
+            for (int t = 0; t < TILE_COUNT; t++) {
+                int r0 = thumbRows * t / TILE_COUNT;
+                int r1 = thumbRows * (t + 1) / TILE_COUNT;
+                if (shiftRows != 0 && tileUnchanged(prevThumb.gray, current.gray, current.width, thumbRows,
+                        r0, r1, shiftRows)) {
+                    reused[t] = true;
+                    tileShiftPx[t] = Math.round(shiftRows * rowScale);
+                } else if (tileUnchanged(prevThumb.gray, current.gray, current.width, thumbRows, r0, r1, 0)) {
+                    // 固定不动的标题栏、输入框
+                    reused[t] = true;
+                    tileShiftPx[t] = 0;
+                }
+                if (reused[t]) {
+                    reusedTiles++;
+                }
+            }
+
+            List<OcrResult.TextBlock> reusedBlocks = new ArrayList<>();
+            List<OcrResult.TextBlock> previousBlocks = previous.result.getTextBlocks();
+            int[] blockTiles = new int[previousBlocks.size()];
+            for (OcrResult.TextBlock block : previousBlocks) {
+                Rect box = block.boundingBox;
+                if (box == null) {
+                    continue;
+                }
+                int prevCenter = (box.top + box.bottom) / 2;
+                for (int t = 0; t < TILE_COUNT; t++) {
+                    if (!reused[t]) {
+                        continue;
+                    }
+                    int center = prevCenter - tileShiftPx[t];
+                    if (tileIndexAt(center, height) != t) {
+                        continue;
+                    }
+                    Rect shifted = new Rect(box.left, box.top - tileShiftPx[t],
+                            box.right, box.bottom - tileShiftPx[t]);
+                    blockTiles[reusedBlocks.size()] = t;
+                    reusedBlocks.add(new OcrResult.TextBlock(block.text, shifted, block.confidence));
+                    break;
+                }
+            }
+
+            List<RegionOcrRunner.Region> regions = new ArrayList<>();
+            List<RegionOcrRunner.Region> ordered = new ArrayList<>();
+            int padding = height / TILE_COUNT / 2;
+            int t = 0;
+            while (t < TILE_COUNT) {
+                int start = t;
+                boolean run = reused[t];
+                while (t < TILE_COUNT && reused[t] == run) {
+                    t++;
+                }
+                int top = height * start / TILE_COUNT;
+                int bottom = height * t / TILE_COUNT;
+                if (run) {
+                    List<OcrResult.TextBlock> blocks = new ArrayList<>();
+                    for (int i = 0; i < reusedBlocks.size(); i++) {
+                        if (blockTiles[i] >= start && blockTiles[i] < t) {
+                            blocks.add(reusedBlocks.get(i));
+                        }
+                    }
+                    ordered.add(RegionOcrRunner.Region.cached(top, bottom, blocks));
+                } else {
+                    RegionOcrRunner.Region region = new RegionOcrRunner.Region(top, bottom, padding);
+                    regions.add(region);
+                    ordered.add(region);
+                }
+            }
+            return new Plan(Math.round(shiftRows * rowScale), reusedTiles, reusedBlocks, regions, ordered);
+        }
+
+        private static int tileIndexAt(int y, int height) {
+            if (y < 0 || y >= height) {
+                return -1;
+            }
+            return (int) ((long) y * TILE_COUNT / height);
+        }
+    }
+}
@@ -16,17 +16,11 @@ import com.equationl.paddleocr4android.callback.OcrInitCallback;
 import com.equationl.paddleocr4android.callback.OcrRunCallback;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 /**
  * PaddleOCR-Lite service wrapper.
@@ -40,18 +34,20 @@ public final class PaddleOcrService {
     private static final String TAG = "PaddleOcrService";
     private static final ExecutorService INIT_EXECUTOR = Executors.newSingleThreadExecutor();
 
-    private static final String CUSTOM_ASSET_MODEL_DIR = "models/ch_PP-OCRv4";
-    private static final String LOCAL_MODEL_REL_DIR = "paddle_ocr/ch_PP-OCRv4";
+    static final String CUSTOM_ASSET_MODEL_DIR = "models/ch_PP-OCRv4";
+    static final String LOCAL_MODEL_REL_DIR = "paddle_ocr/ch_PP-OCRv4";
 
-    private static final String MODEL_DET = "det.nb";
-    private static final String MODEL_REC = "rec.nb";
-    private static final String MODEL_CLS = "cls.nb";
+    static final String MODEL_DET = "det.nb";
+    static final String MODEL_REC = "rec.nb";
+    static final String MODEL_CLS = "cls.nb";
 
     private static final String URL_DET = "https://raw.githubusercontent.com/equationl/paddleocr4android/master/app/src/main/assets/models/ch_PP-OCRv4/det.nb";
     private static final String URL_REC = "https://raw.githubusercontent.com/equationl/paddleocr4android/master/app/src/main/assets/models/ch_PP-OCRv4/rec.nb";
     private static final String URL_CLS = "https://raw.githubusercontent.com/equationl/paddleocr4android/master/app/src/main/assets/models/ch_PP-OCRv4/cls.nb";
 
-    private static final long MIN_MODEL_BYTES = 100 * 1024; // 100KB
+    static final long MIN_MODEL_BYTES = 100 * 1024; // 100KB
+    private static final String[] PADDLE_MODELS = {
+            ModelCatalog.PADDLE_DET, ModelCatalog.PADDLE_REC, ModelCatalog.PADDLE_CLS };
 
     private static OCR ocr;
     private static volatile boolean initializing = false;
@@ -68,6 +64,18 @@ public final class PaddleOcrService {
     }
 
     public static void recognizeTextAsync(Context context, Bitmap bitmap, OcrCallback callback) {
+        recognize(context, bitmap, callback, true);
+    }
+
+    /**
+     * Runs PaddleOCR only. Failures are reported to the callback instead of
+     * falling back to ML Kit, so {@link OcrOrchestrator} can drive both engines itself.
+     */
+    public static void recognizePaddleOnlyAsync(Context context, Bitmap bitmap, OcrCallback callback) {
+        recognize(context, bitmap, callback, false);
+    }
+
+    private static void recognize(Context context, Bitmap bitmap, OcrCallback callback, boolean allowFallback) {
         if (bitmap == null) {
             if (callback != null)
                 callback.onError(new IllegalArgumentException("Bitmap is null"));
@@ -81,18 +89,32 @@ public final class PaddleOcrService {
 
         Context appContext = context.getApplicationContext();
         if (forceMlKitFallback) {
-            runMlKitFallback(appContext, bitmap, callback);
+            if (allowFallback) {
+                runMlKitFallback(appContext, bitmap, callback);
+            } else if (callback != null) {
+                callback.onError(new IllegalStateException("PaddleOCR disabled after previous failure"));
+            }
             return;
         }
 
+        // 回调在其他线程触发：只在调用方已处于某个 trace 中时记录 span
+        PipelineTracer.Span parent = PipelineTracer.current();
+        PipelineTracer.Span initSpan = parent != null && !initialized ? parent.child("ocr.init") : null;
         ensureInitialized(appContext, new InitCallback() {
             @Override
             public void onReady() {
-                runOcr(appContext, bitmap, callback);
+                endSpan(initSpan, null);
+                runOcr(appContext, bitmap, callback, allowFallback, parent);
             }
 
             @Override
             public void onError(Exception e) {
+                endSpan(initSpan, e);
+                if (!allowFallback) {
+                    if (callback != null)
+                        callback.onError(e);
+                    return;
+                }
                 Log.w(TAG, "Paddle unavailable, switching to ML Kit fallback", e);
                 runMlKitFallback(appContext, bitmap, callback);
             }
@@ -171,23 +193,25 @@ public final class PaddleOcrService {
         config.setRunRec(true);
         config.setDrwwTextPositionBox(false);
 
+        ModelCatalog catalog = ModelCatalog.getInstance(context);
         File localDir = getLocalModelDir(context);
-        if (hasLocalModels(localDir)) {
+        if (catalog.hasFiles(PADDLE_MODELS)) {
             applyModelConfig(config, localDir.getAbsolutePath(), MODEL_DET, MODEL_REC, MODEL_CLS);
             Log.i(TAG, "Using local Paddle model from " + localDir.getAbsolutePath());
             return config;
         }
 
-        if (hasAssetModels(context)) {
+        if (catalog.hasAssets(PADDLE_MODELS)) {
             applyModelConfig(config, CUSTOM_ASSET_MODEL_DIR, MODEL_DET, MODEL_REC, MODEL_CLS);
             Log.i(TAG, "Using asset Paddle model from " + CUSTOM_ASSET_MODEL_DIR);
             return config;
         }
 
         Log.i(TAG, "Paddle model missing. Start auto-download...");
-        downloadLocalModels(localDir);
+        downloadLocalModels(catalog, localDir);
+        catalog.onModelChanged(PADDLE_MODELS);
 
-        if (hasLocalModels(localDir)) {
+        if (catalog.hasFiles(PADDLE_MODELS)) {
             applyModelConfig(config, localDir.getAbsolutePath(), MODEL_DET, MODEL_REC, MODEL_CLS);
             Log.i(TAG, "Using downloaded Paddle model from " + localDir.getAbsolutePath());
             return config;
@@ -208,87 +232,30 @@ public final class PaddleOcrService {
         return new File(context.getFilesDir(), LOCAL_MODEL_REL_DIR);
     }
 
-    private static boolean hasLocalModels(File modelDir) {
-        return validModelFile(new File(modelDir, MODEL_DET))
-                && validModelFile(new File(modelDir, MODEL_REC))
-                && validModelFile(new File(modelDir, MODEL_CLS));
-    }
-
-    private static boolean hasAssetModels(Context context) {
-        return assetExists(context, CUSTOM_ASSET_MODEL_DIR + "/" + MODEL_DET)
-                && assetExists(context, CUSTOM_ASSET_MODEL_DIR + "/" + MODEL_REC)
-                && assetExists(context, CUSTOM_ASSET_MODEL_DIR + "/" + MODEL_CLS);
-    }
-
-    private static boolean assetExists(Context context, String path) {
-        try (InputStream ignored = context.getAssets().open(path)) {
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
     private static boolean validModelFile(File file) {
         return file.exists() && file.length() >= MIN_MODEL_BYTES;
     }
 
-    private static void downloadLocalModels(File modelDir) throws IOException {
+    private static void downloadLocalModels(ModelCatalog catalog, File modelDir) throws IOException {
         if (!modelDir.exists() && !modelDir.mkdirs()) {
             throw new IOException("Create model directory failed: " + modelDir.getAbsolutePath());
         }
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(5, TimeUnit.MINUTES)
-                .followRedirects(true)
-                .followSslRedirects(true)
-                .build();
-
-        downloadOne(client, URL_DET, new File(modelDir, MODEL_DET));
-        downloadOne(client, URL_REC, new File(modelDir, MODEL_REC));
-        downloadOne(client, URL_CLS, new File(modelDir, MODEL_CLS));
+        ModelDownloader downloader = new ModelDownloader(ModelDownloader.defaultClient());
+        downloadOne(catalog, downloader, ModelCatalog.PADDLE_DET, URL_DET, new File(modelDir, MODEL_DET));
+        downloadOne(catalog, downloader, ModelCatalog.PADDLE_REC, URL_REC, new File(modelDir, MODEL_REC));
+        downloadOne(catalog, downloader, ModelCatalog.PADDLE_CLS, URL_CLS, new File(modelDir, MODEL_CLS));
     }
 
-    private static void downloadOne(OkHttpClient client, String url, File target) throws IOException {
+    /** 发布方未给出哈希：首次下载记录整文件 SHA-256，此后的重新下载/续传必须与之一致。 */
+    private static void downloadOne(ModelCatalog catalog, ModelDownloader downloader, String name, String url,
+                                    File target) throws IOException {
         if (validModelFile(target)) {
             return;
         }
-
-        Request request = new Request.Builder()
-                .url(url)
-                .header("User-Agent", "Philotes-Android/1.0")
-                .header("Accept", "application/octet-stream,*/*")
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful() || response.body() == null) {
-                throw new IOException("Download failed: HTTP " + response.code() + " for " + url);
-            }
-
-            File tmp = new File(target.getAbsolutePath() + ".part");
-            try (InputStream is = response.body().byteStream(); FileOutputStream fos = new FileOutputStream(tmp)) {
-                byte[] buffer = new byte[8192];
-                int len;
-                while ((len = is.read(buffer)) != -1) {
-                    fos.write(buffer, 0, len);
-                }
-                fos.flush();
-            }
-
-            if (!tmp.exists() || tmp.length() < MIN_MODEL_BYTES) {
-                // noinspection ResultOfMethodCallIgnored
-                tmp.delete();
-                throw new IOException("Downloaded file too small for " + url);
-            }
-
-            if (target.exists() && !target.delete()) {
-                throw new IOException("Delete old model file failed: " + target.getAbsolutePath());
-            }
-            if (!tmp.renameTo(target)) {
-                throw new IOException("Rename model file failed: " + target.getAbsolutePath());
-            }
-            Log.i(TAG, "Downloaded model: " + target.getName() + " (" + target.length() + " bytes)");
-        }
+        ModelDownloader.Result result = downloader.download(Collections.singletonList(url), target,
+                catalog.getDownloadHash(name), MIN_MODEL_BYTES, null);
+        catalog.recordDownloadHash(name, result.sha256);
     }
 
     private static void waitForInit(InitCallback callback) {
@@ -326,7 +293,18 @@ public final class PaddleOcrService {
         });
     }
 
-    private static void runOcr(Context context, Bitmap bitmap, OcrCallback callback) {
+    private static void endSpan(PipelineTracer.Span span, Throwable error) {
+        if (span == null) {
+            return;
+        }
+        if (error != null) {
+            span.arg("error", error.getClass().getSimpleName());
+        }
+        span.end();
+    }
+
+    private static void runOcr(Context context, Bitmap bitmap, OcrCallback callback, boolean allowFallback,
+            PipelineTracer.Span parent) {
         OCR ocrEngine = ocr;
         if (ocrEngine == null) {
             if (callback != null)
@@ -334,6 +312,7 @@ public final class PaddleOcrService {
             return;
         }
 
+        PipelineTracer.Span runSpan = parent == null ? null : parent.child("ocr.run");
         ocrEngine.run(bitmap, new OcrRunCallback() {
             @Override
             public void onSuccess(OcrResult paddleResult) {
@@ -351,22 +330,33 @@ public final class PaddleOcrService {
                     }
                 }
 
-                if (mapped.getTextBlocks().isEmpty()) {
+                if (mapped.isEmpty()) {
                     String simpleText = paddleResult.getSimpleText();
                     if (simpleText != null && !simpleText.trim().isEmpty()) {
                         mapped.addTextBlock(simpleText, new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()), 1.0f);
                     }
                 }
 
-                Log.i(TAG, "PaddleOCR completed: " + mapped.getTextBlocks().size() + " blocks");
+                Log.i(TAG, "PaddleOCR completed: " + mapped.getBlockCount() + " blocks");
+                if (runSpan != null) {
+                    runSpan.arg("blocks", mapped.getBlockCount());
+                }
+                endSpan(runSpan, null);
                 if (callback != null)
                     callback.onSuccess(mapped);
             }
 
             @Override
             public void onFail(Throwable e) {
-                Log.e(TAG, "Paddle OCR run failed, fallback to ML Kit", e);
+                endSpan(runSpan, e);
                 forceMlKitFallback = true;
+                if (!allowFallback) {
+                    Log.e(TAG, "Paddle OCR run failed", e);
+                    if (callback != null)
+                        callback.onError(new RuntimeException("PaddleOCR run failed", e));
+                    return;
+                }
+                Log.e(TAG, "Paddle OCR run failed, fallback to ML Kit", e);
                 runMlKitFallback(context, bitmap, callback);
             }
         });
@@ -0,0 +1,388 @@
+package com.example.philotes.utils;
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 轻量级流水线追踪：纳秒级 span（trace/span/parent id），结束的 span 写入固定容量的环形缓冲区。
+ *
+ * 用法：
+ * - {@link #beginTrace} 开启一次截屏/解析的根 span（一次 capture 一张瀑布图）；
+ * - {@link #begin} 在当前线程的活动 span 下开子 span，并在 end 前成为当前 span，适合 try-with-resources；
+ * - {@link #beginAsync} / {@link Span#child} 开可在其他线程结束的子 span（回调式 OCR、流式 LLM）；
+ * - 跨线程时用 {@link Span#activate} 把父 span 带到工作线程，线程内的 begin 会挂到它下面。
+ *
+ * 每个 span 同时映射为 android.os.Trace 异步 section（API 29+，Perfetto/systrace 可见），
+ * 并可按 trace 导出 Chrome trace event 格式 JSON（chrome://tracing、ui.perfetto.dev 直接打开）。
+ * 预热等合成负载在 {@link #suppress} 作用域内运行，span 照常计时但不落盘，不污染真实 trace。
+ */
+public final class PipelineTracer {
+    private static final String TAG = "PipelineTracer";
+    static final int DEFAULT_CAPACITY = 2048;
+    static final int MAX_DUMPS = 20;
+    private static final int MAX_SECTION_NAME = 127;
+
+    private static final PipelineTracer INSTANCE = new PipelineTracer(DEFAULT_CAPACITY);
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> SUPPRESSED = new ThreadLocal<>();
+    private static final Scope NO_SCOPE = () -> {
+    };
+
+    /** 恢复上一个当前 span 的作用域；close 不抛受检异常。 */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final Span[] ring;
+    private int next;
+    private long recorded;
+
+    PipelineTracer(int capacity) {
+        this.ring = new Span[Math.max(1, capacity)];
+    }
+
+    public static PipelineTracer get() {
+        return INSTANCE;
+    }
+
+    /** 当前线程的活动 span，没有时为 null。 */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /** 激活一个可能为 null 的 span；null 时返回空作用域。 */
+    public static Scope activate(Span span) {
+        return span == null ? NO_SCOPE : span.activate();
+    }
+
+    /**
+     * 在当前线程暂停记录，直到返回的作用域关闭：期间开启的 span 及其子 span 仍然计时、
+     * 仍然成为当前 span，但结束时不进入环形缓冲区，也不产生 Trace section。可以嵌套。
+     */
+    public static Scope suppress() {
+        if (SUPPRESSED.get() != null) {
+            return NO_SCOPE;
+        }
+        SUPPRESSED.set(Boolean.TRUE);
+        return SUPPRESSED::remove;
+    }
+
+    /** 新 trace 的根 span；不会成为当前 span，可在任意线程结束。 */
+    public Span beginTrace(String name) {
+        long id = IDS.incrementAndGet();
+        return new Span(this, id, id, 0, name, false, recordingHere());
+    }
+
+    /**
+     * 当前 span 的子 span（无当前 span 时为新 trace 的根），结束前成为当前线程的当前 span。
+     * 必须在同一线程 end/close。
+     */
+    public Span begin(String name) {
+        return open(name, true);
+    }
+
+    /** 当前 span 的子 span（无当前 span 时为新 trace 的根），不改变当前 span，可在任意线程结束。 */
+    public Span beginAsync(String name) {
+        return open(name, false);
+    }
+
+    private Span open(String name, boolean enter) {
+        Span parent = CURRENT.get();
+        long id = IDS.incrementAndGet();
+        if (parent == null) {
+            return new Span(this, id, id, 0, name, enter, recordingHere());
+        }
+        return new Span(this, parent.traceId, id, parent.spanId, name, enter, parent.recording && recordingHere());
+    }
+
+    private static boolean recordingHere() {
+        return SUPPRESSED.get() == null;
+    }
+
+    private synchronized void record(Span span) {
+        ring[next] = span;
+        next = (next + 1) % ring.length;
+        recorded++;
+    }
+
+    /** 环形缓冲区中已结束的 span，按记录先后排列。 */
+    public synchronized List<Span> snapshot() {
+        List<Span> spans = new ArrayList<>(ring.length);
+        int count = (int) Math.min(recorded, ring.length);
+        int start = recorded > ring.length ? next : 0;
+        for (int i = 0; i < count; i++) {
+            spans.add(ring[(start + i) % ring.length]);
+        }
+        return spans;
+    }
+
+    /** 某个 trace 已结束的 span，按开始时间排序。 */
+    public List<Span> spansOf(long traceId) {
+        List<Span> spans = new ArrayList<>();
+        for (Span span : snapshot()) {
+            if (span.traceId == traceId) {
+                spans.add(span);
+            }
+        }
+        Collections.sort(spans, Comparator.comparingLong(span -> span.startNs));
+        return spans;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(ring, null);
+        next = 0;
+        recorded = 0;
+    }
+
+    /** Chrome trace event 格式：每个 span 一个完整事件（ph=X），ts/dur 为相对 trace 起点的微秒。 */
+    public String toJson(long traceId) {
+        List<Span> spans = spansOf(traceId);
+        JsonArray events = new JsonArray();
+        long base = spans.isEmpty() ? 0 : spans.get(0).startNs;
+        Set<Long> threads = new HashSet<>();
+        for (Span span : spans) {
+            if (threads.add(span.threadId)) {
+                JsonObject threadName = new JsonObject();
+                threadName.addProperty("name", "thread_name");
+                threadName.addProperty("ph", "M");
+                threadName.addProperty("pid", traceId);
+                threadName.addProperty("tid", span.threadId);
+                JsonObject args = new JsonObject();
+                args.addProperty("name", span.threadName);
+                threadName.add("args", args);
+                events.add(threadName);
+            }
+            JsonObject event = new JsonObject();
+            event.addProperty("name", span.name);
+            event.addProperty("cat", "pipeline");
+            event.addProperty("ph", "X");
+            event.addProperty("pid", traceId);
+            event.addProperty("tid", span.threadId);
+            event.addProperty("ts", (span.startNs - base) / 1000.0);
+            event.addProperty("dur", span.durationNs() / 1000.0);
+            JsonObject args = new JsonObject();
+            args.addProperty("span", span.spanId);
+            args.addProperty("parent", span.parentId);
+            for (Map.Entry<String, String> arg : span.args().entrySet()) {
+                args.addProperty(arg.getKey(), arg.getValue());
+            }
+            event.add("args", args);
+            events.add(event);
+        }
+        JsonObject root = new JsonObject();
+        root.add("traceEvents", events);
+        root.addProperty("displayTimeUnit", "ms");
+        return root.toString();
+    }
+
+    /**
+     * 缩进的文字瀑布图，每行：相对起点的偏移、耗时、span 名称与参数，适合直接打到 logcat。
+     */
+    public String waterfall(long traceId) {
+        List<Span> spans = spansOf(traceId);
+        if (spans.isEmpty()) {
+            return "";
+        }
+        Map<Long, Integer> depth = new HashMap<>();
+        long base = spans.get(0).startNs;
+        StringBuilder out = new StringBuilder();
+        for (Span span : spans) {
+            Integer parentDepth = depth.get(span.parentId);
+            int level = parentDepth == null ? 0 : parentDepth + 1;
+            depth.put(span.spanId, level);
+            out.append(String.format(Locale.US, "%8.1fms %8.1fms ",
+                    (span.startNs - base) / 1e6, span.durationNs() / 1e6));
+            for (int i = 0; i < level; i++) {
+                out.append("  ");
+            }
+            out.append(span.name);
+            if (!span.args().isEmpty()) {
+                out.append(' ').append(span.args());
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * 把一个 trace 写成 dir/trace_&lt;id&gt;.json，只保留最近 {@link #MAX_DUMPS} 个文件。
+     * 有文件 IO，应在后台线程调用。
+     */
+    public File dump(long traceId, File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Create trace directory failed: " + dir.getAbsolutePath());
+        }
+        File file = new File(dir, "trace_" + traceId + ".json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(toJson(traceId));
+        }
+        File[] dumps = dir.listFiles((d, name) -> name.startsWith("trace_") && name.endsWith(".json"));
+        if (dumps != null && dumps.length > MAX_DUMPS) {
+            Arrays.sort(dumps, Comparator.comparingLong(File::lastModified));
+            for (int i = 0; i < dumps.length - MAX_DUMPS; i++) {
+                if (!dumps[i].delete()) {
+                    Log.w(TAG, "Failed to prune trace dump " + dumps[i].getName());
+                }
+            }
+        }
+        return file;
+    }
+
+    private static boolean asyncSectionsSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    }
+
+    private static String sectionName(String name) {
+        return name.length() <= MAX_SECTION_NAME ? name : name.substring(0, MAX_SECTION_NAME);
+    }
+
+    /**
+     * 一个计时区间。end/close 幂等；结束后不可变并进入环形缓冲区。
+     */
+    public static final class Span implements AutoCloseable {
+        private static final long OPEN = Long.MIN_VALUE;
+
+        final long traceId;
+        final long spanId;
+        final long parentId;
+        final String name;
+        final long startNs;
+        final long threadId;
+        final String threadName;
+        private final PipelineTracer tracer;
+        private final Thread owner;
+        private final Span previous;
+        private final boolean entered;
+        private final boolean recording;
+        private final AtomicLong endNs = new AtomicLong(OPEN);
+        private Map<String, String> args;
+
+        private Span(PipelineTracer tracer, long traceId, long spanId, long parentId, String name, boolean enter,
+                boolean recording) {
+            this.tracer = tracer;
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentId = parentId;
+            this.name = name;
+            this.owner = Thread.currentThread();
+            this.threadId = owner.getId();
+            this.threadName = owner.getName();
+            this.entered = enter;
+            this.recording = recording;
+            this.previous = enter ? CURRENT.get() : null;
+            if (enter) {
+                CURRENT.set(this);
+            }
+            if (recording && asyncSectionsSupported()) {
+                Trace.beginAsyncSection(sectionName(name), (int) spanId);
+            }
+            this.startNs = System.nanoTime();
+        }
+
+        /** 本 span 的子 span，不改变当前 span，可在任意线程结束。 */
+        public Span child(String childName) {
+            return new Span(tracer, traceId, IDS.incrementAndGet(), spanId, childName, false,
+                    recording && recordingHere());
+        }
+
+        /** 附加一个键值参数（导出到 JSON args）。 */
+        public synchronized Span arg(String key, Object value) {
+            if (args == null) {
+                args = new LinkedHashMap<>();
+            }
+            args.put(key, String.valueOf(value));
+            return this;
+        }
+
+        synchronized Map<String, String> args() {
+            return args == null ? Collections.emptyMap() : new LinkedHashMap<>(args);
+        }
+
+        /** 在当前线程把本 span 设为当前 span，直到返回的作用域关闭。 */
+        public Scope activate() {
+            Span saved = CURRENT.get();
+            CURRENT.set(this);
+            return () -> restore(saved);
+        }
+
+        public void end() {
+            if (!endNs.compareAndSet(OPEN, System.nanoTime())) {
+                return;
+            }
+            if (entered && Thread.currentThread() == owner && CURRENT.get() == this) {
+                restore(previous);
+            }
+            if (!recording) {
+                return;
+            }
+            if (asyncSectionsSupported()) {
+                Trace.endAsyncSection(sectionName(name), (int) spanId);
+            }
+            tracer.record(this);
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+
+        public boolean isEnded() {
+            return endNs.get() != OPEN;
+        }
+
+        public long getTraceId() {
+            return traceId;
+        }
+
+        public long getSpanId() {
+            return spanId;
+        }
+
+        public long getParentId() {
+            return parentId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** 已结束时为区间长度，未结束时为到目前为止的耗时。 */
+        public long durationNs() {
+            long end = endNs.get();
+            return (end != OPEN ? end : System.nanoTime()) - startNs;
+        }
+
+        private static void restore(Span span) {
+            if (span == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(span);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.philotes.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.example.philotes.data.model.OcrResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按水平区域依次识别一帧：裁剪 → OcrOrchestrator → 坐标平移回整帧。
+ *
+ * 区域可带上下 padding，只保留中心落在区域核心范围内的文本块，
+ * 避免跨边界的文字行被重复或截断。
+ */
+public final class RegionOcrRunner {
+    private static final String TAG = "RegionOcrRunner";
+
+    /**
+     * 识别区域，top/bottom 为整帧坐标，padding 只用于裁剪。
+     * cachedBlocks 非 null 时区域内容来自帧差缓存，不再识别，直接按顺序回调。
+     */
+    public static final class Region {
+        public final int top;
+        public final int bottom;
+        public final int padding;
+        public final List<OcrResult.TextBlock> cachedBlocks;
+
+        public Region(int top, int bottom, int padding) {
+            this(top, bottom, padding, null);
+        }
+
+        private Region(int top, int bottom, int padding, List<OcrResult.TextBlock> cachedBlocks) {
+            this.top = top;
+            this.bottom = bottom;
+            this.padding = padding;
+            this.cachedBlocks = cachedBlocks;
+        }
+
+        /** 已有识别结果的区域，blocks 为整帧坐标。 */
+        public static Region cached(int top, int bottom, List<OcrResult.TextBlock> blocks) {
+            return new Region(top, bottom, 0, Collections.unmodifiableList(blocks));
+        }
+    }
+
+    public interface Listener {
+        /**
+         * 单个区域识别完成，blocks 已平移到整帧坐标。
+         */
+        void onRegion(int index, Region region, List<OcrResult.TextBlock> blocks);
+
+        /**
+         * 全部区域结束；failures 为识别失败的区域数。
+         */
+        void onComplete(int failures);
+
+        /**
+         * 每个区域开始前检查；返回 true 时跳过剩余区域直接 onComplete。
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    private RegionOcrRunner() {
+    }
+
+    /**
+     * 依次识别各区域（Paddle 单实例不支持并发推理，串行反而更快）。
+     * 回调在 OCR 引擎回调线程（主线程）触发；source 由调用方在 onComplete 之后回收，
+     * 取消后正在识别的区域结束即 onComplete，之后不再访问 source。
+     */
+    public static void run(Context context, Bitmap source, String packageName,
+            List<Region> regions, Listener listener) {
+        runFrom(context, source, packageName, new ArrayList<>(regions), 0, 0, listener);
+    }
+
+    private static void runFrom(Context context, Bitmap source, String packageName,
+            List<Region> regions, int index, int failures, Listener listener) {
+        if (index >= regions.size() || listener.isCancelled()) {
+            listener.onComplete(failures);
+            return;
+        }
+
+        Region region = regions.get(index);
+        if (region.cachedBlocks != null) {
+            listener.onRegion(index, region, region.cachedBlocks);
+            runFrom(context, source, packageName, regions, index + 1, failures, listener);
+            return;
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int cropTop = Math.max(0, region.top - region.padding);
+        int cropBottom = Math.min(height, region.bottom + region.padding);
+        if (cropBottom - cropTop <= 0 || width <= 0) {
+            listener.onRegion(index, region, Collections.emptyList());
+            runFrom(context, source, packageName, regions, index + 1, failures, listener);
+            return;
+        }
+
+        final Bitmap crop;
+        try {
+            crop = Bitmap.createBitmap(source, 0, cropTop, width, cropBottom - cropTop);
+        } catch (Exception e) {
+            Log.w(TAG, "Region crop failed: " + cropTop + "-" + cropBottom, e);
+            runFrom(context, source, packageName, regions, index + 1, failures + 1, listener);
+            return;
+        }
+
+        OcrOrchestrator.recognizeRegionAsync(context, crop, packageName, new PaddleOcrService.OcrCallback() {
+            @Override
+            public void onSuccess(OcrResult result) {
+                releaseCrop(crop, source);
+                listener.onRegion(index, region, offsetBlocks(result, region, cropTop));
+                runFrom(context, source, packageName, regions, index + 1, failures, listener);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                releaseCrop(crop, source);
+                Log.w(TAG, "Region OCR failed: " + region.top + "-" + region.bottom, e);
+                runFrom(context, source, packageName, regions, index + 1, failures + 1, listener);
+            }
+        });
+    }
+
+    private static List<OcrResult.TextBlock> offsetBlocks(OcrResult result, Region region, int cropTop) {
+        List<OcrResult.TextBlock> blocks = result == null ? null : result.getTextBlocks();
+        if (blocks == null || blocks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<OcrResult.TextBlock> out = new ArrayList<>(blocks.size());
+        for (OcrResult.TextBlock block : blocks) {
+            Rect box = block.boundingBox;
+            if (box == null) {
+                continue;
+            }
+            int centerY = cropTop + (box.top + box.bottom) / 2;
+            if (centerY < region.top || centerY >= region.bottom) {
+                continue;
+            }
+            Rect shifted = new Rect(box.left, box.top + cropTop, box.right, box.bottom + cropTop);
+            out.add(new OcrResult.TextBlock(block.text, shifted, block.confidence));
+        }
+        return out;
+    }
+
+    private static void releaseCrop(Bitmap crop, Bitmap source) {
+        // createBitmap 在整帧裁剪时可能直接返回原图，不能误回收调用方的 bitmap
+        if (crop != source && !crop.isRecycled()) {
+            crop.recycle();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.example.philotes.domain.ActionParser;
 
 import org.junit.Test;
 
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -57,6 +58,43 @@ public class ActionParserTest {
         assertEquals(ActionType.ADD_TODO, result[0].getType());
     }
 
+    private static final String CALENDAR_JSON =
+            "{\"type\":\"CREATE_CALENDAR\",\"slots\":{\"title\":\"周会\",\"time\":\"2026-10-20T15:00:00\"},"
+                    + "\"confidence\":0.9}";
+    private static final String TODO_JSON =
+            "{\"type\":\"ADD_TODO\",\"slots\":{\"title\":\"带上周报\"},\"confidence\":0.8}";
+
+    @Test
+    public void parseMultiple_consecutiveObjectsWithoutArray_returnsEach() {
+        List<ActionPlan> plans = parseMultiple(CALENDAR_JSON + ",\n" + TODO_JSON);
+
+        assertEquals(2, plans.size());
+        assertEquals(ActionType.CREATE_CALENDAR, plans.get(0).getType());
+        assertEquals(ActionType.ADD_TODO, plans.get(1).getType());
+        assertEquals("带上周报", plans.get(1).getSlots().title());
+    }
+
+    @Test
+    public void parseMultiple_oneFencePerObject_returnsEach() {
+        List<ActionPlan> plans = parseMultiple(
+                "找到两个动作：\n```json\n" + CALENDAR_JSON + "\n```\n\n```json\n" + TODO_JSON + "\n```");
+
+        assertEquals(2, plans.size());
+        assertEquals(ActionType.CREATE_CALENDAR, plans.get(0).getType());
+        assertEquals(ActionType.ADD_TODO, plans.get(1).getType());
+    }
+
+    @Test
+    public void parseMultiple_singleObjectAndArray_unchanged() {
+        assertEquals(1, parseMultiple(CALENDAR_JSON).size());
+        assertEquals(2, parseMultiple("[" + CALENDAR_JSON + "," + TODO_JSON + "]").size());
+    }
+
+    private static List<ActionPlan> parseMultiple(String response) {
+        ActionParser parser = new ActionParser(new FakeStreamingLlm(response, response.length()));
+        return parser.parseMultiple("明天下午3点周会，记得带上周报", null);
+    }
+
     private static void assertTrueOrFail(boolean value, String message) {
         if (!value) {
             throw new AssertionError(message);
@@ -1,7 +1,9 @@
 package com.example.philotes;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.example.philotes.data.api.LiteRtLocalLlmService;
 import com.google.gson.JsonArray;
@@ -10,6 +12,11 @@ import com.google.gson.JsonParser;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class LiteRtLocalLlmServiceTest {
 
@@ -39,6 +46,17 @@ public class LiteRtLocalLlmServiceTest {
         assertTrue(response.contains("\"type\":\"ADD_TODO\""));
     }
 
+    @Test
+    public void ruleResult_isNotAnEarlyExit() {
+        LiteRtLocalLlmService service = new LiteRtLocalLlmService(new File("dummy.tflite"), true);
+
+        String response = service.chatCompletion("输出必须是有效的 JSON 对象", "今天天气不错");
+
+        // 只有实测 no-action 概率触发的提前退出才跳过云端，规则或文本里的置信度都不算
+        assertFalse(service.isEarlyExit(response));
+        assertFalse(service.isEarlyExit("{\"type\":\"UNKNOWN\",\"confidence\":0.99}"));
+    }
+
     @Test
     public void chatCompletion_multiPrompt_capsAtThreeAndSkipsUnknown() {
         LiteRtLocalLlmService service = new LiteRtLocalLlmService(new File("dummy.tflite"), true);
@@ -54,4 +72,34 @@ public class LiteRtLocalLlmServiceTest {
             assertTrue(!"UNKNOWN".equals(type));
         }
     }
+
+    @Test
+    public void chatCompletion_relativeDay_resolvesAgainstToday() {
+        LiteRtLocalLlmService service = new LiteRtLocalLlmService(new File("dummy.tflite"), true);
+        Calendar tomorrow = Calendar.getInstance();
+        tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+        String expected = String.format(Locale.US, "%04d-%02d-%02dT15:30:00", tomorrow.get(Calendar.YEAR),
+                tomorrow.get(Calendar.MONTH) + 1, tomorrow.get(Calendar.DAY_OF_MONTH));
+
+        String response = service.chatCompletion("输出必须是有效的 JSON 对象", "明天下午3点30开会");
+
+        assertEquals(expected, JsonParser.parseString(response).getAsJsonObject()
+                .getAsJsonObject("slots").get("time").getAsString());
+    }
+
+    @Test
+    public void missingModel_warmupFails_andGateReturnsUnknown() throws Exception {
+        LiteRtLocalLlmService service = new LiteRtLocalLlmService(
+                new File("missing-" + System.nanoTime() + ".tflite"));
+        try {
+            service.getReadyFuture().get(5, TimeUnit.SECONDS);
+            fail("warmup should fail for a missing model");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        String response = service.chatCompletion("输出必须是有效的 JSON 对象", "买牛奶");
+        assertTrue(response.contains("\"type\":\"UNKNOWN\""));
+        service.close();
+    }
 }
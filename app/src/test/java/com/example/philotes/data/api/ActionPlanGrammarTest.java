@@ -0,0 +1,247 @@
+package com.example.philotes.data.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.data.model.ActionPlanCodec;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 验证 ActionPlan 语法自动机的接受/拒绝、强制字节推导，以及接入解码循环后
+ * 即使模型输出随机 logits，结果也总能直接解析。
+ */
+public class ActionPlanGrammarTest {
+
+    private static boolean accepts(ActionPlanGrammar grammar, String text) {
+        return grammar.acceptAll(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String forced(ActionPlanGrammar grammar) {
+        return new String(grammar.forcedBytes(grammar.newInstance()), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void object_acceptsSchemaAndRejectsDeviations() {
+        String valid = "{\"type\":\"CREATE_CALENDAR\",\"slots\":{\"title\":\"周会\",\"time\":\"2026-10-20T09:00:00\"},"
+                + "\"confidence\":0.85,\"original_text\":\"明天9点周会\"}";
+        ActionPlanGrammar grammar = ActionPlanGrammar.forObject();
+        assertTrue(accepts(grammar, valid));
+        assertTrue(grammar.isComplete());
+
+        assertFalse(accepts(ActionPlanGrammar.forObject(), "{\"type\":\"DELETE_ALL\""));
+        assertFalse(accepts(ActionPlanGrammar.forObject(), "{\"type\":\"NAVIGATE\",\"slots\":{\"city\""));
+        assertFalse(accepts(ActionPlanGrammar.forObject(),
+                "{\"type\":\"NAVIGATE\",\"slots\":{\"title\":\"a\",\"title\""));
+        assertFalse(accepts(ActionPlanGrammar.forObject(),
+                "{\"type\":\"NAVIGATE\",\"slots\":{},\"confidence\":1.5"));
+        assertFalse(accepts(ActionPlanGrammar.forObject(),
+                "{\"type\":\"NAVIGATE\",\"slots\":{\"title\":\"a\\n"));
+    }
+
+    @Test
+    public void forcedBytes_coverLiteralsAndUniqueChoices() {
+        ActionPlanGrammar grammar = ActionPlanGrammar.forObject();
+        assertEquals("{\"type\":\"", forced(grammar));
+
+        accepts(grammar, "{\"type\":\"CR");
+        assertEquals("EATE_CALENDAR\",\"slots\":{", forced(grammar));
+
+        accepts(grammar, "EATE_CALENDAR\",\"slots\":{\"ti");
+        // title / time still ambiguous
+        assertEquals("", forced(grammar));
+        accepts(grammar, "me\":\"9点\"}");
+        assertEquals(",\"confidence\":", forced(grammar));
+    }
+
+    @Test
+    public void array_capsItemsAndAllowsEmpty() {
+        ActionPlanGrammar empty = ActionPlanGrammar.forArray(3);
+        assertEquals("[", forced(empty));
+        assertTrue(accepts(empty, "[]"));
+        assertTrue(empty.isComplete());
+
+        ActionPlanGrammar single = ActionPlanGrammar.forArray(1);
+        assertTrue(accepts(single, "[{\"type\":\"ADD_TODO\",\"slots\":{},\"confidence\":1,\"original_text\":\"x\"}"));
+        assertEquals("]", forced(single));
+        assertFalse(accepts(ActionPlanGrammar.forArray(3), "[{\"type\":\"UNKNOWN\""));
+    }
+
+    @Test
+    public void stringCap_forcesClosingQuote() {
+        ActionPlanGrammar grammar = ActionPlanGrammar.forObject();
+        StringBuilder text = new StringBuilder("{\"type\":\"ADD_TODO\",\"slots\":{\"content\":\"");
+        for (int i = 0; i < ActionPlanGrammar.SLOT_MAX_BYTES; i++) {
+            text.append('a');
+        }
+        assertTrue(accepts(grammar, text.toString()));
+        assertEquals("\"", forced(grammar).substring(0, 1));
+    }
+
+    /** token id = ASCII byte, plus a few multi-byte tokens as in a real BPE vocabulary. */
+    private static byte[][] vocab() {
+        String[] extra = { "\"}", "ADD", "_TODO", "买牛奶", "\",\"", "0.9", "{\"" };
+        byte[][] tokens = new byte[128 + extra.length][];
+        for (int i = 0; i < 128; i++) {
+            tokens[i] = i == 0 ? new byte[0] : new byte[] { (byte) i };
+        }
+        for (int i = 0; i < extra.length; i++) {
+            tokens[128 + i] = extra[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return tokens;
+    }
+
+    private static int[] encodeAscii(String text) {
+        int[] ids = new int[text.length()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = text.charAt(i);
+        }
+        return ids;
+    }
+
+    @Test
+    public void committedToNoAction_onUniqueUnknownPrefixOrEmptyArray() {
+        ActionPlanGrammar object = ActionPlanGrammar.forObject();
+        assertTrue(accepts(object, "{\"type\":\""));
+        assertFalse(object.committedToNoAction());
+        assertTrue(accepts(object, "U"));
+        assertTrue(object.committedToNoAction());
+
+        ActionPlanGrammar navigate = ActionPlanGrammar.forObject();
+        assertTrue(accepts(navigate, "{\"type\":\"NAVIGATE\",\"slots\":{"));
+        assertFalse(navigate.committedToNoAction());
+
+        ActionPlanGrammar array = ActionPlanGrammar.forArray(3);
+        assertTrue(accepts(array, "["));
+        assertFalse(array.committedToNoAction());
+        assertTrue(accepts(array, "]"));
+        assertTrue(array.committedToNoAction());
+    }
+
+    /** Uniform logits except for a boost on one token each step. */
+    private static LiteRtGenerator.Model biasedModel(int vocabSize, int favoured, int[] decodes) {
+        return new LiteRtGenerator.Model() {
+            @Override
+            public int maxPrefillTokens() {
+                return 16;
+            }
+
+            @Override
+            public int contextTokens() {
+                return 4096;
+            }
+
+            @Override
+            public void prefill(int[] tokens, int offset, int length, int startPos) {
+            }
+
+            @Override
+            public float[] decode(int token, int pos) {
+                decodes[0]++;
+                float[] logits = new float[vocabSize];
+                logits[favoured] = 8f;
+                logits['"'] = 4f;
+                return logits;
+            }
+        };
+    }
+
+    private static LiteRtGenerator.Result classify(ActionPlanGrammar grammar, int favoured, int[] decodes) {
+        byte[][] vocab = vocab();
+        GrammarConstraint constraint = new GrammarConstraint(grammar, new GrammarConstraint.TokenIndex(vocab),
+                ActionPlanGrammarTest::encodeAscii);
+        return LiteRtGenerator.generate(biasedModel(vocab.length, favoured, decodes), new int[] { 'x' },
+                new LiteRtGenerator.Options().maxNewTokens(512).constraint(constraint).earlyExit(0.85),
+                id -> vocab[id]);
+    }
+
+    @Test
+    public void earlyExit_stopsAfterOneDecodeWhenUnknownDominates() {
+        int[] decodes = new int[1];
+        LiteRtGenerator.Result result = classify(ActionPlanGrammar.forObject(), 'U', decodes);
+
+        assertEquals(LiteRtGenerator.StopReason.NO_ACTION, result.stopReason);
+        assertEquals(1, decodes[0]);
+        assertTrue(result.noActionProbability >= 0.85);
+
+        decodes[0] = 0;
+        LiteRtGenerator.Result empty = classify(ActionPlanGrammar.forArray(3), ']', decodes);
+        assertEquals(LiteRtGenerator.StopReason.NO_ACTION, empty.stopReason);
+        assertEquals(1, decodes[0]);
+    }
+
+    @Test
+    public void earlyExit_keepsGeneratingForActionableType() {
+        int[] decodes = new int[1];
+        LiteRtGenerator.Result result = classify(ActionPlanGrammar.forObject(), 'N', decodes);
+
+        assertTrue(result.stopReason != LiteRtGenerator.StopReason.NO_ACTION);
+        assertTrue(decodes[0] > 1);
+        assertTrue(result.noActionProbability < 0.85);
+    }
+
+    @Test
+    public void constrainedDecoding_alwaysParses_evenWithRandomLogits() {
+        byte[][] vocab = vocab();
+        GrammarConstraint.TokenIndex index = new GrammarConstraint.TokenIndex(vocab);
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            LiteRtGenerator.Model model = new LiteRtGenerator.Model() {
+                @Override
+                public int maxPrefillTokens() {
+                    return 16;
+                }
+
+                @Override
+                public int contextTokens() {
+                    return 4096;
+                }
+
+                @Override
+                public void prefill(int[] tokens, int offset, int length, int startPos) {
+                }
+
+                @Override
+                public float[] decode(int token, int pos) {
+                    float[] logits = new float[vocab.length];
+                    for (int i = 0; i < logits.length; i++) {
+                        logits[i] = (float) random.nextGaussian();
+                    }
+                    // bias towards closing quotes so strings end before the cap
+                    logits['"'] += 2.5f;
+                    return logits;
+                }
+            };
+            boolean array = seed % 2 == 1;
+            GrammarConstraint constraint = new GrammarConstraint(
+                    array ? ActionPlanGrammar.forArray(3) : ActionPlanGrammar.forObject(), index,
+                    ActionPlanGrammarTest::encodeAscii);
+
+            LiteRtGenerator.Result result = LiteRtGenerator.generate(model, new int[] { 'x' },
+                    new LiteRtGenerator.Options().maxNewTokens(2048).constraint(constraint), id -> vocab[id]);
+
+            StringBuilder text = new StringBuilder();
+            for (int id : result.tokens) {
+                text.append(new String(vocab[id], StandardCharsets.UTF_8));
+            }
+            assertEquals(LiteRtGenerator.StopReason.JSON_CLOSED, result.stopReason);
+            assertTrue(result.forcedTokens > 0);
+            assertEquals(result.forcedTokens, constraint.getForcedCount());
+            if (array) {
+                JsonArray parsed = JsonParser.parseString(text.toString()).getAsJsonArray();
+                assertTrue(parsed.size() <= 3);
+            } else {
+                ActionPlan plan = ActionPlanCodec.readPlan(text.toString());
+                assertTrue(plan.getType() != null);
+                assertTrue(plan.getConfidence() >= 0 && plan.getConfidence() <= 1);
+            }
+        }
+    }
+}
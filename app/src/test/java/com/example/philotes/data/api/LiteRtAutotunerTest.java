@@ -0,0 +1,126 @@
+package com.example.philotes.data.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 验证 LiteRtAutotuner 的坐标下降搜索、配置持久化编码与模型指纹。
+ * 基准用合成延迟函数代替真实解释器。
+ */
+public class LiteRtAutotunerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** 模拟 big.LITTLE：4 个大核，超过 4 线程后调度到小核反而变慢。 */
+    private static long bigLittleLatency(LiteRtAutotuner.RuntimeConfig config) {
+        double ms = 400.0 / Math.min(config.numThreads, 4);
+        if (config.numThreads > 4) {
+            ms *= 1.0 + 0.25 * (config.numThreads - 4);
+        }
+        if (!config.useXnnpack) {
+            ms *= 1.6;
+        }
+        if (config.allowFp16) {
+            ms *= 0.8;
+        }
+        return (long) (ms * 1_000_000);
+    }
+
+    @Test
+    public void search_findsBigCoreCountWithXnnpackAndFp16() throws IOException {
+        LiteRtAutotuner.RuntimeConfig best = LiteRtAutotuner.search(8, LiteRtAutotunerTest::bigLittleLatency);
+
+        assertTrue(best.useXnnpack);
+        assertEquals(4, best.numThreads);
+        assertTrue(best.allowFp16);
+        assertEquals(bigLittleLatency(best), best.medianNs);
+        assertEquals(1e9 / best.medianNs, best.invocationsPerSecond(), 1e-9);
+    }
+
+    @Test
+    public void search_stopsThreadSweepAfterTwoRegressions() throws IOException {
+        List<Integer> tried = new ArrayList<>();
+        LiteRtAutotuner.search(8, config -> {
+            tried.add(config.numThreads);
+            return bigLittleLatency(config);
+        });
+        // 4 为起点已测，5、6 连续变慢后停止，不再尝试 7、8
+        assertFalse(tried.contains(7));
+        assertFalse(tried.contains(8));
+    }
+
+    @Test
+    public void search_skipsFailingCandidates() throws IOException {
+        LiteRtAutotuner.RuntimeConfig best = LiteRtAutotuner.search(4, config -> {
+            if (config.allowFp16) {
+                throw new IllegalArgumentException("fp16 unsupported");
+            }
+            return bigLittleLatency(config);
+        });
+        assertFalse(best.allowFp16);
+        assertEquals(4, best.numThreads);
+    }
+
+    @Test
+    public void search_smallGainDoesNotFlipConfig() throws IOException {
+        LiteRtAutotuner.RuntimeConfig best = LiteRtAutotuner.search(2, config ->
+                config.useXnnpack ? 100_000_000L : 99_000_000L);
+        assertTrue(best.useXnnpack);
+    }
+
+    @Test
+    public void runtimeConfig_encodeDecodeRoundTrip() {
+        LiteRtAutotuner.RuntimeConfig config = new LiteRtAutotuner.RuntimeConfig(false, 3, true, 12_345_678L);
+        LiteRtAutotuner.RuntimeConfig decoded = LiteRtAutotuner.RuntimeConfig.decode(config.encode());
+
+        assertTrue(config.sameOptions(decoded));
+        assertEquals(config.medianNs, decoded.medianNs);
+        assertNull(LiteRtAutotuner.RuntimeConfig.decode("garbage"));
+        assertNull(LiteRtAutotuner.RuntimeConfig.decode(null));
+    }
+
+    @Test
+    public void fingerprint_stableAndSensitiveToTail() throws IOException {
+        File model = tmp.newFile("model.tflite");
+        byte[] data = new byte[3 << 20];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        try (FileOutputStream out = new FileOutputStream(model)) {
+            out.write(data);
+        }
+
+        String first = LiteRtAutotuner.fingerprint(model);
+        assertEquals(first, LiteRtAutotuner.fingerprint(model));
+
+        try (RandomAccessFile raf = new RandomAccessFile(model, "rw")) {
+            raf.seek(data.length - 10);
+            raf.write(0x7F);
+        }
+        assertNotEquals(first, LiteRtAutotuner.fingerprint(model));
+    }
+
+    @Test
+    public void fingerprint_smallFile() throws IOException {
+        File model = tmp.newFile("tiny.tflite");
+        try (FileOutputStream out = new FileOutputStream(model)) {
+            out.write(new byte[] { 1, 2, 3 });
+        }
+        assertEquals(32, LiteRtAutotuner.fingerprint(model).length());
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.philotes.data.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 用按脚本输出 logits 的假模型验证解码循环：分块 prefill、JSON 闭合即停、
+ * 结束 token、KV 容量上限与 top-k 采样。token id 即 ASCII 码。
+ */
+public class LiteRtGeneratorTest {
+
+    private static final int EOS = 0;
+
+    private static class ScriptedModel implements LiteRtGenerator.Model {
+        final String script;
+        final int maxPrefill;
+        final int context;
+        final List<int[]> prefills = new ArrayList<>();
+        final List<Integer> decodePositions = new ArrayList<>();
+        private int step;
+
+        ScriptedModel(String script, int maxPrefill, int context) {
+            this.script = script;
+            this.maxPrefill = maxPrefill;
+            this.context = context;
+        }
+
+        @Override
+        public int maxPrefillTokens() {
+            return maxPrefill;
+        }
+
+        @Override
+        public int contextTokens() {
+            return context;
+        }
+
+        @Override
+        public void prefill(int[] tokens, int offset, int length, int startPos) {
+            prefills.add(new int[] { offset, length, startPos });
+        }
+
+        @Override
+        public float[] decode(int token, int pos) {
+            decodePositions.add(pos);
+            float[] logits = new float[128];
+            int next = step < script.length() ? script.charAt(step) : EOS;
+            step++;
+            logits[next] = 10f;
+            return logits;
+        }
+    }
+
+    private static byte[] ascii(int token) {
+        return new byte[] { (byte) token };
+    }
+
+    private static String text(LiteRtGenerator.Result result) {
+        byte[] bytes = new byte[result.tokens.length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) result.tokens[i];
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static int[] prompt(int length) {
+        int[] tokens = new int[length];
+        for (int i = 0; i < length; i++) {
+            tokens[i] = 'a' + i % 26;
+        }
+        return tokens;
+    }
+
+    @Test
+    public void stopsWhenFirstJsonValueCloses_ignoringBracesInStrings() {
+        ScriptedModel model = new ScriptedModel("```json\n{\"t\":\"a}\\\"]\",\"s\":{}}trailing", 8, 64);
+
+        LiteRtGenerator.Result result = LiteRtGenerator.generate(model, prompt(4),
+                new LiteRtGenerator.Options().stopTokens(EOS), LiteRtGeneratorTest::ascii);
+
+        assertEquals(LiteRtGenerator.StopReason.JSON_CLOSED, result.stopReason);
+        assertEquals("```json\n{\"t\":\"a}\\\"]\",\"s\":{}}", text(result));
+    }
+
+    @Test
+    public void stopsOnEndOfTurnToken() {
+        ScriptedModel model = new ScriptedModel("ok", 8, 64);
+
+        LiteRtGenerator.Result result = LiteRtGenerator.generate(model, prompt(4),
+                new LiteRtGenerator.Options().stopTokens(EOS), LiteRtGeneratorTest::ascii);
+
+        assertEquals(LiteRtGenerator.StopReason.END_OF_TURN, result.stopReason);
+        assertEquals("ok", text(result));
+    }
+
+    @Test
+    public void prefillIsChunked_andDecodePositionsFollowPrompt() {
+        ScriptedModel model = new ScriptedModel("xy", 4, 64);
+
+        LiteRtGenerator.generate(model, prompt(10), new LiteRtGenerator.Options().stopTokens(EOS),
+                LiteRtGeneratorTest::ascii);
+
+        assertEquals(3, model.prefills.size());
+        assertArrayEquals(new int[] { 0, 4, 0 }, model.prefills.get(0));
+        assertArrayEquals(new int[] { 4, 4, 4 }, model.prefills.get(1));
+        assertArrayEquals(new int[] { 8, 1, 8 }, model.prefills.get(2));
+        // last prompt token at 9, then one step per generated token
+        assertEquals(9, (int) model.decodePositions.get(0));
+        assertEquals(10, (int) model.decodePositions.get(1));
+        assertEquals(11, (int) model.decodePositions.get(2));
+    }
+
+    @Test
+    public void reusedPrefixIsNotPrefilledAgain() {
+        ScriptedModel model = new ScriptedModel("x", 4, 64);
+
+        LiteRtGenerator.generate(model, prompt(10), new LiteRtGenerator.Options().reusePrefix(8).stopTokens(EOS),
+                LiteRtGeneratorTest::ascii);
+
+        // prompt[8] prefilled at 8, prompt[9] decoded at 9
+        assertEquals(1, model.prefills.size());
+        assertArrayEquals(new int[] { 0, 1, 8 }, model.prefills.get(0));
+        assertEquals(9, (int) model.decodePositions.get(0));
+    }
+
+    @Test
+    public void stopsAtKvCapacity() {
+        ScriptedModel model = new ScriptedModel("abcdefgh", 4, 12);
+
+        LiteRtGenerator.Result result = LiteRtGenerator.generate(model, prompt(10),
+                new LiteRtGenerator.Options().stopTokens(EOS), LiteRtGeneratorTest::ascii);
+
+        assertEquals(LiteRtGenerator.StopReason.CONTEXT_FULL, result.stopReason);
+        assertEquals("ab", text(result));
+        assertTrue(model.decodePositions.get(model.decodePositions.size() - 1) < 12);
+    }
+
+    @Test
+    public void maxNewTokensLimitsOutput() {
+        ScriptedModel model = new ScriptedModel("abcdefgh", 4, 64);
+
+        LiteRtGenerator.Result result = LiteRtGenerator.generate(model, prompt(3),
+                new LiteRtGenerator.Options().maxNewTokens(3), LiteRtGeneratorTest::ascii);
+
+        assertEquals(LiteRtGenerator.StopReason.MAX_TOKENS, result.stopReason);
+        assertEquals("abc", text(result));
+    }
+
+    @Test
+    public void topKSamplesOnlyAmongLargestLogits() {
+        float[] logits = new float[16];
+        logits[5] = 3f;
+        logits[7] = 2.5f;
+        logits[2] = 0.5f;
+        Random random = new Random(7);
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            seen.add(LiteRtGenerator.sample(logits, 2, 1f, random));
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList(5, 7)), seen);
+        assertEquals(5, LiteRtGenerator.sample(logits, 1, 1f, random));
+        assertEquals(5, LiteRtGenerator.sample(logits, 40, 0f, random));
+    }
+
+    @Test
+    public void decodeRate_comesFromRealGenerationsOnly() {
+        // 10 tokens in 1s -> 10 tok/s; 20 tok/s next moves the average by alpha
+        LiteRtGenerator.Result first = new LiteRtGenerator.Result(new int[10],
+                LiteRtGenerator.StopReason.JSON_CLOSED, 0, 1_000_000_000L, 0, Double.NaN);
+        LiteRtGenerator.Result faster = new LiteRtGenerator.Result(new int[20],
+                LiteRtGenerator.StopReason.JSON_CLOSED, 0, 1_000_000_000L, 0, Double.NaN);
+        LiteRtGenerator.Result tooShort = new LiteRtGenerator.Result(new int[1],
+                LiteRtGenerator.StopReason.NO_ACTION, 0, 1_000L, 0, 0.9);
+        LiteRtGenerator.Result cancelled = new LiteRtGenerator.Result(new int[10],
+                LiteRtGenerator.StopReason.CANCELLED, 0, 1_000L, 0, Double.NaN);
+
+        assertEquals(0, LiteRtQwenService.smoothedRate(0, tooShort), 0);
+        double rate = LiteRtQwenService.smoothedRate(0, first);
+        assertEquals(10, rate, 1e-9);
+        assertEquals(10, LiteRtQwenService.smoothedRate(rate, cancelled), 1e-9);
+        assertEquals(13, LiteRtQwenService.smoothedRate(rate, faster), 1e-9);
+    }
+
+    @Test
+    public void decodeRate_excludesForcedTokens() throws Exception {
+        // 6 个强制 token 走 prefill，只有 3 个采样 token 计入解码速率
+        LiteRtGenerator.Result mixed = new LiteRtGenerator.Result(new int[9],
+                LiteRtGenerator.StopReason.JSON_CLOSED, 500_000_000L, 1_000_000_000L, 6, Double.NaN);
+        assertEquals(3, mixed.sampledTokens());
+        assertEquals(3, mixed.decodeTokensPerSecond(), 1e-9);
+        assertEquals(0, LiteRtQwenService.smoothedRate(0, mixed), 0);
+
+        // 真实解码：每次 decode 至少 5ms，4 个采样 token 的速率不超过 200 tok/s；
+        // 8 个强制 token 若计入分子会把速率抬高三倍
+        ScriptedModel model = new ScriptedModel("abcd", 64, 256) {
+            @Override
+            public void prefill(int[] tokens, int offset, int length, int startPos) {
+                sleep(20);
+                super.prefill(tokens, offset, length, startPos);
+            }
+
+            @Override
+            public float[] decode(int token, int pos) {
+                sleep(5);
+                return super.decode(token, pos);
+            }
+        };
+        LiteRtGenerator.Constraint constraint = new LiteRtGenerator.Constraint() {
+            private boolean forcedOnce;
+            private int accepted;
+
+            @Override
+            public int[] forcedTokens() {
+                if (forcedOnce) {
+                    return new int[0];
+                }
+                forcedOnce = true;
+                return new int[] { '{', '"', 't', 'y', 'p', 'e', '"', ':' };
+            }
+
+            @Override
+            public void mask(float[] logits) {
+            }
+
+            @Override
+            public void accept(int token) {
+                accepted++;
+            }
+
+            @Override
+            public boolean isComplete() {
+                return accepted >= 4;
+            }
+        };
+        LiteRtGenerator.Result result = LiteRtGenerator.generate(model, prompt(4),
+                new LiteRtGenerator.Options().constraint(constraint), LiteRtGeneratorTest::ascii);
+
+        assertEquals(8, result.forcedTokens);
+        assertEquals(4, result.sampledTokens());
+        assertEquals(12, result.tokens.length);
+        assertTrue("rate " + result.decodeTokensPerSecond(), result.decodeTokensPerSecond() <= 200.0);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.philotes.data.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.data.model.ActionPlanCodec;
+import com.example.philotes.data.model.ActionType;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * 端侧补全的 JSON 提取：与 ActionParser 走同一个 ActionPlanCodec，输出总是规整的 JSON。
+ */
+public class LiteRtLocalLlmServiceJsonTest {
+
+    @Test
+    public void fencedObject_isReadAndRewritten() {
+        String json = LiteRtLocalLlmService.extractJson(
+                "```json\n{\"type\":\"add_todo\",\"slots\":{\"title\":\"买牛奶\",},\"confidence\":0.9}\n```", false);
+
+        ActionPlan plan = ActionPlanCodec.readPlan(json);
+        assertEquals(ActionType.ADD_TODO, plan.getType());
+        assertEquals("买牛奶", plan.getSlots().get("title"));
+        assertTrue(json.startsWith("{\"type\":\"ADD_TODO\""));
+    }
+
+    @Test
+    public void shapeFollowsTheRequest() {
+        String object = "{\"type\":\"COPY_TEXT\",\"slots\":{\"content\":\"abc\"}}";
+        List<ActionPlan> wrapped = ActionPlanCodec.readPlans(LiteRtLocalLlmService.extractJson(object, true));
+        assertEquals(1, wrapped.size());
+
+        String array = "[" + object + ",{\"type\":\"ADD_TODO\",\"slots\":{\"title\":\"x\"}}]";
+        assertEquals(2, ActionPlanCodec.readPlans(LiteRtLocalLlmService.extractJson(array, true)).size());
+        assertEquals(ActionType.COPY_TEXT,
+                ActionPlanCodec.readPlan(LiteRtLocalLlmService.extractJson(array, false)).getType());
+        assertEquals("[]", LiteRtLocalLlmService.extractJson("[]", true));
+    }
+
+    @Test
+    public void missingTypeOrNoJson_isRejected() {
+        assertNull(LiteRtLocalLlmService.extractJson("{\"slots\":{\"title\":\"x\"}}", false));
+        assertNull(LiteRtLocalLlmService.extractJson("{\"type\":\"NOT_A_TYPE\"}", false));
+        assertNull(LiteRtLocalLlmService.extractJson("no json here", false));
+        assertNull(LiteRtLocalLlmService.extractJson("[\"a\", 1]", false));
+    }
+}
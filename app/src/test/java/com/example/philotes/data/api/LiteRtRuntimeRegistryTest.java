@@ -0,0 +1,96 @@
+package com.example.philotes.data.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * 验证 LiteRtRuntimeRegistry 按模型文件共享运行时与引用计数。
+ * 单测环境无 TFLite 原生库，不覆盖真实加载。
+ */
+public class LiteRtRuntimeRegistryTest {
+
+    private static LiteRtRuntimeRegistry.RuntimeStats statsFor(LiteRtRuntimeRegistry registry, File file) {
+        for (LiteRtRuntimeRegistry.RuntimeStats stats : registry.getStats()) {
+            if (stats.modelPath.equals(file.getAbsolutePath())) {
+                return stats;
+            }
+        }
+        throw new AssertionError("no stats for " + file);
+    }
+
+    @Test
+    public void samePath_sharesOneRuntime() {
+        LiteRtRuntimeRegistry registry = new LiteRtRuntimeRegistry();
+        File model = new File("qwen.tflite");
+
+        LiteRtRuntimeRegistry.Lease a = registry.acquire(model);
+        LiteRtRuntimeRegistry.Lease b = registry.acquire(new File("qwen.tflite"));
+
+        assertSame(a.runtime(), b.runtime());
+        assertEquals(1, registry.getStats().size());
+        assertEquals(2, statsFor(registry, model).refCount);
+    }
+
+    @Test
+    public void differentPaths_getSeparateRuntimes() {
+        LiteRtRuntimeRegistry registry = new LiteRtRuntimeRegistry();
+        assertNotSame(registry.acquire(new File("a.tflite")).runtime(),
+                registry.acquire(new File("b.tflite")).runtime());
+    }
+
+    @Test
+    public void leaseClose_isIdempotent() {
+        LiteRtRuntimeRegistry registry = new LiteRtRuntimeRegistry();
+        File model = new File("qwen.tflite");
+        LiteRtRuntimeRegistry.Lease a = registry.acquire(model);
+        registry.acquire(model);
+
+        a.close();
+        a.close();
+
+        assertEquals(1, statsFor(registry, model).refCount);
+    }
+
+    @Test
+    public void lazyLoad_nothingLoadedUntilFirstUse() {
+        LiteRtRuntimeRegistry registry = new LiteRtRuntimeRegistry();
+        File model = new File("qwen.tflite");
+        registry.acquire(model);
+
+        LiteRtRuntimeRegistry.RuntimeStats stats = statsFor(registry, model);
+        assertFalse(stats.loaded);
+        assertEquals(0, stats.loadCount);
+        assertEquals(-1, stats.lastLoadLatencyMs);
+    }
+
+    @Test
+    public void trim_ignoresModeratePressure_andSkipsUnloadedRuntimes() {
+        LiteRtRuntimeRegistry registry = new LiteRtRuntimeRegistry();
+        registry.acquire(new File("qwen.tflite")).close();
+
+        assertEquals(0, registry.trim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, 0));
+        assertEquals(0, registry.trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE,
+                LiteRtRuntimeRegistry.IDLE_UNLOAD_MS * 2));
+    }
+
+    @Test
+    public void localService_sharesRegistryRuntimeAndReleasesOnClose() {
+        File model = new File("shared-" + System.nanoTime() + ".tflite");
+        LiteRtLocalLlmService first = new LiteRtLocalLlmService(model, true);
+        LiteRtLocalLlmService second = new LiteRtLocalLlmService(model, true);
+        LiteRtRuntimeRegistry registry = LiteRtRuntimeRegistry.getInstance();
+        assertEquals(2, statsFor(registry, model).refCount);
+
+        first.close();
+        second.close();
+        assertEquals(0, statsFor(registry, model).refCount);
+    }
+}
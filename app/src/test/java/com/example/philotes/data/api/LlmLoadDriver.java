@@ -0,0 +1,239 @@
+package com.example.philotes.data.api;
+
+import com.example.philotes.utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 对一个 ILlmService（通常是指向 MockLlmServer 的 RoutedLlmService）并发压测，
+ * 统计尾延迟和各类结果，用来观察限流、5xx、断流、坏块下调用方的表现。
+ *
+ * 每个请求归为一种 {@link Outcome}：
+ * - OK：拿到与期望完全一致的回答；
+ * - FALLBACK：路由层吞掉了错误，返回 UNKNOWN 兜底；
+ * - TRUNCATED：调用“成功”结束但内容不完整或不一致（例如断流后被当作正常结束）；
+ * - STREAM_ERROR：流式回调 onError；
+ * - EXCEPTION：调用直接抛出；
+ * - TIMEOUT：超过 timeoutMs 仍未返回。
+ */
+final class LlmLoadDriver {
+
+    enum Outcome {
+        OK,
+        FALLBACK,
+        TRUNCATED,
+        STREAM_ERROR,
+        EXCEPTION,
+        TIMEOUT
+    }
+
+    private final ILlmService service;
+    private final String expected;
+    private int concurrency = 8;
+    private int requests = 64;
+    private boolean streaming;
+    private long timeoutMs = 30_000;
+
+    LlmLoadDriver(ILlmService service, String expected) {
+        this.service = service;
+        this.expected = expected;
+    }
+
+    LlmLoadDriver concurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+        return this;
+    }
+
+    LlmLoadDriver requests(int requests) {
+        this.requests = Math.max(1, requests);
+        return this;
+    }
+
+    LlmLoadDriver streaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    LlmLoadDriver timeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    Report run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        Report report = new Report(streaming, concurrency);
+        long startNs = System.nanoTime();
+        try {
+            List<Future<Sample>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                final int index = i;
+                futures.add(pool.submit(() -> streaming ? stream(index) : block(index)));
+            }
+            long deadlineNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            for (Future<Sample> future : futures) {
+                try {
+                    long remainingNs = Math.max(0, deadlineNs - System.nanoTime());
+                    report.add(future.get(remainingNs, TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    report.add(new Sample(Outcome.TIMEOUT, TimeUnit.MILLISECONDS.toNanos(timeoutMs), -1));
+                } catch (ExecutionException e) {
+                    report.add(new Sample(Outcome.EXCEPTION, 0, -1));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        report.wallNs = System.nanoTime() - startNs;
+        return report;
+    }
+
+    private Sample block(int index) {
+        long startNs = System.nanoTime();
+        try {
+            String response = service.chatCompletion("system", userMessage(index));
+            return new Sample(classify(response), System.nanoTime() - startNs, -1);
+        } catch (RuntimeException e) {
+            return new Sample(Outcome.EXCEPTION, System.nanoTime() - startNs, -1);
+        }
+    }
+
+    private Sample stream(int index) {
+        long startNs = System.nanoTime();
+        StringBuilder content = new StringBuilder();
+        long[] firstDeltaNs = { -1 };
+        Outcome[] terminal = { null };
+        try {
+            service.streamChatCompletion("system", userMessage(index), new ILlmService.StreamListener() {
+                @Override
+                public void onDelta(String delta) {
+                    if (firstDeltaNs[0] < 0) {
+                        firstDeltaNs[0] = System.nanoTime() - startNs;
+                    }
+                    content.append(delta);
+                }
+
+                @Override
+                public void onComplete() {
+                    if (terminal[0] == null) {
+                        terminal[0] = classify(content.toString());
+                    }
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    if (terminal[0] == null) {
+                        terminal[0] = Outcome.STREAM_ERROR;
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            terminal[0] = Outcome.EXCEPTION;
+        }
+        // 同步实现返回时必已终结；既没 complete 也没 error 的流按截断计
+        Outcome outcome = terminal[0] == null ? Outcome.TRUNCATED : terminal[0];
+        return new Sample(outcome, System.nanoTime() - startNs, firstDeltaNs[0]);
+    }
+
+    private Outcome classify(String response) {
+        if (response == null) {
+            return Outcome.EXCEPTION;
+        }
+        if (response.equals(expected)) {
+            return Outcome.OK;
+        }
+        if (response.replace(" ", "").contains("\"type\":\"UNKNOWN\"")) {
+            return Outcome.FALLBACK;
+        }
+        return Outcome.TRUNCATED;
+    }
+
+    private static String userMessage(int index) {
+        return "load request #" + index + "：明天下午3点项目评审";
+    }
+
+    private static final class Sample {
+        final Outcome outcome;
+        final long latencyNs;
+        final long firstDeltaNs;
+
+        Sample(Outcome outcome, long latencyNs, long firstDeltaNs) {
+            this.outcome = outcome;
+            this.latencyNs = latencyNs;
+            this.firstDeltaNs = firstDeltaNs;
+        }
+    }
+
+    /** 一次压测的汇总。 */
+    static final class Report {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram okLatency = new LatencyHistogram();
+        final LatencyHistogram firstDelta = new LatencyHistogram();
+        private final Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+        private final boolean streaming;
+        private final int concurrency;
+        long wallNs;
+
+        Report(boolean streaming, int concurrency) {
+            this.streaming = streaming;
+            this.concurrency = concurrency;
+            for (Outcome outcome : Outcome.values()) {
+                counts.put(outcome, 0);
+            }
+        }
+
+        void add(Sample sample) {
+            counts.merge(sample.outcome, 1, Integer::sum);
+            latency.recordNanos(sample.latencyNs);
+            if (sample.outcome == Outcome.OK) {
+                okLatency.recordNanos(sample.latencyNs);
+            }
+            if (sample.firstDeltaNs >= 0) {
+                firstDelta.recordNanos(sample.firstDeltaNs);
+            }
+        }
+
+        int count(Outcome outcome) {
+            return counts.get(outcome);
+        }
+
+        int total() {
+            int total = 0;
+            for (int count : counts.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        String format() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.US, "%s x%d: %d requests in %.0fms (%.1f req/s)%n",
+                    streaming ? "stream" : "blocking", concurrency, total(), wallNs / 1e6,
+                    wallNs <= 0 ? 0 : total() * 1e9 / wallNs));
+            out.append(line("all", latency));
+            out.append(line("ok", okLatency));
+            if (firstDelta.getCount() > 0) {
+                out.append(line("first delta", firstDelta));
+            }
+            out.append("outcomes ").append(counts).append('\n');
+            return out.toString();
+        }
+
+        private static String line(String label, LatencyHistogram histogram) {
+            return String.format(Locale.US, "  %-12s p50 %7.1fms  p90 %7.1fms  p99 %7.1fms  max %7.1fms  n=%d%n",
+                    label, histogram.percentileMicros(50) / 1000.0, histogram.percentileMicros(90) / 1000.0,
+                    histogram.percentileMicros(99) / 1000.0, histogram.getMaxMicros() / 1000.0,
+                    histogram.getCount());
+        }
+    }
+}
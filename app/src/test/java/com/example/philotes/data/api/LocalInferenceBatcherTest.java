@@ -0,0 +1,131 @@
+package com.example.philotes.data.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 验证批处理器：窗口内的请求按提示词排序依次执行、相同提示词且选项等价时只生成一次、
+ * 取消单个成员不影响其余成员。
+ */
+public class LocalInferenceBatcherTest {
+
+    private static LiteRtGenerator.Result result(int token, LiteRtGenerator.StopReason reason) {
+        return new LiteRtGenerator.Result(new int[] { token }, reason, 0, 0, 0, Double.NaN);
+    }
+
+    @Test
+    public void burstIsSortedByPrompt_andIdenticalPromptsShareOneRun() throws Exception {
+        List<Integer> runs = Collections.synchronizedList(new ArrayList<>());
+        LocalInferenceBatcher batcher = new LocalInferenceBatcher((prompt, options) -> {
+            runs.add(prompt[1]);
+            return result(prompt[1], LiteRtGenerator.StopReason.JSON_CLOSED);
+        }, 100);
+
+        CompletableFuture<LiteRtGenerator.Result> c = batcher.submit(new int[] { 7, 3 }, new LiteRtGenerator.Options());
+        CompletableFuture<LiteRtGenerator.Result> a = batcher.submit(new int[] { 7, 1 }, new LiteRtGenerator.Options());
+        CompletableFuture<LiteRtGenerator.Result> a2 = batcher.submit(new int[] { 7, 1 }, new LiteRtGenerator.Options());
+
+        assertEquals(3, c.get(5, TimeUnit.SECONDS).tokens[0]);
+        assertEquals(1, a.get(5, TimeUnit.SECONDS).tokens[0]);
+        assertSame(a.get(), a2.get());
+        assertEquals(3, batcher.getLastBatchSize());
+        assertEquals(2, runs.size());
+        assertEquals(1, (int) runs.get(0));
+        assertEquals(3, (int) runs.get(1));
+    }
+
+    @Test
+    public void samePromptWithDifferentOptions_runsSeparately_onCopies() throws Exception {
+        List<LiteRtGenerator.Options> seen = Collections.synchronizedList(new ArrayList<>());
+        LocalInferenceBatcher batcher = new LocalInferenceBatcher((prompt, options) -> {
+            seen.add(options);
+            return result(options.maxNewTokens, LiteRtGenerator.StopReason.JSON_CLOSED);
+        }, 100);
+
+        LiteRtGenerator.Options short1 = new LiteRtGenerator.Options().maxNewTokens(8);
+        LiteRtGenerator.Options long1 = new LiteRtGenerator.Options().maxNewTokens(64);
+        LiteRtGenerator.Options short2 = new LiteRtGenerator.Options().maxNewTokens(8);
+        LiteRtGenerator.Options exit = new LiteRtGenerator.Options().maxNewTokens(8).earlyExit(0.9);
+        CompletableFuture<LiteRtGenerator.Result> a = batcher.submit(new int[] { 5 }, short1);
+        CompletableFuture<LiteRtGenerator.Result> b = batcher.submit(new int[] { 5 }, long1);
+        CompletableFuture<LiteRtGenerator.Result> c = batcher.submit(new int[] { 5 }, short2);
+        CompletableFuture<LiteRtGenerator.Result> d = batcher.submit(new int[] { 5 }, exit);
+
+        assertEquals(8, a.get(5, TimeUnit.SECONDS).tokens[0]);
+        assertEquals(64, b.get(5, TimeUnit.SECONDS).tokens[0]);
+        assertSame(a.get(), c.get(5, TimeUnit.SECONDS));
+        assertNotSame(a.get(), d.get(5, TimeUnit.SECONDS));
+        assertEquals(3, seen.size());
+        for (LiteRtGenerator.Options options : seen) {
+            assertNotSame(short1, options);
+            assertNotSame(long1, options);
+            assertNotSame(exit, options);
+        }
+        assertNull(short1.cancelled);
+    }
+
+    @Test
+    public void constraintShape_decidesEquivalence() {
+        GrammarConstraint.TokenIndex index = null;
+        LiteRtGenerator.Options object = new LiteRtGenerator.Options()
+                .constraint(new GrammarConstraint(ActionPlanGrammar.forObject(), index, text -> new int[0]));
+        LiteRtGenerator.Options object2 = new LiteRtGenerator.Options()
+                .constraint(new GrammarConstraint(ActionPlanGrammar.forObject(), index, text -> new int[0]));
+        LiteRtGenerator.Options array = new LiteRtGenerator.Options()
+                .constraint(new GrammarConstraint(ActionPlanGrammar.forArray(3), index, text -> new int[0]));
+
+        assertTrue(object.isEquivalent(object2));
+        assertFalse(object.isEquivalent(array));
+        assertFalse(object.isEquivalent(new LiteRtGenerator.Options()));
+    }
+
+    @Test
+    public void cancellingOneMember_doesNotStallTheOthers() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        LocalInferenceBatcher batcher = new LocalInferenceBatcher((prompt, options) -> {
+            if (prompt[0] == 1) {
+                started.countDown();
+                // a long generation that only checks the cancellation hook, like the decode loop
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (System.nanoTime() < deadline) {
+                    if (options.cancelled.getAsBoolean()) {
+                        return result(prompt[0], LiteRtGenerator.StopReason.CANCELLED);
+                    }
+                    Thread.yield();
+                }
+            }
+            return result(prompt[0], LiteRtGenerator.StopReason.JSON_CLOSED);
+        }, 50);
+
+        CompletableFuture<LiteRtGenerator.Result> slow = batcher.submit(new int[] { 1 }, new LiteRtGenerator.Options());
+        CompletableFuture<LiteRtGenerator.Result> other = batcher.submit(new int[] { 2 }, new LiteRtGenerator.Options());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        slow.cancel(true);
+
+        assertEquals(LiteRtGenerator.StopReason.JSON_CLOSED, other.get(5, TimeUnit.SECONDS).stopReason);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(slow.isCancelled());
+    }
+
+    @Test
+    public void commonPrefix_andOrdering() {
+        assertEquals(2, LocalInferenceBatcher.commonPrefix(new int[] { 1, 2, 3 }, 3, new int[] { 1, 2, 4 }));
+        assertEquals(1, LocalInferenceBatcher.commonPrefix(new int[] { 1, 2, 3 }, 1, new int[] { 1, 2 }));
+        assertTrue(LocalInferenceBatcher.comparePrompts(new int[] { 1 }, new int[] { 1, 0 }) < 0);
+        assertTrue(LocalInferenceBatcher.comparePrompts(new int[] { 2 }, new int[] { 1, 9 }) > 0);
+    }
+}
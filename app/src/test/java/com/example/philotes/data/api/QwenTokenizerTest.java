@@ -0,0 +1,123 @@
+package com.example.philotes.data.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * 用一个最小的 byte-level BPE 词表（256 个字节符号 + 少量合并）验证合并顺序、
+ * 特殊 token 切分和 UTF-8 往返。
+ */
+public class QwenTokenizerTest {
+
+    private static final int IM_START = 300;
+    private static final int IM_END = 301;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** GPT-2 byte-to-unicode 映射，与实现保持一致。 */
+    private static String byteChar(int b) {
+        int extra = 0;
+        for (int i = 0; i < 256; i++) {
+            boolean printable = (i >= '!' && i <= '~') || (i >= 0xA1 && i <= 0xAC) || (i >= 0xAE && i <= 0xFF);
+            char c = printable ? (char) i : (char) (256 + extra++);
+            if (i == b) {
+                return String.valueOf(c);
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+
+    private File writeTokenizer(boolean pairMerges) throws IOException {
+        JsonObject vocab = new JsonObject();
+        for (int b = 0; b < 256; b++) {
+            vocab.addProperty(byteChar(b), b);
+        }
+        String space = byteChar(' ');
+        vocab.addProperty("he", 256);
+        vocab.addProperty("ll", 257);
+        vocab.addProperty("hell", 258);
+        vocab.addProperty("hello", 259);
+        vocab.addProperty(space + "w", 260);
+
+        String[][] merges = { { "h", "e" }, { "l", "l" }, { "he", "ll" }, { "hell", "o" }, { space, "w" } };
+        JsonArray mergeArray = new JsonArray();
+        for (String[] merge : merges) {
+            if (pairMerges) {
+                JsonArray pair = new JsonArray();
+                pair.add(merge[0]);
+                pair.add(merge[1]);
+                mergeArray.add(pair);
+            } else {
+                mergeArray.add(merge[0] + " " + merge[1]);
+            }
+        }
+        JsonObject model = new JsonObject();
+        model.addProperty("type", "BPE");
+        model.add("vocab", vocab);
+        model.add("merges", mergeArray);
+
+        JsonArray added = new JsonArray();
+        added.add(addedToken(IM_START, QwenTokenizer.IM_START));
+        added.add(addedToken(IM_END, QwenTokenizer.IM_END));
+
+        JsonObject root = new JsonObject();
+        root.addProperty("version", "1.0");
+        root.add("added_tokens", added);
+        root.add("model", model);
+        File file = tmp.newFile();
+        Files.write(file.toPath(), root.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static JsonObject addedToken(int id, String content) {
+        JsonObject token = new JsonObject();
+        token.addProperty("id", id);
+        token.addProperty("content", content);
+        token.addProperty("special", true);
+        return token;
+    }
+
+    @Test
+    public void encode_appliesMergesByRank() throws IOException {
+        QwenTokenizer tokenizer = QwenTokenizer.load(writeTokenizer(false));
+
+        assertArrayEquals(new int[] { 259 }, tokenizer.encode("hello"));
+        assertArrayEquals(new int[] { 259, 260, 'o', 'r', 'l', 'd' }, tokenizer.encode("hello world"));
+        assertEquals(6, tokenizer.countTokens("hello world"));
+    }
+
+    @Test
+    public void encode_splitsOnSpecialTokens() throws IOException {
+        QwenTokenizer tokenizer = QwenTokenizer.load(writeTokenizer(true));
+
+        int[] ids = tokenizer.encode(QwenTokenizer.IM_START + "hello\n" + QwenTokenizer.IM_END);
+
+        assertArrayEquals(new int[] { IM_START, 259, '\n', IM_END }, ids);
+        assertEquals(IM_END, tokenizer.specialId(QwenTokenizer.IM_END));
+        assertEquals(-1, tokenizer.specialId(QwenTokenizer.END_OF_TEXT));
+        assertEquals(0, tokenizer.tokenBytes(IM_START).length);
+    }
+
+    @Test
+    public void decode_roundTripsMultiByteText() throws IOException {
+        QwenTokenizer tokenizer = QwenTokenizer.load(writeTokenizer(false));
+        String text = "明天9点 hello world，提醒我";
+
+        int[] ids = tokenizer.encode(text);
+
+        assertEquals(text, tokenizer.decode(ids, ids.length));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.philotes.data.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.philotes.mockllm.FaultProfile;
+import com.example.philotes.mockllm.MockLlmServer;
+import com.example.philotes.utils.AiSettingsManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用 MockLlmServer 对 RoutedLlmService（云端路由）做并发压测：
+ * 正常负载下的尾延迟与吞吐上限，以及 429/500/断流/坏块下每个请求都能及时结束。
+ */
+public class RoutedLlmServiceLoadTest {
+
+    private MockLlmServer server;
+    private RoutedLlmService service;
+
+    @Before
+    public void setUp() throws Exception {
+        server = MockLlmServer.start();
+        service = routedTo(server.baseUrl());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.close();
+        server.close();
+    }
+
+    @Test
+    public void cleanStreamingLoadCompletesEveryRequest() throws Exception {
+        server.faults(FaultProfile.builder().ttfb(20, 10).interTokenDelay(2).build());
+
+        LlmLoadDriver.Report report = new LlmLoadDriver(service, MockLlmServer.DEFAULT_RESPONSE)
+                .streaming(true).concurrency(8).requests(32).run();
+
+        assertEquals(report.format(), 32, report.count(LlmLoadDriver.Outcome.OK));
+        assertEquals(32, server.completedCount());
+        assertTrue(report.format(), report.firstDelta.percentileMicros(50) >= 20_000);
+    }
+
+    @Test
+    public void throughputCapIsSharedAcrossStreams() throws Exception {
+        int tokensPerResponse = (MockLlmServer.DEFAULT_RESPONSE.length() + 3) / 4;
+        server.faults(FaultProfile.builder().tokensPerSecond(2000).build());
+
+        LlmLoadDriver.Report report = new LlmLoadDriver(service, MockLlmServer.DEFAULT_RESPONSE)
+                .streaming(true).concurrency(16).requests(16).run();
+
+        assertEquals(report.format(), 16, report.count(LlmLoadDriver.Outcome.OK));
+        // 首个 token 不计时，其余 16 × (n - 1) 个 token 按 2000 tok/s 排队
+        long minWallNs = 16L * (tokensPerResponse - 1) * 1_000_000_000L / 2000;
+        assertTrue(report.format(), report.wallNs >= minWallNs * 9 / 10);
+    }
+
+    @Test
+    public void blockingCallsFallBackInsteadOfThrowingUnderFaults() throws Exception {
+        server.faults(FaultProfile.builder()
+                .ttfb(5, 5)
+                .rateLimitRate(0.2)
+                .serverErrorRate(0.1)
+                .resetRate(0.1)
+                .malformedRate(0.1)
+                .seed(7)
+                .build());
+
+        LlmLoadDriver.Report report = new LlmLoadDriver(service, MockLlmServer.DEFAULT_RESPONSE)
+                .concurrency(8).requests(60).run();
+
+        String summary = report.format();
+        assertEquals(summary, 60, report.count(LlmLoadDriver.Outcome.OK) + report.count(LlmLoadDriver.Outcome.FALLBACK));
+        assertTrue(summary, report.count(LlmLoadDriver.Outcome.FALLBACK)
+                >= server.injectedCount(FaultProfile.Fault.RATE_LIMITED)
+                + server.injectedCount(FaultProfile.Fault.SERVER_ERROR));
+        assertTrue(summary, server.injectedCount(FaultProfile.Fault.RATE_LIMITED) > 0);
+        assertTrue(summary, server.injectedCount(FaultProfile.Fault.RESET) > 0);
+    }
+
+    @Test
+    public void streamsTerminateAndToleratesMalformedChunks() throws Exception {
+        server.faults(FaultProfile.builder()
+                .ttfb(5, 5)
+                .interTokenDelay(1)
+                .rateLimitRate(0.1)
+                .resetRate(0.15)
+                .malformedRate(0.3)
+                .seed(11)
+                .build());
+
+        LlmLoadDriver.Report report = new LlmLoadDriver(service, MockLlmServer.DEFAULT_RESPONSE)
+                .streaming(true).concurrency(8).requests(60).timeoutMs(20_000).run();
+
+        String summary = report.format();
+        assertEquals(summary, 0, report.count(LlmLoadDriver.Outcome.TIMEOUT));
+        assertEquals(summary, 0, report.count(LlmLoadDriver.Outcome.EXCEPTION));
+        // 流式不经过路由兜底：429 与断流都以 onError（或被当作正常结束的截断）交给调用方
+        int failedStreams = server.injectedCount(FaultProfile.Fault.RATE_LIMITED)
+                + server.injectedCount(FaultProfile.Fault.RESET);
+        assertEquals(summary, failedStreams, report.count(LlmLoadDriver.Outcome.STREAM_ERROR)
+                + report.count(LlmLoadDriver.Outcome.TRUNCATED));
+        // 坏块被跳过，内容完整
+        assertEquals(summary, 60 - failedStreams, report.count(LlmLoadDriver.Outcome.OK));
+        assertTrue(summary, server.injectedCount(FaultProfile.Fault.MALFORMED) > 0);
+    }
+
+    private static RoutedLlmService routedTo(String baseUrl) {
+        Map<String, String> values = new HashMap<>();
+        values.put("routing_policy", AiSettingsManager.ROUTING_CLOUD_ONLY);
+        values.put("api_key", "test-key");
+        values.put("base_url", baseUrl);
+        values.put("model_name", "mock");
+
+        SharedPreferences prefs = mock(SharedPreferences.class);
+        when(prefs.getString(anyString(), anyString())).thenAnswer(invocation ->
+                values.getOrDefault(invocation.getArgument(0), invocation.getArgument(1)));
+        Context context = mock(Context.class);
+        when(context.getApplicationContext()).thenReturn(context);
+        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(prefs);
+        return new RoutedLlmService(context);
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.philotes.data.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+public class ActionPlanCodecTest {
+
+    // 反射读取作对照：ActionPlan 不再带 @SerializedName，用命名策略对上 original_text
+    private static final Gson GSON = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create();
+
+    @Test
+    public void matchesGsonOnWellFormedPlans() {
+        List<String> inputs = Arrays.asList(
+                "{\"type\":\"CREATE_CALENDAR\",\"slots\":{\"title\":\"周会\",\"time\":\"2025-01-02T09:00:00\"},"
+                        + "\"confidence\":0.85,\"original_text\":\"明天9点周会\"}",
+                "{\"type\":\"NAVIGATE\",\"slots\":{\"location\":\"北京南站\"}}",
+                "{ \"original_text\" : \"买\\\"牛奶\\\"\\n\\u4e70\" , \"type\" : \"ADD_TODO\" , \"slots\" : { } }",
+                "{\"type\":\"COPY_TEXT\",\"slots\":{\"content\":\"a\\\\b\\/c\"},\"confidence\":1e-1,\"extra\":[1,{\"x\":\"}\"}]}",
+                "{\"type\":\"NOT_A_TYPE\",\"slots\":null,\"confidence\":2}");
+        for (String json : inputs) {
+            assertSamePlan(json, GSON.fromJson(json, ActionPlan.class), ActionPlanCodec.readPlan(json));
+        }
+    }
+
+    @Test
+    public void roundTripsThroughToJson() {
+        Map<String, String> slots = new LinkedHashMap<>();
+        slots.put("title", "引号\" 反斜杠\\ 换行\n 制表\t 控制\u0001 分隔 ");
+        slots.put("custom", "自定义");
+        ActionPlan plan = new ActionPlan(ActionType.ADD_TODO, slots, "原文", 0.125);
+
+        String json = ActionPlanCodec.toJson(plan);
+        ActionPlan decoded = ActionPlanCodec.readPlan(json);
+
+        assertSamePlan(json, plan, decoded);
+        assertSamePlan(json, GSON.fromJson(json, ActionPlan.class), decoded);
+        assertEquals("[" + json + "," + json + "]", ActionPlanCodec.toJson(Arrays.asList(plan, plan)));
+    }
+
+    @Test
+    public void toleratesTrailingCommasQuotesAndCase() {
+        ActionPlan plan = ActionPlanCodec.readPlan(
+                "{'type':'navigate', slots:{title:\"去机场\",\"count\":3,\"ok\":true,\"nested\":{\"a\":1},\"none\":null,},"
+                        + "confidence:\"0.7\",}");
+
+        assertEquals(ActionType.NAVIGATE, plan.getType());
+        assertEquals("去机场", plan.getSlots().get("title"));
+        assertEquals("3", plan.getSlots().get("count"));
+        assertEquals("true", plan.getSlots().get("ok"));
+        assertTrue(!plan.getSlots().containsKey("nested") && !plan.getSlots().containsKey("none"));
+        assertEquals(0.7, plan.getConfidence(), 0.0);
+    }
+
+    @Test
+    public void truncatedInputClosesWhatWasRead() {
+        ActionPlan plan = ActionPlanCodec.readPlan(
+                "{\"type\":\"ADD_TODO\",\"slots\":{\"title\":\"买牛奶\",\"content\":\"下班后去超");
+
+        assertEquals(ActionType.ADD_TODO, plan.getType());
+        assertEquals("买牛奶", plan.getSlots().get("title"));
+        assertEquals("下班后去超", plan.getSlots().get("content"));
+        assertEquals(1.0, plan.getConfidence(), 0.0);
+
+        ActionPlan dangling = ActionPlanCodec.readPlan("{\"type\":\"NAVIGATE\",\"slots\":{\"location\"");
+        assertEquals(ActionType.NAVIGATE, dangling.getType());
+        assertTrue(dangling.getSlots().isEmpty());
+    }
+
+    @Test
+    public void readsArraysAndKeepsPlansBeforeDamage() {
+        List<ActionPlan> plans = ActionPlanCodec.readPlans(
+                "[{\"type\":\"ADD_TODO\",\"slots\":{\"title\":\"a\"}}, 42, \"x\", null,"
+                        + "{\"type\":\"NAVIGATE\",\"slots\":{\"location\":\"b\"}},"
+                        + "{\"type\":\"COPY_TEXT\",{\"bad\":1}},{\"type\":\"ADD_TODO\"}]");
+
+        assertEquals(2, plans.size());
+        assertEquals(ActionType.ADD_TODO, plans.get(0).getType());
+        assertEquals(ActionType.NAVIGATE, plans.get(1).getType());
+
+        assertEquals(1, ActionPlanCodec.readPlans("{\"type\":\"ADD_TODO\"}").size());
+        assertEquals(2, ActionPlanCodec.readPlans("[{\"type\":\"ADD_TODO\"},{\"type\":\"NAVIGATE\"").size());
+        assertTrue(ActionPlanCodec.readPlans("no json here").isEmpty());
+        assertTrue(ActionPlanCodec.readPlans("[}]").isEmpty());
+    }
+
+    @Test
+    public void rejectsNonObjects() {
+        assertNull(ActionPlanCodec.readPlan((CharSequence) null));
+        assertNull(ActionPlanCodec.readPlan("[{\"type\":\"ADD_TODO\"}]"));
+        assertNull(ActionPlanCodec.readPlan("{[\"type\"]:1}"));
+    }
+
+    @Test
+    public void readerOverloadsMatchCharSequence() throws Exception {
+        String json = "[{\"type\":\"ADD_TODO\",\"slots\":{\"title\":\"x\"}}]";
+        assertEquals(1, ActionPlanCodec.readPlans(new StringReader(json)).size());
+        assertEquals(ActionType.ADD_TODO,
+                ActionPlanCodec.readPlan(new StringReader("{\"type\":\"ADD_TODO\"}")).getType());
+    }
+
+    @Test
+    public void internsTypesAndKnownSlotKeys() {
+        ActionPlan plan = ActionPlanCodec.readPlan(
+                "{\"type\":\"ADD_TODO\",\"slots\":{\"title\":\"a\",\"time\":\"b\",\"location\":\"c\",\"content\":\"d\"}}");
+
+        for (String key : plan.getSlots().keySet()) {
+            assertSame(ActionPlanCodec.internSlotKey(new StringBuilder(key)), key);
+        }
+        assertSame(ActionPlanCodec.SLOT_TITLE, ActionPlanCodec.internSlotKey(new StringBuilder("title")));
+        assertEquals(ActionType.CREATE_CALENDAR, ActionPlanCodec.typeOf(" create_calendar "));
+        assertNull(ActionPlanCodec.typeOf("CREATE"));
+    }
+
+    @Test
+    public void fixedTwoDecimalsMatchesStringFormat() {
+        Random random = new Random(48);
+        double[] samples = new double[200];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (random.nextDouble() - 0.2) * (i % 3 == 0 ? 1 : 100);
+        }
+        for (double value : samples) {
+            StringBuilder out = new StringBuilder();
+            ActionPlanCodec.appendFixed2(out, value);
+            assertEquals(String.format(Locale.US, "%.2f", value), out.toString());
+        }
+        StringBuilder zero = new StringBuilder();
+        ActionPlanCodec.appendFixed2(zero, Double.NaN);
+        assertEquals("0.00", zero.toString());
+    }
+
+    private static void assertSamePlan(String json, ActionPlan expected, ActionPlan actual) {
+        assertEquals(json, expected.getType(), actual.getType());
+        assertEquals(json, expected.getSlots(), actual.getSlots());
+        assertEquals(json, expected.getOriginalText(), actual.getOriginalText());
+        assertEquals(json, expected.getConfidence(), actual.getConfidence(), 0.0);
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.philotes.data.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ActionSlotsTest {
+
+    private static final String[] KEYS = {"title", "time", "location", "content", "description", "extra", "备注"};
+
+    @Test
+    public void behavesLikeAnOrdinaryMap() {
+        Random random = new Random(50);
+        ActionSlots.Builder builder = new ActionSlots.Builder();
+        for (int round = 0; round < 300; round++) {
+            Map<String, String> expected = new HashMap<>();
+            int puts = random.nextInt(8);
+            for (int i = 0; i < puts; i++) {
+                // new String 保证常用键也会走 equals 分支，而不只是按引用命中
+                String key = new String(KEYS[random.nextInt(KEYS.length)]);
+                String value = random.nextInt(10) == 0 ? null : "v" + random.nextInt(3);
+                builder.put(key, value);
+                if (value != null) {
+                    expected.put(key, value);
+                }
+            }
+            ActionSlots slots = builder.build();
+
+            assertEquals(expected, slots);
+            assertEquals(slots, expected);
+            assertEquals(expected.hashCode(), slots.hashCode());
+            assertEquals(expected.size(), slots.size());
+            assertEquals(expected.entrySet(), slots.entrySet());
+            for (String key : KEYS) {
+                assertEquals(expected.get(key), slots.get(key));
+                assertEquals(expected.containsKey(key), slots.containsKey(key));
+            }
+            assertEquals(slots, ActionSlots.copyOf(new LinkedHashMap<>(expected)));
+        }
+    }
+
+    @Test
+    public void knownKeysComeFirstThenOverflowInInsertionOrder() {
+        Map<String, String> source = new LinkedHashMap<>();
+        source.put("extra", "1");
+        source.put("content", "c");
+        source.put("description", "2");
+        source.put("title", "t");
+        ActionSlots slots = ActionSlots.copyOf(source);
+
+        assertEquals(Arrays.asList("title", "content", "extra", "description"), new ArrayList<>(slots.keySet()));
+        assertEquals("t", slots.title());
+        assertEquals("c", slots.content());
+        assertNull(slots.time());
+        assertNull(slots.location());
+    }
+
+    @Test
+    public void isImmutable() {
+        ActionSlots slots = new ActionSlots.Builder().put("title", "a").put("extra", "b").build();
+        try {
+            slots.put("time", "x");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // 只读
+        }
+        try {
+            slots.entrySet().iterator().next().setValue("x");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // 只读
+        }
+        assertEquals("a", slots.title());
+    }
+
+    @Test
+    public void sharesInstancesWhereItCan() {
+        ActionSlots slots = new ActionSlots.Builder().put("title", "a").build();
+
+        assertSame(slots, ActionSlots.copyOf(slots));
+        assertSame(ActionSlots.EMPTY, ActionSlots.copyOf(new HashMap<>()));
+        assertSame(ActionSlots.EMPTY, new ActionSlots.Builder().build());
+        assertNull(ActionSlots.copyOf(null));
+
+        ActionPlan plan = new ActionPlan(ActionType.ADD_TODO, slots, "原文", 0.5);
+        assertSame(slots, plan.getSlots());
+    }
+
+    @Test
+    public void builderIsReusableAcrossPlans() {
+        ActionSlots.Builder builder = new ActionSlots.Builder();
+        ActionSlots first = builder.put("title", "a").put("extra", "1").build();
+        ActionSlots second = builder.put("time", "b").build();
+
+        assertEquals(2, first.size());
+        assertEquals(1, second.size());
+        assertNull(second.title());
+        assertFalse(second.containsKey("extra"));
+        assertEquals("1", first.get("extra"));
+    }
+
+    @Test
+    public void codecDecodesIntoCompactSlots() {
+        List<ActionPlan> plans = ActionPlanCodec.readPlans(
+                "[{\"type\":\"ADD_TODO\",\"slots\":{\"title\":\"买牛奶\",\"tag\":\"家务\"}},"
+                        + "{\"type\":\"ADD_TODO\",\"slots\":{\"tag\":\"家务\",\"title\":\"买牛奶\"}},"
+                        + "{\"type\":\"NAVIGATE\",\"slots\":{}}]");
+
+        ActionSlots first = plans.get(0).getSlots();
+        ActionSlots second = plans.get(1).getSlots();
+        assertEquals("买牛奶", first.title());
+        assertEquals("家务", first.get("tag"));
+        assertTrue(first.equals(second) && first.hashCode() == second.hashCode());
+        assertSame(ActionSlots.EMPTY, plans.get(2).getSlots());
+    }
+}
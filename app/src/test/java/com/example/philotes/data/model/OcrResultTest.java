@@ -0,0 +1,111 @@
+package com.example.philotes.data.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * 验证 OcrResult 的紧凑序列化：预算截断、低置信度标记、不修改原列表。
+ * 只依赖文本与置信度，不依赖 android.graphics.Rect 的几何实现。
+ */
+public class OcrResultTest {
+
+    private static OcrResult sample() {
+        OcrResult result = new OcrResult(1080, 2400);
+        result.addTextBlock("明天下午三点开会", new Rect(), 0.95f);
+        result.addTextBlock("地点：3号会议室", new Rect(), 0.6f);
+        result.addTextBlock("记得带电脑", new Rect(), 0.9f);
+        return result;
+    }
+
+    @Test
+    public void compactText_plain_readingOrderWithoutLabels() {
+        assertEquals("明天下午三点开会\n地点：3号会议室?\n记得带电脑", sample().toCompactText(0, false));
+    }
+
+    @Test
+    public void compactText_layout_prefixOnlyWhenCellChanges() {
+        String text = sample().toCompactText(0, true);
+        assertTrue(text.startsWith("[屏幕文字"));
+        // 三块都在同一网格，只有第一块带 rRcC 前缀
+        assertEquals(1, text.split("r\\dc\\d ", -1).length - 1);
+        assertFalse(text.contains("顶部"));
+    }
+
+    @Test
+    public void compactText_respectsBudget() {
+        String text = sample().toCompactText(12, false);
+        assertEquals("明天下午三点开会", text);
+        assertTrue(sample().toCompactText(5, false).length() <= 5);
+    }
+
+    @Test
+    public void compactText_skipsBlankBlocks() {
+        OcrResult result = new OcrResult(100, 100);
+        result.addTextBlock("  ", new Rect(), 0.9f);
+        result.addTextBlock("买牛奶", new Rect(), 0.9f);
+        assertEquals("买牛奶", result.toCompactText(0, false));
+    }
+
+    @Test
+    public void compactLines_everyLineCarriesItsCell() {
+        OcrResult result = sample();
+        result.addTextBlock("好", new Rect(), 0.9f);
+
+        List<String> lines = result.toCompactLines(2);
+
+        assertEquals(3, lines.size());
+        assertEquals("r0c0 明天下午三点开会", lines.get(0));
+        assertEquals("r0c0 地点：3号会议室?", lines.get(1));
+        assertEquals("r0c0 记得带电脑", lines.get(2));
+    }
+
+    @Test
+    public void structuredText_doesNotMutateBlocksOrDuplicateText() {
+        OcrResult result = sample();
+        List<OcrResult.TextBlock> before = result.getTextBlocks();
+        OcrResult.TextBlock first = before.get(0);
+
+        String text = result.toStructuredText();
+
+        assertSame(first, result.getTextBlocks().get(0));
+        assertEquals(text.indexOf("记得带电脑"), text.lastIndexOf("记得带电脑"));
+        assertTrue(text.contains("(置信度: 60.0%)"));
+        assertTrue(text.contains("图片尺寸: 1080 x 2400"));
+    }
+
+    @Test
+    public void textBlocks_isAReadOnlySnapshot() {
+        OcrResult result = sample();
+        List<OcrResult.TextBlock> snapshot = result.getTextBlocks();
+
+        result.addTextBlock("周五聚餐", new Rect(), 0.9f);
+
+        assertEquals(3, snapshot.size());
+        assertEquals(4, result.getBlockCount());
+        assertFalse(result.isEmpty());
+        try {
+            snapshot.add(new OcrResult.TextBlock("x", new Rect(), 1f));
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // 只读
+        }
+    }
+
+    @Test
+    public void readingOrder_invalidatedOnAdd() {
+        OcrResult result = sample();
+        assertEquals(3, result.getBlocksInReadingOrder().size());
+        result.addTextBlock("周五聚餐", new Rect(), 0.9f);
+        assertEquals(4, result.getBlocksInReadingOrder().size());
+        assertTrue(result.toCompactText(0, false).endsWith("周五聚餐"));
+    }
+}
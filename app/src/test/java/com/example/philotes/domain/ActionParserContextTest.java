@@ -7,6 +7,9 @@ import static org.junit.Assert.assertTrue;
 import com.example.philotes.data.api.ILlmService;
 import com.example.philotes.data.model.ActionPlan;
 import com.example.philotes.data.model.ActionType;
+import com.example.philotes.data.model.OcrResult;
+
+import android.graphics.Rect;
 
 import org.junit.Test;
 
@@ -136,4 +139,32 @@ public class ActionParserContextTest {
         assertTrue("应包含情境描述符", prompt.contains("[设备情境]"));
         assertTrue("应包含当前日期", prompt.contains("当前日期"));
     }
+
+    /**
+     * OCR 入口把紧凑布局行送给 LLM，计划原文仍是不带布局标记的文本。
+     */
+    @Test
+    public void parseMultipleWithFilter_sendsCompactLayoutKeepsPlainOriginal() {
+        AtomicReference<String> capturedUser = new AtomicReference<>("");
+        ILlmService capturingService = new ILlmService() {
+            @Override
+            public String chatCompletion(String systemPrompt, String userMessage) {
+                capturedUser.set(userMessage);
+                return "[{\"type\":\"NAVIGATE\",\"slots\":{\"location\":\"北京南站\"}}]";
+            }
+            @Override
+            public void streamChatCompletion(String sp, String um, StreamListener l) {
+                l.onComplete();
+            }
+        };
+        OcrResult ocr = new OcrResult(1080, 2400);
+        ocr.addTextBlock("去北京南站", new Rect(), 0.95f);
+        ocr.addTextBlock("下午三点出发", new Rect(), 0.5f);
+
+        List<ActionPlan> plans = new ActionParser(capturingService).parseMultipleWithFilter(ocr, null);
+
+        assertEquals(OcrResult.COMPACT_LAYOUT_HEADER + "\nr0c0 去北京南站\nr0c0 下午三点出发?", capturedUser.get());
+        assertEquals(1, plans.size());
+        assertEquals("去北京南站\n下午三点出发", plans.get(0).getOriginalText());
+    }
 }
@@ -0,0 +1,453 @@
+package com.example.philotes.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * JsonRepair 的性质测试：随机生成 JSON 文档，加上说明文字、代码块围栏、随机空白和尾随逗号，
+ * 再在任意位置截断，与原 ActionParser 的修复实现（下方 Legacy，原样拷贝）对照。
+ * 输出一律用严格模式的 Gson 解析判定是否合法。
+ */
+public class JsonRepairTest {
+
+    private static final Gson GSON = new Gson();
+
+    // 原实现会改写字符串里的 ```、",}" 等内容，对照时字符串避开这两类字符
+    private static final String SAFE_CHARS = "abcXYZ 019:{}[]\"\\\n会议室项目评审";
+    private static final String FULL_CHARS = SAFE_CHARS + ",`";
+    private static final String[] PREFIXES = {"", "好的，解析结果如下：\n", "Sure! "};
+    private static final String[] FENCES = {"", "```json\n", "```JSON\n", "```\n"};
+    private static final String[] SUFFIXES = {"", "\n希望对你有帮助。", " 如需调整请告诉我 {}"};
+
+    @Test
+    public void decoratedDocumentsRepairToTheOriginalValue() {
+        Random random = new Random(49);
+        JsonRepair repair = new JsonRepair();
+        for (int i = 0; i < 500; i++) {
+            boolean array = i % 3 == 0;
+            JsonElement value = array ? randomArray(random, FULL_CHARS, 3) : randomObject(random, FULL_CHARS, 3);
+            String input = decorate(random, value);
+
+            assertEquals(input, value, strictParse(repair.repair(input, array)));
+        }
+    }
+
+    @Test
+    public void agreesWithLegacyWheneverLegacySucceeds() {
+        Random random = new Random(490);
+        JsonRepair repair = new JsonRepair();
+        int legacyOk = 0;
+        int repairedOk = 0;
+        for (int i = 0; i < 300; i++) {
+            String input = decorate(random, randomObject(random, SAFE_CHARS, 3));
+            for (int cut = 0; cut < 12; cut++) {
+                String prefix = cut == 0 ? input : input.substring(0, random.nextInt(input.length() + 1));
+                JsonElement legacy = strictParse(Legacy.sanitizeAndRepairJson(prefix));
+                JsonElement repaired = strictParse(repair.repair(prefix, false));
+                if (legacy != null) {
+                    legacyOk++;
+                    assertEquals(prefix, legacy, repaired);
+                }
+                if (repaired != null) {
+                    repairedOk++;
+                }
+            }
+        }
+        // 截断在字符串、键、冒号或嵌套数组里时原实现得不到合法 JSON
+        assertTrue(legacyOk + " vs " + repairedOk, repairedOk > legacyOk + legacyOk / 4);
+    }
+
+    @Test
+    public void incrementalAppendMatchesOneShot() {
+        Random random = new Random(4900);
+        JsonRepair incremental = new JsonRepair();
+        JsonRepair oneShot = new JsonRepair();
+        for (int i = 0; i < 200; i++) {
+            boolean array = i % 2 == 0;
+            String input = decorate(random,
+                    array ? randomArray(random, FULL_CHARS, 3) : randomObject(random, FULL_CHARS, 3));
+            incremental.reset(array);
+            int pos = 0;
+            while (pos < input.length()) {
+                int end = Math.min(input.length(), pos + 1 + random.nextInt(6));
+                incremental.append(input.substring(pos, end));
+                pos = end;
+                CharSequence expected = oneShot.repair(input.substring(0, end), array);
+                assertEquals(input.substring(0, end), String.valueOf(expected), String.valueOf(incremental.result()));
+            }
+        }
+    }
+
+    @Test
+    public void balancesArraysAndMismatchedClosers() {
+        JsonRepair repair = new JsonRepair();
+
+        assertEquals("[{\"a\":1},{\"b\":[2,3]}]", repair.repair("[{\"a\":1},{\"b\":[2,3", true).toString());
+        assertEquals("{\"a\":[1,2]}", repair.repair("{\"a\":[1,2}", false).toString());
+        assertEquals("{\"a\":[1]}", repair.repair("{\"a\":[1]]}", false).toString());
+        assertEquals("[1,2]", repair.repair("[,1,,2,]", true).toString());
+        // 原实现只按 '{' 计数补括号，数组截断后得不到合法 JSON
+        assertNull(strictParse(Legacy.sanitizeAndRepairJson("{\"a\":[1,2")));
+        assertEquals("{\"a\":[1,2]}", repair.repair("{\"a\":[1,2", false).toString());
+    }
+
+    @Test
+    public void collectsConsecutiveTopLevelObjectsInArrayMode() {
+        JsonRepair repair = new JsonRepair();
+
+        assertEquals("[{\"a\":1},{\"b\":2}]", repair.repair("{\"a\":1},{\"b\":2}", true).toString());
+        assertEquals("[{\"a\":1},{\"b\":2}]",
+                repair.repair("```json\n{\"a\":1}\n```\n以及\n```json\n{\"b\":2}\n```", true).toString());
+        assertEquals("[{\"a\":1}]", repair.repair("说明 {\"a\":1}", true).toString());
+        // 最后一个对象被截断时同样闭合，多余的 ']' 不会提前闭合补上的数组
+        assertEquals("[{\"a\":[1]},{\"b\":\"x\"}]", repair.repair("{\"a\":[1]]}] {\"b\":\"x", true).toString());
+        // 不允许数组时仍只取第一个对象
+        assertEquals("{\"a\":1}", repair.repair("{\"a\":1},{\"b\":2}", false).toString());
+    }
+
+    @Test
+    public void consecutiveObjectsRepairToAnArrayOfTheOriginals() {
+        Random random = new Random(4901);
+        JsonRepair repair = new JsonRepair();
+        for (int i = 0; i < 300; i++) {
+            JsonArray expected = new JsonArray();
+            StringBuilder input = new StringBuilder(PREFIXES[random.nextInt(PREFIXES.length)]);
+            boolean fencePerObject = random.nextBoolean();
+            int count = 1 + random.nextInt(3);
+            for (int k = 0; k < count; k++) {
+                JsonObject value = randomObject(random, FULL_CHARS, 3);
+                expected.add(value);
+                if (fencePerObject) {
+                    input.append("```json\n");
+                } else if (k > 0) {
+                    input.append(random.nextBoolean() ? "," : ",\n");
+                }
+                writeSloppy(input, value, random);
+                if (fencePerObject) {
+                    input.append("\n```\n");
+                }
+            }
+
+            assertEquals(input.toString(), expected, strictParse(repair.repair(input, true)));
+        }
+    }
+
+    @Test
+    public void completesTruncatedStringsKeysAndEscapes() {
+        JsonRepair repair = new JsonRepair();
+
+        assertEquals("{\"a\":\"xy\"}", repair.repair("{\"a\":\"xy", false).toString());
+        assertEquals("{\"a\":\"x\"}", repair.repair("{\"a\":\"x\\", false).toString());
+        assertEquals("{\"a\":\"x\"}", repair.repair("{\"a\":\"x\\u4e", false).toString());
+        assertEquals("{\"a\":1,\"b\":null}", repair.repair("{\"a\":1,\"b\"", false).toString());
+        assertEquals("{\"a\": null}", repair.repair("{\"a\": ", false).toString());
+        assertEquals("{\"a\":1}", repair.repair("{\"a\":1,\n ", false).toString());
+        assertEquals("{\"a\":\"1\\n2\\t\\\\q\"}", repair.repair("{\"a\":\"1\n2\t\\q\"}", false).toString());
+    }
+
+    @Test
+    public void leavesStringContentAlone() {
+        String input = "```json\n{\"content\":\"用 ```json 包起来, } ] 也可以,}\"}\n```";
+        JsonElement expected = strictParse("{\"content\":\"用 ```json 包起来, } ] 也可以,}\"}");
+
+        assertEquals(expected, strictParse(new JsonRepair().repair(input, false)));
+        JsonElement legacy = strictParse(Legacy.sanitizeAndRepairJson(input));
+        assertTrue(legacy == null || !legacy.equals(expected));
+    }
+
+    @Test
+    public void skipsProseAndReturnsNullWithoutOpener() {
+        JsonRepair repair = new JsonRepair();
+
+        assertNull(repair.repair("没有可执行的动作", false));
+        assertNull(repair.repair(null, true));
+        assertNull(repair.repair("[1,2]", false));
+        assertEquals("{\"a\":1}", repair.repair("结果 ] } ```json\n{\"a\":1}``` 其余 {\"b\":2}", false).toString());
+        assertEquals("[1]", repair.repair("见下 [1] {\"b\":2}", true).toString());
+    }
+
+    @Test
+    public void reusesItsBuffer() {
+        JsonRepair repair = new JsonRepair();
+        CharSequence first = repair.repair("{\"a\":1}", false);
+        CharSequence second = repair.repair("{\"b\":2", false);
+
+        assertSame(first, second);
+        assertEquals("{\"b\":2}", second.toString());
+        assertNotNull(repair.result());
+        assertEquals("{\"b\":2,\"c\":3}", repair.append(",\"c\":3").result().toString());
+    }
+
+    // ==================== 生成器 ====================
+
+    private static JsonObject randomObject(Random random, String chars, int depth) {
+        JsonObject object = new JsonObject();
+        int size = random.nextInt(4);
+        for (int i = 0; i < size; i++) {
+            object.add(randomString(random, chars), randomValue(random, chars, depth - 1));
+        }
+        return object;
+    }
+
+    private static JsonArray randomArray(Random random, String chars, int depth) {
+        JsonArray array = new JsonArray();
+        int size = random.nextInt(4);
+        for (int i = 0; i < size; i++) {
+            array.add(randomValue(random, chars, depth - 1));
+        }
+        return array;
+    }
+
+    private static JsonElement randomValue(Random random, String chars, int depth) {
+        int kind = random.nextInt(depth > 0 ? 7 : 5);
+        switch (kind) {
+            case 0:
+                return new JsonPrimitive(randomString(random, chars));
+            case 1:
+                return new JsonPrimitive(random.nextInt(2000) - 1000);
+            case 2:
+                return new JsonPrimitive(random.nextInt(100) + 0.5);
+            case 3:
+                return new JsonPrimitive(random.nextBoolean());
+            case 4:
+                return JsonNull.INSTANCE;
+            case 5:
+                return randomObject(random, chars, depth);
+            default:
+                return randomArray(random, chars, depth);
+        }
+    }
+
+    private static String randomString(Random random, String chars) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String decorate(Random random, JsonElement value) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(PREFIXES[random.nextInt(PREFIXES.length)]);
+        String fence = FENCES[random.nextInt(FENCES.length)];
+        sb.append(fence);
+        writeSloppy(sb, value, random);
+        if (!fence.isEmpty()) {
+            sb.append("\n```");
+        }
+        sb.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+        return sb.toString();
+    }
+
+    /** 按模型常见的写法序列化：随机空白、随机尾随逗号、部分字符用 \\u 转义。 */
+    private static void writeSloppy(StringBuilder sb, JsonElement value, Random random) {
+        if (value.isJsonObject()) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, JsonElement> entry : value.getAsJsonObject().entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                space(sb, random);
+                writeString(sb, entry.getKey(), random);
+                space(sb, random);
+                sb.append(':');
+                space(sb, random);
+                writeSloppy(sb, entry.getValue(), random);
+            }
+            trailingComma(sb, random, !first);
+            sb.append('}');
+        } else if (value.isJsonArray()) {
+            sb.append('[');
+            boolean first = true;
+            for (JsonElement element : value.getAsJsonArray()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                space(sb, random);
+                writeSloppy(sb, element, random);
+            }
+            trailingComma(sb, random, !first);
+            sb.append(']');
+        } else if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isString()) {
+            writeString(sb, value.getAsString(), random);
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static void writeString(StringBuilder sb, String text, Random random) {
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c > 0x7f && random.nextInt(4) == 0) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void space(StringBuilder sb, Random random) {
+        int kind = random.nextInt(6);
+        if (kind == 0) {
+            sb.append(' ');
+        } else if (kind == 1) {
+            sb.append("\n  ");
+        }
+    }
+
+    private static void trailingComma(StringBuilder sb, Random random, boolean hasElements) {
+        if (hasElements && random.nextInt(3) == 0) {
+            sb.append(',');
+        }
+        space(sb, random);
+    }
+
+    private static JsonElement strictParse(CharSequence json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json.toString()));
+            reader.setLenient(false);
+            JsonElement element = GSON.getAdapter(JsonElement.class).read(reader);
+            return reader.peek() == JsonToken.END_DOCUMENT ? element : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** 原 ActionParser.sanitizeAndRepairJson 及其辅助方法，作为对照实现保留。 */
+    private static final class Legacy {
+
+        static String sanitizeAndRepairJson(String raw) {
+            if (raw == null) {
+                return null;
+            }
+
+            String cleaned = raw.replace("```json", "")
+                    .replace("```JSON", "")
+                    .replace("```", "")
+                    .trim();
+            if (cleaned.isEmpty()) {
+                return null;
+            }
+
+            String extracted = extractJsonObject(cleaned);
+            if (extracted == null) {
+                extracted = cleaned;
+            }
+
+            String repaired = repairCommonJsonIssues(extracted);
+            if (repaired == null || repaired.trim().isEmpty()) {
+                return null;
+            }
+            return repaired.trim();
+        }
+
+        private static String extractJsonObject(String text) {
+            int start = text.indexOf('{');
+            if (start < 0) {
+                return null;
+            }
+
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+            for (int i = start; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+
+                if (c == '"') {
+                    inString = true;
+                    continue;
+                }
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    depth--;
+                    if (depth == 0) {
+                        return text.substring(start, i + 1);
+                    }
+                }
+            }
+
+            String partial = text.substring(start);
+            int missing = Math.max(1, depth);
+            StringBuilder sb = new StringBuilder(partial);
+            for (int i = 0; i < missing; i++) {
+                sb.append('}');
+            }
+            return sb.toString();
+        }
+
+        private static String repairCommonJsonIssues(String json) {
+            String repaired = json.trim();
+
+            repaired = repaired.replaceAll(",\\s*([}\\]])", "$1");
+
+            int openBrace = countChar(repaired, '{');
+            int closeBrace = countChar(repaired, '}');
+            if (closeBrace < openBrace) {
+                StringBuilder sb = new StringBuilder(repaired);
+                for (int i = 0; i < openBrace - closeBrace; i++) {
+                    sb.append('}');
+                }
+                repaired = sb.toString();
+            }
+
+            int quoteCount = countChar(repaired, '"');
+            if (quoteCount % 2 != 0) {
+                repaired = repaired + '"';
+            }
+
+            return repaired;
+        }
+
+        private static int countChar(String text, char c) {
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == c) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.philotes.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * 验证 ParagraphAssembler 的行聚类与扫描前沿驱动的稳定段落输出。
+ */
+public class ParagraphAssemblerTest {
+
+    @Test
+    public void consecutiveLines_mergeIntoOneParagraph() {
+        ParagraphAssembler assembler = new ParagraphAssembler();
+        assembler.addLine("明天下午三点", 40, 100, 400, 130);
+        assembler.addLine("在3号会议室开会", 40, 138, 420, 168);
+
+        List<ParagraphAssembler.Paragraph> rest = assembler.flush();
+        assertEquals(1, rest.size());
+        assertEquals("明天下午三点\n在3号会议室开会", rest.get(0).getText());
+        assertEquals(2, rest.get(0).getLineCount());
+    }
+
+    @Test
+    public void largeGap_startsNewParagraph() {
+        ParagraphAssembler assembler = new ParagraphAssembler();
+        assembler.addLine("第一段", 40, 100, 400, 130);
+        assembler.addLine("第二段", 40, 300, 400, 330);
+
+        List<ParagraphAssembler.Paragraph> rest = assembler.flush();
+        assertEquals(2, rest.size());
+        assertEquals("第一段", rest.get(0).getText());
+        assertEquals("第二段", rest.get(1).getText());
+    }
+
+    @Test
+    public void sideBySideColumns_stayApart() {
+        ParagraphAssembler assembler = new ParagraphAssembler();
+        // 聊天界面左右气泡
+        assembler.addLine("对方：周五聚餐？", 20, 100, 300, 130);
+        assembler.addLine("我：好的", 700, 140, 1000, 170);
+
+        assertEquals(2, assembler.flush().size());
+    }
+
+    @Test
+    public void advanceFrontier_releasesOnlyParagraphsThatCannotGrow() {
+        ParagraphAssembler assembler = new ParagraphAssembler();
+        assembler.addLine("去机场", 40, 100, 400, 130);
+        assembler.addLine("买牛奶", 40, 480, 400, 510);
+
+        // 前沿刚过第二段底部，第二段仍可能继续增长
+        List<ParagraphAssembler.Paragraph> closed = assembler.advanceFrontier(520);
+        assertEquals(1, closed.size());
+        assertEquals("去机场", closed.get(0).getText());
+
+        // 条带边界处被切开的下一行仍能并入第二段
+        assembler.addLine("和鸡蛋", 40, 516, 400, 546);
+        List<ParagraphAssembler.Paragraph> rest = assembler.flush();
+        assertEquals(1, rest.size());
+        assertEquals("买牛奶\n和鸡蛋", rest.get(0).getText());
+    }
+
+    @Test
+    public void blankLines_ignored() {
+        ParagraphAssembler assembler = new ParagraphAssembler();
+        assembler.addLine("   ", 0, 0, 10, 10);
+        assembler.addLine(null, 0, 0, 10, 10);
+        assertTrue(assembler.flush().isEmpty());
+    }
+}
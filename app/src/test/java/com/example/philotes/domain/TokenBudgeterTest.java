@@ -0,0 +1,112 @@
+package com.example.philotes.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.example.philotes.data.api.HeuristicTokenCounter;
+import com.example.philotes.data.api.TokenCounter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 验证 TokenBudgeter 的预算计算、按命中密度挑选片段与截断行为。
+ * 使用“每字符 1 token”的计数器，便于精确断言。
+ */
+public class TokenBudgeterTest {
+
+    private static final TokenCounter PER_CHAR = text -> text == null ? 0 : text.length();
+
+    private RuleEngine ruleEngine;
+
+    @Before
+    public void setUp() {
+        ruleEngine = RuleEngine.getInstance();
+        ruleEngine.resetDefaultRules();
+    }
+
+    @Test
+    public void fit_textWithinBudget_returnedUnchanged() {
+        TokenBudgeter budgeter = new TokenBudgeter(PER_CHAR, 200, 20, ruleEngine);
+        String text = "明天下午三点开会";
+        assertSame(text, budgeter.fit("prompt", text, 0));
+    }
+
+    @Test
+    public void remainingFor_subtractsPromptReserveAndTemplate() {
+        TokenBudgeter budgeter = new TokenBudgeter(PER_CHAR, 200, 20, ruleEngine);
+        int expected = 200 - 10 - 20 - TokenBudgeter.CHAT_TEMPLATE_OVERHEAD;
+        assertEquals(expected, budgeter.remainingFor("0123456789", 0));
+        // 调用方上限更小时取上限
+        assertEquals(50, budgeter.remainingFor("0123456789", 50));
+    }
+
+    @Test
+    public void unknownWindow_isUnbounded() {
+        TokenBudgeter budgeter = new TokenBudgeter(PER_CHAR, 0, 20, ruleEngine);
+        assertEquals(Integer.MAX_VALUE, budgeter.remainingFor("prompt", 0));
+        String longText = new String(new char[5000]).replace('\0', '字');
+        assertSame(longText, budgeter.fit("prompt", longText, 0));
+    }
+
+    @Test
+    public void pack_prefersHighHitSegments_andKeepsOriginalOrder() {
+        TokenBudgeter budgeter = new TokenBudgeter(PER_CHAR, 0, 0, ruleEngine);
+        List<String> segments = Arrays.asList(
+                "广告：全场五折优惠进行中",
+                "明天下午开会",
+                "推荐阅读：今日热点新闻",
+                "周五晚上聚餐");
+
+        String packed = budgeter.pack(segments, 13);
+
+        assertEquals("明天下午开会\n周五晚上聚餐", packed);
+    }
+
+    @Test
+    public void pack_everythingFits_joinsAll() {
+        TokenBudgeter budgeter = new TokenBudgeter(PER_CHAR, 0, 0, ruleEngine);
+        assertEquals("一\n二", budgeter.pack(Arrays.asList("一", "二"), 10));
+    }
+
+    @Test
+    public void pack_topSegmentOverBudget_isTruncated() {
+        TokenBudgeter budgeter = new TokenBudgeter(PER_CHAR, 0, 0, ruleEngine);
+        String packed = budgeter.pack(Arrays.asList("无关内容", "明天下午三点在会议室开会讨论预算"), 6);
+        assertEquals("明天下午三点", packed);
+    }
+
+    @Test
+    public void fit_overBudget_keepsRuleHitLines() {
+        TokenBudgeter budgeter = new TokenBudgeter(PER_CHAR, 0, 0, ruleEngine);
+        String text = "这是一段很长的无关说明文字\n后天上午面试\n另一段没有意义的填充内容";
+        assertEquals("后天上午面试", budgeter.fit("", text, 8));
+    }
+
+    @Test
+    public void splitSegments_splitsLongLinesOnSentenceEnds() {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < TokenBudgeter.MAX_SEGMENT_CHARS) {
+            sb.append("这是填充句子。");
+        }
+        List<String> segments = TokenBudgeter.splitSegments("短行\n\n" + sb);
+        assertEquals("短行", segments.get(0));
+        assertTrue(segments.size() > 2);
+        for (String segment : segments) {
+            assertTrue(segment.length() <= TokenBudgeter.MAX_SEGMENT_CHARS);
+        }
+    }
+
+    @Test
+    public void heuristicCounter_countsCjkPerCharAndLatinPerWordPiece() {
+        HeuristicTokenCounter counter = HeuristicTokenCounter.INSTANCE;
+        assertEquals(4, counter.countTokens("明天开会"));
+        assertEquals(2, counter.countTokens("meeting"));
+        assertEquals(3, counter.countTokens("3点 meet"));
+        assertEquals(0, counter.countTokens(null));
+    }
+}
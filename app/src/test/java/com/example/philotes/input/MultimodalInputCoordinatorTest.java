@@ -5,6 +5,7 @@ import com.example.philotes.data.model.ActionType;
 import com.example.philotes.data.model.OcrResult;
 import com.example.philotes.domain.ActionExecutor;
 import com.example.philotes.domain.ActionParser;
+import com.example.philotes.startup.StartupGraph;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,6 +15,11 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -271,4 +277,50 @@ public class MultimodalInputCoordinatorTest {
         assertNull("OCR为null时应返回null", result);
         verify(mockActionParser, never()).parseWithFilter(any());
     }
+
+    /**
+     * 延迟代理：解析器仍在启动图中初始化时，工作线程上的解析阻塞到其就绪后再执行
+     */
+    @Test
+    public void testDeferredParseWaitsForStartupGraph() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            StartupGraph graph = new StartupGraph(pool, Runnable::run);
+            StartupGraph.Component<ActionParser> parser = graph.add("parser", () -> {
+                release.await(5, TimeUnit.SECONDS);
+                return mockActionParser;
+            });
+            StartupGraph.Component<ActionExecutor> executor = graph.add("executor", () -> mockActionExecutor);
+            MultimodalInputCoordinator deferred = MultimodalInputCoordinator.deferred(parser, executor);
+            when(mockActionParser.parse("明天下午开会")).thenReturn(mockActionPlan);
+            graph.start();
+
+            assertTrue("初始化中应乐观地允许解析", deferred.canParse());
+            Future<ActionPlan> pending = pool.submit(() -> deferred.parseText("明天下午开会"));
+            assertFalse(pending.isDone());
+
+            release.countDown();
+            assertSame(mockActionPlan, pending.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 延迟代理：解析器初始化失败后 canParse() 为 false，解析返回 null
+     */
+    @Test
+    public void testDeferredParserFailure() throws Exception {
+        StartupGraph graph = new StartupGraph(Runnable::run, Runnable::run);
+        StartupGraph.Component<ActionParser> parser = graph.add("parser", () -> {
+            throw new IllegalStateException("LLM router unavailable");
+        });
+        StartupGraph.Component<ActionExecutor> executor = graph.add("executor", () -> mockActionExecutor);
+        MultimodalInputCoordinator deferred = MultimodalInputCoordinator.deferred(parser, executor);
+        graph.start();
+
+        assertFalse(deferred.canParse());
+        assertNull(deferred.parseText("明天下午开会"));
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.philotes.input;
+
+import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.data.model.ActionType;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 流式解析 - StreamingOcrPipeline 去重键测试
+ * 不同段落解析出的同一动作应被视为重复
+ */
+public class StreamingOcrPipelineTest {
+
+    private static ActionPlan plan(ActionType type, String title, String time) {
+        Map<String, String> slots = new HashMap<>();
+        if (title != null) slots.put("title", title);
+        if (time != null) slots.put("time", time);
+        return new ActionPlan(type, slots, "src", 0.9);
+    }
+
+    @Test
+    public void signature_ignoresPunctuationAndCase() {
+        assertEquals(
+                StreamingOcrPipeline.planKey(plan(ActionType.CREATE_CALENDAR, "项目 Review！", "2026-10-20T15:00:00")),
+                StreamingOcrPipeline.planKey(plan(ActionType.CREATE_CALENDAR, "项目review", "2026-10-20T15:00:00")));
+    }
+
+    @Test
+    public void signature_distinguishesTypeAndSlots() {
+        StreamingOcrPipeline.PlanKey calendar = StreamingOcrPipeline.planKey(plan(ActionType.CREATE_CALENDAR, "聚餐", null));
+        assertNotEquals(calendar, StreamingOcrPipeline.planKey(plan(ActionType.ADD_TODO, "聚餐", null)));
+        assertNotEquals(calendar, StreamingOcrPipeline.planKey(plan(ActionType.CREATE_CALENDAR, "开会", null)));
+    }
+
+    @Test
+    public void signature_handlesMissingSlots() {
+        ActionPlan empty = new ActionPlan();
+        empty.setType(ActionType.COPY_TEXT);
+        assertNotNull(StreamingOcrPipeline.planKey(empty));
+        ActionPlan blank = plan(ActionType.COPY_TEXT, "！", null);
+        assertEquals(StreamingOcrPipeline.planKey(empty), StreamingOcrPipeline.planKey(blank));
+    }
+
+    @Test
+    public void key_hashAgreesWithEquality() {
+        StreamingOcrPipeline.PlanKey a = StreamingOcrPipeline.planKey(
+                plan(ActionType.CREATE_CALENDAR, "Team Sync", "2026-10-20T15:00:00"));
+        StreamingOcrPipeline.PlanKey b = StreamingOcrPipeline.planKey(
+                plan(ActionType.CREATE_CALENDAR, "team-sync", "2026-10-20T15:00:00"));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, StreamingOcrPipeline.planKey(
+                plan(ActionType.CREATE_CALENDAR, "team sync", "2026-10-21T15:00:00")));
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.philotes.replay;
+
+import com.example.philotes.data.api.OpenAIService;
+import com.example.philotes.domain.RuleEngine;
+import com.example.philotes.mockllm.MockLlmServer;
+import com.example.philotes.startup.HotPathWarmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * ART baseline profile（app/src/main/baseline-prof.txt）的生成与覆盖校验。
+ *
+ * 生成：在一个只继承平台类的全新 ClassLoader 里把启动预热和回放语料各跑一遍
+ * （recorded 与 mock-http 两种后端，后者经过 OpenAIService/OkHttp），
+ * 记录链路上实际加载的应用类与 Gson/OkHttp 类。每个类输出两行：
+ * - {@code Lpkg/Cls;}：安装时预加载、预校验；
+ * - {@code HSPLpkg/Cls;->**(**)**}：全部方法标记为热/启动/启动后，安装时 AOT 编译。
+ *
+ * 新加载器保证类一定是在这次运行中首次加载，与进程冷启动后的首次捕获一致。
+ *
+ * JVM 与设备并不完全一致：OkHttp 在 JVM 上选中的 Jdk9Platform 等平台实现设备上用不到，
+ * 录制结果里剔除；设备上一定加载而 JVM 回放跑不到的类（OkHttp 的 Android 平台实现、
+ * 截图/OCR 侧的应用类）列在 {@link #DEVICE_CLASSES}，生成时合并进去。
+ */
+public final class BaselineProfile {
+
+    static final String DEFAULT_CORPUS = "replay/sample_corpus.jsonl";
+
+    private static final List<String> PACKAGES = Arrays.asList(
+            "com.example.philotes.", "com.google.gson.", "okhttp3.", "okio.");
+    private static final List<String> EXCLUDED = Arrays.asList(
+            "com.example.philotes.replay.", "com.example.philotes.mockllm.",
+            // 只在等待任务队列空闲时用到，是否加载取决于连接池的关闭时机
+            "okhttp3.internal.concurrent.TaskQueue$AwaitIdleTask",
+            // 只在 JVM 上才会被 Platform.get() 选中的实现
+            "okhttp3.internal.platform.Jdk", "okhttp3.internal.platform.OpenJSSE",
+            "okhttp3.internal.platform.BouncyCastle", "okhttp3.internal.platform.Conscrypt");
+
+    /** 设备上捕获链路会加载、JVM 回放录制不到的类；BaselineProfileTest 校验它们都存在。 */
+    static final List<String> DEVICE_CLASSES = Arrays.asList(
+            // minSdk 24：API 29+ 选 Android10Platform，更低版本选 AndroidPlatform
+            "okhttp3.internal.platform.Android10Platform",
+            "okhttp3.internal.platform.Android10Platform$Companion",
+            "okhttp3.internal.platform.AndroidPlatform",
+            "okhttp3.internal.platform.AndroidPlatform$Companion",
+            "okhttp3.internal.platform.android.Android10SocketAdapter",
+            "okhttp3.internal.platform.android.Android10SocketAdapter$Companion",
+            "okhttp3.internal.platform.android.AndroidCertificateChainCleaner",
+            "okhttp3.internal.platform.android.AndroidCertificateChainCleaner$Companion",
+            "okhttp3.internal.platform.android.AndroidLog",
+            "okhttp3.internal.platform.android.AndroidLogHandler",
+            "okhttp3.internal.platform.android.AndroidSocketAdapter",
+            "okhttp3.internal.platform.android.AndroidSocketAdapter$Companion",
+            "okhttp3.internal.platform.android.CloseGuard",
+            "okhttp3.internal.platform.android.CloseGuard$Companion",
+            "okhttp3.internal.platform.android.DeferredSocketAdapter",
+            "okhttp3.internal.platform.android.SocketAdapter",
+            "okhttp3.internal.platform.android.StandardAndroidSocketAdapter",
+            "okhttp3.internal.platform.android.StandardAndroidSocketAdapter$Companion",
+            "com.example.philotes.FloatingButtonService",
+            "com.example.philotes.domain.ParagraphAssembler",
+            "com.example.philotes.domain.ParagraphAssembler$Paragraph",
+            "com.example.philotes.input.StreamingOcrPipeline",
+            "com.example.philotes.input.StreamingOcrPipeline$Listener",
+            "com.example.philotes.utils.ContextEnricher",
+            "com.example.philotes.utils.MlKitOcrService",
+            "com.example.philotes.utils.MlKitOcrService$OcrCallback",
+            "com.example.philotes.utils.OcrOrchestrator",
+            "com.example.philotes.utils.OcrOrchestrator$DualRun",
+            "com.example.philotes.utils.OcrOrchestrator$EngineCallback",
+            "com.example.philotes.utils.OcrOrchestrator$EngineStats",
+            "com.example.philotes.utils.OcrTileCache",
+            "com.example.philotes.utils.OcrTileCache$Frame",
+            "com.example.philotes.utils.OcrTileCache$Lookup",
+            "com.example.philotes.utils.OcrTileCache$Plan",
+            "com.example.philotes.utils.OcrTileCache$Thumbnail",
+            "com.example.philotes.utils.PaddleOcrService",
+            "com.example.philotes.utils.PaddleOcrService$OcrCallback",
+            "com.example.philotes.utils.RegionOcrRunner",
+            "com.example.philotes.utils.RegionOcrRunner$Listener",
+            "com.example.philotes.utils.RegionOcrRunner$Region");
+    private static final String METHOD_WILDCARD = "->**(**)**";
+
+    private final Set<String> classRules = new LinkedHashSet<>();
+    private final Set<String> wildcardClasses = new LinkedHashSet<>();
+
+    private BaselineProfile() {
+    }
+
+    /** 用法：BaselineProfile &lt;out baseline-prof.txt&gt; [corpus.jsonl...]，不给语料时用内置样例。 */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: BaselineProfile <out baseline-prof.txt> [corpus.jsonl...]");
+            System.exit(2);
+        }
+        String[] corpora = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : new String[] {DEFAULT_CORPUS};
+        List<String> classes = new ArrayList<>(recordHotClasses(corpora));
+        classes.addAll(DEVICE_CLASSES);
+        File out = new File(args[0]);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8)) {
+            writer.write(format(classes, String.join(", ", corpora)));
+        }
+        System.out.println("Wrote " + classes.size() + " classes to " + out.getPath());
+    }
+
+    /** 解析 HRF 格式的 profile，只关心类规则和整类通配方法规则。 */
+    public static BaselineProfile parse(Reader reader) throws IOException {
+        BaselineProfile profile = new BaselineProfile();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("L")) {
+                profile.classRules.add(line);
+                continue;
+            }
+            int descriptor = line.indexOf('L');
+            if (descriptor > 0 && line.endsWith(METHOD_WILDCARD)) {
+                profile.wildcardClasses.add(line.substring(descriptor, line.length() - METHOD_WILDCARD.length()));
+            }
+        }
+        return profile;
+    }
+
+    /** 类会被预加载且其全部方法会被 AOT 编译。 */
+    public boolean covers(String className) {
+        String descriptor = descriptor(className);
+        return classRules.contains(descriptor) && wildcardClasses.contains(descriptor);
+    }
+
+    public int size() {
+        return classRules.size();
+    }
+
+    /** 输出 profile 文本，类按字母序排列以保证重新生成时 diff 稳定。 */
+    public static String format(Collection<String> classNames, String source) {
+        StringBuilder out = new StringBuilder();
+        out.append("# Baseline profile for the capture hot path: RuleEngine -> PrivacyFirewall -> OcrResult\n");
+        out.append("# -> ActionParser, plus Gson and OkHttp. Generated from ").append(source).append('\n');
+        out.append("# plus BaselineProfile.DEVICE_CLASSES (Android-only OkHttp platform and capture/OCR classes)\n");
+        out.append("# by ./gradlew :benchmark:baselineProfile -- regenerate instead of editing by hand.\n");
+        for (String className : new TreeSet<>(classNames)) {
+            String descriptor = descriptor(className);
+            out.append(descriptor).append('\n');
+            out.append("HSP").append(descriptor).append(METHOD_WILDCARD).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * 在隔离的 ClassLoader 中跑一遍热路径，返回按首次加载顺序排列的相关类名。
+     *
+     * @param corpora 语料文件路径或 classpath 资源名
+     */
+    public static List<String> recordHotClasses(String... corpora) throws Exception {
+        RecordingClassLoader loader = new RecordingClassLoader(classpathUrls());
+        try {
+            Class<?> driver = Class.forName(Driver.class.getName(), true, loader);
+            Method drive = driver.getMethod("drive", String[].class);
+            try {
+                drive.invoke(null, (Object) corpora);
+            } catch (InvocationTargetException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            return loader.recorded();
+        } finally {
+            loader.close();
+        }
+    }
+
+    static String descriptor(String className) {
+        return "L" + className.replace('.', '/') + ";";
+    }
+
+    private static boolean isRelevant(String className) {
+        for (String excluded : EXCLUDED) {
+            if (className.startsWith(excluded)) {
+                return false;
+            }
+        }
+        if (className.startsWith("com.example.philotes.") && className.endsWith("Test")) {
+            return false;
+        }
+        for (String prefix : PACKAGES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static URL[] classpathUrls() throws MalformedURLException {
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        List<URL> urls = new ArrayList<>(entries.length);
+        for (String entry : entries) {
+            if (!entry.isEmpty()) {
+                urls.add(new File(entry).toURI().toURL());
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /** 只委托平台类加载器，其余类全部由自己重新定义并记录。 */
+    private static final class RecordingClassLoader extends URLClassLoader {
+        private final Set<String> loaded = Collections.synchronizedSet(new LinkedHashSet<>());
+
+        RecordingClassLoader(URL[] urls) {
+            super(urls, ClassLoader.getPlatformClassLoader());
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            Class<?> found = super.findClass(name);
+            if (isRelevant(name)) {
+                loaded.add(name);
+            }
+            return found;
+        }
+
+        List<String> recorded() {
+            synchronized (loaded) {
+                return new ArrayList<>(loaded);
+            }
+        }
+    }
+
+    /** 在隔离加载器内执行；与 AiStartup 的预热和 FloatingButtonService 的捕获链路相同。 */
+    public static final class Driver {
+        private Driver() {
+        }
+
+        public static void drive(String[] corpora) throws Exception {
+            RuleEngine.getInstance().resetDefaultRules();
+            HotPathWarmup.run(RuleEngine.getInstance());
+            for (String path : corpora) {
+                File file = new File(path);
+                ReplayCorpus corpus = file.isFile() ? ReplayCorpus.fromFile(file) : ReplayCorpus.fromResource(path);
+                RecordedLlmService recorded = RecordedLlmService.from(corpus);
+                new ReplayRunner("recorded", recorded).run(corpus);
+                try (MockLlmServer server = MockLlmServer.start().responder(recorded::chatCompletion)) {
+                    OpenAIService service = new OpenAIService("profile", server.baseUrl(), "mock");
+                    new ReplayRunner("mock-http", service).run(corpus);
+                }
+            }
+        }
+    }
+}
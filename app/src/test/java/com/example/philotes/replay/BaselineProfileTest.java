@@ -0,0 +1,142 @@
+package com.example.philotes.replay;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 校验 app/src/main/baseline-prof.txt 覆盖当前热路径：链路代码改动后若加载了新类而 profile
+ * 没有重新生成，这里会列出缺失的类。
+ */
+public class BaselineProfileTest {
+
+    private static final List<String> HOT_CLASSES = Arrays.asList(
+            "com.example.philotes.domain.RuleEngine",
+            "com.example.philotes.domain.PrivacyFirewall",
+            "com.example.philotes.domain.ActionParser",
+            "com.example.philotes.domain.TokenBudgeter",
+            "com.example.philotes.data.model.OcrResult",
+            "com.example.philotes.data.model.ActionPlan",
+            "com.example.philotes.data.api.OpenAIService",
+            "com.google.gson.Gson",
+            "okhttp3.OkHttpClient");
+
+    private static List<String> recorded;
+    private static BaselineProfile checkedIn;
+
+    @BeforeClass
+    public static void record() throws Exception {
+        recorded = BaselineProfile.recordHotClasses(BaselineProfile.DEFAULT_CORPUS);
+        File file = profileFile();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            checkedIn = BaselineProfile.parse(reader);
+        }
+    }
+
+    @Test
+    public void recorderSeesTheWholeCapturePath() {
+        for (String hot : HOT_CLASSES) {
+            assertTrue(hot + " not loaded on the replay path", recorded.contains(hot));
+        }
+        for (String name : recorded) {
+            assertTrue(name, !name.startsWith("com.example.philotes.replay."));
+        }
+    }
+
+    @Test
+    public void checkedInProfileCoversEveryHotClass() {
+        List<String> missing = new ArrayList<>();
+        for (String name : recorded) {
+            if (!checkedIn.covers(name)) {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            fail("baseline-prof.txt is stale, run ./gradlew :benchmark:baselineProfile. Missing: " + missing);
+        }
+    }
+
+    @Test
+    public void profileTargetsDeviceClassesOnly() throws Exception {
+        for (String name : recorded) {
+            assertTrue(name, !name.startsWith("okhttp3.internal.platform.Jdk"));
+        }
+        List<String> missing = new ArrayList<>();
+        for (String name : BaselineProfile.DEVICE_CLASSES) {
+            assertTrue(name, deviceClassExists(name));
+            if (!checkedIn.covers(name)) {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            fail("baseline-prof.txt is stale, run ./gradlew :benchmark:baselineProfile. Missing: " + missing);
+        }
+    }
+
+    @Test
+    public void formatRoundTrips() throws Exception {
+        String text = BaselineProfile.format(Arrays.asList("com.example.philotes.domain.RuleEngine",
+                "com.example.philotes.domain.ActionParser$1"), "test");
+        BaselineProfile profile = BaselineProfile.parse(new StringReader(text));
+
+        assertTrue(text, text.contains("HSPLcom/example/philotes/domain/ActionParser$1;->**(**)**"));
+        assertTrue(profile.covers("com.example.philotes.domain.RuleEngine"));
+        assertTrue(profile.covers("com.example.philotes.domain.ActionParser$1"));
+        assertTrue(!profile.covers("com.example.philotes.domain.PrivacyFirewall"));
+    }
+
+    /** 应用类按源码判断（部分依赖 Android 运行时，单测里不一定能加载），第三方类直接查 classpath。 */
+    private static boolean deviceClassExists(String name) throws Exception {
+        if (!name.startsWith("com.example.philotes.")) {
+            try {
+                Class.forName(name, false, BaselineProfileTest.class.getClassLoader());
+                return true;
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+        String[] parts = name.split("\\$");
+        String path = "java/" + parts[0].replace('.', '/') + ".java";
+        File source = null;
+        for (String root : new String[] {"src/main/", "app/src/main/"}) {
+            File candidate = new File(root + path);
+            if (candidate.isFile()) {
+                source = candidate;
+            }
+        }
+        if (source == null) {
+            return false;
+        }
+        String text = new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8);
+        for (int i = 1; i < parts.length; i++) {
+            if (!text.contains("class " + parts[i] + " ") && !text.contains("interface " + parts[i] + " ")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static File profileFile() {
+        // Gradle 单测的工作目录是模块目录，直接用 javac/JUnit 跑时通常是仓库根目录
+        for (String candidate : new String[] {"src/main/baseline-prof.txt", "app/src/main/baseline-prof.txt"}) {
+            File file = new File(candidate);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        throw new AssertionError("baseline-prof.txt not found from " + new File("").getAbsolutePath());
+    }
+}
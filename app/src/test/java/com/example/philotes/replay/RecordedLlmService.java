@@ -0,0 +1,100 @@
+package com.example.philotes.replay;
+
+import com.example.philotes.data.api.ILlmService;
+import com.example.philotes.data.model.OcrResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按 user message 回放录制响应的假 LLM，确定性、零延迟，适合衡量解析管线自身的开销。
+ *
+ * 录制以解析器实际发给模型的文本为键（忽略空白）：screen 条目是原文，
+ * ocr 条目是阅读顺序下长度 ≥ 2 的文本块。精确匹配不到时取被输入包含（或包含输入）的最长键，
+ * 兜住预算裁剪；仍找不到时返回 "[]" 并计一次 miss。
+ */
+public final class RecordedLlmService implements ILlmService {
+    static final String MISS_RESPONSE = "[]";
+
+    private final Map<String, String> recordings = new LinkedHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public static RecordedLlmService from(ReplayCorpus corpus) {
+        RecordedLlmService service = new RecordedLlmService();
+        for (ReplayEntry entry : corpus.getEntries()) {
+            if (entry.response != null) {
+                service.put(llmInputOf(entry), entry.response);
+            }
+        }
+        return service;
+    }
+
+    public synchronized void put(String userMessage, String response) {
+        recordings.put(normalize(userMessage), response);
+    }
+
+    @Override
+    public String chatCompletion(String systemPrompt, String userMessage) {
+        String response = lookup(userMessage);
+        if (response == null) {
+            misses.incrementAndGet();
+            return MISS_RESPONSE;
+        }
+        hits.incrementAndGet();
+        return response;
+    }
+
+    synchronized String lookup(String userMessage) {
+        String key = normalize(userMessage);
+        String exact = recordings.get(key);
+        if (exact != null) {
+            return exact;
+        }
+        String best = null;
+        int bestLength = 0;
+        for (Map.Entry<String, String> recording : recordings.entrySet()) {
+            String candidate = recording.getKey();
+            if (candidate.length() > bestLength && (key.contains(candidate) || candidate.contains(key))) {
+                best = recording.getValue();
+                bestLength = candidate.length();
+            }
+        }
+        return best;
+    }
+
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    static String llmInputOf(ReplayEntry entry) {
+        if (!entry.isOcr()) {
+            return entry.text == null ? "" : entry.text;
+        }
+        // 与 ActionParser.parseMultipleWithFilter 一致：布局说明行 + 逐块紧凑行
+        StringBuilder sb = new StringBuilder(OcrResult.COMPACT_LAYOUT_HEADER).append('\n');
+        for (String line : entry.toOcrResult().toCompactLines(2)) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
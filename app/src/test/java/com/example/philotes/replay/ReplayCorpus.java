@@ -0,0 +1,94 @@
+package com.example.philotes.replay;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JSONL 回放语料：每行一个 {@link ReplayEntry}，空行和 # 开头的注释行忽略。
+ */
+public final class ReplayCorpus {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final String name;
+    private final List<ReplayEntry> entries;
+
+    private ReplayCorpus(String name, List<ReplayEntry> entries) {
+        this.name = name;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public static ReplayCorpus load(String name, Reader reader) throws IOException {
+        List<ReplayEntry> entries = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNo = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNo++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            ReplayEntry entry;
+            try {
+                entry = GSON.fromJson(trimmed, ReplayEntry.class);
+            } catch (RuntimeException e) {
+                throw new IOException(name + ":" + lineNo + ": invalid entry", e);
+            }
+            if (entry.id == null) {
+                entry.id = name + "#" + lineNo;
+            }
+            entries.add(entry);
+        }
+        return new ReplayCorpus(name, entries);
+    }
+
+    public static ReplayCorpus fromFile(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return load(file.getName(), reader);
+        }
+    }
+
+    /** 从测试 classpath 读取，如 "replay/sample_corpus.jsonl"。 */
+    public static ReplayCorpus fromResource(String path) throws IOException {
+        InputStream in = ReplayCorpus.class.getClassLoader().getResourceAsStream(path);
+        if (in == null) {
+            throw new IOException("Corpus resource not found: " + path);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return load(path, reader);
+        }
+    }
+
+    /** 写回 JSONL，录制模式用来保存新抓到的 response。 */
+    public void write(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (ReplayEntry entry : entries) {
+                writer.write(GSON.toJson(entry));
+                writer.write('\n');
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<ReplayEntry> getEntries() {
+        return entries;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.philotes.replay;
+
+import android.graphics.Rect;
+
+import com.example.philotes.data.model.OcrResult;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 回放语料的一条记录（JSONL 一行）。两种来源：
+ * - screen：extractVisibleTextBfs 抓到的无障碍文本，走 RuleEngine 门控；
+ * - ocr：OcrResult 导出，手动截屏路径，不经规则门控。
+ *
+ * response 是录制的 LLM 原始输出，expected 是人工标注的期望动作。
+ */
+public final class ReplayEntry {
+    public static final String SOURCE_SCREEN = "screen";
+    public static final String SOURCE_OCR = "ocr";
+
+    String id;
+    String source;
+    String packageName;
+    String text;
+    OcrDump ocr;
+    String response;
+    List<ExpectedPlan> expected;
+
+    /** OcrResult 导出格式：box 为 [left, top, right, bottom]。 */
+    static final class OcrDump {
+        int width;
+        int height;
+        List<Block> blocks;
+
+        static final class Block {
+            String text;
+            int[] box;
+            float confidence;
+        }
+    }
+
+    static final class ExpectedPlan {
+        String type;
+        Map<String, String> slots;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isOcr() {
+        return SOURCE_OCR.equals(source);
+    }
+
+    /** 喂给 RuleEngine / PrivacyFirewall 的文本：screen 为原文，ocr 为阅读顺序纯文本。 */
+    public String screenText() {
+        if (!isOcr()) {
+            return text == null ? "" : text;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (OcrResult.TextBlock block : toOcrResult().getBlocksInReadingOrder()) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(block.text);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 重建 OcrResult。直接写 Rect 的字段而不用四参构造：JVM 单测里 android.jar 的
+     * 构造函数是空实现，字段写入才是真实的。
+     */
+    public OcrResult toOcrResult() {
+        OcrResult result = new OcrResult(ocr == null ? 0 : ocr.width, ocr == null ? 0 : ocr.height);
+        if (ocr == null || ocr.blocks == null) {
+            return result;
+        }
+        for (OcrDump.Block block : ocr.blocks) {
+            Rect rect = new Rect();
+            if (block.box != null && block.box.length == 4) {
+                rect.left = block.box[0];
+                rect.top = block.box[1];
+                rect.right = block.box[2];
+                rect.bottom = block.box[3];
+            }
+            result.addTextBlock(block.text, rect, block.confidence);
+        }
+        return result;
+    }
+
+    List<ExpectedPlan> expectedPlans() {
+        return expected == null ? Collections.emptyList() : expected;
+    }
+}
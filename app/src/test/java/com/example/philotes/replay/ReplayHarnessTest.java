@@ -0,0 +1,68 @@
+package com.example.philotes.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.philotes.data.api.OpenAIService;
+import com.example.philotes.domain.RuleEngine;
+import com.example.philotes.mockllm.MockLlmServer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplayHarnessTest {
+
+    private ReplayCorpus corpus;
+
+    @Before
+    public void setUp() throws Exception {
+        RuleEngine.getInstance().resetDefaultRules();
+        corpus = ReplayCorpus.fromResource("replay/sample_corpus.jsonl");
+    }
+
+    @Test
+    public void recordedBackendReproducesExpectedPlans() throws Exception {
+        RecordedLlmService recorded = RecordedLlmService.from(corpus);
+        ReplayReport report = new ReplayRunner("recorded", recorded).repeat(3).threads(2).run(corpus);
+
+        assertEquals(report.format(), corpus.getEntries().size(), report.countExact());
+        assertEquals(1.0, report.recall(), 0.0);
+        assertEquals(1.0, report.precision(), 0.0);
+        assertEquals(0, recorded.getMissCount());
+        assertEquals(1, report.countOutcome(ReplayRunner.Outcome.SUPPRESSED));
+        assertEquals(1, report.countPrivacyForcedLocal());
+        assertEquals(3 * corpus.getEntries().size(), report.getRuns());
+    }
+
+    @Test
+    public void mockHttpBackendMatchesRecordedBackend() throws Exception {
+        RecordedLlmService recorded = RecordedLlmService.from(corpus);
+        try (MockLlmServer server = MockLlmServer.start().responder(recorded::chatCompletion)) {
+            OpenAIService service = new OpenAIService("test-key", server.baseUrl(), "mock");
+
+            ReplayReport report = new ReplayRunner("mock-http", service).run(corpus);
+
+            assertEquals(report.format(), corpus.getEntries().size(), report.countExact());
+            assertEquals(0, recorded.getMissCount());
+            assertEquals(0, report.countOutcome(ReplayRunner.Outcome.ERROR));
+            assertTrue(server.requestCount() > 0);
+        }
+    }
+
+    @Test
+    public void wrongResponseShowsUpAsPlanDiff() throws Exception {
+        RecordedLlmService recorded = RecordedLlmService.from(corpus);
+        recorded.put(RecordedLlmService.llmInputOf(corpus.getEntries().get(0)),
+                "[{\"type\":\"CREATE_CALENDAR\",\"slots\":{\"title\":\"讨论二期排期\",\"location\":\"B座\"}},"
+                        + "{\"type\":\"COPY_TEXT\",\"slots\":{\"text\":\"收到\"}}]");
+
+        ReplayReport report = new ReplayRunner("recorded", recorded).run(corpus);
+
+        ReplayReport.EntryResult first = report.getResults().get(0);
+        assertEquals(0, first.getMatched());
+        assertEquals(first.getDiffs().toString(), 2, first.getDiffs().size());
+        assertTrue(first.getDiffs().get(0).startsWith("mismatch CREATE_CALENDAR"));
+        assertTrue(first.getDiffs().get(1).startsWith("extra COPY_TEXT"));
+        assertEquals(corpus.getEntries().size() - 1, report.countExact());
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.philotes.replay;
+
+import com.example.philotes.data.api.ILlmService;
+import com.example.philotes.data.api.OpenAIService;
+import com.example.philotes.mockllm.MockLlmServer;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 回放命令行：./gradlew :benchmark:replay -PreplayArgs="corpus.jsonl --backend mock-http --repeat 20"
+ *
+ * 参数：
+ * - 语料文件（可多个）；
+ * - --backend recorded | mock-http | openai，默认 recorded；
+ *   openai 走真实接口，读取 -Dreplay.baseUrl / -Dreplay.apiKey / -Dreplay.model；
+ * - --repeat N、--threads N：每条重复次数与并发线程数；
+ * - --json out.json：把报告写成 JSON；
+ * - --record out.jsonl：把本次模型原始输出写回语料（只支持单个语料），用于刷新录制。
+ */
+public final class ReplayMain {
+
+    private ReplayMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> corpora = new ArrayList<>();
+        String backend = "recorded";
+        int repeat = 1;
+        int threads = 1;
+        String jsonOut = null;
+        String recordOut = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--backend":
+                    backend = value(args, ++i);
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--json":
+                    jsonOut = value(args, ++i);
+                    break;
+                case "--record":
+                    recordOut = value(args, ++i);
+                    break;
+                default:
+                    corpora.add(args[i]);
+            }
+        }
+        if (corpora.isEmpty()) {
+            System.err.println("usage: ReplayMain <corpus.jsonl>... [--backend recorded|mock-http|openai]"
+                    + " [--repeat N] [--threads N] [--json out.json] [--record out.jsonl]");
+            System.exit(2);
+        }
+        if (recordOut != null && corpora.size() > 1) {
+            throw new IllegalArgumentException("--record only supports a single corpus");
+        }
+
+        JsonArray reports = new JsonArray();
+        for (String path : corpora) {
+            ReplayCorpus corpus = ReplayCorpus.fromFile(new File(path));
+            ReplayReport report = run(corpus, backend, repeat, threads);
+            System.out.print(report.format());
+            reports.add(report.toJson());
+            if (recordOut != null) {
+                record(corpus, report, new File(recordOut));
+            }
+        }
+        if (jsonOut != null) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(jsonOut), StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(reports, writer);
+            }
+        }
+    }
+
+    static ReplayReport run(ReplayCorpus corpus, String backend, int repeat, int threads)
+            throws IOException, InterruptedException {
+        switch (backend) {
+            case "recorded":
+                return new ReplayRunner(backend, RecordedLlmService.from(corpus))
+                        .repeat(repeat).threads(threads).run(corpus);
+            case "mock-http":
+                try (MockLlmServer server = MockLlmServer.start()
+                        .responder(RecordedLlmService.from(corpus)::chatCompletion)) {
+                    ILlmService service = new OpenAIService("test-key", server.baseUrl(), "mock");
+                    return new ReplayRunner(backend, service).repeat(repeat).threads(threads).run(corpus);
+                }
+            case "openai":
+                ILlmService service = new OpenAIService(
+                        System.getProperty("replay.apiKey", ""),
+                        System.getProperty("replay.baseUrl", "https://api.openai.com/v1"),
+                        System.getProperty("replay.model", "gpt-3.5-turbo"));
+                return new ReplayRunner(backend, service).repeat(repeat).threads(threads).run(corpus);
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+    }
+
+    /** 用本次第一轮的原始输出覆盖语料中的 response，被门控拦下的条目保持不变。 */
+    private static void record(ReplayCorpus corpus, ReplayReport report, File out) throws IOException {
+        for (ReplayReport.EntryResult result : report.getResults()) {
+            if (result.rawResponse != null) {
+                result.entry.response = result.rawResponse;
+            }
+        }
+        corpus.write(out);
+        System.out.println("recorded " + corpus.getEntries().size() + " entries to " + out.getPath());
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.philotes.replay;
+
+import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.domain.PrivacyFirewall;
+import com.example.philotes.utils.LatencyHistogram;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一次回放的结果：整体吞吐与延迟分布，以及每条语料的延迟和计划差异（期望 vs 实际）。
+ *
+ * 计划比对：同类型且期望里列出的每个槽位值（去首尾空白）都相等才算命中；
+ * 同类型但槽位不同记为 mismatch，其余分别记 missing / extra。
+ */
+public final class ReplayReport {
+
+    /** 单条语料的汇总。 */
+    public static final class EntryResult {
+        final ReplayEntry entry;
+        final ReplayRunner.Outcome outcome;
+        final PrivacyFirewall.PrivacyLevel privacy;
+        final List<ActionPlan> plans;
+        final String rawResponse;
+        final String error;
+        final LatencyHistogram latency = new LatencyHistogram();
+        int matched;
+        final List<String> diffs = new ArrayList<>();
+
+        EntryResult(ReplayRunner.Run first) {
+            this.entry = first.entry;
+            this.outcome = first.outcome;
+            this.privacy = first.privacy;
+            this.plans = first.plans;
+            this.rawResponse = first.rawResponse;
+            this.error = first.error;
+        }
+
+        public boolean isExact() {
+            return outcome != ReplayRunner.Outcome.ERROR && diffs.isEmpty();
+        }
+
+        public int getMatched() {
+            return matched;
+        }
+
+        public List<String> getDiffs() {
+            return diffs;
+        }
+
+        public ReplayRunner.Outcome getOutcome() {
+            return outcome;
+        }
+
+        public PrivacyFirewall.PrivacyLevel getPrivacy() {
+            return privacy;
+        }
+    }
+
+    private final String corpusName;
+    private final String backendName;
+    private final long wallNs;
+    private final List<EntryResult> results = new ArrayList<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private int runs;
+
+    ReplayReport(String corpusName, String backendName, long wallNs, Map<ReplayEntry, List<ReplayRunner.Run>> runsByEntry) {
+        this.corpusName = corpusName;
+        this.backendName = backendName;
+        this.wallNs = wallNs;
+        for (List<ReplayRunner.Run> entryRuns : runsByEntry.values()) {
+            if (entryRuns.isEmpty()) {
+                continue;
+            }
+            entryRuns.sort((a, b) -> Integer.compare(a.iteration, b.iteration));
+            EntryResult result = new EntryResult(entryRuns.get(0));
+            for (ReplayRunner.Run run : entryRuns) {
+                result.latency.recordNanos(run.latencyNs);
+                latency.recordNanos(run.latencyNs);
+                runs++;
+            }
+            diff(result);
+            results.add(result);
+        }
+    }
+
+    private static void diff(EntryResult result) {
+        if (result.error != null) {
+            result.diffs.add("error: " + result.error);
+        }
+        List<ActionPlan> remaining = new ArrayList<>(result.plans);
+        for (ReplayEntry.ExpectedPlan expected : result.entry.expectedPlans()) {
+            ActionPlan exact = null;
+            ActionPlan sameType = null;
+            for (ActionPlan plan : remaining) {
+                if (plan.getType() == null || !plan.getType().name().equals(expected.type)) {
+                    continue;
+                }
+                if (slotMismatches(expected, plan).isEmpty()) {
+                    exact = plan;
+                    break;
+                }
+                if (sameType == null) {
+                    sameType = plan;
+                }
+            }
+            if (exact != null) {
+                remaining.remove(exact);
+                result.matched++;
+            } else if (sameType != null) {
+                remaining.remove(sameType);
+                result.diffs.add("mismatch " + expected.type + ": " + String.join(", ", slotMismatches(expected, sameType)));
+            } else {
+                result.diffs.add("missing " + expected.type + " " + sorted(expected.slots));
+            }
+        }
+        for (ActionPlan extra : remaining) {
+            result.diffs.add("extra " + extra.getType() + " " + sorted(extra.getSlots()));
+        }
+    }
+
+    private static List<String> slotMismatches(ReplayEntry.ExpectedPlan expected, ActionPlan plan) {
+        if (expected.slots == null) {
+            return Collections.emptyList();
+        }
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, String> slot : new TreeMap<>(expected.slots).entrySet()) {
+            String actual = plan.getSlots() == null ? null : plan.getSlots().get(slot.getKey());
+            String want = slot.getValue() == null ? "" : slot.getValue().trim();
+            String got = actual == null ? "" : actual.trim();
+            if (!want.equals(got)) {
+                mismatches.add(slot.getKey() + " expected \"" + want + "\" got \"" + got + "\"");
+            }
+        }
+        return mismatches;
+    }
+
+    private static Map<String, String> sorted(Map<String, String> slots) {
+        return slots == null ? Collections.emptyMap() : new TreeMap<>(slots);
+    }
+
+    public List<EntryResult> getResults() {
+        return results;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public double throughputPerSecond() {
+        return wallNs <= 0 ? 0 : runs * 1e9 / wallNs;
+    }
+
+    public int countOutcome(ReplayRunner.Outcome outcome) {
+        int count = 0;
+        for (EntryResult result : results) {
+            if (result.outcome == outcome) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int countPrivacyForcedLocal() {
+        int count = 0;
+        for (EntryResult result : results) {
+            if (result.outcome != ReplayRunner.Outcome.SUPPRESSED
+                    && result.privacy == PrivacyFirewall.PrivacyLevel.SENSITIVE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int countExact() {
+        int count = 0;
+        for (EntryResult result : results) {
+            if (result.isExact()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** 期望计划中被命中的比例；没有期望计划时为 1。 */
+    public double recall() {
+        int expected = 0;
+        int matched = 0;
+        for (EntryResult result : results) {
+            expected += result.entry.expectedPlans().size();
+            matched += result.matched;
+        }
+        return expected == 0 ? 1 : (double) matched / expected;
+    }
+
+    /** 实际产出计划中与期望一致的比例；没有产出时为 1。 */
+    public double precision() {
+        int produced = 0;
+        int matched = 0;
+        for (EntryResult result : results) {
+            produced += result.plans.size();
+            matched += result.matched;
+        }
+        return produced == 0 ? 1 : (double) matched / produced;
+    }
+
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "== replay %s via %s: %d entries, %d runs, %.1f runs/s%n",
+                corpusName, backendName, results.size(), runs, throughputPerSecond()));
+        out.append(String.format(Locale.US, "latency p50 %.2fms  p90 %.2fms  p99 %.2fms  max %.2fms%n",
+                latency.percentileMicros(50) / 1000.0, latency.percentileMicros(90) / 1000.0,
+                latency.percentileMicros(99) / 1000.0, latency.getMaxMicros() / 1000.0));
+        out.append(String.format(Locale.US,
+                "exact %d/%d  recall %.3f  precision %.3f  suppressed %d  privacy-local %d  errors %d%n",
+                countExact(), results.size(), recall(), precision(),
+                countOutcome(ReplayRunner.Outcome.SUPPRESSED), countPrivacyForcedLocal(),
+                countOutcome(ReplayRunner.Outcome.ERROR)));
+        for (EntryResult result : results) {
+            out.append(String.format(Locale.US, "%-4s %-24s %-10s p50 %8.2fms p99 %8.2fms  %d/%d plans%n",
+                    result.isExact() ? "ok" : "DIFF", result.entry.getId(), result.outcome,
+                    result.latency.percentileMicros(50) / 1000.0, result.latency.percentileMicros(99) / 1000.0,
+                    result.matched, result.entry.expectedPlans().size()));
+            for (String diff : result.diffs) {
+                out.append("       ").append(diff).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    public JsonObject toJson() {
+        JsonObject root = new JsonObject();
+        root.addProperty("corpus", corpusName);
+        root.addProperty("backend", backendName);
+        root.addProperty("runs", runs);
+        root.addProperty("throughput_per_s", throughputPerSecond());
+        root.add("latency_ms", latencyJson(latency));
+        root.addProperty("exact", countExact());
+        root.addProperty("recall", recall());
+        root.addProperty("precision", precision());
+        root.addProperty("suppressed", countOutcome(ReplayRunner.Outcome.SUPPRESSED));
+        root.addProperty("privacy_forced_local", countPrivacyForcedLocal());
+        JsonArray entries = new JsonArray();
+        for (EntryResult result : results) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", result.entry.getId());
+            item.addProperty("outcome", result.outcome.name());
+            item.addProperty("privacy", result.privacy.name());
+            item.addProperty("matched", result.matched);
+            item.addProperty("expected", result.entry.expectedPlans().size());
+            item.addProperty("actual", result.plans.size());
+            item.add("latency_ms", latencyJson(result.latency));
+            JsonArray diffs = new JsonArray();
+            for (String diff : result.diffs) {
+                diffs.add(diff);
+            }
+            item.add("diffs", diffs);
+            entries.add(item);
+        }
+        root.add("entries", entries);
+        return root;
+    }
+
+    private static JsonObject latencyJson(LatencyHistogram histogram) {
+        JsonObject json = new JsonObject();
+        json.addProperty("p50", histogram.percentileMicros(50) / 1000.0);
+        json.addProperty("p90", histogram.percentileMicros(90) / 1000.0);
+        json.addProperty("p99", histogram.percentileMicros(99) / 1000.0);
+        json.addProperty("max", histogram.getMaxMicros() / 1000.0);
+        return json;
+    }
+}
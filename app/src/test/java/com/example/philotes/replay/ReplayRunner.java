@@ -0,0 +1,196 @@
+package com.example.philotes.replay;
+
+import com.example.philotes.data.api.ILlmService;
+import com.example.philotes.data.api.TokenCounter;
+import com.example.philotes.data.model.ActionPlan;
+import com.example.philotes.domain.ActionParser;
+import com.example.philotes.domain.PrivacyFirewall;
+import com.example.philotes.domain.RuleEngine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 把语料逐条送进与 FloatingButtonService 相同的链路：RuleEngine → PrivacyFirewall → ActionParser。
+ *
+ * - screen 条目先过规则门控，未命中即记为 SUPPRESSED，不调用模型；
+ * - ocr 条目对应手动截屏，不门控，命中的关键词只作为提示词；
+ * - PrivacyFirewall 判定 SENSITIVE 时改用 localBackend（对应线上强制本地推理）。
+ *
+ * 每条语料可重复 repeat 次、由 threads 个线程并发执行，用于量吞吐和延迟分布；
+ * 计划比对只用每条的第一次结果。
+ */
+public final class ReplayRunner {
+
+    public enum Outcome {
+        SUPPRESSED,
+        PARSED,
+        ERROR
+    }
+
+    /** 单次执行结果。 */
+    static final class Run {
+        final ReplayEntry entry;
+        final int iteration;
+        final Outcome outcome;
+        final PrivacyFirewall.PrivacyLevel privacy;
+        final List<ActionPlan> plans;
+        final String rawResponse;
+        final long latencyNs;
+        final String error;
+
+        Run(ReplayEntry entry, int iteration, Outcome outcome, PrivacyFirewall.PrivacyLevel privacy,
+                List<ActionPlan> plans, String rawResponse, long latencyNs, String error) {
+            this.entry = entry;
+            this.iteration = iteration;
+            this.outcome = outcome;
+            this.privacy = privacy;
+            this.plans = plans;
+            this.rawResponse = rawResponse;
+            this.latencyNs = latencyNs;
+            this.error = error;
+        }
+    }
+
+    private final String backendName;
+    private final CapturingLlmService backend;
+    private final CapturingLlmService localBackend;
+    private final RuleEngine ruleEngine;
+    private int repeat = 1;
+    private int threads = 1;
+
+    public ReplayRunner(String backendName, ILlmService backend) {
+        this(backendName, backend, backend);
+    }
+
+    public ReplayRunner(String backendName, ILlmService backend, ILlmService localBackend) {
+        this.backendName = backendName;
+        this.backend = new CapturingLlmService(backend);
+        this.localBackend = localBackend == backend ? this.backend : new CapturingLlmService(localBackend);
+        this.ruleEngine = RuleEngine.getInstance();
+    }
+
+    public ReplayRunner repeat(int repeat) {
+        this.repeat = Math.max(1, repeat);
+        return this;
+    }
+
+    public ReplayRunner threads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    public ReplayReport run(ReplayCorpus corpus) throws InterruptedException {
+        ActionParser parser = new ActionParser(backend);
+        ActionParser localParser = localBackend == backend ? parser : new ActionParser(localBackend);
+
+        // 预热一遍，避免类加载和 JIT 计入延迟
+        for (ReplayEntry entry : corpus.getEntries()) {
+            runOnce(entry, -1, parser, localParser);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Run>> futures = new ArrayList<>();
+        long startNs = System.nanoTime();
+        try {
+            for (int i = 0; i < repeat; i++) {
+                final int iteration = i;
+                for (ReplayEntry entry : corpus.getEntries()) {
+                    futures.add(pool.submit(() -> runOnce(entry, iteration, parser, localParser)));
+                }
+            }
+            Map<ReplayEntry, List<Run>> runs = new LinkedHashMap<>();
+            for (ReplayEntry entry : corpus.getEntries()) {
+                runs.put(entry, new ArrayList<>());
+            }
+            for (Future<Run> future : futures) {
+                Run run = future.get();
+                runs.get(run.entry).add(run);
+            }
+            long wallNs = System.nanoTime() - startNs;
+            return new ReplayReport(corpus.getName(), backendName, wallNs, runs);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay task failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Run runOnce(ReplayEntry entry, int iteration, ActionParser parser, ActionParser localParser) {
+        long startNs = System.nanoTime();
+        String screenText = entry.screenText();
+        String keyword = ruleEngine.findFirstMatchedKeyword(screenText);
+        PrivacyFirewall.PrivacyLevel privacy = PrivacyFirewall.check(entry.packageName, screenText);
+        if (!entry.isOcr() && keyword == null) {
+            return new Run(entry, iteration, Outcome.SUPPRESSED, privacy, Collections.emptyList(), null,
+                    System.nanoTime() - startNs, null);
+        }
+
+        boolean local = privacy == PrivacyFirewall.PrivacyLevel.SENSITIVE;
+        ActionParser target = local ? localParser : parser;
+        CapturingLlmService capture = local ? localBackend : backend;
+        capture.reset();
+        try {
+            List<ActionPlan> plans = entry.isOcr()
+                    ? target.parseMultipleWithFilter(entry.toOcrResult(), keyword)
+                    : target.parseMultiple(screenText, keyword);
+            return new Run(entry, iteration, Outcome.PARSED, privacy, plans, capture.last(),
+                    System.nanoTime() - startNs, null);
+        } catch (RuntimeException e) {
+            return new Run(entry, iteration, Outcome.ERROR, privacy, Collections.emptyList(), capture.last(),
+                    System.nanoTime() - startNs, e.toString());
+        }
+    }
+
+    /** 记下当前线程最近一次模型输出，录制模式据此回写 response。 */
+    private static final class CapturingLlmService implements ILlmService {
+        private final ILlmService delegate;
+        private final ThreadLocal<String> last = new ThreadLocal<>();
+
+        CapturingLlmService(ILlmService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String chatCompletion(String systemPrompt, String userMessage) {
+            String response = delegate.chatCompletion(systemPrompt, userMessage);
+            last.set(response);
+            return response;
+        }
+
+        @Override
+        public void streamChatCompletion(String systemPrompt, String userMessage, StreamListener listener) {
+            delegate.streamChatCompletion(systemPrompt, userMessage, listener);
+        }
+
+        @Override
+        public int getContextWindowTokens() {
+            return delegate.getContextWindowTokens();
+        }
+
+        @Override
+        public int getMaxOutputTokens() {
+            return delegate.getMaxOutputTokens();
+        }
+
+        @Override
+        public TokenCounter getTokenCounter() {
+            return delegate.getTokenCounter();
+        }
+
+        void reset() {
+            last.remove();
+        }
+
+        String last() {
+            return last.get();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.philotes.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.example.philotes.domain.RuleEngine;
+import com.example.philotes.utils.PipelineTracer;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+public class HotPathWarmupTest {
+
+    @Test
+    public void warmupParsesTheCannedResponse() {
+        RuleEngine.getInstance().resetDefaultRules();
+
+        // 文本与 OCR 各解析出日程 + 待办两条
+        assertEquals(4, HotPathWarmup.run(RuleEngine.getInstance()));
+    }
+
+    @Test
+    public void warmupDoesNotRecordSyntheticTraces() {
+        RuleEngine.getInstance().resetDefaultRules();
+        Set<PipelineTracer.Span> before = Collections.newSetFromMap(new IdentityHashMap<>());
+        before.addAll(PipelineTracer.get().snapshot());
+
+        HotPathWarmup.run(RuleEngine.getInstance());
+
+        for (PipelineTracer.Span span : PipelineTracer.get().snapshot()) {
+            if (!before.contains(span)) {
+                throw new AssertionError("warmup recorded " + span.getName());
+            }
+        }
+        assertNull(PipelineTracer.current());
+    }
+}
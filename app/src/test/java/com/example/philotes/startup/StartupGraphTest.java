@@ -0,0 +1,204 @@
+package com.example.philotes.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StartupGraphTest {
+
+    private ExecutorService background;
+    private ExecutorService main;
+    private final AtomicReference<Thread> mainThread = new AtomicReference<>();
+
+    @Before
+    public void setUp() {
+        background = Executors.newCachedThreadPool();
+        main = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fake-main");
+            mainThread.set(thread);
+            return thread;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        background.shutdownNow();
+        main.shutdownNow();
+    }
+
+    @Test
+    public void dependentsRunAfterTheirDependencies() throws Exception {
+        List<String> order = new CopyOnWriteArrayList<>();
+        StartupGraph graph = new StartupGraph(background, main);
+        StartupGraph.Component<String> a = graph.add("a", () -> record(order, "a"));
+        StartupGraph.Component<String> b = graph.add("b", () -> record(order, "b"), a);
+        StartupGraph.Component<String> c = graph.add("c", () -> record(order, "c"), a, b);
+
+        graph.start();
+
+        assertTrue(graph.awaitAll(5, TimeUnit.SECONDS));
+        assertEquals("c", c.get());
+        assertTrue(order.indexOf("a") < order.indexOf("b"));
+        assertTrue(order.indexOf("b") < order.indexOf("c"));
+        assertTrue(graph.isFinished());
+    }
+
+    @Test
+    public void independentComponentsRunInParallel() throws Exception {
+        // 两个组件互相等待对方进入初始化，串行执行会超时
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        StartupGraph graph = new StartupGraph(background, main);
+        StartupGraph.Component<Integer> left = graph.add("left", () -> barrier.await(5, TimeUnit.SECONDS));
+        StartupGraph.Component<Integer> right = graph.add("right", () -> barrier.await(5, TimeUnit.SECONDS));
+
+        graph.start();
+
+        assertTrue(graph.awaitAll(10, TimeUnit.SECONDS));
+        assertNull(left.getError());
+        assertNull(right.getError());
+    }
+
+    @Test
+    public void failedDependencyYieldsNullAndDependentsStillRun() throws Exception {
+        StartupGraph graph = new StartupGraph(background, main);
+        StartupGraph.Component<String> broken = graph.add("broken", () -> {
+            throw new IllegalStateException("boom");
+        });
+        StartupGraph.Component<String> fallback = graph.add("fallback",
+                () -> broken.peek() == null ? "degraded" : "full", broken);
+
+        graph.start();
+
+        assertEquals("degraded", fallback.get(5, TimeUnit.SECONDS));
+        assertNull(broken.get());
+        assertTrue(broken.getError() instanceof IllegalStateException);
+        assertTrue(graph.report(), graph.report().contains("FAILED IllegalStateException"));
+    }
+
+    @Test
+    public void errorStillCompletesTheComponentAndReachesTheExecutor() throws Exception {
+        AtomicReference<Throwable> escaped = new AtomicReference<>();
+        Executor catching = task -> {
+            try {
+                task.run();
+            } catch (AssertionError e) {
+                escaped.set(e);
+            }
+        };
+        StartupGraph graph = new StartupGraph(catching, main);
+        StartupGraph.Component<String> broken = graph.add("broken", () -> {
+            throw new AssertionError("boom");
+        });
+        StartupGraph.Component<String> dependent = graph.add("dependent",
+                () -> broken.peek() == null ? "degraded" : "full", broken);
+
+        graph.start();
+
+        assertTrue(broken.isDone());
+        assertNull(broken.get(5, TimeUnit.SECONDS));
+        assertEquals("degraded", dependent.get(5, TimeUnit.SECONDS));
+        assertTrue(broken.getError() instanceof AssertionError);
+        assertSame(broken.getError(), escaped.get());
+        assertTrue(graph.isFinished());
+    }
+
+    @Test
+    public void mainComponentsAndCallbacksUseTheMainExecutor() throws Exception {
+        AtomicReference<Thread> initThread = new AtomicReference<>();
+        AtomicReference<Thread> callbackThread = new AtomicReference<>();
+        CountDownLatch called = new CountDownLatch(1);
+        StartupGraph graph = new StartupGraph(background, main);
+        StartupGraph.Component<String> probe = graph.add("probe", () -> "model.bin");
+        StartupGraph.Component<String> ui = graph.addOnMain("ui", () -> {
+            initThread.set(Thread.currentThread());
+            return "shown " + probe.peek();
+        }, probe);
+        ui.whenDone(main, value -> {
+            callbackThread.set(Thread.currentThread());
+            called.countDown();
+        });
+
+        graph.start();
+
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        assertEquals("shown model.bin", ui.get());
+        assertSame(mainThread.get(), initThread.get());
+        assertSame(mainThread.get(), callbackThread.get());
+    }
+
+    @Test
+    public void whenDoneAfterCompletionFiresImmediately() throws Exception {
+        StartupGraph graph = new StartupGraph(Runnable::run, Runnable::run);
+        StartupGraph.Component<String> value = graph.add("value", () -> "ready");
+        graph.start();
+
+        AtomicReference<String> seen = new AtomicReference<>();
+        value.whenDone(Runnable::run, seen::set);
+
+        assertEquals("ready", seen.get());
+        assertTrue(value.initMillis() >= 0);
+    }
+
+    @Test
+    public void milestonesAreRecordedOnceAndReported() {
+        StartupGraph graph = new StartupGraph(Runnable::run, Runnable::run);
+        graph.add("settings", () -> "ok");
+        assertEquals(-1, graph.mark(AiStartup.FIRST_FRAME));
+
+        graph.start();
+        long first = graph.mark(AiStartup.FIRST_FRAME);
+        long firstNanos = graph.milestoneNanos(AiStartup.FIRST_FRAME);
+        graph.mark(AiStartup.FIRST_FRAME);
+
+        assertTrue(first >= 0);
+        assertEquals(firstNanos, graph.milestoneNanos(AiStartup.FIRST_FRAME));
+        assertEquals(-1, graph.milestoneNanos(AiStartup.AI_READY));
+        String report = graph.report();
+        assertTrue(report, report.contains(AiStartup.FIRST_FRAME));
+        assertTrue(report, report.contains("settings"));
+        assertFalse(report, report.contains("running"));
+    }
+
+    @Test
+    public void rejectsLateAndForeignComponents() {
+        StartupGraph graph = new StartupGraph(Runnable::run, Runnable::run);
+        StartupGraph other = new StartupGraph(Runnable::run, Runnable::run);
+        StartupGraph.Component<String> foreign = other.add("foreign", () -> "x");
+        try {
+            graph.add("local", () -> "y", foreign);
+            fail("dependency from another graph must be rejected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+
+        graph.start();
+        try {
+            graph.add("late", () -> "z");
+            fail("add after start must be rejected");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    private static String record(List<String> order, String name) {
+        order.add(name);
+        return name;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.philotes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 验证直方图分桶连续、分位数相对误差在 1/64 以内，以及指标注册表的计数、清零与导出。
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_areContiguousAndCoverTheirValues() {
+        int previous = -1;
+        for (long value = 0; value < 1 << 16; value++) {
+            int index = LatencyHistogram.countsIndex(value);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+            previous = index;
+        }
+        long max = LatencyHistogram.MAX_TRACKABLE_US;
+        assertTrue(LatencyHistogram.highestEquivalentValue(LatencyHistogram.countsIndex(max)) >= max);
+    }
+
+    @Test
+    public void percentiles_matchExactValuesWithinRelativeError() {
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[20_000];
+        for (int i = 0; i < values.length; i++) {
+            // 对数正态分布，覆盖几百微秒到几十秒
+            values[i] = (long) Math.exp(9 + 2 * random.nextGaussian());
+            histogram.recordMicros(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.percentileMicros(percentile);
+            assertTrue(estimate >= exact);
+            assertTrue("p" + percentile, estimate - exact <= Math.max(1, exact / 64));
+        }
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.percentileMicros(100));
+        assertEquals(values[0], histogram.getMinMicros());
+    }
+
+    @Test
+    public void registry_countsResetsAndExports() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        assertTrue(Double.isNaN(metrics.ratio(MetricsRegistry.OCR_CACHE_HIT, MetricsRegistry.OCR_CACHE_MISS)));
+
+        metrics.increment(MetricsRegistry.OCR_CACHE_HIT);
+        metrics.add(MetricsRegistry.OCR_CACHE_MISS, 3);
+        metrics.recordNanos(MetricsRegistry.OCR_LATENCY, 120_000_000L);
+        metrics.recordNanos(MetricsRegistry.OCR_LATENCY, 80_000_000L);
+        assertEquals(0.25, metrics.ratio(MetricsRegistry.OCR_CACHE_HIT, MetricsRegistry.OCR_CACHE_MISS), 1e-9);
+
+        JsonObject json = metrics.toJson();
+        JsonObject ocr = json.getAsJsonObject("latencies").getAsJsonObject(MetricsRegistry.OCR_LATENCY);
+        assertEquals(2, ocr.get("count").getAsLong());
+        assertEquals(120, ocr.get("p99_ms").getAsDouble(), 120 / 64.0);
+        assertEquals(3, json.getAsJsonObject("counters").get(MetricsRegistry.OCR_CACHE_MISS).getAsLong());
+
+        metrics.reset();
+        assertEquals(0, metrics.count(MetricsRegistry.OCR_CACHE_HIT));
+        assertEquals(0, metrics.histogram(MetricsRegistry.OCR_LATENCY).getCount());
+        assertEquals(0, metrics.histogram(MetricsRegistry.OCR_LATENCY).percentileMicros(50));
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.philotes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 验证模型目录的探测优先级、asset 目录只列举一次、索引持久化，以及 size/mtime 不变时复用指纹。
+ */
+public class ModelCatalogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File indexFile;
+    private File primary;
+    private File secondary;
+    private final AtomicInteger assetLists = new AtomicInteger();
+    private final ModelCatalog.AssetLister assets = dir -> {
+        assetLists.incrementAndGet();
+        return "models".equals(dir) ? new String[] { "det.nb", "rec.nb" } : new String[0];
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        indexFile = new File(tmp.getRoot(), "model_catalog.json");
+        primary = new File(tmp.newFolder("files"), "llm.tflite");
+        secondary = new File(tmp.newFolder("local_tmp"), "llm.tflite");
+    }
+
+    private List<ModelCatalog.Spec> specs() {
+        return Arrays.asList(
+                new ModelCatalog.Spec("llm", Arrays.asList(primary, secondary), null, 16),
+                new ModelCatalog.Spec("det", Collections.singletonList(new File(tmp.getRoot(), "det.nb")),
+                        "models/det.nb", 16),
+                new ModelCatalog.Spec("rec", Collections.singletonList(new File(tmp.getRoot(), "rec.nb")),
+                        "models/rec.nb", 16),
+                new ModelCatalog.Spec("cls", Collections.singletonList(new File(tmp.getRoot(), "cls.nb")),
+                        "models/cls.nb", 16));
+    }
+
+    private static void write(File file, int size, byte fill) throws IOException {
+        byte[] data = new byte[size];
+        Arrays.fill(data, fill);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    @Test
+    public void refresh_resolvesByPriority_andListsEachAssetDirOnce() throws IOException {
+        write(primary, 8, (byte) 1); // 小于 minBytes，视为无效
+        write(secondary, 64, (byte) 2);
+
+        ModelCatalog catalog = new ModelCatalog(indexFile, specs(), assets);
+        catalog.refresh(true);
+
+        assertEquals(secondary.getAbsolutePath(), catalog.getFile("llm").getAbsolutePath());
+        assertNotNull(catalog.get("llm").hash);
+        assertTrue(catalog.hasAssets("det", "rec"));
+        assertFalse(catalog.hasAssets("det", "rec", "cls"));
+        assertNull(catalog.getFile("det"));
+        assertEquals(1, assetLists.get());
+    }
+
+    @Test
+    public void index_roundTrips_andHashReusedWhenUnchanged() throws IOException {
+        write(primary, 64, (byte) 1);
+        ModelCatalog first = new ModelCatalog(indexFile, specs(), assets);
+        first.refresh(true);
+        String hash = first.get("llm").hash;
+        assertTrue(indexFile.exists());
+
+        // 新实例读取索引，文件未变：指纹沿用索引里的值（故意篡改以便识别）
+        String indexJson = new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8);
+        Files.write(indexFile.toPath(), indexJson.replace(hash, "cafebabe").getBytes(StandardCharsets.UTF_8));
+        ModelCatalog second = new ModelCatalog(indexFile, specs(), assets);
+        assertTrue(second.load());
+        assertEquals("cafebabe", second.get("llm").hash);
+        second.refresh(true);
+        assertEquals("cafebabe", second.get("llm").hash);
+    }
+
+    @Test
+    public void downloadHash_firstRecordWinsAndPersists() throws IOException {
+        ModelCatalog first = new ModelCatalog(indexFile, specs(), assets);
+        first.refresh(false);
+        assertNull(first.getDownloadHash("llm"));
+        first.recordDownloadHash("llm", "aa11");
+        first.recordDownloadHash("llm", "bb22");
+        assertEquals("aa11", first.getDownloadHash("llm"));
+
+        // 重新探测不会丢掉记录（文件此时并不存在）
+        first.refresh(false);
+        ModelCatalog second = new ModelCatalog(indexFile, specs(), assets);
+        assertTrue(second.load());
+        assertEquals("aa11", second.getDownloadHash("llm"));
+        assertNull(second.getDownloadHash("det"));
+    }
+
+    @Test
+    public void onModelChanged_recomputesHashWhenSizeChanges() throws IOException {
+        write(primary, 64, (byte) 1);
+        ModelCatalog catalog = new ModelCatalog(indexFile, specs(), assets);
+        catalog.refresh(true);
+        String before = catalog.get("llm").hash;
+
+        write(primary, 128, (byte) 3);
+        catalog.onModelChanged("llm");
+
+        assertEquals(128, catalog.get("llm").size);
+        assertNotEquals(before, catalog.get("llm").hash);
+        assertEquals(ModelCatalog.fingerprint(primary), catalog.get("llm").hash);
+    }
+
+    @Test
+    public void onModelChanged_dropsDeletedModel() throws IOException {
+        write(primary, 64, (byte) 1);
+        ModelCatalog catalog = new ModelCatalog(indexFile, specs(), assets);
+        catalog.refresh(false);
+        assertNull(catalog.get("llm").hash);
+
+        assertTrue(primary.delete());
+        catalog.onModelChanged("llm");
+
+        assertNull(catalog.get("llm"));
+        assertFalse(catalog.hasFiles("llm"));
+    }
+
+    @Test
+    public void probe_deletesUndersizedOwnFileButNotOtherLocations() throws IOException {
+        write(primary, 8, (byte) 1);
+        write(secondary, 8, (byte) 2);
+        ModelCatalog catalog = new ModelCatalog(indexFile, specs(), assets);
+        catalog.refresh(false);
+
+        assertNull(catalog.getFile("llm"));
+        assertFalse(primary.exists());
+        assertTrue(secondary.exists());
+    }
+
+    @Test
+    public void getFile_rechecksTruncatedFileAndFallsBack() throws IOException {
+        write(primary, 64, (byte) 1);
+        write(secondary, 64, (byte) 2);
+        ModelCatalog catalog = new ModelCatalog(indexFile, specs(), assets);
+        catalog.refresh(false);
+        assertEquals(primary.getAbsolutePath(), catalog.getFile("llm").getAbsolutePath());
+
+        // 索引之后文件被截断：不再返回它，改用下一个有效位置
+        write(primary, 4, (byte) 1);
+        assertEquals(secondary.getAbsolutePath(), catalog.getFile("llm").getAbsolutePath());
+        assertFalse(primary.exists());
+
+        assertTrue(secondary.delete());
+        assertNull(catalog.getFile("llm"));
+        assertFalse(catalog.hasFiles("llm"));
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.philotes.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * 用 MockWebServer 模拟支持/不支持 Range 的模型源，验证分段并行下载、断点续传、
+ * SHA-256 校验与进度节流。
+ */
+public class ModelDownloaderTest {
+
+    private static final int SEGMENT = 64 * 1024;
+    private static final byte[] PAYLOAD = payload(SEGMENT * 10 + 1234);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private MockWebServer server;
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicBoolean rangeSupported = new AtomicBoolean(true);
+    /** 起始偏移不小于此值的分段请求返回 500，模拟断网 */
+    private volatile long failFromOffset = Long.MAX_VALUE;
+
+    private static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return ModelDownloader.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String range = request.getHeader("Range");
+                if (range == null || !rangeSupported.get()) {
+                    return new MockResponse().setResponseCode(200).setBody(new Buffer().write(PAYLOAD));
+                }
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                int start = Integer.parseInt(bounds[0]);
+                int end = Math.min(PAYLOAD.length - 1, Integer.parseInt(bounds[1]));
+                if (end > 0) {
+                    rangeRequests.incrementAndGet();
+                }
+                if (start >= failFromOffset) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                byte[] slice = new byte[end - start + 1];
+                System.arraycopy(PAYLOAD, start, slice, 0, slice.length);
+                return new MockResponse().setResponseCode(206)
+                        .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + PAYLOAD.length)
+                        .setHeader("ETag", "\"v1\"")
+                        .setBody(new Buffer().write(slice));
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private ModelDownloader downloader() {
+        return new ModelDownloader(new OkHttpClient(), 4, SEGMENT);
+    }
+
+    private List<String> url() {
+        return Collections.singletonList(server.url("/model.tflite").toString());
+    }
+
+    @Test
+    public void parallelRangeDownload_matchesContentAndHash() throws Exception {
+        File target = new File(tmp.getRoot(), "model.tflite");
+        List<long[]> progress = new CopyOnWriteArrayList<>();
+
+        ModelDownloader.Result result = downloader().download(url(), target, sha256(PAYLOAD), 1,
+                (done, total) -> progress.add(new long[] { done, total }));
+
+        assertArrayEquals(PAYLOAD, Files.readAllBytes(target.toPath()));
+        assertEquals(sha256(PAYLOAD), result.sha256);
+        assertEquals(11, rangeRequests.get());
+        assertFalse(new File(target.getAbsolutePath() + ".part").exists());
+        assertFalse(new File(target.getAbsolutePath() + ".part.state").exists());
+        // 节流：远少于每 64KB 一次；最后一次必为 100%
+        assertTrue(progress.size() < 11);
+        long[] lastProgress = progress.get(progress.size() - 1);
+        assertEquals(PAYLOAD.length, lastProgress[0]);
+        assertEquals(PAYLOAD.length, lastProgress[1]);
+    }
+
+    @Test
+    public void interruptedDownload_resumesOnlyMissingSegments() throws Exception {
+        File target = new File(tmp.getRoot(), "model.tflite");
+        failFromOffset = SEGMENT * 6L;
+        try {
+            downloader().download(url(), target, null, 1, null);
+            fail("expected failure");
+        } catch (IOException expected) {
+            // 前 6 段已落盘并记入位图
+        }
+        assertFalse(target.exists());
+        assertTrue(new File(target.getAbsolutePath() + ".part.state").exists());
+
+        failFromOffset = Long.MAX_VALUE;
+        rangeRequests.set(0);
+        ModelDownloader.Result result = downloader().download(url(), target, sha256(PAYLOAD), 1, null);
+
+        assertArrayEquals(PAYLOAD, Files.readAllBytes(target.toPath()));
+        assertEquals(6, result.resumedSegments);
+        assertEquals(5, rangeRequests.get());
+    }
+
+    @Test
+    public void resumeWithRecordedHash_mismatchFailsAndDropsPartialState() throws Exception {
+        File target = new File(tmp.getRoot(), "model.tflite");
+        failFromOffset = SEGMENT * 6L;
+        try {
+            downloader().download(url(), target, null, 1, null);
+            fail("expected failure");
+        } catch (IOException expected) {
+            // 留下 6 段续传进度
+        }
+
+        failFromOffset = Long.MAX_VALUE;
+        try {
+            downloader().download(url(), target, sha256(new byte[] { 1 }), 1, null);
+            fail("expected checksum failure");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("SHA-256"));
+        }
+        assertFalse(target.exists());
+        assertFalse(new File(target.getAbsolutePath() + ".part").exists());
+        assertFalse(new File(target.getAbsolutePath() + ".part.state").exists());
+    }
+
+    @Test
+    public void toHex_matchesFormatEncoding() {
+        byte[] bytes = { 0, 1, 0x0f, 0x10, 0x7f, (byte) 0x80, (byte) 0xab, (byte) 0xff };
+        assertEquals("00010f107f80abff", ModelDownloader.toHex(bytes));
+        assertEquals("", ModelDownloader.toHex(new byte[0]));
+    }
+
+    @Test
+    public void checksumMismatch_failsAndLeavesNoFile() throws Exception {
+        File target = new File(tmp.getRoot(), "model.tflite");
+        try {
+            downloader().download(url(), target, sha256(new byte[] { 1 }), 1, null);
+            fail("expected checksum failure");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("SHA-256"));
+        }
+        assertFalse(target.exists());
+        assertFalse(new File(target.getAbsolutePath() + ".part").exists());
+    }
+
+    @Test
+    public void serverWithoutRange_fallsBackToSingleStream() throws Exception {
+        rangeSupported.set(false);
+        File target = new File(tmp.getRoot(), "model.tflite");
+
+        ModelDownloader.Result result = downloader().download(url(), target, sha256(PAYLOAD), 1, null);
+
+        assertArrayEquals(PAYLOAD, Files.readAllBytes(target.toPath()));
+        assertEquals(0, rangeRequests.get());
+        assertEquals(PAYLOAD.length, result.bytes);
+    }
+
+    @Test
+    public void tooSmall_rejected() {
+        File target = new File(tmp.getRoot(), "model.tflite");
+        try {
+            downloader().download(url(), target, null, PAYLOAD.length + 1L, null);
+            fail("expected size failure");
+        } catch (IOException expected) {
+            assertFalse(target.exists());
+        }
+    }
+
+    @Test
+    public void parseTotal_handlesUnknownLength() {
+        assertEquals(1234, ModelDownloader.parseTotal("bytes 0-0/1234"));
+        assertEquals(-1, ModelDownloader.parseTotal("bytes 0-0/*"));
+        assertEquals(-1, ModelDownloader.parseTotal(null));
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.philotes.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 验证 ModelInstaller 的区间零拷贝、流式回退与原子提交。
+ * 用“前后夹带其他数据的文件”模拟 APK 内未压缩的 asset 区间。
+ */
+public class ModelInstallerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void transferFully_copiesExactAssetRange() throws Exception {
+        byte[] apk = random(3 * 1024 * 1024 + 77, 1);
+        int offset = 12345;
+        int length = 2 * 1024 * 1024 + 5;
+        File apkFile = tmp.newFile("base.apk");
+        Files.write(apkFile.toPath(), apk);
+        File out = new File(tmp.getRoot(), "model.tflite.installing");
+
+        try (FileInputStream in = new FileInputStream(apkFile); FileOutputStream os = new FileOutputStream(out)) {
+            long copied = ModelInstaller.transferFully(in.getChannel(), offset, length, os.getChannel());
+            assertEquals(length, copied);
+        }
+
+        assertArrayEquals(Arrays.copyOfRange(apk, offset, offset + length), Files.readAllBytes(out.toPath()));
+    }
+
+    @Test
+    public void copyStream_fallbackForCompressedAsset() throws Exception {
+        byte[] model = random(600 * 1024 + 3, 2);
+        File out = new File(tmp.getRoot(), "model.tflite.installing");
+
+        ModelInstaller.copyStream(new ByteArrayInputStream(model), out);
+
+        assertArrayEquals(model, Files.readAllBytes(out.toPath()));
+    }
+
+    @Test
+    public void commit_replacesExistingTargetAndRemovesTemp() throws Exception {
+        File target = tmp.newFile("model.tflite");
+        Files.write(target.toPath(), new byte[] { 1, 2, 3 });
+        File temp = new File(tmp.getRoot(), "model.tflite.installing");
+        byte[] fresh = random(4096, 3);
+        Files.write(temp.toPath(), fresh);
+
+        ModelInstaller.commit(temp, target);
+
+        assertFalse(temp.exists());
+        assertTrue(target.exists());
+        assertArrayEquals(fresh, Files.readAllBytes(target.toPath()));
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.philotes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Rect;
+
+import com.example.philotes.data.model.OcrResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 验证 OcrOrchestrator 的区域匹配、择优与按包名学习引擎偏好。
+ * 几何计算走 int 版本，避免依赖 android.graphics.Rect 的 JVM 桩实现。
+ */
+public class OcrOrchestratorTest {
+
+    private static final String PKG = "com.tencent.mm";
+
+    @Before
+    public void setUp() {
+        OcrOrchestrator.resetStats();
+    }
+
+    // ==================== IoU / 包含度 ====================
+
+    @Test
+    public void iou_identicalBoxes_isOne() {
+        assertEquals(1f, OcrOrchestrator.iou(0, 0, 100, 40, 0, 0, 100, 40), 1e-6f);
+    }
+
+    @Test
+    public void iou_disjointBoxes_isZero() {
+        assertEquals(0f, OcrOrchestrator.iou(0, 0, 100, 40, 200, 0, 300, 40), 1e-6f);
+    }
+
+    @Test
+    public void iou_halfOverlap() {
+        // 交集 50x40，并集 150x40
+        assertEquals(1f / 3f, OcrOrchestrator.iou(0, 0, 100, 40, 50, 0, 150, 40), 1e-6f);
+    }
+
+    @Test
+    public void regionsMatch_paragraphContainingLine() {
+        // ML Kit 段落块包住 Paddle 单行：IoU 低但包含度为 1
+        assertTrue(OcrOrchestrator.iou(0, 0, 500, 300, 10, 10, 200, 40) < OcrOrchestrator.MATCH_IOU);
+        assertEquals(1f, OcrOrchestrator.containment(0, 0, 500, 300, 10, 10, 200, 40), 1e-6f);
+        assertTrue(OcrOrchestrator.regionsMatch(0, 0, 500, 300, 10, 10, 200, 40));
+    }
+
+    @Test
+    public void regionsMatch_degenerateBox_false() {
+        assertFalse(OcrOrchestrator.regionsMatch(0, 0, 0, 0, 0, 0, 100, 40));
+    }
+
+    // ==================== 择优 ====================
+
+    @Test
+    public void preferCandidate_keepsCjkFromPaddle() {
+        OcrResult.TextBlock paddle = new OcrResult.TextBlock("明天下午三点开会", new Rect(), 0.6f);
+        OcrResult.TextBlock mlKit = new OcrResult.TextBlock("HA TS", new Rect(), 0.95f);
+        assertFalse(OcrOrchestrator.preferCandidate(paddle, mlKit));
+    }
+
+    @Test
+    public void preferCandidate_latinTakesHigherConfidence() {
+        OcrResult.TextBlock paddle = new OcrResult.TextBlock("Meet1ng at 3pm", new Rect(), 0.7f);
+        OcrResult.TextBlock mlKit = new OcrResult.TextBlock("Meeting at 3pm", new Rect(), 0.92f);
+        assertTrue(OcrOrchestrator.preferCandidate(paddle, mlKit));
+    }
+
+    @Test
+    public void fuse_emptySide_returnsOther() {
+        OcrResult paddle = new OcrResult(100, 100);
+        paddle.addTextBlock("开会", new Rect(), 0.9f);
+        OcrResult empty = new OcrResult(100, 100);
+        assertSame(paddle, OcrOrchestrator.fuse(paddle, empty));
+        assertSame(paddle, OcrOrchestrator.fuse(empty, paddle));
+    }
+
+    @Test
+    public void containsCjk_detectsMixedText() {
+        assertTrue(OcrOrchestrator.containsCjk("Zoom 会议 ID"));
+        assertFalse(OcrOrchestrator.containsCjk("Zoom meeting ID 123"));
+        assertFalse(OcrOrchestrator.containsCjk(null));
+    }
+
+    // ==================== 引擎偏好学习 ====================
+
+    @Test
+    public void preferredEngine_needsEnoughSamples() {
+        for (int i = 0; i < OcrOrchestrator.MIN_SAMPLES_FOR_PREFERENCE - 1; i++) {
+            OcrOrchestrator.recordSample(PKG, OcrOrchestrator.Engine.PADDLE, 300, true);
+            OcrOrchestrator.recordSample(PKG, OcrOrchestrator.Engine.MLKIT, 80, true);
+        }
+        assertNull(OcrOrchestrator.preferredEngine(PKG));
+    }
+
+    @Test
+    public void preferredEngine_sameUsability_prefersFaster() {
+        for (int i = 0; i < OcrOrchestrator.MIN_SAMPLES_FOR_PREFERENCE; i++) {
+            OcrOrchestrator.recordSample(PKG, OcrOrchestrator.Engine.PADDLE, 300, true);
+            OcrOrchestrator.recordSample(PKG, OcrOrchestrator.Engine.MLKIT, 80, true);
+        }
+        assertEquals(OcrOrchestrator.Engine.MLKIT, OcrOrchestrator.preferredEngine(PKG));
+    }
+
+    @Test
+    public void preferredEngine_usabilityBeatsLatency() {
+        for (int i = 0; i < OcrOrchestrator.MIN_SAMPLES_FOR_PREFERENCE; i++) {
+            OcrOrchestrator.recordSample(PKG, OcrOrchestrator.Engine.PADDLE, 300, true);
+            OcrOrchestrator.recordSample(PKG, OcrOrchestrator.Engine.MLKIT, 80, false);
+        }
+        assertEquals(OcrOrchestrator.Engine.PADDLE, OcrOrchestrator.preferredEngine(PKG));
+        // 其他包名不受影响
+        assertNull(OcrOrchestrator.preferredEngine("com.android.chrome"));
+    }
+
+    @Test
+    public void engineTimings_exposePerPackageStats() {
+        OcrOrchestrator.recordSample(PKG, OcrOrchestrator.Engine.PADDLE, 200, true);
+        OcrOrchestrator.recordSample(PKG, OcrOrchestrator.Engine.PADDLE, 100, false);
+
+        assertEquals(1, OcrOrchestrator.getEngineTimings().size());
+        OcrOrchestrator.EngineTiming timing = OcrOrchestrator.getEngineTimings().get(0);
+        assertEquals(PKG, timing.packageName);
+        assertEquals(OcrOrchestrator.Engine.PADDLE, timing.engine);
+        assertEquals(2, timing.samples);
+        assertEquals(1, timing.usableSamples);
+        assertEquals(100, timing.lastLatencyMs);
+        assertEquals(170f, timing.ewmaLatencyMs, 1e-3f);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.philotes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * 验证 OcrTileCache 的灰度化、dHash、滚动偏移估计与 tile 变化判定。
+ * 使用合成的“长页面”灰度图模拟滚动截图。
+ */
+public class OcrTileCacheTest {
+
+    private static final int WIDTH = OcrTileCache.THUMB_WIDTH;
+    private static final int VIEW_ROWS = 160;
+
+    /** 生成带“文字行”纹理的长页面：每 10 行一段随机明暗块，中间夹空白行。 */
+    private static int[] page(int rows, long seed) {
+        Random random = new Random(seed);
+        int[] gray = new int[rows * WIDTH];
+        for (int r = 0; r < rows; r++) {
+            boolean textLine = (r % 10) < 6;
+            for (int c = 0; c < WIDTH; c++) {
+                gray[r * WIDTH + c] = textLine && random.nextInt(3) == 0 ? 30 : 240;
+            }
+        }
+        return gray;
+    }
+
+    private static int[] viewport(int[] page, int firstRow) {
+        int[] out = new int[VIEW_ROWS * WIDTH];
+        System.arraycopy(page, firstRow * WIDTH, out, 0, out.length);
+        return out;
+    }
+
+    @Test
+    public void toGray_usesLuminanceWeights() {
+        int[] gray = OcrTileCache.toGray(new int[] { 0xFFFFFFFF, 0xFF000000, 0xFF00FF00 });
+        assertEquals(255, gray[0], 1);
+        assertEquals(0, gray[1]);
+        assertTrue(gray[2] > 140 && gray[2] < 155);
+    }
+
+    @Test
+    public void dHash_identicalRegions_zeroDistance() {
+        int[] frame = viewport(page(400, 1), 0);
+        long a = OcrTileCache.dHash(frame, WIDTH, 0, 40);
+        long b = OcrTileCache.dHash(frame.clone(), WIDTH, 0, 40);
+        assertEquals(0, OcrTileCache.hamming(a, b));
+    }
+
+    @Test
+    public void dHash_differentContent_farApart() {
+        long a = OcrTileCache.dHash(viewport(page(400, 1), 0), WIDTH, 0, 40);
+        long b = OcrTileCache.dHash(viewport(page(400, 2), 0), WIDTH, 0, 40);
+        assertTrue(OcrTileCache.hamming(a, b) > OcrTileCache.MAX_HAMMING);
+    }
+
+    @Test
+    public void estimateScroll_detectsDownwardScroll() {
+        int[] longPage = page(400, 7);
+        int[] previous = viewport(longPage, 0);
+        int[] current = viewport(longPage, 23);
+
+        int shift = OcrTileCache.estimateScrollRows(
+                OcrTileCache.rowProfile(previous, WIDTH, VIEW_ROWS),
+                OcrTileCache.rowProfile(current, WIDTH, VIEW_ROWS));
+        assertEquals(23, shift);
+    }
+
+    @Test
+    public void estimateScroll_detectsUpwardScroll() {
+        int[] longPage = page(400, 7);
+        int[] previous = viewport(longPage, 60);
+        int[] current = viewport(longPage, 45);
+
+        int shift = OcrTileCache.estimateScrollRows(
+                OcrTileCache.rowProfile(previous, WIDTH, VIEW_ROWS),
+                OcrTileCache.rowProfile(current, WIDTH, VIEW_ROWS));
+        assertEquals(-15, shift);
+    }
+
+    @Test
+    public void estimateScroll_sameFrame_zero() {
+        int[] frame = viewport(page(400, 3), 10);
+        int[] profile = OcrTileCache.rowProfile(frame, WIDTH, VIEW_ROWS);
+        assertEquals(0, OcrTileCache.estimateScrollRows(profile, profile.clone()));
+    }
+
+    @Test
+    public void tileUnchanged_afterScroll_matchesShiftedTile() {
+        int[] longPage = page(400, 11);
+        int[] previous = viewport(longPage, 0);
+        int[] current = viewport(longPage, 30);
+
+        // 当前帧第 0-20 行对应上一帧第 30-50 行
+        assertTrue(OcrTileCache.tileUnchanged(previous, current, WIDTH, VIEW_ROWS, 0, 20, 30));
+        assertFalse(OcrTileCache.tileUnchanged(previous, current, WIDTH, VIEW_ROWS, 0, 20, 0));
+        // 新滚入的底部内容在上一帧中不存在
+        assertFalse(OcrTileCache.tileUnchanged(previous, current, WIDTH, VIEW_ROWS, 140, 160, 30));
+    }
+
+    @Test
+    public void tileUnchanged_detectsEditedLine() {
+        int[] previous = viewport(page(400, 5), 0);
+        int[] current = previous.clone();
+        // 改写一行“文字”
+        Random random = new Random(99);
+        for (int r = 40; r < 46; r++) {
+            for (int c = 0; c < WIDTH; c++) {
+                current[r * WIDTH + c] = random.nextInt(2) == 0 ? 30 : 240;
+            }
+        }
+        assertTrue(OcrTileCache.tileUnchanged(previous, current, WIDTH, VIEW_ROWS, 0, 20, 0));
+        assertFalse(OcrTileCache.tileUnchanged(previous, current, WIDTH, VIEW_ROWS, 40, 60, 0));
+    }
+}
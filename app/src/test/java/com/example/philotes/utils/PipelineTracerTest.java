@@ -0,0 +1,132 @@
+package com.example.philotes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * 验证 span 父子关系（同线程嵌套与跨线程激活）、环形缓冲区覆盖以及 Chrome trace JSON 导出。
+ */
+@SuppressWarnings("try") // spans and scopes are opened for their nesting, not referenced
+public class PipelineTracerTest {
+
+    @Test
+    public void nestedSpans_formOneTrace_andRestoreCurrent() throws Exception {
+        PipelineTracer tracer = new PipelineTracer(16);
+        PipelineTracer.Span root = tracer.beginTrace("capture");
+        PipelineTracer.Span ocr = root.child("ocr");
+
+        Thread worker = new Thread(() -> {
+            try (PipelineTracer.Scope ignored = root.activate();
+                 PipelineTracer.Span parse = tracer.begin("parse")) {
+                assertSame(parse, PipelineTracer.current());
+                try (PipelineTracer.Span llm = tracer.begin("llm")) {
+                    llm.arg("route", "local");
+                }
+                assertSame(parse, PipelineTracer.current());
+            }
+            assertNull(PipelineTracer.current());
+        });
+        worker.start();
+        worker.join();
+        ocr.end();
+        root.end();
+        root.end();
+
+        List<PipelineTracer.Span> spans = tracer.spansOf(root.getTraceId());
+        assertEquals(4, spans.size());
+        assertEquals("capture", spans.get(0).getName());
+        PipelineTracer.Span parse = find(spans, "parse");
+        assertEquals(root.getSpanId(), parse.getParentId());
+        assertEquals(parse.getSpanId(), find(spans, "llm").getParentId());
+        assertEquals(root.getSpanId(), find(spans, "ocr").getParentId());
+        assertTrue(root.durationNs() >= parse.durationNs());
+
+        String waterfall = tracer.waterfall(root.getTraceId());
+        assertTrue(waterfall.contains("ms     llm {route=local}\n"));
+    }
+
+    @Test
+    public void suppressedSpans_areTimedButNotRecorded() {
+        PipelineTracer tracer = new PipelineTracer(16);
+        PipelineTracer.Span kept = tracer.beginTrace("capture");
+        PipelineTracer.Span hidden;
+        try (PipelineTracer.Scope ignored = PipelineTracer.suppress();
+             PipelineTracer.Span warmup = tracer.begin("parse.json")) {
+            hidden = warmup.child("parse.llm");
+            assertSame(warmup, PipelineTracer.current());
+            try (PipelineTracer.Scope nested = PipelineTracer.suppress()) {
+                tracer.begin("parse.prompt").end();
+            }
+            hidden.end();
+        }
+        // 作用域关闭后恢复记录，但抑制期间开的 span 在别处结束也不会补记
+        PipelineTracer.Span after = tracer.begin("parse.prompt");
+        after.end();
+        kept.end();
+
+        List<PipelineTracer.Span> spans = tracer.snapshot();
+        assertEquals(2, spans.size());
+        assertSame(after, spans.get(0));
+        assertSame(kept, spans.get(1));
+        assertTrue(hidden.isEnded() && hidden.durationNs() >= 0);
+        assertNull(PipelineTracer.current());
+    }
+
+    @Test
+    public void ringBuffer_keepsNewestSpans() {
+        PipelineTracer tracer = new PipelineTracer(3);
+        for (int i = 0; i < 5; i++) {
+            tracer.beginTrace("s" + i).end();
+        }
+
+        List<PipelineTracer.Span> spans = tracer.snapshot();
+        assertEquals(3, spans.size());
+        assertEquals("s2", spans.get(0).getName());
+        assertEquals("s4", spans.get(2).getName());
+    }
+
+    @Test
+    public void toJson_exportsCompleteEventsPerSpan() {
+        PipelineTracer tracer = new PipelineTracer(8);
+        PipelineTracer.Span root = tracer.beginTrace("capture");
+        try (PipelineTracer.Scope ignored = root.activate()) {
+            tracer.begin("png_write").arg("bytes", 1024).end();
+        }
+        root.end();
+
+        JsonObject json = JsonParser.parseString(tracer.toJson(root.getTraceId())).getAsJsonObject();
+        JsonArray events = json.getAsJsonArray("traceEvents");
+        int complete = 0;
+        for (int i = 0; i < events.size(); i++) {
+            JsonObject event = events.get(i).getAsJsonObject();
+            if ("X".equals(event.get("ph").getAsString())) {
+                complete++;
+                assertTrue(event.get("dur").getAsDouble() >= 0);
+                if ("png_write".equals(event.get("name").getAsString())) {
+                    assertEquals("1024", event.getAsJsonObject("args").get("bytes").getAsString());
+                    assertEquals(root.getSpanId(), event.getAsJsonObject("args").get("parent").getAsLong());
+                }
+            }
+        }
+        assertEquals(2, complete);
+    }
+
+    private static PipelineTracer.Span find(List<PipelineTracer.Span> spans, String name) {
+        for (PipelineTracer.Span span : spans) {
+            if (span.getName().equals(name)) {
+                return span;
+            }
+        }
+        throw new AssertionError("missing span " + name);
+    }
+}
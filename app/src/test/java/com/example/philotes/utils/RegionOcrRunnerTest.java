@@ -0,0 +1,93 @@
+package com.example.philotes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.example.philotes.data.model.OcrResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RegionOcrRunner 的调度：缓存区域不走 OCR、取消后在区域之间停止。
+ * mock 的 Bitmap 宽度为 0，普通区域同步产出空结果，不会触发真实识别。
+ */
+public class RegionOcrRunnerTest {
+
+    private static final class Recorder implements RegionOcrRunner.Listener {
+        final List<Integer> regions = new ArrayList<>();
+        final List<List<OcrResult.TextBlock>> blocks = new ArrayList<>();
+        int completions;
+        int failures = -1;
+        int cancelAfter = Integer.MAX_VALUE;
+
+        @Override
+        public void onRegion(int index, RegionOcrRunner.Region region, List<OcrResult.TextBlock> found) {
+            regions.add(index);
+            blocks.add(found);
+        }
+
+        @Override
+        public void onComplete(int failures) {
+            completions++;
+            this.failures = failures;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return regions.size() >= cancelAfter;
+        }
+    }
+
+    private static List<RegionOcrRunner.Region> bands(int count) {
+        List<RegionOcrRunner.Region> out = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            out.add(new RegionOcrRunner.Region(i * 100, (i + 1) * 100, 10));
+        }
+        return out;
+    }
+
+    @Test
+    public void visitsEveryRegionInOrder() {
+        Recorder recorder = new Recorder();
+        RegionOcrRunner.run(null, mock(Bitmap.class), "pkg", bands(4), recorder);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), recorder.regions);
+        assertEquals(1, recorder.completions);
+        assertEquals(0, recorder.failures);
+    }
+
+    @Test
+    public void stopsBetweenRegionsOnceCancelled() {
+        Recorder recorder = new Recorder();
+        recorder.cancelAfter = 2;
+        RegionOcrRunner.run(null, mock(Bitmap.class), "pkg", bands(4), recorder);
+
+        assertEquals(Arrays.asList(0, 1), recorder.regions);
+        assertEquals(1, recorder.completions);
+    }
+
+    @Test
+    public void cachedRegionsAreEmittedWithoutRecognition() {
+        OcrResult.TextBlock block = new OcrResult.TextBlock("缓存", new Rect(0, 10, 50, 30), 0.9f);
+        List<RegionOcrRunner.Region> regions = new ArrayList<>();
+        regions.add(RegionOcrRunner.Region.cached(0, 100, Collections.singletonList(block)));
+        regions.add(new RegionOcrRunner.Region(100, 200, 10));
+
+        Recorder recorder = new Recorder();
+        RegionOcrRunner.run(null, mock(Bitmap.class), "pkg", regions, recorder);
+
+        assertEquals(Arrays.asList(0, 1), recorder.regions);
+        assertSame(block, recorder.blocks.get(0).get(0));
+        assertEquals(0, recorder.blocks.get(1).size());
+        assertEquals(1, recorder.completions);
+    }
+}
@@ -0,0 +1,111 @@
+// JVM microbenchmarks (JMH) for the pure-Java hot paths of :app.
+// Run: ./gradlew :benchmark:jmh   (results in benchmark/build/results/jmh/)
+// Replay: ./gradlew :benchmark:replay -PreplayArgs="<corpus.jsonl> --backend mock-http --repeat 20"
+// Baseline profile: ./gradlew :benchmark:baselineProfile  (rewrites app/src/main/baseline-prof.txt)
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// :app is an Android module and cannot be a JVM dependency, so the benchmarked
+// classes are compiled straight from its sources. The only framework types they
+// touch (Log, Rect, Build, Trace) come from JVM stand-ins in src/stubs/java.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java", "src/stubs/java"))
+            include(
+                "android/**",
+                "com/example/philotes/data/api/HeuristicTokenCounter.java",
+                "com/example/philotes/data/api/ILlmService.java",
+                "com/example/philotes/data/api/LocalActionRules.java",
+                "com/example/philotes/data/api/OpenAIService.java",
+                "com/example/philotes/data/api/TokenCounter.java",
+                "com/example/philotes/data/model/ActionPlan.java",
+                "com/example/philotes/data/model/ActionPlanCodec.java",
+                "com/example/philotes/data/model/ActionSlots.java",
+                "com/example/philotes/data/model/ActionType.java",
+                "com/example/philotes/data/model/OcrResult.java",
+                "com/example/philotes/domain/ActionParser.java",
+                "com/example/philotes/domain/JsonRepair.java",
+                "com/example/philotes/domain/PrivacyFirewall.java",
+                "com/example/philotes/domain/RuleEngine.java",
+                "com/example/philotes/domain/TokenBudgeter.java",
+                "com/example/philotes/startup/HotPathWarmup.java",
+                "com/example/philotes/utils/LatencyHistogram.java",
+                "com/example/philotes/utils/PipelineTracer.java",
+            )
+        }
+    }
+    // The recorded-corpus replay harness lives with the :app unit tests; this
+    // source set lets it run as a plain JVM program against the same classes.
+    create("replay") {
+        java {
+            setSrcDirs(listOf("../app/src/test/java"))
+            include("com/example/philotes/replay/**")
+            exclude("**/*Test.java")
+        }
+        resources {
+            setSrcDirs(listOf("../app/src/test/resources"))
+            include("replay/**")
+        }
+        compileClasspath += sourceSets["main"].output
+        runtimeClasspath += sourceSets["main"].output
+    }
+}
+
+dependencies {
+    implementation(libs.gson)
+    implementation(libs.okhttp)
+    "replayImplementation"(libs.gson)
+    "replayImplementation"(libs.okhttp)
+    "replayImplementation"(project(":mockllm"))
+    jmh(libs.jmh.core)
+    jmhAnnotationProcessor(libs.jmh.generator.annprocess)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    // allocation rate (gc.alloc.rate.norm = bytes/op) next to the timings
+    profilers.add("gc")
+    benchmarkMode.add("avgt")
+    timeUnit.set("us")
+    warmupIterations.set(3)
+    warmup.set("2s")
+    iterations.set(5)
+    timeOnIteration.set("2s")
+    fork.set(2)
+    resultFormat.set("JSON")
+    // e.g. -PjmhInclude=RuleEngine to run a subset
+    project.findProperty("jmhInclude")?.let { includes.add(it.toString()) }
+}
+
+tasks.register<JavaExec>("replay") {
+    group = "verification"
+    description = "Replays a recorded corpus through RuleEngine -> PrivacyFirewall -> ActionParser."
+    classpath = sourceSets["replay"].runtimeClasspath
+    mainClass.set("com.example.philotes.replay.ReplayMain")
+    workingDir = rootDir
+    args((project.findProperty("replayArgs")?.toString() ?: "app/src/test/resources/replay/sample_corpus.jsonl")
+        .split(" ").filter { it.isNotBlank() })
+    // -Preplay.baseUrl=... etc. for --backend openai
+    listOf("replay.baseUrl", "replay.apiKey", "replay.model").forEach { key ->
+        project.findProperty(key)?.let { systemProperty(key, it.toString()) }
+    }
+}
+
+tasks.register<JavaExec>("baselineProfile") {
+    group = "build"
+    description = "Records the classes the capture hot path loads and rewrites app/src/main/baseline-prof.txt."
+    classpath = sourceSets["replay"].runtimeClasspath
+    mainClass.set("com.example.philotes.replay.BaselineProfile")
+    workingDir = rootDir
+    args(listOf("app/src/main/baseline-prof.txt") +
+        (project.findProperty("profileCorpus")?.toString()?.split(" ")?.filter { it.isNotBlank() }
+            ?: listOf("app/src/test/resources/replay/sample_corpus.jsonl")))
+}
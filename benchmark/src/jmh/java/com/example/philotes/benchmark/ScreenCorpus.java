@@ -0,0 +1,91 @@
+package com.example.philotes.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic Chinese screen text for the benchmarks: chat bubbles, app
+ * notifications, shopping pages and news feeds as OCR returns them, mixed with
+ * the actionable lines the proactive path looks for (times, places, todos).
+ *
+ * Sizes follow what the capture path sees: one notification, a chat screen,
+ * and a long scrolled page merged from several captures.
+ */
+public final class ScreenCorpus {
+    public static final String SMALL = "SMALL";
+    public static final String MEDIUM = "MEDIUM";
+    public static final String LARGE = "LARGE";
+
+    private static final String[] CHAT = {
+            "张经理：明天下午3点在3楼会议室开项目周会，大家准备一下进度",
+            "好的收到",
+            "[图片]",
+            "晚上一起吃饭吗？去万达广场那家火锅店",
+            "记得周五之前把报销单交给财务",
+            "哈哈哈哈哈这个太好笑了",
+            "已撤回一条消息",
+            "你到哪了？我在地铁站B口等你",
+            "别忘了帮我买两瓶牛奶",
+            "下周三上午10:30 面试，地点：科技园南区8栋",
+            "您的快递已到达菜鸟驿站，请凭取件码 8-3-2041 领取",
+    };
+    private static final String[] NOISE = {
+            "微信(3)", "4G", "87%", "发送", "按住 说话", "搜索", "通讯录", "发现", "我",
+            "限时秒杀 ￥59.90 已售2.3万件", "加入购物车", "关注", "店铺评分 4.8", "包邮 7天无理由退货",
+            "热搜：某地今日气温创新高", "阅读 10万+", "点赞 3521", "评论", "分享", "广告",
+            "【银行】您尾号1234的账户支出人民币128.00元",
+            "系统更新可用，点击查看详情", "正在播放：晴天 - 周杰伦",
+    };
+
+    private ScreenCorpus() {
+    }
+
+    /** Approximate character count of each size. */
+    public static int targetChars(String size) {
+        switch (size) {
+            case SMALL:
+                return 120;
+            case MEDIUM:
+                return 1_200;
+            case LARGE:
+                return 8_000;
+            default:
+                throw new IllegalArgumentException("Unknown corpus size: " + size);
+        }
+    }
+
+    /** OCR lines of one screen, roughly one actionable line per five. */
+    public static List<String> lines(String size, long seed) {
+        Random random = new Random(seed);
+        int target = targetChars(size);
+        List<String> lines = new ArrayList<>();
+        int chars = 0;
+        while (chars < target) {
+            String line = random.nextInt(5) == 0
+                    ? CHAT[random.nextInt(CHAT.length)]
+                    : NOISE[random.nextInt(NOISE.length)];
+            lines.add(line);
+            chars += line.length() + 1;
+        }
+        return lines;
+    }
+
+    public static String text(String size, long seed) {
+        return String.join("\n", lines(size, seed));
+    }
+
+    /** Screen text without any actionable line: no rule keyword matches (the common case). */
+    public static String noiseOnly(String size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        int target = targetChars(size);
+        while (text.length() < target) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(NOISE[random.nextInt(NOISE.length)]);
+        }
+        return text.toString();
+    }
+}
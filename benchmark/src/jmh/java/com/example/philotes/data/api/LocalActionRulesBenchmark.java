@@ -0,0 +1,35 @@
+package com.example.philotes.data.api;
+
+import com.example.philotes.benchmark.ScreenCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/** Rule pre-filter of the local service (segment split, keyword and slot regexes). */
+@State(Scope.Benchmark)
+public class LocalActionRulesBenchmark {
+    @Param({ ScreenCorpus.SMALL, ScreenCorpus.MEDIUM, ScreenCorpus.LARGE })
+    public String size;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = ScreenCorpus.text(size, 5);
+    }
+
+    @Benchmark
+    public List<LocalActionRules.ParsedAction> parseMultiple() {
+        return LocalActionRules.parseMultiple(text, 3);
+    }
+
+    @Benchmark
+    public String parseMultiple_toJson() {
+        return LocalActionRules.toJsonArray(LocalActionRules.parseMultiple(text, 3));
+    }
+}
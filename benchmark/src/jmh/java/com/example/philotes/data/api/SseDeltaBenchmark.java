@@ -0,0 +1,74 @@
+package com.example.philotes.data.api;
+
+import com.example.philotes.benchmark.ScreenCorpus;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-line work of the OpenAI streaming path: one chat.completion.chunk event
+ * per few characters of the answer, as the cloud backends send them.
+ */
+@State(Scope.Benchmark)
+public class SseDeltaBenchmark {
+    @Param({ ScreenCorpus.SMALL, ScreenCorpus.MEDIUM, ScreenCorpus.LARGE })
+    public String size;
+
+    private final Gson gson = new Gson();
+    private List<String> lines;
+
+    @Setup
+    public void setUp() {
+        String answer = ScreenCorpus.text(size, 6);
+        lines = new ArrayList<>();
+        for (int i = 0; i < answer.length(); i += 4) {
+            JsonObject delta = new JsonObject();
+            delta.addProperty("content", answer.substring(i, Math.min(answer.length(), i + 4)));
+            JsonObject choice = new JsonObject();
+            choice.addProperty("index", 0);
+            choice.add("delta", delta);
+            JsonArray choices = new JsonArray();
+            choices.add(choice);
+            JsonObject event = new JsonObject();
+            event.addProperty("id", "chatcmpl-bench");
+            event.addProperty("object", "chat.completion.chunk");
+            event.add("choices", choices);
+            lines.add("data: " + event);
+            lines.add("");
+        }
+        lines.add("data: [DONE]");
+    }
+
+    @Benchmark
+    public void dispatchStream(Blackhole blackhole) {
+        ILlmService.StreamListener listener = new ILlmService.StreamListener() {
+            @Override
+            public void onDelta(String delta) {
+                blackhole.consume(delta);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+            @Override
+            public void onError(Exception error) {
+            }
+        };
+        for (String line : lines) {
+            if (OpenAIService.dispatchSseLine(gson, line, listener)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.philotes.data.model;
+
+import com.example.philotes.benchmark.ScreenCorpus;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ActionPlan decoding: the hand-written codec against the Gson calls it
+ * replaced (fromJson for one plan; parseString plus per-element fromJson for
+ * an array of three). The slots pair compares two equal decoded slot sets the
+ * way dedupe does, as ActionSlots with its cached hash and as the HashMap
+ * copies parsing used to produce.
+ */
+@State(Scope.Benchmark)
+public class ActionPlanCodecBenchmark {
+    @Param({ ScreenCorpus.SMALL, ScreenCorpus.LARGE })
+    public String size;
+
+    private final Gson gson = new Gson();
+    private String single;
+    private String array;
+    private ActionSlots slotsA;
+    private ActionSlots slotsB;
+    private Map<String, String> mapA;
+    private Map<String, String> mapB;
+
+    @Setup
+    public void setUp() {
+        String text = ScreenCorpus.text(size, 4);
+        JsonArray plans = new JsonArray();
+        String[] types = { "CREATE_CALENDAR", "NAVIGATE", "ADD_TODO" };
+        for (String type : types) {
+            JsonObject slots = new JsonObject();
+            slots.addProperty("title", "项目周会");
+            slots.addProperty("time", "2026-10-20T15:00:00");
+            slots.addProperty("location", "3楼会议室");
+            JsonObject plan = new JsonObject();
+            plan.addProperty("type", type);
+            plan.add("slots", slots);
+            plan.addProperty("confidence", 0.86);
+            plan.addProperty("original_text", text);
+            plans.add(plan);
+        }
+        single = plans.get(0).toString();
+        array = plans.toString();
+        slotsA = ActionPlanCodec.readPlan(single).getSlots();
+        slotsB = ActionPlanCodec.readPlan(single).getSlots();
+        mapA = new HashMap<>(slotsA);
+        mapB = new HashMap<>(slotsB);
+    }
+
+    @Benchmark
+    public ActionPlan single_gson() {
+        return gson.fromJson(single, ActionPlan.class);
+    }
+
+    @Benchmark
+    public ActionPlan single_codec() {
+        return ActionPlanCodec.readPlan(single);
+    }
+
+    @Benchmark
+    public List<ActionPlan> array_gson() {
+        List<ActionPlan> plans = new ArrayList<>();
+        for (JsonElement element : JsonParser.parseString(array).getAsJsonArray()) {
+            plans.add(gson.fromJson(element, ActionPlan.class));
+        }
+        return plans;
+    }
+
+    @Benchmark
+    public List<ActionPlan> array_codec() {
+        return ActionPlanCodec.readPlans(array);
+    }
+
+    @Benchmark
+    public String single_toJson_codec() {
+        return ActionPlanCodec.toJson(ActionPlanCodec.readPlan(single));
+    }
+
+    @Benchmark
+    public boolean slotsDedupe_compact() {
+        return slotsA.hashCode() == slotsB.hashCode() && slotsA.equals(slotsB);
+    }
+
+    @Benchmark
+    public boolean slotsDedupe_hashMap() {
+        return mapA.hashCode() == mapB.hashCode() && mapA.equals(mapB);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.philotes.data.model;
+
+import android.graphics.Rect;
+
+import com.example.philotes.benchmark.ScreenCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Layout-aware text assembly of one OCR pass. "cold" includes building the
+ * result and the reading-order sort, as after every capture; "cached" repeats
+ * the call on the same result.
+ */
+@State(Scope.Benchmark)
+public class OcrResultBenchmark {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 2400;
+
+    @Param({ ScreenCorpus.SMALL, ScreenCorpus.MEDIUM, ScreenCorpus.LARGE })
+    public String size;
+
+    private List<String> lines;
+    private Rect[] boxes;
+    private OcrResult built;
+
+    @Setup
+    public void setUp() {
+        lines = ScreenCorpus.lines(size, 7);
+        boxes = new Rect[lines.size()];
+        Random random = new Random(7);
+        int rowHeight = Math.max(8, HEIGHT / Math.max(1, lines.size()));
+        for (int i = 0; i < boxes.length; i++) {
+            // two columns with slight jitter, like a chat screen
+            int left = random.nextBoolean() ? 40 : WIDTH / 2;
+            int top = i * rowHeight + random.nextInt(6);
+            boxes[i] = new Rect(left, top, left + 400, top + rowHeight - 4);
+        }
+        built = build();
+        built.toStructuredText();
+    }
+
+    private OcrResult build() {
+        OcrResult result = new OcrResult(WIDTH, HEIGHT);
+        for (int i = 0; i < boxes.length; i++) {
+            result.addTextBlock(lines.get(i), boxes[i], 0.93f);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String toStructuredText_cold() {
+        return build().toStructuredText();
+    }
+
+    @Benchmark
+    public String toStructuredText_cached() {
+        return built.toStructuredText();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.philotes.domain;
+
+import com.example.philotes.benchmark.ScreenCorpus;
+import com.example.philotes.data.model.ActionPlan;
+import com.google.gson.JsonObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Response parsing: the well-formed output of constrained local decoding
+ * (direct parse), and a typical cloud answer wrapped in a code fence with
+ * chatter and a trailing comma (repair pass). original_text carries the screen
+ * text, so the corpus size drives the JSON size.
+ *
+ * The streaming pair replays the messy answer in 8-character deltas and
+ * repairs after every delta: once by resuming one JsonRepair, once by
+ * repairing the whole prefix again as the candidate path used to.
+ */
+@State(Scope.Benchmark)
+public class ActionParserBenchmark {
+    @Param({ ScreenCorpus.SMALL, ScreenCorpus.MEDIUM, ScreenCorpus.LARGE })
+    public String size;
+
+    private ActionParser parser;
+    private String text;
+    private String wellFormed;
+    private String messy;
+    private String[] deltas;
+    private final JsonRepair repair = new JsonRepair();
+
+    @Setup
+    public void setUp() {
+        parser = new ActionParser((systemPrompt, userMessage) -> null);
+        text = ScreenCorpus.text(size, 4);
+
+        JsonObject slots = new JsonObject();
+        slots.addProperty("title", "项目周会");
+        slots.addProperty("time", "2026-10-20T15:00:00");
+        slots.addProperty("location", "3楼会议室");
+        JsonObject plan = new JsonObject();
+        plan.addProperty("type", "CREATE_CALENDAR");
+        plan.add("slots", slots);
+        plan.addProperty("confidence", 0.86);
+        plan.addProperty("original_text", text);
+        wellFormed = plan.toString();
+        messy = "好的，以下是解析结果：\n```json\n" + wellFormed.replace("\",\"", "\", \"")
+                .replace("}}", "},}") + "\n```\n希望对你有帮助！";
+        deltas = new String[(messy.length() + 7) / 8];
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = messy.substring(i * 8, Math.min(messy.length(), i * 8 + 8));
+        }
+    }
+
+    @Benchmark
+    public ActionPlan parseJsonResponse_wellFormed() {
+        return parser.parseJsonResponse(wellFormed, text);
+    }
+
+    @Benchmark
+    public ActionPlan parseJsonResponse_messy() {
+        return parser.parseJsonResponse(messy, text);
+    }
+
+    @Benchmark
+    public String sanitizeAndRepairJson_messy() {
+        return parser.sanitizeAndRepairJson(messy);
+    }
+
+    @Benchmark
+    public int streamingRepair_incremental() {
+        int total = 0;
+        repair.reset(false);
+        for (String delta : deltas) {
+            CharSequence repaired = repair.append(delta).result();
+            total += repaired == null ? 0 : repaired.length();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int streamingRepair_rescan() {
+        int total = 0;
+        StringBuilder streamed = new StringBuilder();
+        for (String delta : deltas) {
+            CharSequence repaired = repair.repair(streamed.append(delta), false);
+            total += repaired == null ? 0 : repaired.length();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.philotes.domain;
+
+import com.example.philotes.benchmark.ScreenCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Sensitive-text check that runs on every capture before any cloud call. */
+@State(Scope.Benchmark)
+public class PrivacyFirewallBenchmark {
+    @Param({ ScreenCorpus.SMALL, ScreenCorpus.MEDIUM, ScreenCorpus.LARGE })
+    public String size;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = ScreenCorpus.text(size, 3);
+    }
+
+    @Benchmark
+    public PrivacyFirewall.PrivacyLevel check() {
+        return PrivacyFirewall.check("com.tencent.mm", text);
+    }
+}
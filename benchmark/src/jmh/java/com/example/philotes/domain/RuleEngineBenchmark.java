@@ -0,0 +1,40 @@
+package com.example.philotes.domain;
+
+import com.example.philotes.benchmark.ScreenCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Proactive gate keyword scan. The noise-only corpus is the common case: every
+ * keyword and regex rule runs over the whole text without a hit.
+ */
+@State(Scope.Benchmark)
+public class RuleEngineBenchmark {
+    @Param({ ScreenCorpus.SMALL, ScreenCorpus.MEDIUM, ScreenCorpus.LARGE })
+    public String size;
+
+    private RuleEngine engine;
+    private String mixed;
+    private String noise;
+
+    @Setup
+    public void setUp() {
+        engine = RuleEngine.getInstance();
+        mixed = ScreenCorpus.text(size, 1);
+        noise = ScreenCorpus.noiseOnly(size, 2);
+    }
+
+    @Benchmark
+    public String findFirstMatchedKeyword_mixed() {
+        return engine.findFirstMatchedKeyword(mixed);
+    }
+
+    @Benchmark
+    public String findFirstMatchedKeyword_noHit() {
+        return engine.findFirstMatchedKeyword(noise);
+    }
+}
@@ -0,0 +1,24 @@
+package android.os;
+
+/**
+ * JVM stand-in for the framework build constants; SDK_INT is 0 so every
+ * API-level guarded path (e.g. async trace sections) is skipped.
+ */
+public final class Build {
+    private Build() {
+    }
+
+    public static final class VERSION {
+        public static final int SDK_INT = 0;
+
+        private VERSION() {
+        }
+    }
+
+    public static final class VERSION_CODES {
+        public static final int Q = 29;
+
+        private VERSION_CODES() {
+        }
+    }
+}
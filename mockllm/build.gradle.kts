@@ -0,0 +1,14 @@
+// Embeddable OpenAI-compatible mock server with latency and fault injection,
+// shared as a test fixture (testImplementation(project(":mockllm"))).
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(libs.gson)
+}
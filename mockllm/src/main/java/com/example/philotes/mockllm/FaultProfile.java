@@ -0,0 +1,149 @@
+package com.example.philotes.mockllm;
+
+/**
+ * {@link MockLlmServer} 的延迟与故障配置，不可变，用 {@link Builder} 构造。
+ *
+ * 延迟：首字节前等待 ttfb（加 0~ttfbJitter 的均匀抖动），之后每个 token 间隔 interTokenDelay；
+ * tokensPerSecond 是整个服务器共享的吞吐上限（模拟服务商的 TPM 限流），0 表示不限。
+ * 非流式请求同样按 token 计时，只是生成完才一次性返回。
+ *
+ * 故障按请求独立抽样（固定 seed 可复现）：429 / 500 直接返回错误体；
+ * reset 在输出一半时以 RST 断开连接；malformed 在流中插入一个截断的 data 块（内容不丢），
+ * 非流式时返回截断的 JSON 体。
+ */
+public final class FaultProfile {
+
+    /** 注入的故障类型，用于 {@link MockLlmServer#injectedCount}。 */
+    public enum Fault {
+        RATE_LIMITED,
+        SERVER_ERROR,
+        RESET,
+        MALFORMED
+    }
+
+    public static final FaultProfile NONE = builder().build();
+
+    final long ttfbMs;
+    final long ttfbJitterMs;
+    final long interTokenDelayMs;
+    final double tokensPerSecond;
+    final int tokenChars;
+    final double rateLimitRate;
+    final double serverErrorRate;
+    final double resetRate;
+    final double malformedRate;
+    final int retryAfterSeconds;
+    final long seed;
+
+    private FaultProfile(Builder builder) {
+        this.ttfbMs = builder.ttfbMs;
+        this.ttfbJitterMs = builder.ttfbJitterMs;
+        this.interTokenDelayMs = builder.interTokenDelayMs;
+        this.tokensPerSecond = builder.tokensPerSecond;
+        this.tokenChars = builder.tokenChars;
+        this.rateLimitRate = builder.rateLimitRate;
+        this.serverErrorRate = builder.serverErrorRate;
+        this.resetRate = builder.resetRate;
+        this.malformedRate = builder.malformedRate;
+        this.retryAfterSeconds = builder.retryAfterSeconds;
+        this.seed = builder.seed;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .ttfb(ttfbMs, ttfbJitterMs)
+                .interTokenDelay(interTokenDelayMs)
+                .tokensPerSecond(tokensPerSecond)
+                .tokenChars(tokenChars)
+                .rateLimitRate(rateLimitRate)
+                .serverErrorRate(serverErrorRate)
+                .resetRate(resetRate)
+                .malformedRate(malformedRate)
+                .retryAfterSeconds(retryAfterSeconds)
+                .seed(seed);
+    }
+
+    public static final class Builder {
+        private long ttfbMs;
+        private long ttfbJitterMs;
+        private long interTokenDelayMs;
+        private double tokensPerSecond;
+        private int tokenChars = 4;
+        private double rateLimitRate;
+        private double serverErrorRate;
+        private double resetRate;
+        private double malformedRate;
+        private int retryAfterSeconds = 1;
+        private long seed = 42L;
+
+        private Builder() {
+        }
+
+        public Builder ttfb(long ms, long jitterMs) {
+            this.ttfbMs = Math.max(0, ms);
+            this.ttfbJitterMs = Math.max(0, jitterMs);
+            return this;
+        }
+
+        public Builder interTokenDelay(long ms) {
+            this.interTokenDelayMs = Math.max(0, ms);
+            return this;
+        }
+
+        public Builder tokensPerSecond(double tokensPerSecond) {
+            this.tokensPerSecond = Math.max(0, tokensPerSecond);
+            return this;
+        }
+
+        /** 一个 token 对应的字符数，也是流式 delta 的粒度。 */
+        public Builder tokenChars(int chars) {
+            this.tokenChars = Math.max(1, chars);
+            return this;
+        }
+
+        public Builder rateLimitRate(double rate) {
+            this.rateLimitRate = clamp(rate);
+            return this;
+        }
+
+        public Builder serverErrorRate(double rate) {
+            this.serverErrorRate = clamp(rate);
+            return this;
+        }
+
+        public Builder resetRate(double rate) {
+            this.resetRate = clamp(rate);
+            return this;
+        }
+
+        public Builder malformedRate(double rate) {
+            this.malformedRate = clamp(rate);
+            return this;
+        }
+
+        public Builder retryAfterSeconds(int seconds) {
+            this.retryAfterSeconds = Math.max(0, seconds);
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public FaultProfile build() {
+            if (rateLimitRate + serverErrorRate > 1.0) {
+                throw new IllegalArgumentException("rateLimitRate + serverErrorRate must not exceed 1");
+            }
+            return new FaultProfile(this);
+        }
+
+        private static double clamp(double rate) {
+            return Math.max(0, Math.min(1, rate));
+        }
+    }
+}
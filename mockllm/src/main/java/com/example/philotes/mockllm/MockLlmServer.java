@@ -0,0 +1,482 @@
+package com.example.philotes.mockllm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 可嵌入的 OpenAI 兼容 mock 服务，只实现 OpenAIService 用到的 POST .../chat/completions，
+ * 阻塞（JSON）和 stream:true（SSE）两种形态都支持，并按 {@link FaultProfile} 注入延迟和故障。
+ *
+ * 直接在 ServerSocket 上手写 HTTP/1.1：非流式响应带 Content-Length 并保持连接，
+ * 流式响应以 Connection: close 结束；这样才能精确控制每个 SSE 块的发出时刻，
+ * 以及用 SO_LINGER=0 在流中途发 RST。
+ *
+ * 用法：
+ * <pre>
+ * try (MockLlmServer server = MockLlmServer.start()) {
+ *     server.faults(FaultProfile.builder().ttfb(200, 50).interTokenDelay(20).rateLimitRate(0.1).build());
+ *     ILlmService cloud = new OpenAIService("test-key", server.baseUrl(), "mock");
+ * }
+ * </pre>
+ */
+public final class MockLlmServer implements Closeable {
+
+    /** 由请求的 system / user 消息决定回答内容，需线程安全。 */
+    public interface Responder {
+        String respond(String systemPrompt, String userMessage);
+    }
+
+    public static final String DEFAULT_RESPONSE =
+            "[{\"type\":\"CREATE_CALENDAR\",\"slots\":{\"title\":\"项目评审\",\"time\":\"明天下午3点\"},\"confidence\":0.9}]";
+
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    /** 最近 4 个字节为 \r\n\r\n。 */
+    private static final int HEADER_END = 0x0D0A0D0A;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final Map<FaultProfile.Fault, AtomicInteger> injected = new EnumMap<>(FaultProfile.Fault.class);
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final Object throughputLock = new Object();
+    private long nextTokenSlotNs;
+
+    private volatile FaultProfile faults = FaultProfile.NONE;
+    private volatile Responder responder = (system, user) -> DEFAULT_RESPONSE;
+    private Random random = new Random(FaultProfile.NONE.seed);
+    private volatile boolean closed;
+
+    private MockLlmServer(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-llm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (FaultProfile.Fault fault : FaultProfile.Fault.values()) {
+            injected.put(fault, new AtomicInteger());
+        }
+    }
+
+    /** 在 127.0.0.1 的随机端口上启动。 */
+    public static MockLlmServer start() throws IOException {
+        ServerSocket socket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        MockLlmServer server = new MockLlmServer(socket);
+        server.workers.execute(server::acceptLoop);
+        return server;
+    }
+
+    /** 传给 OpenAIService 的 baseUrl，形如 http://127.0.0.1:port/v1。 */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/v1";
+    }
+
+    /** 替换故障配置，并以它的 seed 重新开始抽样。 */
+    public MockLlmServer faults(FaultProfile profile) {
+        synchronized (this) {
+            this.faults = profile;
+            this.random = new Random(profile.seed);
+        }
+        return this;
+    }
+
+    public MockLlmServer responder(Responder responder) {
+        this.responder = responder;
+        return this;
+    }
+
+    /** 收到的 chat/completions 请求数（含被注入故障的）。 */
+    public int requestCount() {
+        return requests.get();
+    }
+
+    /** 完整发出（非流式整包、流式到 [DONE]）的响应数。 */
+    public int completedCount() {
+        return completed.get();
+    }
+
+    public int injectedCount(FaultProfile.Fault fault) {
+        return injected.get(fault).get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("mock-llm accept failed: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (!closed) {
+                Request request = readRequest(in);
+                if (request == null || !handle(request, socket, out)) {
+                    break;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // 客户端断开、服务关闭或主动 reset
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /** @return 是否保持连接 */
+    private boolean handle(Request request, Socket socket, OutputStream out)
+            throws IOException, InterruptedException {
+        if (!"POST".equals(request.method) || !request.path.endsWith("/chat/completions")) {
+            writeJson(out, 404, "Not Found", error("not_found", "Unknown path " + request.path), null);
+            return true;
+        }
+        requests.incrementAndGet();
+
+        JsonObject body;
+        try {
+            body = JsonParser.parseString(request.body).getAsJsonObject();
+        } catch (RuntimeException e) {
+            writeJson(out, 400, "Bad Request", error("invalid_request_error", "Body is not JSON"), null);
+            return true;
+        }
+        boolean stream = body.has("stream") && body.get("stream").getAsBoolean();
+
+        FaultProfile profile;
+        Plan plan;
+        synchronized (this) {
+            profile = faults;
+            plan = Plan.draw(profile, random);
+        }
+        if (plan.status == 429) {
+            injected.get(FaultProfile.Fault.RATE_LIMITED).incrementAndGet();
+            writeJson(out, 429, "Too Many Requests", error("rate_limit_exceeded", "Rate limit reached"),
+                    "Retry-After: " + profile.retryAfterSeconds);
+            return true;
+        }
+        if (plan.status == 500) {
+            injected.get(FaultProfile.Fault.SERVER_ERROR).incrementAndGet();
+            writeJson(out, 500, "Internal Server Error", error("server_error", "Injected failure"), null);
+            return true;
+        }
+
+        String content = responder.respond(messageContent(body, "system"), messageContent(body, "user"));
+        List<String> tokens = tokenize(content == null ? "" : content, profile.tokenChars);
+        Thread.sleep(plan.ttfbMs);
+        return stream
+                ? streamResponse(tokens, profile, plan, socket, out)
+                : blockingResponse(content, tokens, profile, plan, socket, out);
+    }
+
+    private boolean streamResponse(List<String> tokens, FaultProfile profile, Plan plan, Socket socket,
+            OutputStream out) throws IOException, InterruptedException {
+        writeAscii(out, "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/event-stream\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "Connection: close\r\n\r\n");
+        out.flush();
+
+        int resetAt = plan.reset ? tokens.size() / 2 : -1;
+        int malformedAt = plan.malformed ? tokens.size() / 3 : -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0) {
+                pace(profile);
+            }
+            if (i == resetAt) {
+                reset(socket);
+                return false;
+            }
+            if (i == malformedAt) {
+                injected.get(FaultProfile.Fault.MALFORMED).incrementAndGet();
+                writeUtf8(out, "data: {\"choices\":[{\"delta\":{\"content\":\"\n\n");
+            }
+            writeUtf8(out, "data: " + chunk(tokens.get(i)) + "\n\n");
+            out.flush();
+        }
+        writeAscii(out, "data: [DONE]\n\n");
+        out.flush();
+        completed.incrementAndGet();
+        return false;
+    }
+
+    private boolean blockingResponse(String content, List<String> tokens, FaultProfile profile, Plan plan,
+            Socket socket, OutputStream out) throws IOException, InterruptedException {
+        for (int i = 1; i < tokens.size(); i++) {
+            pace(profile);
+        }
+        String json = completion(content == null ? "" : content);
+        if (plan.malformed) {
+            injected.get(FaultProfile.Fault.MALFORMED).incrementAndGet();
+            json = json.substring(0, json.length() / 2);
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        if (plan.reset) {
+            writeAscii(out, statusLine(200, "OK") + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + bytes.length + "\r\n\r\n");
+            out.write(bytes, 0, bytes.length / 2);
+            out.flush();
+            reset(socket);
+            return false;
+        }
+        writeAscii(out, statusLine(200, "OK") + "Content-Type: application/json\r\n"
+                + "Content-Length: " + bytes.length + "\r\n\r\n");
+        out.write(bytes);
+        out.flush();
+        completed.incrementAndGet();
+        return true;
+    }
+
+    /** 单个 token 的生成耗时：流内间隔 + 全局吞吐上限的排队。 */
+    private void pace(FaultProfile profile) throws InterruptedException {
+        if (profile.interTokenDelayMs > 0) {
+            Thread.sleep(profile.interTokenDelayMs);
+        }
+        if (profile.tokensPerSecond <= 0) {
+            return;
+        }
+        long waitNs;
+        synchronized (throughputLock) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextTokenSlotNs);
+            nextTokenSlotNs = slot + (long) (1e9 / profile.tokensPerSecond);
+            waitNs = slot - now;
+        }
+        if (waitNs > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNs);
+        }
+    }
+
+    private void reset(Socket socket) throws SocketException {
+        injected.get(FaultProfile.Fault.RESET).incrementAndGet();
+        socket.setSoLinger(true, 0);
+        closeQuietly(socket);
+    }
+
+    /** 每次请求的故障抽样结果。 */
+    private static final class Plan {
+        int status = 200;
+        long ttfbMs;
+        boolean reset;
+        boolean malformed;
+
+        static Plan draw(FaultProfile profile, Random random) {
+            Plan plan = new Plan();
+            double status = random.nextDouble();
+            if (status < profile.rateLimitRate) {
+                plan.status = 429;
+            } else if (status < profile.rateLimitRate + profile.serverErrorRate) {
+                plan.status = 500;
+            }
+            plan.ttfbMs = profile.ttfbMs
+                    + (profile.ttfbJitterMs > 0 ? (long) (random.nextDouble() * profile.ttfbJitterMs) : 0);
+            plan.reset = random.nextDouble() < profile.resetRate;
+            plan.malformed = random.nextDouble() < profile.malformedRate;
+            return plan;
+        }
+    }
+
+    private static final class Request {
+        String method;
+        String path;
+        String body;
+    }
+
+    /** 读一个请求；连接在请求之间被关闭时返回 null。 */
+    private static Request readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int window = 0;
+        while (window != HEADER_END) {
+            int b = in.read();
+            if (b < 0) {
+                return null;
+            }
+            head.write(b);
+            window = (window << 8) | b;
+            if (head.size() > MAX_HEADER_BYTES) {
+                throw new IOException("Request header too large");
+            }
+        }
+
+        String[] lines = head.toString("ISO-8859-1").split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length < 2) {
+            throw new IOException("Bad request line: " + lines[0]);
+        }
+        int contentLength = 0;
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0 && lines[i].substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(lines[i].substring(colon + 1).trim());
+            }
+        }
+        byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            int n = in.read(body, read, contentLength - read);
+            if (n < 0) {
+                return null;
+            }
+            read += n;
+        }
+
+        Request request = new Request();
+        request.method = requestLine[0];
+        request.path = requestLine[1];
+        request.body = new String(body, StandardCharsets.UTF_8);
+        return request;
+    }
+
+    private static String messageContent(JsonObject body, String role) {
+        if (!body.has("messages")) {
+            return "";
+        }
+        JsonArray messages = body.getAsJsonArray("messages");
+        for (JsonElement element : messages) {
+            JsonObject message = element.getAsJsonObject();
+            if (role.equals(message.get("role").getAsString()) && message.has("content")) {
+                return message.get("content").getAsString();
+            }
+        }
+        return "";
+    }
+
+    static List<String> tokenize(String content, int tokenChars) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < content.length()) {
+            int end = Math.min(content.length(), i + tokenChars);
+            // 不拆开代理对
+            if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+                end++;
+            }
+            tokens.add(content.substring(i, end));
+            i = end;
+        }
+        if (tokens.isEmpty()) {
+            tokens.add("");
+        }
+        return tokens;
+    }
+
+    private static String chunk(String delta) {
+        JsonObject content = new JsonObject();
+        content.addProperty("content", delta);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", content);
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject event = new JsonObject();
+        event.addProperty("object", "chat.completion.chunk");
+        event.add("choices", choices);
+        return event.toString();
+    }
+
+    private static String completion(String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject root = new JsonObject();
+        root.addProperty("object", "chat.completion");
+        root.add("choices", choices);
+        return root.toString();
+    }
+
+    private static String error(String type, String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("message", message);
+        error.addProperty("type", type);
+        JsonObject root = new JsonObject();
+        root.add("error", error);
+        return root.toString();
+    }
+
+    private static void writeJson(OutputStream out, int code, String reason, String json, String extraHeader)
+            throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        writeAscii(out, statusLine(code, reason)
+                + "Content-Type: application/json\r\n"
+                + (extraHeader == null ? "" : extraHeader + "\r\n")
+                + "Content-Length: " + bytes.length + "\r\n\r\n");
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String statusLine(int code, String reason) {
+        return String.format(Locale.US, "HTTP/1.1 %d %s\r\n", code, reason);
+    }
+
+    private static void writeAscii(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void writeUtf8(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // 已关闭
+        }
+    }
+}
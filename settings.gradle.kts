@@ -22,4 +22,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "Philotes"
 include(":app")
+include(":benchmark")
+include(":mockllm")
  
\ No newline at end of file